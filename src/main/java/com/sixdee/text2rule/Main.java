@@ -4,15 +4,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixdee.text2rule.config.ConfigurationManager;
 import com.sixdee.text2rule.exception.ConfigurationException;
 import com.sixdee.text2rule.exception.Text2RuleException;
+import com.sixdee.text2rule.workflow.ConversionRunner;
 import com.sixdee.text2rule.workflow.DecompositionWorkflow;
 import com.sixdee.text2rule.workflow.WorkflowState;
 import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.observability.Metrics;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import org.bsc.langgraph4j.CompiledGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Refactored Main application following SOLID principles.
@@ -32,6 +35,9 @@ public class Main {
         try {
             logger.info("Application starting [version=1.0, timestamp={}]", System.currentTimeMillis());
 
+            Metrics.startSnapshots(ConfigurationManager.getInstance().getMetricsSnapshotFile(),
+                    ConfigurationManager.getInstance().getMetricsSnapshotSeconds());
+
             // Initialize LLM client using configuration
             chatLanguageModel = initializeLLMClient(ConfigurationManager.getInstance());
 
@@ -47,26 +53,55 @@ public class Main {
             Map<String, Object> inputs = Map.of("input",
                     "Run this campaign weekly on Mondays and Tuesdays from 5 October 2024 to 5 October 2026, targeting subscribers based on their SMS revenue, preferred location, and recharge behavior. Subscribers whose SMS revenue in the last 30 days is exactly 15 RO, whose favorite location is Adimali, and whose total recharge in the last 30 days is at least 200 RO should receive a promotional SMS with Message ID 24, while subscribers whose SMS revenue in the last 30 days is greater than 15 RO, whose favorite location is Bengaluru, and whose total recharge in the last 30 days is at least 150 RO should receive a promotional SMS with Message ID 25. Subscribers who do not meet either of these criteria should be excluded from the campaign.");
 
-            logger.info("Invoking Decomposition Workflow [input_length={}]",
-                    ((String) inputs.get("input")).length());
-
-            // Execute workflow
-            WorkflowState finalState = app.invoke(inputs)
-                    .orElseThrow(() -> new Text2RuleException("Graph execution failed to return state"));
+            // --resume=<run_id> continues an interrupted run from its last checkpoint,
+            // or from the checkpoint or node given with --from=<id>
+            String resumeRunId = argument(args, "--resume");
+            String resumeFrom = argument(args, "--from");
+            String statement = (String) inputs.get("input");
+
+            // ConversionRunner accounts the run's LLM calls, stops it at its deadline,
+            // and commits or discards its cached responses and checkpoints
+            ConversionRunner runner = new ConversionRunner(app);
+            AtomicReference<WorkflowState> finalState = new AtomicReference<>();
+            ConversionRunner.Result result;
+            if (resumeRunId != null) {
+                logger.info("Resuming Decomposition Workflow [run_id={}, from={}]", resumeRunId,
+                        resumeFrom != null ? resumeFrom : "last checkpoint");
+                result = runner.resume("main", resumeRunId, resumeFrom, finalState::set);
+            } else {
+                logger.info("Invoking Decomposition Workflow [input_length={}]", statement.length());
+                result = runner.convert("main", statement,
+                        ConfigurationManager.getInstance().getRunDeadlineSeconds() * 1000L, finalState::set);
+            }
+            logger.info("Workflow token usage [run_id={}, {}]", result.getRunId(), result.getTokens());
+            if (finalState.get() == null) {
+                throw new Text2RuleException("Workflow execution failed: " + result.getFailureReason());
+            }
 
             // Process validation results
-            processValidationResults(finalState);
+            processValidationResults(finalState.get());
 
             // Check workflow failure status
-            if (finalState.isWorkflowFailed()) {
-                logger.error("Workflow failed [reason={}]", finalState.getFailureReason());
-            } else {
-                logger.info("Workflow execution completed [state={}]", finalState != null ? "available" : "null");
-
-                // Present all results using ResultPresenter (Facade)
-                new com.sixdee.text2rule.view.ResultPresenter(ConfigurationManager.getInstance()).renderTree(
-                        graphBuilder,
-                        finalState);
+            switch (result.getStatus()) {
+                case ConversionRunner.STATUS_DEADLINE_EXCEEDED:
+                    logger.error("Workflow stopped at its deadline, partial tree kept [reason={}, run_id={}]",
+                            result.getFailureReason(), result.getRunId());
+                    break;
+                case ConversionRunner.STATUS_PROVIDER_UNAVAILABLE:
+                    logger.error("Workflow stopped, LLM provider unavailable [reason={}]", result.getFailureReason());
+                    break;
+                case ConversionRunner.STATUS_FAILED:
+                    logger.error("Workflow failed [reason={}, run_id={}]", result.getFailureReason(),
+                            result.getRunId());
+                    break;
+                default:
+                    logger.info("Workflow execution completed [run_id={}, elapsed_ms={}]", result.getRunId(),
+                            result.getElapsedMillis());
+
+                    // Present all results using ResultPresenter (Facade)
+                    new com.sixdee.text2rule.view.ResultPresenter(ConfigurationManager.getInstance()).renderTree(
+                            graphBuilder,
+                            finalState.get());
             }
 
             logger.info("Application completed successfully");
@@ -109,6 +144,18 @@ public class Main {
         }
     }
 
+    /**
+     * @return the value of a --name=value argument, or null
+     */
+    private static String argument(String[] args, String name) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
     /**
      * Process and log validation results.
      */
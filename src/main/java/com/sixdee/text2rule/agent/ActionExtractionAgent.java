@@ -3,6 +3,9 @@ package com.sixdee.text2rule.agent;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixdee.text2rule.config.PromptRegistry;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.helper.TreeTraversalExecutor;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
@@ -14,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -27,6 +31,7 @@ import static org.bsc.langgraph4j.StateGraph.START;
 public class ActionExtractionAgent {
     private static final Logger logger = LoggerFactory.getLogger(ActionExtractionAgent.class);
     private static final String DEFAULT_PROMPT_KEY = "action_extraction_prompt";
+    private static final String AGENT_NAME = "ActionExtractionAgent";
 
     private final ChatLanguageModel lang4jService;
     private final ObjectMapper objectMapper;
@@ -34,7 +39,7 @@ public class ActionExtractionAgent {
 
     public static class ActionState extends AgentState {
         public ActionState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         @SuppressWarnings("unchecked")
@@ -91,66 +96,58 @@ public class ActionExtractionAgent {
     private void extractActions(RuleTree<NodeData> tree, String customPromptKey) {
         if (tree == null || tree.getRoot() == null)
             return;
-        extractActionsRecursive(tree.getRoot(), customPromptKey);
-    }
 
-    private void extractActionsRecursive(RuleNode<NodeData> node, String customPromptKey) {
         // Process "Action" nodes (not "Segment" nodes)
-        if ("Action".equalsIgnoreCase(node.getData().getType())) {
-            String actionText = node.getData().getInput();
-            logger.info("Extracting campaign details for Action: {}", actionText);
+        List<RuleNode<NodeData>> actionNodes = TreeTraversalExecutor.collect(tree.getRoot(),
+                node -> "Action".equalsIgnoreCase(node.getData().getType()), true);
+
+        List<String> details = TreeTraversalExecutor.map(AGENT_NAME, actionNodes,
+                node -> extractActionDetails(node, customPromptKey));
+
+        // Attach results on this thread, in tree order
+        for (int i = 0; i < actionNodes.size(); i++) {
+            RuleNode<NodeData> node = actionNodes.get(i);
+            NodeData actionDetailsNode = new NodeData("ActionDetails", "", "", node.getData().getModelName(), "",
+                    details.get(i));
+            node.addChild(new RuleNode<>(actionDetailsNode));
+            logger.info("Added ActionDetails child node");
+        }
+    }
 
-            try {
-                // Use custom prompt key if provided, otherwise use default
-                String promptKey = (customPromptKey != null && !customPromptKey.trim().isEmpty())
-                        ? customPromptKey
-                        : DEFAULT_PROMPT_KEY;
-
-                String promptTemplate = PromptRegistry.getInstance().get(promptKey);
-                String prompt = promptTemplate.replace("{{ $json.action_text }}", actionText);
-
-                logger.info("ActionExtractionAgent: Sending prompt to LLM...");
-                // Rate limit protection: 12-second delay
-                try {
-                    Thread.sleep(12000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                String jsonResponse = lang4jService.generate(prompt);
-                logger.info("ActionExtractionAgent: Received response from LLM");
+    private String extractActionDetails(RuleNode<NodeData> node, String customPromptKey) {
+        String actionText = node.getData().getInput();
+        logger.info("Extracting campaign details for Action: {}", actionText);
+
+        try {
+            // Use custom prompt key if provided, otherwise use default
+            String promptKey = (customPromptKey != null && !customPromptKey.trim().isEmpty())
+                    ? customPromptKey
+                    : DEFAULT_PROMPT_KEY;
 
-                // Robust JSON extraction: Find first '{' and last '}'
-                jsonResponse = cleanJson(jsonResponse);
+            String promptTemplate = PromptRegistry.getInstance().get(promptKey);
+            String prompt = promptTemplate.replace("{{ $json.action_text }}", actionText);
 
-                logger.info("Parsed JSON String: {}", jsonResponse);
+            logger.info("ActionExtractionAgent: Sending prompt to LLM...");
+            String jsonResponse = LlmCallContext.withPromptKey(AGENT_NAME, promptKey,
+                    () -> lang4jService.generate(prompt));
+            logger.info("ActionExtractionAgent: Received response from LLM");
 
-                // Parse into ActionExtractionResult DTO
-                com.sixdee.text2rule.dto.ActionExtractionResult actionResult = objectMapper.readValue(jsonResponse,
-                        com.sixdee.text2rule.dto.ActionExtractionResult.class);
+            // Robust JSON extraction: Find first '{' and last '}'
+            jsonResponse = cleanJson(jsonResponse);
 
-                // Format the extracted data
-                String formattedAction = formatActionDetails(actionResult);
+            logger.info("Parsed JSON String: {}", jsonResponse);
 
-                NodeData actionDetailsNode = new NodeData("ActionDetails", "", "", node.getData().getModelName(), "",
-                        formattedAction);
-                node.addChild(new RuleNode<>(actionDetailsNode));
-                logger.info("Added ActionDetails child node");
+            // Parse into ActionExtractionResult DTO
+            com.sixdee.text2rule.dto.ActionExtractionResult actionResult = objectMapper.readValue(jsonResponse,
+                    com.sixdee.text2rule.dto.ActionExtractionResult.class);
 
-            } catch (Exception e) {
-                logger.error("Error extracting action details. Using fallback.", e);
-                // Fallback: Create a generic action node with the raw text
-                String fallbackAction = "Action extraction failed: " + e.getMessage();
-                NodeData actionNode = new NodeData("ActionDetails", "", "", node.getData().getModelName(), "",
-                        fallbackAction);
-                node.addChild(new RuleNode<>(actionNode));
-                logger.info("Added Fallback ActionDetails child node");
-            }
-        }
+            // Format the extracted data
+            return formatActionDetails(actionResult);
 
-        if (node.getChildren() != null) {
-            for (RuleNode<NodeData> child : node.getChildren()) {
-                extractActionsRecursive(child, customPromptKey);
-            }
+        } catch (Exception e) {
+            logger.error("Error extracting action details. Using fallback.", e);
+            // Fallback: Create a generic action node with the raw text
+            return "Action extraction failed: " + e.getMessage();
         }
     }
 
@@ -169,7 +166,7 @@ public class ActionExtractionAgent {
         }
     }
 
-    private String formatActionDetails(com.sixdee.text2rule.dto.ActionExtractionResult result) {
+    static String formatActionDetails(com.sixdee.text2rule.dto.ActionExtractionResult result) {
         if (result == null) {
             return "No action information available";
         }
@@ -230,6 +227,6 @@ public class ActionExtractionAgent {
                 logger.error("Error executing ActionExtractionAgent", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, AgentExecutors.io());
     }
 }
@@ -2,9 +2,12 @@ package com.sixdee.text2rule.agent;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixdee.text2rule.config.PromptRegistry;
 import com.sixdee.text2rule.dto.ExtractionResult;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
@@ -15,6 +18,7 @@ import org.bsc.langgraph4j.state.AgentState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,10 +30,23 @@ import static org.bsc.langgraph4j.StateGraph.START;
 /**
  * ConditionExtractionAgent extracts conditions from NormalStatements nodes.
  * Simplified version - no internal retry logic (handled by workflow).
+ * When a tree holds several NormalStatements nodes they are sent to the LLM in
+ * batches (batch_size prompt attribute, default 8; 1 disables batching), with
+ * single-node calls only for statements the batched response did not cover.
+ * A retry ({@link #retry}) re-extracts only the NormalStatements nodes that
+ * scored below the consistency threshold and still have retries left; the
+ * subtrees of passing nodes are kept as they are.
  */
 public class ConditionExtractionAgent {
     private static final Logger logger = LoggerFactory.getLogger(ConditionExtractionAgent.class);
     private static final String DEFAULT_PROMPT_KEY = "condition_extraction_prompt";
+    private static final String AGENT_NAME = "ConditionExtractionAgent";
+    private static final int DEFAULT_BATCH_SIZE = 8;
+    private static final String BATCH_INSTRUCTIONS = "\n\nThe input above contains %d independent statements, "
+            + "numbered [0] to [%d]. Apply the instructions to each statement separately. "
+            + "Return ONLY a JSON array with exactly %d objects of the form "
+            + "{\"index\": <statement number>, \"conditions\": <the JSON array you would return for that "
+            + "statement alone>}.";
 
     private final ChatLanguageModel lang4jService;
     private final ObjectMapper objectMapper;
@@ -37,7 +54,7 @@ public class ConditionExtractionAgent {
 
     public static class ConditionState extends AgentState {
         public ConditionState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         @SuppressWarnings("unchecked")
@@ -80,9 +97,25 @@ public class ConditionExtractionAgent {
 
         String customPromptKey = (String) state.data().get("customPromptKey");
         String customPromptString = (String) state.data().get("customPromptString");
+        Double retryBelow = (Double) state.data().get("retryBelow");
+        int maxRetries = (int) state.data().getOrDefault("maxRetries", 0);
 
         try {
-            extractConditions(tree, customPromptKey, customPromptString);
+            List<RuleNode<NodeData>> statementNodes;
+            if (retryBelow != null) {
+                statementNodes = nodesToRetry(tree, retryBelow, maxRetries);
+                for (RuleNode<NodeData> node : statementNodes) {
+                    node.getData().setRetryCount(node.getData().getRetryCount() + 1);
+                }
+                logger.info("Re-extracting {} NormalStatements nodes below threshold {}", statementNodes.size(),
+                        retryBelow);
+            } else {
+                statementNodes = new ArrayList<>();
+                if (tree.getRoot() != null) {
+                    collectNormalStatements(tree.getRoot(), statementNodes);
+                }
+            }
+            extractConditions(statementNodes, customPromptKey, customPromptString);
         } catch (Exception e) {
             logger.error("Error in extraction node", e);
             return CompletableFuture.completedFuture(Map.of("failed", true));
@@ -90,101 +123,223 @@ public class ConditionExtractionAgent {
         return CompletableFuture.completedFuture(Map.of("tree", tree));
     }
 
-    private void extractConditions(RuleTree<NodeData> tree, String customPromptKey, String customPromptString) {
-        if (tree == null || tree.getRoot() == null)
+    private void extractConditions(List<RuleNode<NodeData>> statementNodes, String customPromptKey,
+            String customPromptString) {
+        if (statementNodes.isEmpty())
             return;
-        processNode(tree.getRoot(), customPromptKey, customPromptString);
-    }
 
-    private void processNode(RuleNode<NodeData> node, String customPromptKey, String customPromptString) {
-        if (node == null)
-            return;
+        // Use custom prompt key if provided, otherwise use default
+        String promptKey = (customPromptKey != null && !customPromptKey.trim().isEmpty())
+                ? customPromptKey
+                : DEFAULT_PROMPT_KEY;
+        String promptTemplate;
+        if (customPromptString != null && !customPromptString.trim().isEmpty()) {
+            promptTemplate = customPromptString;
+            logger.info("Using provided custom prompt string");
+        } else {
+            promptTemplate = PromptRegistry.getInstance().get(promptKey);
+        }
 
-        // Check if this is a NormalStatements node
-        if ("NormalStatements".equalsIgnoreCase(node.getData().getType())) {
-            // Clear existing children to support retry mechanism
+        // Clear existing children of the nodes being (re-)extracted
+        for (RuleNode<NodeData> node : statementNodes) {
             node.getChildren().clear();
+        }
 
-            String conditionText = node.getData().getInput();
-            logger.info("Extracting conditions for NormalStatements node: {}", conditionText);
+        int batchSize = getBatchSize(promptKey);
+        if (statementNodes.size() < 2 || batchSize < 2) {
+            for (RuleNode<NodeData> node : statementNodes) {
+                extractForNode(node, promptKey, promptTemplate);
+            }
+            return;
+        }
 
-            try {
-                String prompt;
-                if (customPromptString != null && !customPromptString.trim().isEmpty()) {
-                    prompt = customPromptString
-                            .replace("{{ $json['output.normal_statements'] }}", conditionText)
-                            .replace("{{ $json.input_text }}", conditionText);
-                    logger.info("Using provided custom prompt string");
+        for (int from = 0; from < statementNodes.size(); from += batchSize) {
+            List<RuleNode<NodeData>> batch = statementNodes.subList(from,
+                    Math.min(from + batchSize, statementNodes.size()));
+            Map<Integer, List<ExtractionResult>> results = extractBatch(batch, promptKey, promptTemplate);
+
+            for (int i = 0; i < batch.size(); i++) {
+                List<ExtractionResult> conditions = results.get(i);
+                if (conditions != null) {
+                    addSegments(batch.get(i), conditions);
                 } else {
-                    // Use custom prompt key if provided, otherwise use default
-                    String promptKey = (customPromptKey != null && !customPromptKey.trim().isEmpty())
-                            ? customPromptKey
-                            : DEFAULT_PROMPT_KEY;
-
-                    String promptTemplate = PromptRegistry.getInstance().get(promptKey);
-                    prompt = promptTemplate
-                            .replace("{{ $json['output.normal_statements'] }}", conditionText)
-                            .replace("{{ $json.input_text }}", conditionText);
+                    logger.warn("Batched extraction missing index {}, falling back to single call", i);
+                    extractForNode(batch.get(i), promptKey, promptTemplate);
                 }
+            }
+        }
+    }
 
-                // Rate limit protection: 12-second delay
-                try {
-                    Thread.sleep(12000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                String jsonResponse = lang4jService.generate(prompt);
+    /**
+     * NormalStatements nodes a retry should re-extract: those whose last
+     * consistency score is below the threshold and whose own retry count has
+     * not reached the maximum.
+     *
+     * @return the nodes in tree order; empty if every node passed or used up
+     *         its retries
+     */
+    public static List<RuleNode<NodeData>> nodesToRetry(RuleTree<NodeData> tree, double threshold,
+            int maxRetries) {
+        List<RuleNode<NodeData>> statementNodes = new ArrayList<>();
+        if (tree != null && tree.getRoot() != null) {
+            collectNormalStatements(tree.getRoot(), statementNodes);
+        }
+        statementNodes.removeIf(node -> node.getData().getSimilarityScore() >= threshold
+                || node.getData().getRetryCount() >= maxRetries);
+        return statementNodes;
+    }
 
-                // Robust JSON List extraction
-                int startIndex = jsonResponse.indexOf("[");
-                int endIndex = jsonResponse.lastIndexOf("]");
+    /**
+     * Collect NormalStatements nodes in tree order. Children of a
+     * NormalStatements node are its previous extraction results, so they are
+     * not searched.
+     */
+    private static void collectNormalStatements(RuleNode<NodeData> node, List<RuleNode<NodeData>> statementNodes) {
+        if (node == null)
+            return;
 
-                if (startIndex != -1 && endIndex != -1 && endIndex > startIndex) {
-                    jsonResponse = jsonResponse.substring(startIndex, endIndex + 1);
-                } else {
-                    if (jsonResponse.startsWith("```json")) {
-                        jsonResponse = jsonResponse.replace("```json", "").replace("```", "").trim();
-                    }
-                }
+        if ("NormalStatements".equalsIgnoreCase(node.getData().getType())) {
+            statementNodes.add(node);
+            return;
+        }
 
-                List<ExtractionResult> conditions = objectMapper.readValue(jsonResponse,
-                        new TypeReference<List<ExtractionResult>>() {
-                        });
+        if (node.getChildren() != null) {
+            for (RuleNode<NodeData> child : node.getChildren()) {
+                collectNormalStatements(child, statementNodes);
+            }
+        }
+    }
 
-                if (conditions != null && !conditions.isEmpty()) {
-                    logger.info("Found {} conditions. Adding as children.", conditions.size());
+    private int getBatchSize(String promptKey) {
+        String value = PromptRegistry.getInstance().getAttribute(promptKey, "batch_size");
+        if (value == null) {
+            return DEFAULT_BATCH_SIZE;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid batch_size for [key={}], using default [batch_size={}]", promptKey,
+                    DEFAULT_BATCH_SIZE);
+            return DEFAULT_BATCH_SIZE;
+        }
+    }
 
-                    for (ExtractionResult segment : conditions) {
-                        String childInput;
-                        if (segment.getRule() != null && !segment.getRule().trim().isEmpty()) {
-                            childInput = segment.getRule();
-                        } else {
-                            // Fallback for backward compatibility or if rule is missing
-                            childInput = "Condition: " + segment.getCondition() + " -> Action: "
-                                    + segment.getActions();
-                        }
+    /**
+     * Extract conditions for several NormalStatements nodes with one LLM call.
+     * The statements are numbered in the prompt and the model answers with an
+     * array of {"index": i, "conditions": [...]} objects.
+     *
+     * @return conditions per batch index; indices that are missing or could not
+     *         be parsed are absent from the map
+     */
+    private Map<Integer, List<ExtractionResult>> extractBatch(List<RuleNode<NodeData>> batch, String promptKey,
+            String promptTemplate) {
+        Map<Integer, List<ExtractionResult>> results = new HashMap<>();
+        StringBuilder statements = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            statements.append('[').append(i).append("] ").append(batch.get(i).getData().getInput()).append('\n');
+        }
+        String prompt = renderPrompt(promptTemplate, statements.toString().trim())
+                + String.format(BATCH_INSTRUCTIONS, batch.size(), batch.size() - 1, batch.size());
 
-                        NodeData conditionNode = new NodeData("Segment", "", "", node.getData().getModelName(), "",
-                                childInput);
-                        node.addChild(new RuleNode<>(conditionNode));
-                    }
+        logger.info("Extracting conditions for {} NormalStatements nodes in one call", batch.size());
+        try {
+            String jsonResponse = LlmCallContext.withPromptKey(AGENT_NAME, promptKey,
+                    () -> lang4jService.generate(prompt));
+
+            int startIndex = jsonResponse.indexOf("[");
+            int endIndex = jsonResponse.lastIndexOf("]");
+            if (startIndex == -1 || endIndex <= startIndex) {
+                logger.warn("No JSON array found in batched extraction response");
+                return results;
+            }
 
-                } else {
-                    logger.info("No conditions extracted from NormalStatements node.");
+            JsonNode entries = objectMapper.readTree(jsonResponse.substring(startIndex, endIndex + 1));
+            for (JsonNode entry : entries) {
+                JsonNode index = entry.get("index");
+                JsonNode conditions = entry.get("conditions");
+                if (index == null || !index.canConvertToInt() || conditions == null || !conditions.isArray()) {
+                    continue;
+                }
+                int i = index.asInt();
+                if (i < 0 || i >= batch.size()) {
+                    continue;
                 }
+                try {
+                    results.put(i, objectMapper.convertValue(conditions,
+                            new TypeReference<List<ExtractionResult>>() {
+                            }));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Failed to parse batched conditions for index {}", i);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to parse batched extraction response", e);
+        } catch (Exception e) {
+            logger.error("Error during batched condition extraction", e);
+        }
+        return results;
+    }
 
-            } catch (JsonProcessingException e) {
-                logger.error("Failed to parse extraction response", e);
-            } catch (Exception e) {
-                logger.error("Error during condition extraction", e);
+    private void extractForNode(RuleNode<NodeData> node, String promptKey, String promptTemplate) {
+        String conditionText = node.getData().getInput();
+        logger.info("Extracting conditions for NormalStatements node: {}", conditionText);
+
+        try {
+            String prompt = renderPrompt(promptTemplate, conditionText);
+            String jsonResponse = LlmCallContext.withPromptKey(AGENT_NAME, promptKey,
+                    () -> lang4jService.generate(prompt));
+
+            // Robust JSON List extraction
+            int startIndex = jsonResponse.indexOf("[");
+            int endIndex = jsonResponse.lastIndexOf("]");
+
+            if (startIndex != -1 && endIndex != -1 && endIndex > startIndex) {
+                jsonResponse = jsonResponse.substring(startIndex, endIndex + 1);
+            } else {
+                if (jsonResponse.startsWith("```json")) {
+                    jsonResponse = jsonResponse.replace("```json", "").replace("```", "").trim();
+                }
             }
+
+            List<ExtractionResult> conditions = objectMapper.readValue(jsonResponse,
+                    new TypeReference<List<ExtractionResult>>() {
+                    });
+            addSegments(node, conditions);
+
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to parse extraction response", e);
+        } catch (Exception e) {
+            logger.error("Error during condition extraction", e);
+        }
+    }
+
+    private static String renderPrompt(String promptTemplate, String conditionText) {
+        return promptTemplate
+                .replace("{{ $json['output.normal_statements'] }}", conditionText)
+                .replace("{{ $json.input_text }}", conditionText);
+    }
+
+    private void addSegments(RuleNode<NodeData> node, List<ExtractionResult> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            logger.info("No conditions extracted from NormalStatements node.");
+            return;
         }
 
-        // Recursively process children
-        if (node.getChildren() != null) {
-            for (RuleNode<NodeData> child : node.getChildren()) {
-                processNode(child, customPromptKey, customPromptString);
+        logger.info("Found {} conditions. Adding as children.", conditions.size());
+        for (ExtractionResult segment : conditions) {
+            String childInput;
+            if (segment.getRule() != null && !segment.getRule().trim().isEmpty()) {
+                childInput = segment.getRule();
+            } else {
+                // Fallback for backward compatibility or if rule is missing
+                childInput = "Condition: " + segment.getCondition() + " -> Action: "
+                        + segment.getActions();
             }
+
+            NodeData conditionNode = new NodeData("Segment", "", "", node.getData().getModelName(), "",
+                    childInput);
+            node.addChild(new RuleNode<>(conditionNode));
         }
     }
 
@@ -198,21 +353,46 @@ public class ConditionExtractionAgent {
 
     public CompletableFuture<ConditionState> execute(RuleTree<NodeData> tree, String customPromptKey,
             String customPromptString) {
+        return invoke(input(tree, customPromptKey, customPromptString));
+    }
+
+    /**
+     * Re-extract only the NormalStatements nodes returned by
+     * {@link #nodesToRetry}, counting one retry on each of them. All other
+     * nodes, and their children, are left untouched.
+     *
+     * @param threshold  consistency threshold the node scores are held to
+     * @param maxRetries retries allowed per node
+     */
+    public CompletableFuture<ConditionState> retry(RuleTree<NodeData> tree, String customPromptKey,
+            String customPromptString, double threshold, int maxRetries) {
+        Map<String, Object> input = input(tree, customPromptKey, customPromptString);
+        input.put("retryBelow", threshold);
+        input.put("maxRetries", maxRetries);
+        return invoke(input);
+    }
+
+    private static Map<String, Object> input(RuleTree<NodeData> tree, String customPromptKey,
+            String customPromptString) {
+        Map<String, Object> input = new HashMap<>();
+        input.put("tree", tree);
+        if (customPromptKey != null && !customPromptKey.trim().isEmpty()) {
+            input.put("customPromptKey", customPromptKey);
+        }
+        if (customPromptString != null && !customPromptString.trim().isEmpty()) {
+            input.put("customPromptString", customPromptString);
+        }
+        return input;
+    }
+
+    private CompletableFuture<ConditionState> invoke(Map<String, Object> input) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Map<String, Object> input = new HashMap<>();
-                input.put("tree", tree);
-                if (customPromptKey != null && !customPromptKey.trim().isEmpty()) {
-                    input.put("customPromptKey", customPromptKey);
-                }
-                if (customPromptString != null && !customPromptString.trim().isEmpty()) {
-                    input.put("customPromptString", customPromptString);
-                }
                 return compiledGraph.invoke(input).orElse(null);
             } catch (Exception e) {
                 logger.error("Error executing ConditionExtractionAgent", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, AgentExecutors.io());
     }
 }
@@ -1,9 +1,16 @@
 package com.sixdee.text2rule.agent;
 
 import com.sixdee.text2rule.config.PromptRegistry;
+import com.sixdee.text2rule.exception.ProviderUnavailableException;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.helper.PromptBudget;
+import com.sixdee.text2rule.helper.TreeTraversalExecutor;
+import com.sixdee.text2rule.llm.CacheAdmission;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
+import com.sixdee.text2rule.observability.Metrics;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import org.bsc.langgraph4j.CompiledGraph;
 import org.bsc.langgraph4j.StateGraph;
@@ -16,12 +23,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.bsc.langgraph4j.StateGraph.END;
 
 public class ConsistencyAgent {
     private static final Logger logger = LoggerFactory.getLogger(ConsistencyAgent.class);
     private static final String PROMPT_KEY = "consistency_check_prompt";
+    private static final String AGENT_NAME = "ConsistencyAgent";
+    // Score distribution per check type, see Metrics
+    private static final Map<String, Metrics.Histogram> scoreHistograms = new ConcurrentHashMap<>();
 
     private final ChatLanguageModel lang4jService;
 
@@ -29,7 +40,7 @@ public class ConsistencyAgent {
 
     public static class ConsistencyState extends AgentState {
         public ConsistencyState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         @SuppressWarnings("unchecked")
@@ -48,6 +59,34 @@ public class ConsistencyAgent {
         public String getTraceId() {
             return (String) this.data().get("traceId");
         }
+
+        /**
+         * @return score below which a node is checked again, or null to
+         *         check every node
+         */
+        public Double getRecheckBelow() {
+            return (Double) this.data().get("recheckBelow");
+        }
+
+        /**
+         * @return retry count of the nodes the last retry re-extracted, see
+         *         NodeData#getRetryCount(); only used with a recheck
+         */
+        public int getRecheckRetry() {
+            return (int) this.data().getOrDefault("recheckRetry", 0);
+        }
+
+        /**
+         * @return true if no score could be computed because the LLM provider
+         *         was unavailable; the score is then meaningless
+         */
+        public boolean isProviderUnavailable() {
+            return (boolean) this.data().getOrDefault("providerUnavailable", false);
+        }
+
+        public String getFailureReason() {
+            return (String) this.data().get("failureReason");
+        }
     }
 
     public ConsistencyAgent(ChatLanguageModel lang4jService) {
@@ -82,7 +121,8 @@ public class ConsistencyAgent {
         try {
             Double score;
             if ("condition".equals(checkType)) {
-                score = checkConditionConsistency(tree, traceId);
+                score = checkConditionConsistency(tree, traceId, state.getRecheckBelow(),
+                        state.getRecheckRetry());
             } else if ("schedule".equals(checkType)) {
                 score = checkScheduleConsistency(tree, traceId);
             } else if ("action".equals(checkType)) {
@@ -97,14 +137,29 @@ public class ConsistencyAgent {
 
             if (score == null)
                 score = 0.0;
+            scoreHistogram(checkType).record(score);
 
             return CompletableFuture.completedFuture(Map.of("tree", tree, "consistencyScore", score));
+        } catch (ProviderUnavailableException e) {
+            logger.warn("Consistency check skipped, LLM provider unavailable [check_type={}, error={}]", checkType,
+                    e.getMessage());
+            return CompletableFuture.completedFuture(
+                    Map.of("tree", tree, "providerUnavailable", true, "failureReason", e.getMessage()));
         } catch (Exception e) {
             logger.error("Error during consistency check", e);
             return CompletableFuture.completedFuture(Map.of("consistencyScore", 0.0));
         }
     }
 
+    private static Metrics.Histogram scoreHistogram(String checkType) {
+        Metrics.Histogram histogram = scoreHistograms.get(checkType);
+        if (histogram == null) {
+            histogram = scoreHistograms.computeIfAbsent(checkType, key -> Metrics.histogram("consistency_score",
+                    "Consistency scores of completed checks", 1000, "check_type", key));
+        }
+        return histogram;
+    }
+
     private Double checkRootConsistency(RuleTree<NodeData> tree, String traceId) {
         RuleNode<NodeData> root = tree.getRoot();
         String originalText = root.getData().getInput();
@@ -134,18 +189,34 @@ public class ConsistencyAgent {
         }
     }
 
-    private Double checkConditionConsistency(RuleTree<NodeData> tree, String traceId) {
+    private Double checkConditionConsistency(RuleTree<NodeData> tree, String traceId, Double recheckBelow,
+            int recheckRetry) {
         if (tree == null || tree.getRoot() == null)
             return 1.0;
-        return checkConditionConsistencyRecursive(tree.getRoot(), traceId);
+        return checkConditionConsistencyRecursive(tree.getRoot(), traceId, recheckBelow, recheckRetry);
     }
 
-    private Double checkConditionConsistencyRecursive(RuleNode<NodeData> node, String traceId) {
-        Double minScore = 1.0;
-
+    /**
+     * @param recheckBelow if set, only nodes below it that the last retry
+     *                     re-extracted are checked; the others keep their
+     *                     score, which still counts toward the minimum
+     * @param recheckRetry retry count of the re-extracted nodes. A node below
+     *                     the threshold with another count used up its
+     *                     retries earlier and was not extracted again.
+     */
+    private Double checkConditionConsistencyRecursive(RuleNode<NodeData> root, String traceId,
+            Double recheckBelow, int recheckRetry) {
         // Check NormalStatements nodes that have Condition children
-        if ("NormalStatements".equalsIgnoreCase(node.getData().getType()) && !node.getChildren().isEmpty()) {
-            // ... (check logic)
+        List<PendingCheck> checks = new ArrayList<>();
+        double keptMin = 1.0;
+        for (RuleNode<NodeData> node : TreeTraversalExecutor.collect(root,
+                n -> "NormalStatements".equalsIgnoreCase(n.getData().getType()) && !n.getChildren().isEmpty(), true)) {
+            double previous = node.getData().getSimilarityScore();
+            if (recheckBelow != null
+                    && (previous >= recheckBelow || node.getData().getRetryCount() != recheckRetry)) {
+                keptMin = Math.min(keptMin, previous);
+                continue;
+            }
             logger.info("Checking consistency for Segments of NormalStatements node...");
             String originalText = node.getData().getInput();
 
@@ -158,23 +229,15 @@ public class ConsistencyAgent {
             }
 
             if (!segmentTexts.isEmpty()) {
-                String childrenCombined = String.join("\n", segmentTexts);
-                Double score = performConsistencyCheck(node, originalText, childrenCombined, traceId);
-                if (score != null && score < minScore) {
-                    minScore = score;
-                }
+                checks.add(new PendingCheck(node, originalText, String.join("\n", segmentTexts)));
             } else {
                 logger.warn("No Condition children found for NormalStatements node");
             }
         }
-
-        for (RuleNode<NodeData> child : node.getChildren()) {
-            Double childScore = checkConditionConsistencyRecursive(child, traceId);
-            if (childScore < minScore) {
-                minScore = childScore;
-            }
+        if (recheckBelow != null) {
+            logger.info("Re-checking {} NormalStatements nodes below {}", checks.size(), recheckBelow);
         }
-        return minScore;
+        return Math.min(runChecks(checks, traceId, null), keptMin);
     }
 
     private Double checkScheduleConsistency(RuleTree<NodeData> tree, String traceId) {
@@ -243,10 +306,10 @@ public class ConsistencyAgent {
         return checkActionConsistencyRecursive(root, traceId);
     }
 
-    private Double checkActionConsistencyRecursive(RuleNode<NodeData> node, String traceId) {
-        Double minScore = 1.0;
-
-        if ("Action".equalsIgnoreCase(node.getData().getType())) {
+    private Double checkActionConsistencyRecursive(RuleNode<NodeData> root, String traceId) {
+        List<PendingCheck> checks = new ArrayList<>();
+        for (RuleNode<NodeData> node : TreeTraversalExecutor.collect(root,
+                n -> "Action".equalsIgnoreCase(n.getData().getType()), true)) {
             String originalText = node.getData().getInput();
             String derivedText = "";
 
@@ -261,26 +324,12 @@ public class ConsistencyAgent {
 
             if (!derivedText.isEmpty()) {
                 logger.info("Checking Action Consistency...");
-                Double score = calculateConsistencyScore(originalText, derivedText, traceId);
-                if (score != null) {
-                    node.getData().setSimilarityScore(score);
-                    handleScoreLogging(score, originalText, derivedText, "Action");
-                    if (score < minScore)
-                        minScore = score;
-                }
+                checks.add(new PendingCheck(node, originalText, derivedText));
             } else {
                 logger.warn("Action node found but no ActionDetails child. Skipping check.");
             }
         }
-
-        if (node.getChildren() != null) {
-            for (RuleNode<NodeData> child : node.getChildren()) {
-                Double childScore = checkActionConsistencyRecursive(child, traceId);
-                if (childScore < minScore)
-                    minScore = childScore;
-            }
-        }
-        return minScore;
+        return runChecks(checks, traceId, "Action");
     }
 
     private Double checkRuleConverterConsistency(RuleTree<NodeData> tree, String traceId) {
@@ -289,12 +338,12 @@ public class ConsistencyAgent {
         return checkRuleConverterRecursive(tree.getRoot(), traceId);
     }
 
-    private Double checkRuleConverterRecursive(RuleNode<NodeData> node, String traceId) {
-        Double minScore = 1.0;
-
+    private Double checkRuleConverterRecursive(RuleNode<NodeData> root, String traceId) {
         // Rule Converter operates on "Segment" nodes (from ConditionExtraction)
         // It produce children: segments, Action, Policy, Schedule, Sampling
-        if ("Segment".equalsIgnoreCase(node.getData().getType())) {
+        List<PendingCheck> checks = new ArrayList<>();
+        for (RuleNode<NodeData> node : TreeTraversalExecutor.collect(root,
+                n -> "Segment".equalsIgnoreCase(n.getData().getType()), true)) {
             String originalText = node.getData().getInput();
             List<String> childOutputs = new ArrayList<>();
 
@@ -311,26 +360,11 @@ public class ConsistencyAgent {
             }
 
             if (!childOutputs.isEmpty()) {
-                String derivedText = String.join("\n", childOutputs);
                 logger.info("Checking Rule Converter Consistency...");
-                Double score = calculateConsistencyScore(originalText, derivedText, traceId);
-                if (score != null) {
-                    node.getData().setSimilarityScore(score);
-                    handleScoreLogging(score, originalText, derivedText, "RuleConverter");
-                    if (score < minScore)
-                        minScore = score;
-                }
-            }
-        }
-
-        if (node.getChildren() != null) {
-            for (RuleNode<NodeData> child : node.getChildren()) {
-                Double childScore = checkRuleConverterRecursive(child, traceId);
-                if (childScore < minScore)
-                    minScore = childScore;
+                checks.add(new PendingCheck(node, originalText, String.join("\n", childOutputs)));
             }
         }
-        return minScore;
+        return runChecks(checks, traceId, "RuleConverter");
     }
 
     private Double checkUnifiedRuleConsistency(RuleTree<NodeData> tree, String traceId) {
@@ -339,12 +373,12 @@ public class ConsistencyAgent {
         return checkUnifiedRuleRecursive(tree.getRoot(), traceId);
     }
 
-    private Double checkUnifiedRuleRecursive(RuleNode<NodeData> node, String traceId) {
-        Double minScore = 1.0;
-
+    private Double checkUnifiedRuleRecursive(RuleNode<NodeData> root, String traceId) {
         // Unified Rule operates on "segments" node (output of RuleConverter)
         // It adds "IF_Condition" child
-        if ("segments".equalsIgnoreCase(node.getData().getType())) {
+        List<PendingCheck> checks = new ArrayList<>();
+        for (RuleNode<NodeData> node : TreeTraversalExecutor.collect(root,
+                n -> "segments".equalsIgnoreCase(n.getData().getType()), true)) {
             String originalText = node.getData().getInput(); // The list of conditions
             String derivedText = "";
 
@@ -359,37 +393,42 @@ public class ConsistencyAgent {
 
             if (!derivedText.isEmpty()) {
                 logger.info("Checking Unified Rule Consistency...");
-                Double score = calculateConsistencyScore(originalText, derivedText, traceId);
-                if (score != null) {
-                    node.getData().setSimilarityScore(score);
-                    handleScoreLogging(score, originalText, derivedText, "UnifiedRule");
-                    if (score < minScore)
-                        minScore = score;
-                }
+                checks.add(new PendingCheck(node, originalText, derivedText));
             }
         }
+        return runChecks(checks, traceId, "UnifiedRule");
+    }
 
-        if (node.getChildren() != null) {
-            for (RuleNode<NodeData> child : node.getChildren()) {
-                Double childScore = checkUnifiedRuleRecursive(child, traceId);
-                if (childScore < minScore)
-                    minScore = childScore;
+    /**
+     * Score all pending checks concurrently, then record the scores on the
+     * nodes in tree order.
+     *
+     * @param type label for score logging, or null for the short per-node log
+     * @return the minimum score, or 1.0 if there was nothing to check
+     */
+    private Double runChecks(List<PendingCheck> checks, String traceId, String type) {
+        List<Double> scores = TreeTraversalExecutor.map(AGENT_NAME, checks,
+                check -> calculateConsistencyScore(check.originalText, check.derivedText, traceId));
+
+        Double minScore = 1.0;
+        for (int i = 0; i < checks.size(); i++) {
+            Double score = scores.get(i);
+            if (score == null) {
+                continue;
+            }
+            PendingCheck check = checks.get(i);
+            check.node.getData().setSimilarityScore(score);
+            if (type != null) {
+                handleScoreLogging(score, check.originalText, check.derivedText, type);
+            } else {
+                logger.info("  > Consistency Score: {}", score);
             }
+            if (score < minScore)
+                minScore = score;
         }
         return minScore;
     }
 
-    private Double performConsistencyCheck(RuleNode<NodeData> node, String original, String derived, String traceId) {
-        Double score = calculateConsistencyScore(original, derived, traceId);
-        if (score != null) {
-            node.getData().setSimilarityScore(score);
-            // We don't have threshold here easily, just log
-            logger.info("  > Consistency Score: {}", score);
-            return score;
-        }
-        return null; // Or 0.0?
-    }
-
     // Helper to consolidate logging
     private void handleScoreLogging(Double score, String original, String derived, String type) {
         String thresholdStr = PromptRegistry.getInstance().getAttribute(PROMPT_KEY, "consistency_threshold");
@@ -414,18 +453,13 @@ public class ConsistencyAgent {
                 return null;
             }
 
-            populatedPrompt = promptTemplate
-                    .replace("{{original}}", originalText)
-                    .replace("{{children}}", childrenCombined);
+            String withoutChildren = promptTemplate.replace("{{original}}", originalText);
+            String children = PromptBudget.fit(PROMPT_KEY, withoutChildren, childrenCombined, originalText);
+            populatedPrompt = withoutChildren.replace("{{children}}", children);
 
             logger.info("ConsistencyAgent: Sending prompt to LLM...");
-            // Rate limit protection: 12-second delay
-            try {
-                Thread.sleep(12000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            responseJson = lang4jService.generate(populatedPrompt);
+            String prompt = populatedPrompt;
+            responseJson = LlmCallContext.withPromptKey(AGENT_NAME, PROMPT_KEY, () -> lang4jService.generate(prompt));
             logger.info("ConsistencyAgent: Received response from LLM.");
 
             // Use JsonExtractorTool for robust JSON extraction
@@ -451,14 +485,21 @@ public class ConsistencyAgent {
                     logger.error("!!! CONSISTENCY CHECK FAILED !!! (Score: {} < Threshold: {})", score, threshold);
                     logger.error("--- PARENT (Original) TEXT ---\n{}\n-----------------------------", originalText);
                     logger.error("--- CHILD (Derived) TEXT ---\n{}\n----------------------------", childrenCombined);
-                    logger.error("--- FULL PROMPT USED ---\n{}\n------------------------", populatedPrompt);
+                    logger.debug("--- FULL PROMPT USED ---\n{}\n------------------------", populatedPrompt);
                 }
 
                 return score;
             }
+        } catch (ProviderUnavailableException e) {
+            // An outage is not a low score; let the check report it
+            throw e;
         } catch (Exception e) {
             logger.error("Error calculating consistency score", e);
         } finally {
+            if (!success && responseJson != null) {
+                // Keep an answer that gave no score out of the response cache
+                CacheAdmission.getInstance().reject(PROMPT_KEY);
+            }
             // Observability: Capture Event in Finally
             java.util.List<java.util.Map<String, String>> messages = new java.util.ArrayList<>();
             java.util.Map<String, String> userMessage = new java.util.HashMap<>();
@@ -479,6 +520,21 @@ public class ConsistencyAgent {
         return null;
     }
 
+    /**
+     * A node whose original and derived texts are waiting to be scored.
+     */
+    private static class PendingCheck {
+        private final RuleNode<NodeData> node;
+        private final String originalText;
+        private final String derivedText;
+
+        private PendingCheck(RuleNode<NodeData> node, String originalText, String derivedText) {
+            this.node = node;
+            this.originalText = originalText;
+            this.derivedText = derivedText;
+        }
+    }
+
     private List<String> collectChildrenTexts(RuleNode<NodeData> node) {
         List<String> texts = new ArrayList<>();
         if (node.getChildren().isEmpty()) {
@@ -492,18 +548,51 @@ public class ConsistencyAgent {
     }
 
     public CompletableFuture<ConsistencyState> execute(RuleTree<NodeData> tree, String checkType, String traceId) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Map<String, Object> input = new HashMap<>();
-                input.put("tree", tree);
-                input.put("checkType", checkType);
-                input.put("traceId", traceId != null ? traceId : java.util.UUID.randomUUID().toString());
-                return compiledGraph.invoke(input).orElse(null);
-            } catch (Exception e) {
-                logger.error("Error executing ConsistencyAgent", e);
-                throw new RuntimeException(e);
+        return CompletableFuture.supplyAsync(() -> check(tree, checkType, traceId), AgentExecutors.io());
+    }
+
+    /**
+     * Run the check on the calling thread. Use this from code that already
+     * runs on the agent executor, such as agent tools, instead of blocking on
+     * {@link #execute} from inside the pool.
+     */
+    public ConsistencyState check(RuleTree<NodeData> tree, String checkType, String traceId) {
+        return check(tree, checkType, traceId, null, 0);
+    }
+
+    /**
+     * Check again only the nodes that scored below the threshold last time
+     * and were re-extracted by retry number {@code retry}; the others keep
+     * their scores. Supported by the "condition" check, where a retry
+     * re-extracts just the failing NormalStatements nodes that have retries
+     * left; other check types check every node.
+     *
+     * @param retry the retry that just ran, counted from 1. Every node it
+     *              re-extracted was retried in each earlier retry too, so
+     *              its retry count equals this number.
+     */
+    public CompletableFuture<ConsistencyState> recheck(RuleTree<NodeData> tree, String checkType,
+            double threshold, int retry) {
+        return CompletableFuture.supplyAsync(() -> check(tree, checkType, null, threshold, retry),
+                AgentExecutors.io());
+    }
+
+    private ConsistencyState check(RuleTree<NodeData> tree, String checkType, String traceId,
+            Double recheckBelow, int recheckRetry) {
+        try {
+            Map<String, Object> input = new HashMap<>();
+            input.put("tree", tree);
+            input.put("checkType", checkType);
+            input.put("traceId", traceId != null ? traceId : java.util.UUID.randomUUID().toString());
+            if (recheckBelow != null) {
+                input.put("recheckBelow", recheckBelow);
+                input.put("recheckRetry", recheckRetry);
             }
-        });
+            return compiledGraph.invoke(input).orElse(null);
+        } catch (Exception e) {
+            logger.error("Error executing ConsistencyAgent", e);
+            throw new RuntimeException(e);
+        }
     }
 
     public CompletableFuture<ConsistencyState> execute(RuleTree<NodeData> tree, String checkType) {
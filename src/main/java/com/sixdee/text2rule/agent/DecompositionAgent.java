@@ -1,7 +1,9 @@
 package com.sixdee.text2rule.agent;
 
 import com.sixdee.text2rule.dto.DecompositionResult;
+import com.sixdee.text2rule.helper.AgentExecutors;
 import com.sixdee.text2rule.helper.TreeBuilderHelper;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleTree;
 import com.sixdee.text2rule.dto.DecompositionResult;
@@ -41,9 +43,12 @@ import static org.bsc.langgraph4j.StateGraph.START;
 
 public class DecompositionAgent {
     private static final Logger logger = LoggerFactory.getLogger(DecompositionAgent.class);
+    private static final String PROMPT_KEY = "statement_decompostion_agent_prompt";
+    private static final String AGENT_NAME = "DecompositionAgent";
 
     private final ChatLanguageModel client;
-    private final InternalDecompositionTools decompositionTools;
+    // Shared by the tools of every run; it keeps no per-run state
+    private final ConsistencyAgent consistencyAgent;
     private final TreeBuilderHelper treeBuilder;
     private final List<ToolSpecification> toolSpecifications;
     private CompiledGraph<DecompositionState> compiledGraph;
@@ -51,7 +56,7 @@ public class DecompositionAgent {
 
     public static class DecompositionState extends AgentState {
         public DecompositionState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
             // Defensive sanitization: Ensure conversation are Maps, not ChatMessage objects
             sanitizeConversation();
         }
@@ -127,11 +132,31 @@ public class DecompositionAgent {
             return (DecompositionResult) this.data().get("result");
         }
 
+        /**
+         * @return the result last submitted through the tools in this run
+         */
+        public DecompositionResult getToolResult() {
+            return (DecompositionResult) this.data().get("toolResult");
+        }
+
+        /**
+         * @return the tree last built by the consistency tool in this run
+         */
+        @SuppressWarnings("unchecked")
+        public RuleTree<NodeData> getToolTree() {
+            return (RuleTree<NodeData>) this.data().get("toolTree");
+        }
+
         public boolean isFailed() {
             return (boolean) this.data().getOrDefault("failed", false);
         }
     }
 
+    /**
+     * Tools the agent can call. An instance holds what its calls produced, so
+     * one is created for each tool step of a run and its output is carried to
+     * later steps in the run's state.
+     */
     public static class InternalDecompositionTools {
         private final ConsistencyAgent consistencyAgent;
         private final TreeBuilderHelper treeBuilder;
@@ -139,7 +164,11 @@ public class DecompositionAgent {
         private RuleTree<NodeData> tree;
 
         public InternalDecompositionTools(ChatLanguageModel lang4jClient) {
-            this.consistencyAgent = new ConsistencyAgent(lang4jClient);
+            this(new ConsistencyAgent(lang4jClient));
+        }
+
+        public InternalDecompositionTools(ConsistencyAgent consistencyAgent) {
+            this.consistencyAgent = consistencyAgent;
             this.treeBuilder = new TreeBuilderHelper();
         }
 
@@ -190,7 +219,8 @@ public class DecompositionAgent {
                 RuleTree<NodeData> tree = this.tree;
 
                 // Use ConsistencyAgent instead of ConsistencyStep
-                ConsistencyAgent.ConsistencyState state = consistencyAgent.execute(tree).join();
+                // Tools already run on the agent executor, so check synchronously
+                ConsistencyAgent.ConsistencyState state = consistencyAgent.check(tree, "root", null);
 
                 Double score = state.getConsistencyScore();
                 if (score == null)
@@ -206,7 +236,7 @@ public class DecompositionAgent {
 
     public DecompositionAgent(ChatLanguageModel lang4jService) {
         this.client = lang4jService;
-        this.decompositionTools = new InternalDecompositionTools(lang4jService);
+        this.consistencyAgent = new ConsistencyAgent(lang4jService);
         this.treeBuilder = new TreeBuilderHelper();
         this.toolSpecifications = ToolSpecifications.toolSpecificationsFrom(InternalDecompositionTools.class);
         compile();
@@ -319,18 +349,12 @@ public class DecompositionAgent {
         logger.info("DecompositionAgent: Consulting LLM...");
         List<ChatMessage> messages = state.getConversation();
 
-        // Rate limit protection: 12-second delay
-        try {
-            Thread.sleep(12000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        Response<AiMessage> response;
-        if (toolSpecifications == null || toolSpecifications.isEmpty()) {
-            response = client.generate(messages);
-        } else {
-            response = client.generate(messages, toolSpecifications);
-        }
+        Response<AiMessage> response = LlmCallContext.withPromptKey(AGENT_NAME, PROMPT_KEY, () -> {
+            if (toolSpecifications == null || toolSpecifications.isEmpty()) {
+                return client.generate(messages);
+            }
+            return client.generate(messages, toolSpecifications);
+        });
         state.addMessage(response.content());
 
         List<Map<String, Object>> serialized = messages.stream().map(DecompositionAgent::serializeMessage)
@@ -355,12 +379,12 @@ public class DecompositionAgent {
             }
 
             // Fallback: Check if tools have the result
-            if (decompositionTools.getResult() != null && decompositionTools.getTree() != null) {
+            if (state.getToolResult() != null && state.getToolTree() != null) {
                 logger.info("Using stored result from tools as fallback");
                 return CompletableFuture
                         .completedFuture(Map.of("conversation", serialized,
-                                "result", decompositionTools.getResult(),
-                                "tree", decompositionTools.getTree()));
+                                "result", state.getToolResult(),
+                                "tree", state.getToolTree()));
             }
         }
 
@@ -372,6 +396,7 @@ public class DecompositionAgent {
         logger.info("DecompositionAgent: Executing Tools...");
         List<ChatMessage> messages = state.getConversation();
         AiMessage lastMsg = (AiMessage) messages.get(messages.size() - 1);
+        InternalDecompositionTools decompositionTools = new InternalDecompositionTools(consistencyAgent);
 
         if (lastMsg.toolExecutionRequests() != null) {
             for (ToolExecutionRequest req : lastMsg.toolExecutionRequests()) {
@@ -413,7 +438,15 @@ public class DecompositionAgent {
         List<Map<String, Object>> serialized = messages.stream().map(DecompositionAgent::serializeMessage)
                 .collect(Collectors.toList());
 
-        return CompletableFuture.completedFuture(Map.of("conversation", serialized));
+        Map<String, Object> update = new HashMap<>();
+        update.put("conversation", serialized);
+        if (decompositionTools.getResult() != null) {
+            update.put("toolResult", decompositionTools.getResult());
+        }
+        if (decompositionTools.getTree() != null) {
+            update.put("toolTree", decompositionTools.getTree());
+        }
+        return CompletableFuture.completedFuture(update);
     }
 
     public CompletableFuture<DecompositionState> execute(String input) {
@@ -440,7 +473,7 @@ public class DecompositionAgent {
             } finally {
                 messages = null;
             }
-        });
+        }, AgentExecutors.io());
     }
 
 }
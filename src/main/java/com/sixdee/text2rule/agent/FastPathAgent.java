@@ -0,0 +1,305 @@
+package com.sixdee.text2rule.agent;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sixdee.text2rule.config.PromptRegistry;
+import com.sixdee.text2rule.config.SupabaseService;
+import com.sixdee.text2rule.dto.ActionExtractionResult;
+import com.sixdee.text2rule.dto.DecompositionResult;
+import com.sixdee.text2rule.dto.FastPathResult;
+import com.sixdee.text2rule.dto.RuleConverterResult;
+import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.helper.PromptBudget;
+import com.sixdee.text2rule.helper.TreeBuilderHelper;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import com.sixdee.text2rule.parser.ActionParser;
+import com.sixdee.text2rule.parser.ConditionParser;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.state.AgentState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+
+/**
+ * FastPathAgent converts a statement with one LLM call. The model returns the
+ * validation flags, decomposition, segments with their converter output, IF
+ * condition and action details, and the parsed schedule in one JSON answer,
+ * and the rule tree is built from it in the shape the multi-agent workflow
+ * produces, so the same renderers apply.
+ *
+ * The answer is only accepted if it parses and passes local sanity checks;
+ * otherwise the state is marked failed with the reason, and the caller runs
+ * the full workflow instead.
+ */
+public class FastPathAgent {
+    private static final Logger logger = LoggerFactory.getLogger(FastPathAgent.class);
+    private static final String PROMPT_KEY = "fast_path_prompt";
+    private static final String AGENT_NAME = "FastPathAgent";
+    private static final String MODEL_NAME = "fast_path";
+    // Used when config.xml has no fast_path_prompt
+    private static final String DEFAULT_PROMPT = "You convert a telecom campaign statement into a rule.\n"
+            + "Statement: {{ $json.input_text }}\n\n"
+            + "Known KPIs and attributes:\n{{ $json.context }}\n\n"
+            + "Return ONLY one JSON object of this form:\n"
+            + "{\"validation\": {\"is_valid\": true, \"issues_detected\": [], \"has_condition\": true, "
+            + "\"has_action\": true, \"has_schedule\": false, \"has_policy\": false, \"has_sampling\": false, "
+            + "\"has_bonus\": false, \"has_valid_format\": true, \"has_message_id_with_action\": false},\n"
+            + " \"decomposition\": {\"normal_statements\": \"<the statement without its schedule>\", "
+            + "\"schedule\": \"<schedule text, or empty>\"},\n"
+            + " \"segments\": [{\"rule\": \"<one condition -> action rule>\",\n"
+            + "   \"conversion\": {\"segments\": [\"<one condition per entry>\"], \"actions\": \"<action text>\", "
+            + "\"policy\": \"\", \"schedule\": \"\", \"sampling\": \"\"},\n"
+            + "   \"if_condition\": \"if (<KPI> <operator> <value> AND ...)\",\n"
+            + "   \"action_details\": {\"ActionName\": \"\", \"Channel\": \"\", \"Message\": \"\", "
+            + "\"Message_ID\": \"\", \"Conditions\": [{\"Condition\": \"\", \"Benefits\": [{\"Product\": \"\", "
+            + "\"Validity\": \"\"}]}]}}],\n"
+            + " \"schedule\": {\"schedule_type\": \"\", \"repeat\": \"\", \"segment_rule_start_date\": \"\", "
+            + "\"segment_rule_end_date\": \"\", \"interval\": \"\", \"frequency\": \"\", \"hours\": \"\"}}\n"
+            + "Use null for \"schedule\" when the statement has no schedule.";
+
+    private final ChatLanguageModel lang4jService;
+    private final ObjectMapper objectMapper;
+    private final SupabaseService supabaseService;
+    private final TreeBuilderHelper treeBuilder;
+    private CompiledGraph<FastPathState> compiledGraph;
+
+    public static class FastPathState extends AgentState {
+        public FastPathState(Map<String, Object> initData) {
+            super(initData);
+        }
+
+        public String getInput() {
+            return (String) this.data().get("input");
+        }
+
+        @SuppressWarnings("unchecked")
+        public RuleTree<NodeData> getTree() {
+            return (RuleTree<NodeData>) this.data().get("tree");
+        }
+
+        public ValidationResult getValidationResult() {
+            return (ValidationResult) this.data().get("validationResult");
+        }
+
+        public DecompositionResult getDecompositionResult() {
+            return (DecompositionResult) this.data().get("decompositionResult");
+        }
+
+        /**
+         * @return true if the combined answer could not be used and the full
+         *         workflow has to run
+         */
+        public boolean isFailed() {
+            return (boolean) this.data().getOrDefault("failed", false);
+        }
+
+        public String getFailureReason() {
+            return (String) this.data().get("failureReason");
+        }
+    }
+
+    public FastPathAgent(ChatLanguageModel lang4jService) {
+        this.lang4jService = lang4jService;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.supabaseService = new SupabaseService();
+        this.treeBuilder = new TreeBuilderHelper();
+        compile();
+    }
+
+    private void compile() {
+        try {
+            StateGraph<FastPathState> graph = new StateGraph<>(FastPathState::new);
+            graph.addNode("convert", this::convertNode);
+            graph.addEdge(START, "convert");
+            graph.addEdge("convert", END);
+            this.compiledGraph = graph.compile();
+        } catch (Exception e) {
+            logger.error("Failed to compile FastPathAgent", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompletableFuture<Map<String, Object>> convertNode(FastPathState state) {
+        String input = state.getInput();
+        logger.info("FastPathAgent: Converting statement with one call...");
+
+        FastPathResult answer;
+        try {
+            String promptTemplate = PromptRegistry.getInstance().hasPrompt(PROMPT_KEY)
+                    ? PromptRegistry.getInstance().get(PROMPT_KEY)
+                    : DEFAULT_PROMPT;
+            String withoutContext = promptTemplate.replace("{{ $json.input_text }}", input);
+            String context = PromptBudget.fit(PROMPT_KEY, withoutContext, supabaseService.fetchDocument(), input);
+            String prompt = withoutContext.replace("{{ $json.context }}", context);
+
+            String response = LlmCallContext.withPromptKey(AGENT_NAME, PROMPT_KEY,
+                    () -> lang4jService.generate(prompt));
+            int startIndex = response.indexOf("{");
+            int endIndex = response.lastIndexOf("}");
+            if (startIndex == -1 || endIndex <= startIndex) {
+                return failed("No JSON object in answer");
+            }
+            answer = objectMapper.readValue(response.substring(startIndex, endIndex + 1), FastPathResult.class);
+        } catch (Exception e) {
+            logger.warn("Fast path answer unusable [error={}]", e.getMessage());
+            return failed("Answer could not be parsed: " + e.getMessage());
+        }
+
+        String problem = check(answer);
+        RuleTree<NodeData> tree = null;
+        if (problem == null) {
+            tree = buildTree(input, answer);
+            problem = checkTree(tree);
+        }
+        if (problem != null) {
+            logger.info("Fast path answer rejected [reason={}]", problem);
+            return failed(problem);
+        }
+
+        logger.info("Fast path conversion accepted [segments={}]", answer.getSegments().size());
+        return CompletableFuture.completedFuture(Map.of(
+                "tree", tree,
+                "validationResult", answer.getValidation(),
+                "decompositionResult", answer.getDecomposition()));
+    }
+
+    private static CompletableFuture<Map<String, Object>> failed(String reason) {
+        return CompletableFuture.completedFuture(Map.of("failed", true, "failureReason", reason));
+    }
+
+    /**
+     * Sanity checks on the answer itself.
+     *
+     * @return why the answer cannot be used, or null if it can
+     */
+    private static String check(FastPathResult answer) {
+        if (answer == null) {
+            return "Empty answer";
+        }
+        ValidationResult validation = answer.getValidation();
+        if (validation == null) {
+            return "Answer has no validation";
+        }
+        if (!validation.isValid()) {
+            // The full workflow validates again and reports the issues
+            return "Statement flagged invalid";
+        }
+        DecompositionResult decomposition = answer.getDecomposition();
+        if (decomposition == null || isBlank(decomposition.getNormalStatements())) {
+            return "Answer has no normal statements";
+        }
+        if (answer.getSegments() == null || answer.getSegments().isEmpty()) {
+            return "Answer has no segments";
+        }
+        for (FastPathResult.Segment segment : answer.getSegments()) {
+            if (segment == null || isBlank(segment.getRule())) {
+                return "Segment without rule text";
+            }
+            RuleConverterResult conversion = segment.getConversion();
+            if (conversion == null || conversion.getSegments() == null || conversion.getSegments().isEmpty()
+                    || isBlank(conversion.getActions())) {
+                return "Segment without converted conditions and actions";
+            }
+            if (isBlank(segment.getIfCondition())
+                    || !segment.getIfCondition().trim().toLowerCase().startsWith("if")) {
+                return "Segment without IF condition";
+            }
+            ActionExtractionResult action = segment.getActionDetails();
+            if (action == null || isBlank(action.getActionName())) {
+                return "Segment without action details";
+            }
+        }
+        boolean hasSchedule = !isBlank(decomposition.getSchedule());
+        if (hasSchedule && (answer.getSchedule() == null || isBlank(answer.getSchedule().getScheduleType()))) {
+            return "Schedule text without parsed schedule";
+        }
+        if (validation.isHasSchedule() != hasSchedule) {
+            return "Schedule flag disagrees with decomposition";
+        }
+        return null;
+    }
+
+    /**
+     * Sanity checks on the built tree: the renderer's parsers must find
+     * conditions and actions in it.
+     */
+    private static String checkTree(RuleTree<NodeData> tree) {
+        if (new ConditionParser().extractConditions(tree.getRoot()).isEmpty()) {
+            return "No parseable conditions";
+        }
+        if (new ActionParser().extractActions(tree.getRoot()).isEmpty()) {
+            return "No parseable actions";
+        }
+        return null;
+    }
+
+    /**
+     * Build the tree the workflow would: Root -&gt; NormalStatements -&gt;
+     * Segment -&gt; converter output, with IF_Condition under "segments" and
+     * ActionDetails under Action, and ScheduleDetails under Schedule.
+     */
+    private RuleTree<NodeData> buildTree(String input, FastPathResult answer) {
+        RuleTree<NodeData> tree = treeBuilder.buildTreeFromDecomposition(new NodeData(input, MODEL_NAME),
+                answer.getDecomposition());
+
+        for (RuleNode<NodeData> child : tree.getRoot().getChildren()) {
+            String type = child.getData().getType();
+            if ("NormalStatements".equals(type)) {
+                for (FastPathResult.Segment segment : answer.getSegments()) {
+                    addSegment(child, segment);
+                }
+            } else if ("Schedule".equals(type)) {
+                child.addChild(new RuleNode<>(new NodeData("ScheduleDetails", "", "", MODEL_NAME, "",
+                        ScheduleExtractionAgent.formatScheduleDetails(answer.getSchedule()))));
+            }
+        }
+        return tree;
+    }
+
+    private static void addSegment(RuleNode<NodeData> statements, FastPathResult.Segment segment) {
+        RuleNode<NodeData> segmentNode = new RuleNode<>(
+                new NodeData("Segment", "", "", MODEL_NAME, "", segment.getRule().trim()));
+        statements.addChild(segmentNode);
+        RuleConverterAgent.addChildrenToNode(segmentNode, segment.getConversion());
+
+        for (RuleNode<NodeData> child : segmentNode.getChildren()) {
+            if ("segments".equals(child.getData().getType())) {
+                child.addChild(new RuleNode<>(new NodeData("IF_Condition", "", "", MODEL_NAME, "",
+                        segment.getIfCondition().trim())));
+            } else if ("Action".equals(child.getData().getType())) {
+                child.addChild(new RuleNode<>(new NodeData("ActionDetails", "", "", MODEL_NAME, "",
+                        ActionExtractionAgent.formatActionDetails(segment.getActionDetails()))));
+            }
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    public CompletableFuture<FastPathState> execute(String input) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Map<String, Object> data = new HashMap<>();
+                data.put("input", input);
+                return compiledGraph.invoke(data).orElse(null);
+            } catch (Exception e) {
+                logger.error("Error executing FastPathAgent", e);
+                throw new RuntimeException(e);
+            }
+        }, AgentExecutors.io());
+    }
+}
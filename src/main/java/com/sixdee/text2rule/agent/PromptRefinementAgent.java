@@ -1,6 +1,7 @@
 package com.sixdee.text2rule.agent;
 
 import com.sixdee.text2rule.config.PromptRegistry;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +17,7 @@ import org.slf4j.LoggerFactory;
 public class PromptRefinementAgent {
     private static final Logger logger = LoggerFactory.getLogger(PromptRefinementAgent.class);
     private static final String REFINEMENT_PROMPT_KEY = "prompt_refinement_prompt";
+    private static final String AGENT_NAME = "PromptRefinementAgent";
 
     private final ChatLanguageModel lang4jService;
 
@@ -53,13 +55,8 @@ public class PromptRefinementAgent {
                     .replace("{{ $json.feedback }}", feedback != null ? feedback : "");
 
             logger.debug("Calling LLM for prompt refinement");
-            // Rate limit protection: 12-second delay
-            try {
-                Thread.sleep(12000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            String response = lang4jService.generate(populatedPrompt);
+            String response = LlmCallContext.withPromptKey(AGENT_NAME, REFINEMENT_PROMPT_KEY,
+                    () -> lang4jService.generate(populatedPrompt));
 
             // Clean up the response (remove markdown code blocks if present)
             String refinedPrompt = cleanResponse(response);
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixdee.text2rule.config.PromptRegistry;
 import com.sixdee.text2rule.dto.RuleConverterResult;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.helper.TreeTraversalExecutor;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
@@ -15,6 +18,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -24,6 +28,7 @@ import static org.bsc.langgraph4j.StateGraph.START;
 public class RuleConverterAgent {
     private static final Logger logger = LoggerFactory.getLogger(RuleConverterAgent.class);
     private static final String DEFAULT_PROMPT_KEY = "rule_converter_prompt";
+    private static final String AGENT_NAME = "RuleConverterAgent";
 
     private final ChatLanguageModel lang4jService;
     private final ObjectMapper objectMapper;
@@ -31,7 +36,7 @@ public class RuleConverterAgent {
 
     public static class ConverterState extends AgentState {
         public ConverterState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         @SuppressWarnings("unchecked")
@@ -82,89 +87,62 @@ public class RuleConverterAgent {
     private void convertRules(RuleTree<NodeData> tree) {
         if (tree == null || tree.getRoot() == null)
             return;
-        processNode(tree.getRoot());
-    }
 
-    private void processNode(RuleNode<NodeData> node) {
-        if (node == null)
-            return;
+        // "Segment" nodes hold the Rule text. They are leaves created by
+        // ConditionExtractionAgent, so their own children (previous outputs) are
+        // not searched.
+        List<RuleNode<NodeData>> segmentNodes = TreeTraversalExecutor.collect(tree.getRoot(),
+                node -> "Segment".equalsIgnoreCase(node.getData().getType()), false);
+
+        List<RuleConverterResult> results = TreeTraversalExecutor.map(AGENT_NAME, segmentNodes,
+                this::convertSegment);
 
-        // Check if this is a "Segment" node which holds the Rule text
-        if ("Segment".equalsIgnoreCase(node.getData().getType())) {
-            // Check if we already processed it (e.g. if it has children, maybe skip? or
-            // clear?)
-            // For now, assuming we process "Segment" nodes.
+        // Attach results on this thread, in tree order
+        for (int i = 0; i < segmentNodes.size(); i++) {
+            RuleNode<NodeData> node = segmentNodes.get(i);
             node.getChildren().clear(); // Clear existing children if any
+            if (results.get(i) != null) {
+                addChildrenToNode(node, results.get(i));
+            }
+        }
+    }
 
-            String ruleText = node.getData().getInput();
-            logger.info("Converting rule for Segment node: {}", ruleText);
+    private RuleConverterResult convertSegment(RuleNode<NodeData> node) {
+        String ruleText = node.getData().getInput();
+        logger.info("Converting rule for Segment node: {}", ruleText);
 
-            try {
-                String promptTemplate = PromptRegistry.getInstance().get(DEFAULT_PROMPT_KEY);
-                String prompt = promptTemplate.replace("{{ $json['output.normal_statements'] }}", ruleText);
-                logger.info("RuleConverterAgent: Sending prompt to LLM...");
-                // Rate limit protection: 12-second delay
-                try {
-                    Thread.sleep(12000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                String jsonResponse = lang4jService.generate(prompt);
-                logger.info("RuleConverterAgent: Received response from LLM");
-
-                // Clean JSON
-                int startIndex = jsonResponse.indexOf("{");
-                int endIndex = jsonResponse.lastIndexOf("}");
-                if (startIndex != -1 && endIndex != -1) {
-                    jsonResponse = jsonResponse.substring(startIndex, endIndex + 1);
-                } else if (jsonResponse.contains("```json")) {
-                    jsonResponse = jsonResponse.replaceAll("```json", "").replaceAll("```", "").trim();
-                }
-
-                RuleConverterResult result = objectMapper.readValue(jsonResponse, RuleConverterResult.class);
-
-                if (result != null) {
-                    addChildrenToNode(node, result);
-                } else {
-                    logger.warn("Rule conversion returned null result");
-                }
-
-            } catch (JsonProcessingException e) {
-                logger.error("Failed to parse rule conversion response", e);
-            } catch (Exception e) {
-                logger.error("Error during rule conversion", e);
+        try {
+            String promptTemplate = PromptRegistry.getInstance().get(DEFAULT_PROMPT_KEY);
+            String prompt = promptTemplate.replace("{{ $json['output.normal_statements'] }}", ruleText);
+            logger.info("RuleConverterAgent: Sending prompt to LLM...");
+            String jsonResponse = LlmCallContext.withPromptKey(AGENT_NAME, DEFAULT_PROMPT_KEY,
+                    () -> lang4jService.generate(prompt));
+            logger.info("RuleConverterAgent: Received response from LLM");
+
+            // Clean JSON
+            int startIndex = jsonResponse.indexOf("{");
+            int endIndex = jsonResponse.lastIndexOf("}");
+            if (startIndex != -1 && endIndex != -1) {
+                jsonResponse = jsonResponse.substring(startIndex, endIndex + 1);
+            } else if (jsonResponse.contains("```json")) {
+                jsonResponse = jsonResponse.replaceAll("```json", "").replaceAll("```", "").trim();
             }
-        }
 
-        // Recursively process children
-        // Note: we just added children. Should we process them? No, we decended from
-        // Segment.
-        // But if the tree structure was different, we might need to.
-        // Since we are iterating the tree, we should be careful about concurrent
-        // modification if we use a simple iterator.
-        // But here we are recursing. `processNode` calls `processNode` on children.
-        // We added children to `node`.
-        // DO NOT recurse into the just-added children to avoid infinite loops or
-        // reprocessing if they happened to be named "Segment" (unlikely).
-        // So we should iterate over original children?
-        // Wait, "Segment" nodes were leaf nodes (created by ConditionExtractionAgent).
-        // So they shouldn't have children before we start, or if they do (Schedule?),
-        // we cleared them.
-
-        // However, we need to traverse down to find the "Segment" nodes.
-        // If the node is NOT a Segment, we recurse.
-        if (!"Segment".equalsIgnoreCase(node.getData().getType()) && node.getChildren() != null) {
-            // Create a copy of the list to iterate if needed, but standard loop is fine if
-            // we don't modify the *current* node's children list while iterating it.
-            // We are modifying `node`'s children only if `node` is "Segment".
-            // If `node` is NOT "Segment", we iterate its children.
-            for (RuleNode<NodeData> child : node.getChildren()) {
-                processNode(child);
+            RuleConverterResult result = objectMapper.readValue(jsonResponse, RuleConverterResult.class);
+            if (result == null) {
+                logger.warn("Rule conversion returned null result");
             }
+            return result;
+
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to parse rule conversion response", e);
+        } catch (Exception e) {
+            logger.error("Error during rule conversion", e);
         }
+        return null;
     }
 
-    private void addChildrenToNode(RuleNode<NodeData> parent, RuleConverterResult result) {
+    static void addChildrenToNode(RuleNode<NodeData> parent, RuleConverterResult result) {
         String modelName = parent.getData().getModelName();
 
         // 1. Add Segments (Conditions)
@@ -210,6 +188,6 @@ public class RuleConverterAgent {
                 logger.error("Error executing RuleConverterAgent", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, AgentExecutors.io());
     }
 }
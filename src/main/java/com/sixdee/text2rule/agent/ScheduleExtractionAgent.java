@@ -1,5 +1,7 @@
 package com.sixdee.text2rule.agent;
 
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
@@ -10,7 +12,6 @@ import org.bsc.langgraph4j.state.AgentState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -23,13 +24,15 @@ import static org.bsc.langgraph4j.StateGraph.START;
  */
 public class ScheduleExtractionAgent {
     private static final Logger logger = LoggerFactory.getLogger(ScheduleExtractionAgent.class);
+    private static final String PROMPT_KEY = "schedule_parser_prompt";
+    private static final String AGENT_NAME = "ScheduleExtractionAgent";
 
     private final ChatLanguageModel lang4jService;
     private CompiledGraph<ScheduleState> compiledGraph;
 
     public static class ScheduleState extends AgentState {
         public ScheduleState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         @SuppressWarnings("unchecked")
@@ -79,17 +82,12 @@ public class ScheduleExtractionAgent {
             try {
                 // Get prompt from registry
                 String promptTemplate = com.sixdee.text2rule.config.PromptRegistry.getInstance()
-                        .get("schedule_parser_prompt");
+                        .get(PROMPT_KEY);
                 String prompt = promptTemplate.replace("{{ $json.output.schedule }}", scheduleText);
 
                 logger.info("ScheduleExtractionAgent: Sending prompt to LLM for schedule parsing...");
-                // Rate limit protection: 12-second delay
-                try {
-                    Thread.sleep(12000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                String jsonResponse = lang4jService.generate(prompt);
+                String jsonResponse = LlmCallContext.withPromptKey(AGENT_NAME, PROMPT_KEY,
+                        () -> lang4jService.generate(prompt));
                 logger.info("ScheduleExtractionAgent: Received response from LLM");
 
                 // Clean JSON response
@@ -134,7 +132,7 @@ public class ScheduleExtractionAgent {
         return response.trim();
     }
 
-    private String formatScheduleDetails(com.sixdee.text2rule.dto.ScheduleParserResult result) {
+    static String formatScheduleDetails(com.sixdee.text2rule.dto.ScheduleParserResult result) {
         if (result == null || result.getScheduleType() == null || result.getScheduleType().isEmpty()) {
             return "No schedule information available";
         }
@@ -180,6 +178,6 @@ public class ScheduleExtractionAgent {
                 logger.error("Error executing ScheduleExtractionAgent", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, AgentExecutors.io());
     }
 }
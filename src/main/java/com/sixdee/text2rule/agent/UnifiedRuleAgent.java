@@ -5,6 +5,10 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixdee.text2rule.config.PromptRegistry;
 import com.sixdee.text2rule.config.SupabaseService;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.helper.PromptBudget;
+import com.sixdee.text2rule.helper.TreeTraversalExecutor;
+import com.sixdee.text2rule.llm.LlmCallContext;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
@@ -28,6 +32,7 @@ public class UnifiedRuleAgent {
     private static final Logger logger = LoggerFactory.getLogger(UnifiedRuleAgent.class);
     private static final String KPI_PROMPT_KEY = "unified_kpi_matching_prompt";
     private static final String IF_PROMPT_KEY = "unified_if_condition_prompt";
+    private static final String AGENT_NAME = "UnifiedRuleAgent";
 
     private final ChatLanguageModel lang4jService;
     private final SupabaseService supabaseService;
@@ -36,7 +41,7 @@ public class UnifiedRuleAgent {
 
     public static class UnifiedState extends AgentState {
         public UnifiedState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         @SuppressWarnings("unchecked")
@@ -88,34 +93,29 @@ public class UnifiedRuleAgent {
     private void processTree(RuleTree<NodeData> tree) {
         if (tree == null || tree.getRoot() == null)
             return;
-        traverseAndProcess(tree.getRoot());
-    }
 
-    private void traverseAndProcess(RuleNode<NodeData> node) {
-        if (node == null)
+        // Find "segments" nodes (output of RuleConverterAgent)
+        List<RuleNode<NodeData>> segmentNodes = TreeTraversalExecutor.collect(tree.getRoot(),
+                node -> "segments".equalsIgnoreCase(node.getData().getType()), true);
+        if (segmentNodes.isEmpty())
             return;
 
-        // Find "segments" node (output of RuleConverterAgent)
-        if ("segments".equalsIgnoreCase(node.getData().getType())) {
-            processSegmentNode(node);
-        }
+        // Fetch context once; it is the same document for every node
+        String context = supabaseService.fetchDocument();
 
-        // Recursively process children
-        // Use a copy to avoid ConcurrentModificationException if tree is modified
-        if (node.getChildren() != null) {
-            for (RuleNode<NodeData> child : new java.util.ArrayList<>(node.getChildren())) {
-                traverseAndProcess(child);
-            }
+        List<SegmentResult> results = TreeTraversalExecutor.map(AGENT_NAME, segmentNodes,
+                node -> processSegmentNode(node, context));
+
+        // Update Tree: Add IF Node and restructure, on this thread in tree order
+        for (int i = 0; i < segmentNodes.size(); i++) {
+            updateTree(segmentNodes.get(i), results.get(i).ifCondition, results.get(i).matchedKpis);
         }
     }
 
-    private void processSegmentNode(RuleNode<NodeData> node) {
+    private SegmentResult processSegmentNode(RuleNode<NodeData> node, String context) {
         String segmentsRaw = node.getData().getInput(); // Newline separated string
         logger.info("Processing segments: {}", segmentsRaw);
 
-        // Fetch context
-        String context = supabaseService.fetchDocument();
-
         // Step 1: KPI Matching
         List<String> matchedKpis = executeKpiMatching(segmentsRaw, context);
 
@@ -126,23 +126,28 @@ public class UnifiedRuleAgent {
                                                                                                    // using raw text for
                                                                                                    // now or split
 
-        // Update Tree: Add IF Node and restructure
-        updateTree(node, ifCondition, matchedKpis);
+        return new SegmentResult(ifCondition, matchedKpis);
+    }
+
+    private static class SegmentResult {
+        private final String ifCondition;
+        private final List<String> matchedKpis;
+
+        private SegmentResult(String ifCondition, List<String> matchedKpis) {
+            this.ifCondition = ifCondition;
+            this.matchedKpis = matchedKpis;
+        }
     }
 
     private List<String> executeKpiMatching(String segments, String context) {
         try {
             String promptTemplate = PromptRegistry.getInstance().get(KPI_PROMPT_KEY);
-            String prompt = promptTemplate.replace("{{ $json.segments }}", segments)
-                    .replace("{{ $json.context }}", context);
+            String withoutContext = promptTemplate.replace("{{ $json.segments }}", segments);
+            String fittedContext = PromptBudget.fit(KPI_PROMPT_KEY, withoutContext, context, segments);
+            String prompt = withoutContext.replace("{{ $json.context }}", fittedContext);
 
-            // Rate limit protection: 12-second delay
-            try {
-                Thread.sleep(12000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            String response = lang4jService.generate(prompt);
+            String response = LlmCallContext.withPromptKey(AGENT_NAME, KPI_PROMPT_KEY,
+                    () -> lang4jService.generate(prompt));
             response = cleanJson(response);
 
             return objectMapper.readValue(response, new TypeReference<List<String>>() {
@@ -171,17 +176,15 @@ public class UnifiedRuleAgent {
             String conditionsJson = objectMapper.writeValueAsString(conditionsArray);
 
             String promptTemplate = PromptRegistry.getInstance().get(IF_PROMPT_KEY);
-            String prompt = promptTemplate.replace("{{ $json.conditions }}", conditionsJson)
-                    .replace("{{ $json.context }}", context)
+            String withoutContext = promptTemplate.replace("{{ $json.conditions }}", conditionsJson)
                     .replace("{{ $json.input_text }}", originalText);
+            // Matched KPI names are the strongest hint for which parts of the document matter
+            String fittedContext = PromptBudget.fit(IF_PROMPT_KEY, withoutContext, context,
+                    originalText + " " + String.join(" ", matchedKpis));
+            String prompt = withoutContext.replace("{{ $json.context }}", fittedContext);
 
-            // Rate limit protection: 12-second delay
-            try {
-                Thread.sleep(12000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            String response = lang4jService.generate(prompt);
+            String response = LlmCallContext.withPromptKey(AGENT_NAME, IF_PROMPT_KEY,
+                    () -> lang4jService.generate(prompt));
             // Clean markdown if present, though prompt says "Return ONLY one line"
             return cleanJson(response).replace("```", "").trim();
         } catch (Exception e) {
@@ -256,6 +259,6 @@ public class UnifiedRuleAgent {
                 logger.error("Error executing UnifiedRuleAgent", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, AgentExecutors.io());
     }
 }
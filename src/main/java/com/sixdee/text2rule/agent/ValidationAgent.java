@@ -1,7 +1,11 @@
 package com.sixdee.text2rule.agent;
 
+import com.sixdee.text2rule.config.ConfigurationManager;
 import com.sixdee.text2rule.config.PromptRegistry;
 import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.helper.PreValidator;
+import com.sixdee.text2rule.llm.LlmCallContext;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -27,6 +31,8 @@ import static org.bsc.langgraph4j.StateGraph.END;
 
 public class ValidationAgent {
     private static final Logger logger = LoggerFactory.getLogger(ValidationAgent.class);
+    private static final String PROMPT_KEY = "basic_validator_agent_prompt";
+    private static final String AGENT_NAME = "ValidationAgent";
 
     private final ChatLanguageModel lang4jService;
     private final ObjectMapper objectMapper;
@@ -34,7 +40,7 @@ public class ValidationAgent {
 
     public static class ValidationState extends AgentState {
         public ValidationState(Map<String, Object> initData) {
-            super(new HashMap<>(initData));
+            super(initData);
         }
 
         public String getInput() {
@@ -93,9 +99,23 @@ public class ValidationAgent {
         try {
             logger.info("ValidationAgent: Starting validation...");
             input = state.getInput();
+
+            // Statements the rule-based pre-validator can decide skip the LLM call
+            if (ConfigurationManager.getInstance().isPreValidationEnabled()) {
+                PreValidator.Outcome outcome = PreValidator.check(input);
+                if (outcome.isDecided()) {
+                    result = outcome.getResult();
+                    json = objectMapper.valueToTree(result).toString();
+                    logger.info("ValidationAgent: Pre-validated locally - verdict: {}, issuesDetected: {}",
+                            outcome.getVerdict(), result.getIssuesDetected());
+                    isValid = String.valueOf(result.isValid());
+                    return CompletableFuture.completedFuture(Map.of("validationResult", result, "valid", isValid));
+                }
+            }
+
             messages = new ArrayList<>();
 
-            promptTemplate = PromptRegistry.getInstance().get("basic_validator_agent_prompt");
+            promptTemplate = PromptRegistry.getInstance().get(PROMPT_KEY);
             // Fallback or use template
             if (promptTemplate == null)
                 promptTemplate = "You are a validation agent. Validate the following rule: {{ $json.ruletext }}";
@@ -108,14 +128,10 @@ public class ValidationAgent {
             messages.add(
                     new SystemMessage(validationPromptForLog));
 
-            // Rate limit protection: 12-second delay
-            try {
-                Thread.sleep(12000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
             logger.info("ValidationAgent: Sending prompt to LLM...");
-            response = lang4jService.generate(messages);
+            List<ChatMessage> request = messages;
+            response = LlmCallContext.withPromptKey(AGENT_NAME, PROMPT_KEY,
+                    () -> lang4jService.generate(request));
             logger.info("ValidationAgent: Received response from LLM.");
             aiMessage = response.content();
 
@@ -197,6 +213,10 @@ public class ValidationAgent {
         }
     }
 
+    public CompletableFuture<ValidationState> execute(String input) {
+        return execute(input, null);
+    }
+
     public CompletableFuture<ValidationState> execute(String input, String traceId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -206,6 +226,6 @@ public class ValidationAgent {
                 logger.error("Error executing validation agent", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, AgentExecutors.io());
     }
 }
@@ -0,0 +1,210 @@
+package com.sixdee.text2rule.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads campaign statements one at a time from a JSONL or CSV file, so a
+ * batch never holds the whole file in memory.
+ *
+ * JSONL lines are objects with the statement in "input" (or "statement" or
+ * "text") and an optional "id". CSV files start with a header row; the
+ * statement is taken from the input, statement or text column, or the first
+ * column if there is none, and quoted fields may span lines. Items without
+ * an id are numbered by their position in the file.
+ */
+public class BatchInput implements AutoCloseable {
+
+    private static final String[] STATEMENT_FIELDS = { "input", "statement", "text" };
+
+    /**
+     * One statement to convert, or the reason its line could not be read.
+     */
+    public static final class Item {
+        private final String id;
+        private final String statement;
+        private final String error;
+
+        public Item(String id, String statement) {
+            this(id, statement, null);
+        }
+
+        private Item(String id, String statement, String error) {
+            this.id = id;
+            this.statement = statement;
+            this.error = error;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        /**
+         * @return why the item's line could not be parsed, or null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final BufferedReader reader;
+    private final boolean csv;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private int position;
+    private int idColumn = -1;
+    private int statementColumn = -1;
+
+    public BatchInput(Reader reader, boolean csv) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.csv = csv;
+    }
+
+    /**
+     * Open a file, reading it as CSV if its name ends in .csv and as JSONL
+     * otherwise.
+     */
+    public static BatchInput open(Path file) throws IOException {
+        boolean csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+        return new BatchInput(Files.newBufferedReader(file, StandardCharsets.UTF_8), csv);
+    }
+
+    /**
+     * @return the next item, or null at the end of the input. A line that
+     *         cannot be parsed is returned as an item with an error.
+     */
+    public Item next() throws IOException {
+        return csv ? nextCsv() : nextJson();
+    }
+
+    private Item nextJson() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            position++;
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (JsonProcessingException e) {
+                return new Item(String.valueOf(position), null, "Invalid JSON: " + e.getOriginalMessage());
+            }
+            if (node.isTextual()) {
+                return new Item(String.valueOf(position), node.asText());
+            }
+            String statement = null;
+            for (String field : STATEMENT_FIELDS) {
+                if (node.hasNonNull(field)) {
+                    statement = node.get(field).asText();
+                    break;
+                }
+            }
+            String id = node.hasNonNull("id") ? node.get("id").asText() : String.valueOf(position);
+            return new Item(id, statement);
+        }
+        return null;
+    }
+
+    private Item nextCsv() throws IOException {
+        if (statementColumn < 0) {
+            List<String> header = readRecord();
+            if (header == null) {
+                return null;
+            }
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i).trim().toLowerCase();
+                if (name.equals("id")) {
+                    idColumn = i;
+                } else if (statementColumn < 0 && isStatementField(name)) {
+                    statementColumn = i;
+                }
+            }
+            if (statementColumn < 0) {
+                statementColumn = 0;
+            }
+        }
+
+        List<String> record;
+        while ((record = readRecord()) != null) {
+            if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+                continue;
+            }
+            position++;
+            String statement = statementColumn < record.size() ? record.get(statementColumn) : null;
+            String id = idColumn >= 0 && idColumn < record.size() && !record.get(idColumn).isEmpty()
+                    ? record.get(idColumn)
+                    : String.valueOf(position);
+            return new Item(id, statement);
+        }
+        return null;
+    }
+
+    private static boolean isStatementField(String name) {
+        for (String field : STATEMENT_FIELDS) {
+            if (field.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read one CSV record (RFC 4180: fields in double quotes may contain
+     * commas, line breaks and doubled quotes).
+     */
+    private List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (; c != -1; c = reader.read()) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
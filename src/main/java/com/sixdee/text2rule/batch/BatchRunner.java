@@ -0,0 +1,280 @@
+package com.sixdee.text2rule.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.factory.LLMClientFactory;
+import com.sixdee.text2rule.helper.PreValidator;
+import com.sixdee.text2rule.observability.Metrics;
+import com.sixdee.text2rule.workflow.ConversionRunner;
+import com.sixdee.text2rule.workflow.DecompositionWorkflow;
+import com.sixdee.text2rule.workflow.Speculator;
+import com.sixdee.text2rule.workflow.StagedPipeline;
+import com.sixdee.text2rule.workflow.WorkflowState;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Converts a file of campaign statements with one compiled
+ * DecompositionWorkflow graph, keeping several runs in flight so that the
+ * provider's rate budget is used while individual runs wait on the LLM.
+ *
+ * Statements are read as they are needed: at most "concurrency" runs are in
+ * flight, and reading waits for a run to finish. Each result is written to
+ * the output JSONL file as soon as its run completes, so output lines are in
+ * completion order and carry the item id. A failed item is written with its
+ * status and reason and does not stop the batch. Progress is logged
+ * periodically.
+ *
+ * In staged pipeline mode ({@link StagedPipeline}) the stages bound the LLM
+ * work, and concurrency only sets how many statements are in the pipeline;
+ * set it above the stages' total worker count so that every stage has work.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java -cp target/classes:... com.sixdee.text2rule.batch.BatchRunner \
+ *     --input=statements.jsonl --output=rules.jsonl --concurrency=16
+ * </pre>
+ */
+public class BatchRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+
+    private final ConversionRunner conversionRunner;
+    private final int concurrency;
+    private final int progressSeconds;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Counts of a finished or running batch.
+     */
+    public static final class Summary {
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder providerUnavailable = new LongAdder();
+        private final LongAdder deadlineExceeded = new LongAdder();
+        private final long startNanos = System.nanoTime();
+
+        public long getSubmitted() {
+            return submitted.sum();
+        }
+
+        public long getSucceeded() {
+            return succeeded.sum();
+        }
+
+        /**
+         * @return items that failed for any reason, including provider outages
+         *         and exceeded deadlines
+         */
+        public long getFailed() {
+            return failed.sum() + providerUnavailable.sum() + deadlineExceeded.sum();
+        }
+
+        public long getProviderUnavailable() {
+            return providerUnavailable.sum();
+        }
+
+        /**
+         * @return items stopped at the run deadline; their output line holds
+         *         the partial rule
+         */
+        public long getDeadlineExceeded() {
+            return deadlineExceeded.sum();
+        }
+
+        public long getCompleted() {
+            return getSucceeded() + getFailed();
+        }
+
+        public long getElapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            long elapsedMillis = Math.max(1, getElapsedMillis());
+            return "completed=" + getCompleted() + ", succeeded=" + getSucceeded() + ", failed=" + getFailed()
+                    + ", provider_unavailable=" + getProviderUnavailable() + ", deadline_exceeded="
+                    + getDeadlineExceeded() + ", in_flight="
+                    + (getSubmitted() - getCompleted()) + ", items_per_min="
+                    + String.format("%.1f", getCompleted() * 60_000.0 / elapsedMillis);
+        }
+    }
+
+    /**
+     * @param graph           compiled DecompositionWorkflow graph shared by all
+     *                        runs
+     * @param concurrency     runs kept in flight
+     * @param progressSeconds interval between progress log lines, 0 for none
+     */
+    public BatchRunner(CompiledGraph<WorkflowState> graph, int concurrency, int progressSeconds) {
+        this.conversionRunner = new ConversionRunner(graph);
+        this.concurrency = Math.max(1, concurrency);
+        this.progressSeconds = Math.max(0, progressSeconds);
+    }
+
+    /**
+     * Convert every statement of the input and write one JSON line per item.
+     *
+     * @return the batch counts
+     */
+    public Summary run(BatchInput input, Writer output) throws IOException, InterruptedException {
+        Summary summary = new Summary();
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger threads = new AtomicInteger();
+        // Runs block on their agents, so they get their own threads rather than the agent executor
+        ExecutorService runners = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "batch-run-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (progressSeconds > 0) {
+            progress.scheduleAtFixedRate(() -> logProgress(summary), progressSeconds, progressSeconds,
+                    TimeUnit.SECONDS);
+        }
+
+        logger.info("Batch started [concurrency={}]", concurrency);
+        try {
+            BatchInput.Item item;
+            while ((item = input.next()) != null) {
+                inFlight.acquire();
+                summary.submitted.increment();
+                BatchInput.Item current = item;
+                try {
+                    runners.execute(() -> {
+                        try {
+                            write(output, convert(current, summary));
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+        } finally {
+            progress.shutdownNow();
+            runners.shutdownNow();
+            output.flush();
+        }
+        logger.info("Batch finished [{}, elapsed_ms={}]", summary, summary.getElapsedMillis());
+        return summary;
+    }
+
+    private static void logProgress(Summary summary) {
+        logger.info("Batch progress [{}]", summary);
+        StagedPipeline pipeline = StagedPipeline.getInstance();
+        if (pipeline != null) {
+            logger.info("Pipeline stages {}", pipeline.snapshot());
+        }
+        if (!Speculator.getStats().isEmpty()) {
+            logger.info("Speculation {}", Speculator.getStats());
+        }
+        if (ConfigurationManager.getInstance().isPreValidationEnabled()) {
+            logger.info("Pre-validation [{}]", PreValidator.getStats());
+        }
+    }
+
+    /**
+     * Convert one item and count its outcome. Never throws.
+     */
+    private ConversionRunner.Result convert(BatchInput.Item item, Summary summary) {
+        ConversionRunner.Result result = item.getError() != null
+                ? ConversionRunner.failed(item.getId(), item.getError())
+                : conversionRunner.convert(item.getId(), item.getStatement());
+        switch (result.getStatus()) {
+            case ConversionRunner.STATUS_OK:
+                summary.succeeded.increment();
+                break;
+            case ConversionRunner.STATUS_PROVIDER_UNAVAILABLE:
+                summary.providerUnavailable.increment();
+                break;
+            case ConversionRunner.STATUS_DEADLINE_EXCEEDED:
+                summary.deadlineExceeded.increment();
+                break;
+            default:
+                summary.failed.increment();
+        }
+        return result;
+    }
+
+    private void write(Writer output, ConversionRunner.Result result) {
+        try {
+            String line = objectMapper.writeValueAsString(result.toJson());
+            synchronized (output) {
+                output.write(line);
+                output.write('\n');
+                output.flush();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to write batch result [id={}, error={}]", result.getId(),
+                    e.getMessage(), e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurationManager config = ConfigurationManager.getInstance();
+        Path inputFile = null;
+        Path outputFile = null;
+        int concurrency = config.getBatchConcurrency();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            String value = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "--input":
+                    inputFile = Paths.get(value);
+                    break;
+                case "--output":
+                    outputFile = Paths.get(value);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(2);
+            }
+        }
+        if (inputFile == null || outputFile == null) {
+            System.err.println("Usage: BatchRunner --input=<file.jsonl|file.csv> --output=<file.jsonl> "
+                    + "[--concurrency=N]");
+            System.exit(2);
+        }
+
+        Metrics.startSnapshots(config.getMetricsSnapshotFile(), config.getMetricsSnapshotSeconds());
+        CompiledGraph<WorkflowState> graph = new DecompositionWorkflow(LLMClientFactory.createChatModel(config))
+                .build();
+        BatchRunner runner = new BatchRunner(graph, concurrency, config.getBatchProgressSeconds());
+        Summary summary;
+        try (BatchInput input = BatchInput.open(inputFile);
+                Writer output = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+            summary = runner.run(input, output);
+        }
+        System.out.println("Batch finished: " + summary);
+        System.exit(summary.getFailed() > 0 ? 1 : 0);
+    }
+}
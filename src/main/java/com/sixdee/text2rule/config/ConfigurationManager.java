@@ -5,7 +5,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -29,6 +34,61 @@ public class ConfigurationManager {
     private static final int DEFAULT_TIMEOUT_SECONDS = 60;
     private static final double DEFAULT_CONSISTENCY_THRESHOLD = 0.80;
     private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final int DEFAULT_REQUESTS_PER_MINUTE = 30;
+    private static final int DEFAULT_TOKENS_PER_MINUTE = 12000;
+    private static final int DEFAULT_EXPECTED_OUTPUT_TOKENS = 512;
+    private static final String DEFAULT_CACHE_DIRECTORY = ".text2rule/cache";
+    private static final int DEFAULT_CACHE_MAX_ENTRIES = 2000;
+    private static final int DEFAULT_CACHE_MAX_DISK_MB = 64;
+    private static final long DEFAULT_CACHE_TTL_SECONDS = 86400;
+    // Not cached unless the prompt sets cache_ttl_seconds: prompt refinement
+    // exists to get a different answer, and the decomposition agent's answer
+    // depends on its tool calls
+    private static final Set<String> UNCACHED_PROMPT_KEYS = Set.of(
+            "prompt_refinement_prompt", "statement_decompostion_agent_prompt");
+    private static final int DEFAULT_TREE_PARALLELISM = 4;
+    private static final double DEFAULT_HEDGING_PERCENTILE = 0.95;
+    private static final int DEFAULT_HEDGING_MIN_SAMPLES = 20;
+    private static final int DEFAULT_RETRY_MAX_ATTEMPTS = 4;
+    private static final int DEFAULT_RETRY_BASE_BACKOFF_MS = 500;
+    private static final int DEFAULT_RETRY_MAX_BACKOFF_MS = 30000;
+    private static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_CIRCUIT_OPEN_SECONDS = 30;
+    private static final int DEFAULT_BATCH_CONCURRENCY = 8;
+    private static final int DEFAULT_BATCH_PROGRESS_SECONDS = 10;
+    private static final String DEFAULT_CHECKPOINT_DIRECTORY = ".text2rule/checkpoints";
+    private static final int DEFAULT_CHECKPOINT_MAX_AGE_HOURS = 168;
+    private static final int DEFAULT_CHECKPOINT_MAX_RUNS = 1000;
+    private static final int DEFAULT_SERVICE_PORT = 8080;
+    private static final int DEFAULT_SERVICE_CONCURRENCY = 8;
+    private static final int DEFAULT_SERVICE_QUEUE_CAPACITY = 64;
+    private static final int DEFAULT_SERVICE_SYNC_TIMEOUT_SECONDS = 120;
+    private static final int DEFAULT_PIPELINE_WORKERS = 4;
+    private static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 16;
+    private static final int DEFAULT_RUN_DEADLINE_SECONDS = 300;
+    private static final int DEFAULT_METRICS_SNAPSHOT_SECONDS = 60;
+    // Gates that pass for most statements, so speculating past them rarely wastes a call
+    private static final Set<String> DEFAULT_SPECULATIVE_GATES = Set.of(
+            "validate_agent",
+            "consistency_check_decompose");
+    // Prompts whose calls have no side effects, so a duplicate request is safe
+    private static final Set<String> DEFAULT_HEDGEABLE_PROMPTS = Set.of(
+            "basic_validator_agent_prompt",
+            "consistency_check_prompt",
+            "condition_extraction_prompt",
+            "action_extraction_prompt",
+            "schedule_parser_prompt");
+    private static final String DEFAULT_EXECUTOR_TYPE = "auto";
+    private static final int DEFAULT_EXECUTOR_POOL_SIZE = 32;
+    private static final int DEFAULT_EXECUTOR_QUEUE_CAPACITY = 256;
+    private static final Map<String, String> DEFAULT_EARLY_COMPLETION = Map.of(
+            "basic_validator_agent_prompt", "object",
+            "condition_extraction_prompt", "array",
+            "action_extraction_prompt", "object",
+            "rule_converter_prompt", "object",
+            "schedule_parser_prompt", "object",
+            "unified_kpi_matching_prompt", "array",
+            "consistency_check_prompt", "field:similarity_score");
 
     /**
      * Private constructor to prevent instantiation.
@@ -104,6 +164,51 @@ public class ConfigurationManager {
             // Load Supabase configuration from <supabase> section
             loadSupabaseConfig(doc);
 
+            // Load LLM response cache configuration from <llm_cache> element
+            loadCacheConfig(doc);
+
+            // Load per-agent tree fan-out limits from <tree_parallelism> element
+            loadTreeParallelismConfig(doc);
+
+            // Load the agent I/O executor settings from <agent_executor> element
+            loadAgentExecutorConfig(doc);
+
+            // Load request hedging settings from <hedging> element
+            loadHedgingConfig(doc);
+
+            // Load the default prompt token budget from <prompt_budget> element
+            loadPromptBudgetConfig(doc);
+
+            // Load retry and circuit breaker settings from <resilience> element
+            loadResilienceConfig(doc);
+
+            // Load batch conversion settings from <batch> element
+            loadBatchConfig(doc);
+
+            // Load conversion service settings from <service> element
+            loadServiceConfig(doc);
+
+            // Load workflow checkpoint settings from <checkpoint> element
+            loadCheckpointConfig(doc);
+
+            // Load staged pipeline settings from <pipeline> element
+            loadPipelineConfig(doc);
+
+            // Load speculative execution settings from <speculation> element
+            loadSpeculationConfig(doc);
+
+            // Load single-call conversion settings from <fast_path> element
+            loadFastPathConfig(doc);
+
+            // Load rule-based pre-validation from <pre_validation> element
+            loadPreValidationConfig(doc);
+
+            // Load per-run time limit from <run_deadline> element
+            loadRunDeadlineConfig(doc);
+
+            // Load metrics snapshot settings from <metrics> element
+            loadMetricsConfig(doc);
+
         } catch (Exception e) {
             logger.error("Failed to parse config.xml [error={}]", e.getMessage(), e);
             setDefaults();
@@ -165,6 +270,7 @@ public class ConfigurationManager {
                 configCache.put("max.retries", Integer.parseInt(getElementText(apiElement, "max_retries", "3")));
                 configCache.put("temperature", Double.parseDouble(getElementText(apiElement, "temperature", "0.7")));
                 configCache.put("max_tokens", Integer.parseInt(getElementText(apiElement, "max_tokens", "4096")));
+                configCache.put("streaming", Boolean.parseBoolean(getElementText(apiElement, "streaming", "false")));
 
                 // Load provider-specific settings
                 String provider = getElementText(apiElement, "provider", "groq");
@@ -185,6 +291,12 @@ public class ConfigurationManager {
                     logger.info("Using API key from config.xml");
                 }
 
+                // Load per-provider rate budgets from <rate_limits>
+                loadRateLimitConfig(apiElement);
+
+                // Load routable backends from <backends>
+                loadBackendConfig(apiElement, provider);
+
                 logger.debug("Loaded API configuration from config.xml [provider={}]", provider);
             }
         } catch (Exception e) {
@@ -193,6 +305,426 @@ public class ConfigurationManager {
         }
     }
 
+    /**
+     * Load per-provider rate budgets from the <rate_limits> element, e.g.
+     * <rate_limit provider="groq" requests_per_minute="30" tokens_per_minute="12000"/>.
+     */
+    private void loadRateLimitConfig(org.w3c.dom.Element apiElement) {
+        try {
+            org.w3c.dom.NodeList limitNodes = apiElement.getElementsByTagName("rate_limit");
+            for (int i = 0; i < limitNodes.getLength(); i++) {
+                org.w3c.dom.Element limitElement = (org.w3c.dom.Element) limitNodes.item(i);
+                String provider = limitElement.getAttribute("provider").trim().toLowerCase();
+                if (provider.isEmpty()) {
+                    logger.warn("Skipping rate_limit element without 'provider' attribute");
+                    continue;
+                }
+
+                putIntAttribute(limitElement, "requests_per_minute", "ratelimit." + provider + ".rpm");
+                putIntAttribute(limitElement, "tokens_per_minute", "ratelimit." + provider + ".tpm");
+                putIntAttribute(limitElement, "expected_output_tokens", "ratelimit." + provider + ".output.tokens");
+
+                logger.debug("Loaded rate limit [provider={}, rpm={}, tpm={}]", provider,
+                        configCache.get("ratelimit." + provider + ".rpm"),
+                        configCache.get("ratelimit." + provider + ".tpm"));
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading rate limit config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the backends the LLM router spreads calls over, e.g.
+     * <backends><backend name="groq-2" provider="groq" api_key_env="GROQ_API_KEY_2"
+     * requests_per_minute="30" tokens_per_minute="12000"/></backends>.
+     * base_url, model_name and rate limits default to those of the backend's
+     * provider.
+     */
+    private void loadBackendConfig(org.w3c.dom.Element apiElement, String defaultProvider) {
+        try {
+            org.w3c.dom.NodeList backendNodes = apiElement.getElementsByTagName("backend");
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < backendNodes.getLength(); i++) {
+                org.w3c.dom.Element backendElement = (org.w3c.dom.Element) backendNodes.item(i);
+                String name = backendElement.getAttribute("name").trim().toLowerCase();
+                if (name.isEmpty() || names.contains(name)) {
+                    logger.warn("Skipping backend element without a unique 'name' attribute");
+                    continue;
+                }
+
+                String provider = attributeOrDefault(backendElement, "provider", defaultProvider).toLowerCase();
+                configCache.put("backend." + name + ".provider", provider);
+                configCache.put("backend." + name + ".base.url",
+                        attributeOrDefault(backendElement, "base_url", getProviderBaseUrl(provider)));
+                configCache.put("backend." + name + ".model.name",
+                        attributeOrDefault(backendElement, "model_name", getProviderModelName(provider)));
+
+                String keyEnv = backendElement.getAttribute("api_key_env").trim();
+                String envValue = keyEnv.isEmpty() ? null : System.getenv(keyEnv);
+                configCache.put("backend." + name + ".api.key", envValue != null && !envValue.isEmpty() ? envValue
+                        : attributeOrDefault(backendElement, "api_key", getApiKey(provider)));
+
+                // Backends without their own limits get the provider's limits
+                configCache.put("ratelimit." + name + ".rpm", getRequestsPerMinute(provider));
+                configCache.put("ratelimit." + name + ".tpm", getTokensPerMinute(provider));
+                configCache.put("ratelimit." + name + ".output.tokens", getExpectedOutputTokens(provider));
+                putIntAttribute(backendElement, "requests_per_minute", "ratelimit." + name + ".rpm");
+                putIntAttribute(backendElement, "tokens_per_minute", "ratelimit." + name + ".tpm");
+                putIntAttribute(backendElement, "expected_output_tokens", "ratelimit." + name + ".output.tokens");
+
+                names.add(name);
+                logger.debug("Loaded LLM backend [name={}, provider={}]", name, provider);
+            }
+            configCache.put("backends", names);
+        } catch (Exception e) {
+            logger.warn("Error loading LLM backends, using the active provider only [error={}]", e.getMessage());
+        }
+    }
+
+    private static String attributeOrDefault(org.w3c.dom.Element element, String attribute, String defaultValue) {
+        String value = element.getAttribute(attribute).trim();
+        return value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * Load LLM response cache settings, e.g.
+     * <llm_cache enabled="true" directory=".text2rule/cache" max_entries="2000"
+     * max_disk_mb="64" default_ttl_seconds="86400"/>.
+     * Per-prompt TTLs are set with a cache_ttl_seconds attribute on the prompt.
+     */
+    private void loadCacheConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList cacheNodes = doc.getElementsByTagName("llm_cache");
+            if (cacheNodes.getLength() > 0) {
+                org.w3c.dom.Element cacheElement = (org.w3c.dom.Element) cacheNodes.item(0);
+                String enabled = cacheElement.getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("cache.enabled", Boolean.parseBoolean(enabled));
+                }
+                String directory = cacheElement.getAttribute("directory").trim();
+                if (!directory.isEmpty()) {
+                    configCache.put("cache.directory", directory);
+                }
+                putIntAttribute(cacheElement, "max_entries", "cache.max.entries");
+                putIntAttribute(cacheElement, "max_disk_mb", "cache.max.disk.mb");
+                putIntAttribute(cacheElement, "default_ttl_seconds", "cache.default.ttl.seconds");
+                logger.debug("Loaded LLM cache configuration [enabled={}, dir={}]",
+                        isResponseCacheEnabled(), getResponseCacheDirectory());
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading LLM cache config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load per-agent limits for concurrent node processing, e.g.
+     * <tree_parallelism default="4"><agent name="ActionExtractionAgent" parallelism="2"/></tree_parallelism>.
+     */
+    private void loadTreeParallelismConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList parallelismNodes = doc.getElementsByTagName("tree_parallelism");
+            if (parallelismNodes.getLength() > 0) {
+                org.w3c.dom.Element parallelismElement = (org.w3c.dom.Element) parallelismNodes.item(0);
+                putIntAttribute(parallelismElement, "default", "tree.parallelism.default");
+
+                org.w3c.dom.NodeList agentNodes = parallelismElement.getElementsByTagName("agent");
+                for (int i = 0; i < agentNodes.getLength(); i++) {
+                    org.w3c.dom.Element agentElement = (org.w3c.dom.Element) agentNodes.item(i);
+                    String agentName = agentElement.getAttribute("name").trim();
+                    if (!agentName.isEmpty()) {
+                        putIntAttribute(agentElement, "parallelism", "tree.parallelism." + agentName);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading tree parallelism config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the executor that runs agents and their blocking LLM calls, e.g.
+     * <agent_executor type="auto" pool_size="32" queue_capacity="256"/>.
+     * type is "auto" (virtual threads on Java 21+), "virtual" or "platform".
+     */
+    private void loadAgentExecutorConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList executorNodes = doc.getElementsByTagName("agent_executor");
+            if (executorNodes.getLength() > 0) {
+                org.w3c.dom.Element executorElement = (org.w3c.dom.Element) executorNodes.item(0);
+                String type = executorElement.getAttribute("type").trim();
+                if (!type.isEmpty()) {
+                    configCache.put("executor.type", type.toLowerCase());
+                }
+                putIntAttribute(executorElement, "pool_size", "executor.pool.size");
+                putIntAttribute(executorElement, "queue_capacity", "executor.queue.capacity");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading agent executor config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load request hedging settings, e.g.
+     * <hedging enabled="true" percentile="0.95" min_samples="20"/>.
+     * Individual prompts opt in or out with a hedge="true|false" attribute.
+     */
+    private void loadHedgingConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList hedgingNodes = doc.getElementsByTagName("hedging");
+            if (hedgingNodes.getLength() > 0) {
+                org.w3c.dom.Element hedgingElement = (org.w3c.dom.Element) hedgingNodes.item(0);
+                String enabled = hedgingElement.getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("hedging.enabled", Boolean.parseBoolean(enabled));
+                }
+                String percentile = hedgingElement.getAttribute("percentile").trim();
+                if (!percentile.isEmpty()) {
+                    configCache.put("hedging.percentile", Double.parseDouble(percentile));
+                }
+                putIntAttribute(hedgingElement, "min_samples", "hedging.min.samples");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading hedging config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the default prompt token budget, e.g.
+     * <prompt_budget max_prompt_tokens="6000"/>.
+     * Individual prompts override it with a max_prompt_tokens attribute.
+     */
+    private void loadPromptBudgetConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList budgetNodes = doc.getElementsByTagName("prompt_budget");
+            if (budgetNodes.getLength() > 0) {
+                putIntAttribute((org.w3c.dom.Element) budgetNodes.item(0), "max_prompt_tokens",
+                        "prompt.max.tokens");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading prompt budget config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load retry and circuit breaker settings, e.g.
+     * <resilience max_attempts="4" base_backoff_ms="500" max_backoff_ms="30000"
+     * failure_threshold="5" open_seconds="30"/>.
+     * They apply to each provider or backend separately.
+     */
+    private void loadResilienceConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList resilienceNodes = doc.getElementsByTagName("resilience");
+            if (resilienceNodes.getLength() > 0) {
+                org.w3c.dom.Element resilienceElement = (org.w3c.dom.Element) resilienceNodes.item(0);
+                putIntAttribute(resilienceElement, "max_attempts", "retry.max.attempts");
+                putIntAttribute(resilienceElement, "base_backoff_ms", "retry.base.backoff.ms");
+                putIntAttribute(resilienceElement, "max_backoff_ms", "retry.max.backoff.ms");
+                putIntAttribute(resilienceElement, "failure_threshold", "circuit.failure.threshold");
+                putIntAttribute(resilienceElement, "open_seconds", "circuit.open.seconds");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading resilience config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load batch conversion settings, e.g.
+     * <batch concurrency="8" progress_seconds="10"/>.
+     */
+    private void loadBatchConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList batchNodes = doc.getElementsByTagName("batch");
+            if (batchNodes.getLength() > 0) {
+                org.w3c.dom.Element batchElement = (org.w3c.dom.Element) batchNodes.item(0);
+                putIntAttribute(batchElement, "concurrency", "batch.concurrency");
+                putIntAttribute(batchElement, "progress_seconds", "batch.progress.seconds");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading batch config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load conversion service settings, e.g.
+     * <service port="8080" concurrency="8" queue_capacity="64"
+     * sync_timeout_seconds="120"/>.
+     */
+    private void loadServiceConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList serviceNodes = doc.getElementsByTagName("service");
+            if (serviceNodes.getLength() > 0) {
+                org.w3c.dom.Element serviceElement = (org.w3c.dom.Element) serviceNodes.item(0);
+                putIntAttribute(serviceElement, "port", "service.port");
+                putIntAttribute(serviceElement, "concurrency", "service.concurrency");
+                putIntAttribute(serviceElement, "queue_capacity", "service.queue.capacity");
+                putIntAttribute(serviceElement, "sync_timeout_seconds", "service.sync.timeout.seconds");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading service config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load workflow checkpoint settings, e.g.
+     * <checkpoint enabled="true" directory=".text2rule/checkpoints" max_age_hours="168" max_runs="1000"/>.
+     * Checkpoints of runs that did not complete (failed, provider unavailable,
+     * deadline exceeded, crashed) are kept for resuming until they are older
+     * than max_age_hours or are not among the newest max_runs; 0 disables a
+     * limit.
+     */
+    private void loadCheckpointConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList checkpointNodes = doc.getElementsByTagName("checkpoint");
+            if (checkpointNodes.getLength() > 0) {
+                org.w3c.dom.Element checkpointElement = (org.w3c.dom.Element) checkpointNodes.item(0);
+                String enabled = checkpointElement.getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("checkpoint.enabled", Boolean.parseBoolean(enabled));
+                }
+                String directory = checkpointElement.getAttribute("directory").trim();
+                if (!directory.isEmpty()) {
+                    configCache.put("checkpoint.directory", directory);
+                }
+                putIntAttribute(checkpointElement, "max_age_hours", "checkpoint.max.age.hours");
+                putIntAttribute(checkpointElement, "max_runs", "checkpoint.max.runs");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading checkpoint config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load staged pipeline settings with per-stage overrides by node id, e.g.
+     * <pipeline enabled="true" workers="4" queue_capacity="16"><stage name="decompose_agent" workers="8"/></pipeline>.
+     */
+    private void loadPipelineConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList pipelineNodes = doc.getElementsByTagName("pipeline");
+            if (pipelineNodes.getLength() > 0) {
+                org.w3c.dom.Element pipelineElement = (org.w3c.dom.Element) pipelineNodes.item(0);
+                String enabled = pipelineElement.getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("pipeline.enabled", Boolean.parseBoolean(enabled));
+                }
+                putIntAttribute(pipelineElement, "workers", "pipeline.workers.default");
+                putIntAttribute(pipelineElement, "queue_capacity", "pipeline.queue.capacity.default");
+
+                org.w3c.dom.NodeList stageNodes = pipelineElement.getElementsByTagName("stage");
+                for (int i = 0; i < stageNodes.getLength(); i++) {
+                    org.w3c.dom.Element stageElement = (org.w3c.dom.Element) stageNodes.item(i);
+                    String stageName = stageElement.getAttribute("name").trim();
+                    if (!stageName.isEmpty()) {
+                        putIntAttribute(stageElement, "workers", "pipeline.workers." + stageName);
+                        putIntAttribute(stageElement, "queue_capacity", "pipeline.queue.capacity." + stageName);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading pipeline config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load speculative execution settings, e.g.
+     * <speculation enabled="true" gates="validate_agent,consistency_check_decompose"/>.
+     */
+    private void loadSpeculationConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList speculationNodes = doc.getElementsByTagName("speculation");
+            if (speculationNodes.getLength() > 0) {
+                org.w3c.dom.Element speculationElement = (org.w3c.dom.Element) speculationNodes.item(0);
+                String enabled = speculationElement.getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("speculation.enabled", Boolean.parseBoolean(enabled));
+                }
+                if (speculationElement.hasAttribute("gates")) {
+                    Set<String> gates = new HashSet<>();
+                    for (String gate : speculationElement.getAttribute("gates").split(",")) {
+                        if (!gate.trim().isEmpty()) {
+                            gates.add(gate.trim());
+                        }
+                    }
+                    configCache.put("speculation.gates", Collections.unmodifiableSet(gates));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading speculation config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    private void loadFastPathConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList fastPathNodes = doc.getElementsByTagName("fast_path");
+            if (fastPathNodes.getLength() > 0) {
+                String enabled = ((org.w3c.dom.Element) fastPathNodes.item(0)).getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("fast_path.enabled", Boolean.parseBoolean(enabled));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading fast path config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load rule-based pre-validation configuration from XML document.
+     */
+    private void loadPreValidationConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList preValidationNodes = doc.getElementsByTagName("pre_validation");
+            if (preValidationNodes.getLength() > 0) {
+                String enabled = ((org.w3c.dom.Element) preValidationNodes.item(0)).getAttribute("enabled").trim();
+                if (!enabled.isEmpty()) {
+                    configCache.put("pre_validation.enabled", Boolean.parseBoolean(enabled));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading pre-validation config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the per-run time limit, e.g. <run_deadline timeout_seconds="300"/>.
+     */
+    private void loadRunDeadlineConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList deadlineNodes = doc.getElementsByTagName("run_deadline");
+            if (deadlineNodes.getLength() > 0) {
+                putIntAttribute((org.w3c.dom.Element) deadlineNodes.item(0), "timeout_seconds",
+                        "run.deadline.seconds");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading run deadline config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Load metrics snapshot settings, e.g.
+     * <metrics snapshot_file=".text2rule/metrics.json" snapshot_seconds="60"/>.
+     */
+    private void loadMetricsConfig(org.w3c.dom.Document doc) {
+        try {
+            org.w3c.dom.NodeList metricsNodes = doc.getElementsByTagName("metrics");
+            if (metricsNodes.getLength() > 0) {
+                org.w3c.dom.Element metricsElement = (org.w3c.dom.Element) metricsNodes.item(0);
+                String file = metricsElement.getAttribute("snapshot_file").trim();
+                if (!file.isEmpty()) {
+                    configCache.put("metrics.snapshot.file", file);
+                }
+                putIntAttribute(metricsElement, "snapshot_seconds", "metrics.snapshot.seconds");
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading metrics config, using defaults [error={}]", e.getMessage());
+        }
+    }
+
+    private void putIntAttribute(org.w3c.dom.Element element, String attribute, String cacheKey) {
+        String value = element.getAttribute(attribute).trim();
+        if (!value.isEmpty()) {
+            configCache.put(cacheKey, Integer.parseInt(value));
+        }
+    }
+
     /**
      * Load rendering configuration from XML document.
      */
@@ -343,6 +875,411 @@ public class ConfigurationManager {
         return (String) configCache.getOrDefault("model.name", "");
     }
 
+    // ===== Rate Limit Configuration =====
+
+    public int getRequestsPerMinute(String provider) {
+        return (Integer) configCache.getOrDefault("ratelimit." + provider.toLowerCase() + ".rpm",
+                DEFAULT_REQUESTS_PER_MINUTE);
+    }
+
+    public int getTokensPerMinute(String provider) {
+        return (Integer) configCache.getOrDefault("ratelimit." + provider.toLowerCase() + ".tpm",
+                DEFAULT_TOKENS_PER_MINUTE);
+    }
+
+    public int getExpectedOutputTokens(String provider) {
+        return (Integer) configCache.getOrDefault("ratelimit." + provider.toLowerCase() + ".output.tokens",
+                DEFAULT_EXPECTED_OUTPUT_TOKENS);
+    }
+
+    // ===== LLM Backend Routing Configuration =====
+
+    /**
+     * @return names of the configured routing backends; empty when calls go to
+     *         the active provider only
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getBackendNames() {
+        return (List<String>) configCache.getOrDefault("backends", Collections.emptyList());
+    }
+
+    public String getBackendProvider(String backend) {
+        return (String) configCache.get("backend." + backend + ".provider");
+    }
+
+    public String getBackendBaseUrl(String backend) {
+        return (String) configCache.get("backend." + backend + ".base.url");
+    }
+
+    public String getBackendModelName(String backend) {
+        return (String) configCache.get("backend." + backend + ".model.name");
+    }
+
+    public String getBackendApiKey(String backend) {
+        return (String) configCache.get("backend." + backend + ".api.key");
+    }
+
+    // ===== LLM Response Cache Configuration =====
+
+    public boolean isResponseCacheEnabled() {
+        return (Boolean) configCache.getOrDefault("cache.enabled", true);
+    }
+
+    /**
+     * @return directory of the persistent cache tier; empty for memory only
+     */
+    public String getResponseCacheDirectory() {
+        return (String) configCache.getOrDefault("cache.directory", DEFAULT_CACHE_DIRECTORY);
+    }
+
+    public int getResponseCacheMaxEntries() {
+        return (Integer) configCache.getOrDefault("cache.max.entries", DEFAULT_CACHE_MAX_ENTRIES);
+    }
+
+    public long getResponseCacheMaxDiskBytes() {
+        return (Integer) configCache.getOrDefault("cache.max.disk.mb", DEFAULT_CACHE_MAX_DISK_MB) * 1024L * 1024L;
+    }
+
+    /**
+     * TTL of cached responses for a prompt, from its cache_ttl_seconds
+     * attribute. A value of 0 disables caching for that prompt; prompt
+     * refinement and tool-calling decomposition are not cached by default.
+     */
+    public long getCacheTtlSeconds(String promptKey) {
+        long defaultTtl = (Integer) configCache.getOrDefault("cache.default.ttl.seconds",
+                (int) DEFAULT_CACHE_TTL_SECONDS);
+        if (promptKey == null) {
+            return defaultTtl;
+        }
+        try {
+            String value = promptRegistry.getAttribute(promptKey, "cache_ttl_seconds");
+            if (value == null && UNCACHED_PROMPT_KEYS.contains(promptKey)) {
+                return 0;
+            }
+            return value != null ? Long.parseLong(value.trim()) : defaultTtl;
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid cache TTL for [key={}], using default [ttl={}s]", promptKey, defaultTtl);
+            return defaultTtl;
+        }
+    }
+
+    // ===== Streaming Configuration =====
+
+    /**
+     * Stream completions and return as soon as the JSON the agent needs is
+     * complete. Enabled with &lt;streaming&gt;true&lt;/streaming&gt; under &lt;api&gt;.
+     */
+    public boolean isStreamingEnabled() {
+        return (Boolean) configCache.getOrDefault("streaming", false);
+    }
+
+    /**
+     * Early completion mode of a streamed prompt, from its early_completion
+     * attribute ("object", "array", "field:&lt;name&gt;" or "none"). Prompts
+     * without the attribute use the mode matching the shape their agent
+     * parses.
+     *
+     * @return the mode, or null to stream the whole completion
+     */
+    public String getEarlyCompletionMode(String promptKey) {
+        if (promptKey == null) {
+            return null;
+        }
+        String mode = promptRegistry.getAttribute(promptKey, "early_completion");
+        if (mode == null || mode.trim().isEmpty()) {
+            mode = DEFAULT_EARLY_COMPLETION.get(promptKey);
+        }
+        return mode == null || "none".equalsIgnoreCase(mode.trim()) ? null : mode.trim();
+    }
+
+    // ===== Tree Fan-out Configuration =====
+
+    /**
+     * Maximum number of nodes an agent processes concurrently when walking the
+     * rule tree.
+     */
+    public int getTreeParallelism(String agentName) {
+        Integer value = (Integer) configCache.get("tree.parallelism." + agentName);
+        if (value != null) {
+            return value;
+        }
+        return (Integer) configCache.getOrDefault("tree.parallelism.default", DEFAULT_TREE_PARALLELISM);
+    }
+
+    // ===== Hedging Configuration =====
+
+    public boolean isHedgingEnabled() {
+        return (Boolean) configCache.getOrDefault("hedging.enabled", false);
+    }
+
+    /**
+     * Latency percentile of a prompt after which a duplicate request is sent.
+     */
+    public double getHedgingPercentile() {
+        return (Double) configCache.getOrDefault("hedging.percentile", DEFAULT_HEDGING_PERCENTILE);
+    }
+
+    public int getHedgingMinSamples() {
+        return (Integer) configCache.getOrDefault("hedging.min.samples", DEFAULT_HEDGING_MIN_SAMPLES);
+    }
+
+    /**
+     * Whether calls for a prompt are idempotent and may be hedged, from its
+     * hedge attribute. Validation, consistency and extraction prompts are
+     * hedgeable by default.
+     */
+    public boolean isHedgeable(String promptKey) {
+        if (promptKey == null) {
+            return false;
+        }
+        String value = promptRegistry.getAttribute(promptKey, "hedge");
+        if (value != null && !value.trim().isEmpty()) {
+            return Boolean.parseBoolean(value.trim());
+        }
+        return DEFAULT_HEDGEABLE_PROMPTS.contains(promptKey);
+    }
+
+    // ===== Resilience Configuration =====
+
+    /**
+     * Attempts per LLM call, including the first, before the provider is
+     * reported unavailable.
+     */
+    public int getRetryMaxAttempts() {
+        return (Integer) configCache.getOrDefault("retry.max.attempts", DEFAULT_RETRY_MAX_ATTEMPTS);
+    }
+
+    public long getRetryBaseBackoffMillis() {
+        return (Integer) configCache.getOrDefault("retry.base.backoff.ms", DEFAULT_RETRY_BASE_BACKOFF_MS);
+    }
+
+    /**
+     * Longest wait between attempts; a provider asking to wait longer is
+     * reported unavailable instead.
+     */
+    public long getRetryMaxBackoffMillis() {
+        return (Integer) configCache.getOrDefault("retry.max.backoff.ms", DEFAULT_RETRY_MAX_BACKOFF_MS);
+    }
+
+    /**
+     * Consecutive failures after which calls to a provider fail fast.
+     */
+    public int getCircuitFailureThreshold() {
+        return (Integer) configCache.getOrDefault("circuit.failure.threshold", DEFAULT_CIRCUIT_FAILURE_THRESHOLD);
+    }
+
+    public int getCircuitOpenSeconds() {
+        return (Integer) configCache.getOrDefault("circuit.open.seconds", DEFAULT_CIRCUIT_OPEN_SECONDS);
+    }
+
+    // ===== Batch Configuration =====
+
+    /**
+     * Number of workflow runs a batch keeps in flight.
+     */
+    public int getBatchConcurrency() {
+        return (Integer) configCache.getOrDefault("batch.concurrency", DEFAULT_BATCH_CONCURRENCY);
+    }
+
+    public int getBatchProgressSeconds() {
+        return (Integer) configCache.getOrDefault("batch.progress.seconds", DEFAULT_BATCH_PROGRESS_SECONDS);
+    }
+
+    // ===== Workflow Checkpoint Configuration =====
+
+    /**
+     * Whether workflow state is saved to disk after every node so that runs
+     * can be resumed.
+     */
+    public boolean isCheckpointEnabled() {
+        return (Boolean) configCache.getOrDefault("checkpoint.enabled", true);
+    }
+
+    public String getCheckpointDirectory() {
+        return (String) configCache.getOrDefault("checkpoint.directory", DEFAULT_CHECKPOINT_DIRECTORY);
+    }
+
+    /**
+     * Age after which a left-over run's checkpoints are deleted; 0 keeps them
+     * regardless of age.
+     */
+    public int getCheckpointMaxAgeHours() {
+        return (Integer) configCache.getOrDefault("checkpoint.max.age.hours", DEFAULT_CHECKPOINT_MAX_AGE_HOURS);
+    }
+
+    /**
+     * Number of runs whose checkpoints are kept, newest first; 0 keeps all.
+     */
+    public int getCheckpointMaxRuns() {
+        return (Integer) configCache.getOrDefault("checkpoint.max.runs", DEFAULT_CHECKPOINT_MAX_RUNS);
+    }
+
+    // ===== Conversion Service Configuration =====
+
+    public int getServicePort() {
+        return (Integer) configCache.getOrDefault("service.port", DEFAULT_SERVICE_PORT);
+    }
+
+    /**
+     * Number of conversions the service runs at once.
+     */
+    public int getServiceConcurrency() {
+        return (Integer) configCache.getOrDefault("service.concurrency", DEFAULT_SERVICE_CONCURRENCY);
+    }
+
+    /**
+     * Conversions waiting for a slot before new requests are turned away.
+     */
+    public int getServiceQueueCapacity() {
+        return (Integer) configCache.getOrDefault("service.queue.capacity", DEFAULT_SERVICE_QUEUE_CAPACITY);
+    }
+
+    /**
+     * How long a synchronous request waits before it is answered with a job
+     * to poll instead.
+     */
+    public int getServiceSyncTimeoutSeconds() {
+        return (Integer) configCache.getOrDefault("service.sync.timeout.seconds",
+                DEFAULT_SERVICE_SYNC_TIMEOUT_SECONDS);
+    }
+
+    // ===== Staged Pipeline Configuration =====
+
+    /**
+     * Whether each workflow node runs on its own bounded stage instead of on
+     * the thread of the run.
+     */
+    public boolean isPipelineEnabled() {
+        return (Boolean) configCache.getOrDefault("pipeline.enabled", false);
+    }
+
+    /**
+     * Number of workers for the stage of a workflow node.
+     */
+    public int getPipelineWorkers(String stageName) {
+        Integer value = (Integer) configCache.get("pipeline.workers." + stageName);
+        if (value != null) {
+            return value;
+        }
+        return (Integer) configCache.getOrDefault("pipeline.workers.default", DEFAULT_PIPELINE_WORKERS);
+    }
+
+    /**
+     * Nodes that may wait for a worker of the stage before runs reaching it
+     * are held back.
+     */
+    public int getPipelineQueueCapacity(String stageName) {
+        Integer value = (Integer) configCache.get("pipeline.queue.capacity." + stageName);
+        if (value != null) {
+            return value;
+        }
+        return (Integer) configCache.getOrDefault("pipeline.queue.capacity.default",
+                DEFAULT_PIPELINE_QUEUE_CAPACITY);
+    }
+
+    // ===== Speculation Configuration =====
+
+    /**
+     * Whether the node after a gate starts speculatively while the gate
+     * runs. Opt-in; when enabled, applies to the validation and decomposition
+     * consistency gates unless a gates list is given.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isSpeculative(String gateNode) {
+        if (!(Boolean) configCache.getOrDefault("speculation.enabled", false)) {
+            return false;
+        }
+        return ((Set<String>) configCache.getOrDefault("speculation.gates", DEFAULT_SPECULATIVE_GATES))
+                .contains(gateNode);
+    }
+
+    // ===== Fast Path Configuration =====
+
+    /**
+     * Whether a statement is first converted with one combined LLM call, with
+     * the full multi-agent workflow only as fallback. Opt-in.
+     */
+    public boolean isFastPathEnabled() {
+        return (Boolean) configCache.getOrDefault("fast_path.enabled", false);
+    }
+
+    // ===== Pre-validation Configuration =====
+
+    /**
+     * Whether statements are first checked by the rule-based PreValidator,
+     * so clearly invalid or clearly valid ones skip the validator LLM call.
+     */
+    public boolean isPreValidationEnabled() {
+        return (Boolean) configCache.getOrDefault("pre_validation.enabled", true);
+    }
+
+    // ===== Run Deadline Configuration =====
+
+    /**
+     * Time a workflow run may take, retries included, before it is stopped
+     * with the tree built so far. 0 means no limit.
+     */
+    public int getRunDeadlineSeconds() {
+        return (Integer) configCache.getOrDefault("run.deadline.seconds", DEFAULT_RUN_DEADLINE_SECONDS);
+    }
+
+    // ===== Metrics Configuration =====
+
+    /**
+     * File the JSON metrics snapshot is written to periodically.
+     *
+     * @return the file, or null if snapshots are disabled
+     */
+    public java.nio.file.Path getMetricsSnapshotFile() {
+        String file = (String) configCache.get("metrics.snapshot.file");
+        return file != null ? java.nio.file.Paths.get(file) : null;
+    }
+
+    public int getMetricsSnapshotSeconds() {
+        return (Integer) configCache.getOrDefault("metrics.snapshot.seconds", DEFAULT_METRICS_SNAPSHOT_SECONDS);
+    }
+
+    // ===== Prompt Budget Configuration =====
+
+    /**
+     * Token budget of a rendered prompt, from its max_prompt_tokens attribute
+     * or the &lt;prompt_budget&gt; default. Oversized context sections are
+     * trimmed to fit.
+     *
+     * @return the budget, or 0 if the prompt has none
+     */
+    public int getMaxPromptTokens(String promptKey) {
+        int defaultBudget = (Integer) configCache.getOrDefault("prompt.max.tokens", 0);
+        if (promptKey == null) {
+            return defaultBudget;
+        }
+        try {
+            String value = promptRegistry.getAttribute(promptKey, "max_prompt_tokens");
+            return value != null && !value.trim().isEmpty() ? Integer.parseInt(value.trim()) : defaultBudget;
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid max_prompt_tokens for [key={}], using default [budget={}]", promptKey,
+                    defaultBudget);
+            return defaultBudget;
+        }
+    }
+
+    // ===== Agent Executor Configuration =====
+
+    public String getAgentExecutorType() {
+        return (String) configCache.getOrDefault("executor.type", DEFAULT_EXECUTOR_TYPE);
+    }
+
+    /**
+     * Number of platform threads when virtual threads are not used.
+     */
+    public int getAgentExecutorPoolSize() {
+        return (Integer) configCache.getOrDefault("executor.pool.size", DEFAULT_EXECUTOR_POOL_SIZE);
+    }
+
+    public int getAgentExecutorQueueCapacity() {
+        return (Integer) configCache.getOrDefault("executor.queue.capacity", DEFAULT_EXECUTOR_QUEUE_CAPACITY);
+    }
+
     private String getProviderEnvKey(String provider) {
         switch (provider.toLowerCase()) {
             case "openai":
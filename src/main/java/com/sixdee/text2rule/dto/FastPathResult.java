@@ -0,0 +1,111 @@
+package com.sixdee.text2rule.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * Combined answer of the single-call fast path: what the validation,
+ * decomposition, condition, converter, IF and action agents would each have
+ * returned for one statement.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class FastPathResult {
+    @JsonProperty("validation")
+    private ValidationResult validation;
+
+    @JsonProperty("decomposition")
+    private DecompositionResult decomposition;
+
+    @JsonProperty("segments")
+    private List<Segment> segments;
+
+    @JsonProperty("schedule")
+    private ScheduleParserResult schedule;
+
+    public ValidationResult getValidation() {
+        return validation;
+    }
+
+    public void setValidation(ValidationResult validation) {
+        this.validation = validation;
+    }
+
+    public DecompositionResult getDecomposition() {
+        return decomposition;
+    }
+
+    public void setDecomposition(DecompositionResult decomposition) {
+        this.decomposition = decomposition;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public void setSegments(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * @return parsed form of the decomposition's schedule text, or null if
+     *         the statement has no schedule
+     */
+    public ScheduleParserResult getSchedule() {
+        return schedule;
+    }
+
+    public void setSchedule(ScheduleParserResult schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * One condition/action rule of the normal statements.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Segment {
+        @JsonProperty("rule")
+        private String rule;
+
+        @JsonProperty("conversion")
+        private RuleConverterResult conversion;
+
+        @JsonProperty("if_condition")
+        private String ifCondition;
+
+        @JsonProperty("action_details")
+        private ActionExtractionResult actionDetails;
+
+        public String getRule() {
+            return rule;
+        }
+
+        public void setRule(String rule) {
+            this.rule = rule;
+        }
+
+        public RuleConverterResult getConversion() {
+            return conversion;
+        }
+
+        public void setConversion(RuleConverterResult conversion) {
+            this.conversion = conversion;
+        }
+
+        public String getIfCondition() {
+            return ifCondition;
+        }
+
+        public void setIfCondition(String ifCondition) {
+            this.ifCondition = ifCondition;
+        }
+
+        public ActionExtractionResult getActionDetails() {
+            return actionDetails;
+        }
+
+        public void setActionDetails(ActionExtractionResult actionDetails) {
+            this.actionDetails = actionDetails;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.sixdee.text2rule.exception;
+
+/**
+ * Exception thrown when an LLM provider cannot serve a call: it kept
+ * answering with rate-limit or server errors after all retries, or its
+ * circuit breaker is open.
+ * Lets agents and workflows tell an outage apart from a bad answer.
+ */
+public class ProviderUnavailableException extends Text2RuleException {
+
+    private final String provider;
+
+    public ProviderUnavailableException(String provider, String message) {
+        super(String.format("LLM provider '%s' unavailable: %s", provider, message));
+        this.provider = provider;
+    }
+
+    public ProviderUnavailableException(String provider, String message, Throwable cause) {
+        super(String.format("LLM provider '%s' unavailable: %s", provider, message), cause);
+        this.provider = provider;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    /**
+     * @return the ProviderUnavailableException in the cause chain of the
+     *         given error, or null if the error has another cause
+     */
+    public static ProviderUnavailableException findIn(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof ProviderUnavailableException) {
+                return (ProviderUnavailableException) current;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return null;
+    }
+}
@@ -2,12 +2,34 @@ package com.sixdee.text2rule.factory;
 
 import com.sixdee.text2rule.config.ConfigurationManager;
 import com.sixdee.text2rule.exception.ConfigurationException;
+import com.sixdee.text2rule.llm.CachingChatModel;
+import com.sixdee.text2rule.llm.CancellableChatModel;
+import com.sixdee.text2rule.llm.HedgingChatModel;
+import com.sixdee.text2rule.llm.MeteredChatModel;
+import com.sixdee.text2rule.llm.RateLimitedChatModel;
+import com.sixdee.text2rule.llm.ResilientChatModel;
+import com.sixdee.text2rule.llm.ResponseCache;
+import com.sixdee.text2rule.llm.RoutingChatModel;
+import com.sixdee.text2rule.llm.SingleFlightChatModel;
+import com.sixdee.text2rule.llm.StreamingJsonChatModel;
+import com.sixdee.text2rule.llm.TokenAccountingChatModel;
+import com.sixdee.text2rule.llm.TokenBucket;
+import com.sixdee.text2rule.llm.TokenLedger;
+import com.sixdee.text2rule.observability.Metrics;
+import dev.ai4j.openai4j.OpenAiClient;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Factory for creating ChatLanguageModel instances based on configuration.
@@ -17,8 +39,23 @@ import java.time.Duration;
 public class LLMClientFactory {
     private static final Logger logger = LoggerFactory.getLogger(LLMClientFactory.class);
 
+    // One rate budget per provider, shared by every model created in this JVM
+    private static final Map<String, TokenBucket> RATE_BUDGETS = new ConcurrentHashMap<>();
+
+    // Response cache shared by every model created in this JVM, created lazily
+    private static volatile ResponseCache responseCache;
+
+    private static final AtomicBoolean LEDGER_REPORT_REGISTERED = new AtomicBoolean();
+
     /**
      * Create ChatLanguageModel based on active provider in configuration.
+     * The returned model is wrapped in the rate-limited gateway so that all
+     * agents share the provider's request and token budgets, in the
+     * single-flight layer so that identical concurrent prompts share one call,
+     * and in the response cache so that repeated prompts are not paid for
+     * twice. Every call that reaches the provider is recorded in the
+     * {@link TokenLedger}. Streaming, hedging and multi-backend routing are
+     * added when configured.
      * 
      * @param config ConfigurationManager instance
      * @return Configured ChatLanguageModel instance
@@ -32,11 +69,15 @@ public class LLMClientFactory {
             activeProvider = config.getActiveProvider();
             logger.info("Creating ChatLanguageModel [provider={}]", activeProvider);
 
+            if (!config.getBackendNames().isEmpty()) {
+                return createRoutedModel(config);
+            }
+
             switch (activeProvider.toLowerCase()) {
                 case "openai":
-                    return createOpenAIModel(config);
+                    return decorate(createOpenAIModel(config), activeProvider, config);
                 case "groq":
-                    return createGroqModel(config);
+                    return decorate(createGroqModel(config), activeProvider, config);
                 case "anthropic":
                     logger.warn("Anthropic provider requires langchain4j-anthropic dependency");
                     throw new ConfigurationException(
@@ -72,6 +113,238 @@ public class LLMClientFactory {
         }
     }
 
+    /**
+     * Put the gateway layers around a single provider model, innermost first:
+     * streaming, token accounting, metrics, rate limit, retry and circuit
+     * breaker, hedging, single-flight, the response cache and cancellation.
+     */
+    private static ChatLanguageModel decorate(ChatLanguageModel model, String provider,
+            ConfigurationManager config) {
+        String modelName = config.getProviderModelName(provider);
+        RateLimitedChatModel limited = withRateLimit(new MeteredChatModel(withTokenAccounting(withStreaming(model,
+                config.getProviderBaseUrl(provider), config.getApiKey(provider), modelName, config)), provider),
+                provider, config);
+        ChatLanguageModel hedged = withHedging(withResilience(limited, provider, config),
+                Collections.singletonList(limited.getBucket()), config.getExpectedOutputTokens(provider), config);
+        return new CancellableChatModel(
+                withCache(withSingleFlight(hedged), modelSignature(provider, modelName, config), config));
+    }
+
+    /**
+     * Route calls over the backends configured under &lt;backends&gt;. Every
+     * backend gets its own rate budget, retries and circuit breaker;
+     * single-flight and the response cache sit in front of the router.
+     */
+    private static ChatLanguageModel createRoutedModel(ConfigurationManager config) {
+        List<RoutingChatModel.Backend> backends = new ArrayList<>();
+        List<String> modelNames = new ArrayList<>();
+        for (String name : config.getBackendNames()) {
+            String provider = config.getBackendProvider(name);
+            if (!"openai".equals(provider) && !"groq".equals(provider)) {
+                throw new ConfigurationException(
+                        "Unsupported provider for backend " + name + ": " + provider
+                                + ". Only OpenAI-compatible providers can be routed.");
+            }
+
+            String baseUrl = config.getBackendBaseUrl(name);
+            String apiKey = config.getBackendApiKey(name);
+            String modelName = config.getBackendModelName(name);
+            logger.info("Creating LLM backend [name={}, provider={}, model={}, base_url={}]",
+                    name, provider, modelName, baseUrl);
+
+            ChatLanguageModel model = OpenAiChatModel.builder()
+                    .apiKey(apiKey)
+                    .baseUrl(baseUrl)
+                    .modelName(modelName)
+                    .timeout(config.getTimeout())
+                    .temperature(config.getTemperature())
+                    .maxTokens(config.getMaxTokens())
+                    // Retries are done by ResilientChatModel, which honours the provider's wait
+                    .maxRetries(1)
+                    .build();
+            RateLimitedChatModel limited = withRateLimit(new MeteredChatModel(
+                    withTokenAccounting(withStreaming(model, baseUrl, apiKey, modelName, config)), name), name, config);
+            backends.add(new RoutingChatModel.Backend(name, withResilience(limited, name, config),
+                    limited.getBucket(), config.getExpectedOutputTokens(name)));
+            modelNames.add(modelName);
+        }
+
+        RoutingChatModel router = new RoutingChatModel(backends);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.info("LLM routing {}", router.getBackends()),
+                "llm-routing-shutdown"));
+        logger.info("LLM routing enabled [backends={}]", config.getBackendNames());
+
+        List<TokenBucket> budgets = new ArrayList<>();
+        int expectedOutputTokens = 0;
+        for (RoutingChatModel.Backend backend : backends) {
+            budgets.add(backend.getBucket());
+            expectedOutputTokens = Math.max(expectedOutputTokens, config.getExpectedOutputTokens(backend.getName()));
+        }
+        ChatLanguageModel hedged = withHedging(router, budgets, expectedOutputTokens, config);
+        return new CancellableChatModel(withCache(withSingleFlight(hedged),
+                modelSignature("routed", String.join(",", modelNames), config), config));
+    }
+
+    /**
+     * When streaming is enabled, send plain completions through a streamed
+     * call that returns as soon as the agent's JSON is complete. The blocking
+     * model is kept for tool calls. Otherwise only calls that can be cancelled
+     * are streamed, since cancelling a streamed call closes its HTTP request.
+     */
+    private static ChatLanguageModel withStreaming(ChatLanguageModel model, String baseUrl, String apiKey,
+            String modelName, ConfigurationManager config) {
+        Duration timeout = config.getTimeout();
+        OpenAiClient client = OpenAiClient.builder()
+                .baseUrl(baseUrl)
+                .openAiApiKey(apiKey)
+                .callTimeout(timeout)
+                .connectTimeout(timeout)
+                .readTimeout(timeout)
+                .writeTimeout(timeout)
+                .build();
+        StreamingJsonChatModel streaming = new StreamingJsonChatModel(client, modelName,
+                config.getTemperature(), config.getMaxTokens(), timeout, model, config::getEarlyCompletionMode,
+                config.isStreamingEnabled());
+        if (!config.isStreamingEnabled()) {
+            return streaming;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.info(
+                "LLM streaming [early_completions={}, full_completions={}]",
+                streaming.getEarlyCompletions(), streaming.getFullCompletions()), "llm-streaming-shutdown"));
+        logger.info("LLM streaming enabled [base_url={}]", baseUrl);
+        return streaming;
+    }
+
+    /**
+     * Record the token usage of every call that reaches the provider. The
+     * totals per agent and prompt key are logged at shutdown.
+     */
+    private static ChatLanguageModel withTokenAccounting(ChatLanguageModel model) {
+        TokenLedger ledger = TokenLedger.getInstance();
+        if (LEDGER_REPORT_REGISTERED.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.info(
+                    "LLM token usage [total=({}), by_agent={}, by_prompt_key={}, trimmed_sections={}, "
+                            + "trimmed_tokens={}]",
+                    ledger.getTotal(), ledger.getByAgent(), ledger.getByPromptKey(), ledger.getTrimmedSections(),
+                    ledger.getTrimmedTokens()), "llm-token-ledger-shutdown"));
+        }
+        return new TokenAccountingChatModel(model, ledger);
+    }
+
+    /**
+     * Wrap a provider model in the rate-limited gateway for that provider or
+     * backend.
+     */
+    private static RateLimitedChatModel withRateLimit(ChatLanguageModel model, String provider,
+            ConfigurationManager config) {
+        String budgetKey = provider.toLowerCase();
+        TokenBucket bucket = RATE_BUDGETS.computeIfAbsent(budgetKey, key -> new TokenBucket(key,
+                config.getRequestsPerMinute(key), config.getTokensPerMinute(key)));
+
+        logger.info("LLM gateway enabled [provider={}, rpm={}, tpm={}]",
+                budgetKey, bucket.getRequestsPerMinute(), bucket.getTokensPerMinute());
+        return new RateLimitedChatModel(model, bucket, config.getExpectedOutputTokens(budgetKey));
+    }
+
+    /**
+     * Retry rate-limited and failed calls to one provider or backend with
+     * jittered backoff (or the wait the provider asks for), and fail fast
+     * while it keeps failing.
+     */
+    private static ChatLanguageModel withResilience(ChatLanguageModel model, String name,
+            ConfigurationManager config) {
+        ResilientChatModel resilient = new ResilientChatModel(name.toLowerCase(), model,
+                config.getRetryMaxAttempts(), config.getRetryBaseBackoffMillis(), config.getRetryMaxBackoffMillis(),
+                config.getCircuitFailureThreshold(), config.getCircuitOpenSeconds() * 1000L);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.info(
+                "LLM resilience [provider={}, retries={}, short_circuited={}, unavailable={}]",
+                resilient.getName(), resilient.getRetries(), resilient.getShortCircuited(),
+                resilient.getUnavailable()), "llm-resilience-shutdown"));
+        return resilient;
+    }
+
+    /**
+     * Send a duplicate request for idempotent prompts whose call is slower
+     * than usual, if one of the budgets can admit it right away.
+     */
+    private static ChatLanguageModel withHedging(ChatLanguageModel model, List<TokenBucket> budgets,
+            int expectedOutputTokens, ConfigurationManager config) {
+        if (!config.isHedgingEnabled()) {
+            return model;
+        }
+
+        HedgingChatModel hedging = new HedgingChatModel(model, budgets, expectedOutputTokens, config::isHedgeable,
+                config.getHedgingPercentile(), config.getHedgingMinSamples());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.info(
+                "LLM hedging [hedged_calls={}, hedge_wins={}, skipped_for_budget={}]",
+                hedging.getHedgedCalls(), hedging.getHedgeWins(), hedging.getSkippedForBudget()),
+                "llm-hedging-shutdown"));
+        logger.info("LLM hedging enabled [percentile={}, min_samples={}]", config.getHedgingPercentile(),
+                config.getHedgingMinSamples());
+        return hedging;
+    }
+
+    /**
+     * Coalesce identical in-flight requests so that only one of them consumes
+     * rate budget.
+     */
+    private static ChatLanguageModel withSingleFlight(ChatLanguageModel model) {
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(model);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.info(
+                "LLM single-flight [provider_calls={}, saved_calls={}]",
+                singleFlight.getProviderCalls(), singleFlight.getSavedCalls()), "llm-single-flight-shutdown"));
+        return singleFlight;
+    }
+
+    /**
+     * Put the shared response cache in front of a model. The model signature
+     * makes sure entries are never shared across providers, models or
+     * sampling settings.
+     */
+    private static ChatLanguageModel withCache(ChatLanguageModel model, String modelSignature,
+            ConfigurationManager config) {
+        if (!config.isResponseCacheEnabled()) {
+            logger.info("LLM response cache disabled");
+            return model;
+        }
+        return new CachingChatModel(model, getResponseCache(config), modelSignature, config::getCacheTtlSeconds);
+    }
+
+    private static String modelSignature(String provider, String modelName, ConfigurationManager config) {
+        return String.join("|", provider.toLowerCase(), modelName,
+                String.valueOf(config.getTemperature()), String.valueOf(config.getMaxTokens()));
+    }
+
+    /**
+     * @return the JVM-wide response cache, created on first use
+     */
+    public static ResponseCache getResponseCache(ConfigurationManager config) {
+        if (responseCache == null) {
+            synchronized (LLMClientFactory.class) {
+                if (responseCache == null) {
+                    String directory = config.getResponseCacheDirectory();
+                    ResponseCache cache = new ResponseCache(config.getResponseCacheMaxEntries(),
+                            directory == null || directory.trim().isEmpty() ? null : Paths.get(directory),
+                            config.getResponseCacheMaxDiskBytes());
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        logger.info("LLM response cache [{}]", cache.getStats());
+                        cache.close();
+                    }, "llm-cache-shutdown"));
+                    Metrics.gauge("llm_cache_hits", "LLM response cache hits, memory and disk",
+                            () -> cache.getStats().getHits());
+                    Metrics.gauge("llm_cache_misses", "LLM response cache misses",
+                            () -> cache.getStats().getMisses());
+                    Metrics.gauge("llm_cache_hit_ratio", "Share of LLM response cache lookups that hit",
+                            () -> cache.getStats().getHitRatio());
+                    logger.info("LLM response cache enabled [dir={}, max_entries={}]",
+                            directory, config.getResponseCacheMaxEntries());
+                    responseCache = cache;
+                }
+            }
+        }
+        return responseCache;
+    }
+
     /**
      * Create OpenAI ChatLanguageModel.
      */
@@ -97,6 +370,8 @@ public class LLMClientFactory {
                     .timeout(timeout)
                     .temperature(config.getTemperature())
                     .maxTokens(config.getMaxTokens())
+                    // Retries are done by ResilientChatModel, which honours the provider's wait
+                    .maxRetries(1)
                     .build();
             return model;
         } catch (Exception e) {
@@ -137,6 +412,8 @@ public class LLMClientFactory {
                     .timeout(timeout)
                     .temperature(config.getTemperature())
                     .maxTokens(config.getMaxTokens())
+                    // Retries are done by ResilientChatModel, which honours the provider's wait
+                    .maxRetries(1)
                     .build();
             return model;
         } catch (Exception e) {
@@ -0,0 +1,173 @@
+package com.sixdee.text2rule.helper;
+
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.observability.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor that runs agents, workflow nodes and their blocking LLM and
+ * Supabase calls.
+ *
+ * Agents used to run on ForkJoinPool.commonPool, which is sized for CPU work
+ * and is shared with the rest of the JVM, so a few blocking HTTP calls were
+ * enough to starve it. This executor uses one virtual thread per task when
+ * running on Java 21 or later, and a fixed pool of named platform threads
+ * otherwise. When the platform pool's queue is full the submitting thread runs
+ * the task itself, which slows producers down instead of rejecting work.
+ *
+ * Queue depth (submitted but not started) and active task counts are tracked
+ * for both modes. Tasks run with the LLM call context (run, agent, prompt key)
+ * of the thread that submitted them.
+ */
+public final class AgentExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(AgentExecutors.class);
+
+    private static final String THREAD_PREFIX = "agent-io-";
+
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final LongAdder completed = new LongAdder();
+
+    private static volatile ExecutorService delegate;
+    private static volatile String mode;
+
+    private static final Executor IO = task -> ioDelegate().execute(instrument(task));
+
+    private AgentExecutors() {
+    }
+
+    /**
+     * @return the shared executor for blocking agent work
+     */
+    public static Executor io() {
+        return IO;
+    }
+
+    private static Runnable instrument(Runnable task) {
+        Runnable bound = LlmCallContext.propagate(task);
+        queued.incrementAndGet();
+        return () -> {
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                bound.run();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+            }
+        };
+    }
+
+    private static ExecutorService ioDelegate() {
+        if (delegate == null) {
+            synchronized (AgentExecutors.class) {
+                if (delegate == null) {
+                    delegate = create();
+                    Metrics.gauge("agent_executor_queue_depth", "Agent tasks submitted but not started",
+                            AgentExecutors::getQueueDepth);
+                    Metrics.gauge("agent_executor_active_tasks", "Agent tasks running", AgentExecutors::getActiveTasks);
+                }
+            }
+        }
+        return delegate;
+    }
+
+    private static ExecutorService create() {
+        String type = "auto";
+        int poolSize = 32;
+        int queueCapacity = 256;
+        try {
+            ConfigurationManager config = ConfigurationManager.getInstance();
+            type = config.getAgentExecutorType();
+            poolSize = config.getAgentExecutorPoolSize();
+            queueCapacity = config.getAgentExecutorQueueCapacity();
+        } catch (Exception e) {
+            logger.debug("Agent executor not configured, using defaults [error={}]", e.getMessage());
+        }
+
+        if (!"platform".equals(type)) {
+            ExecutorService virtual = createVirtualThreadExecutor();
+            if (virtual != null) {
+                mode = "virtual";
+                logger.info("Agent executor using virtual threads");
+                return virtual;
+            }
+            if ("virtual".equals(type)) {
+                logger.warn("Virtual threads need Java 21+, falling back to platform threads [java={}]",
+                        System.getProperty("java.version"));
+            }
+        }
+
+        mode = "platform";
+        logger.info("Agent executor using platform threads [pool_size={}, queue_capacity={}]", poolSize,
+                queueCapacity);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), new NamedDaemonThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(..).factory()),
+     * looked up reflectively so the code still compiles for Java 11.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, THREAD_PREFIX, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, factory);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return "virtual" or "platform", or null before first use
+     */
+    public static String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return tasks submitted but not yet started
+     */
+    public static int getQueueDepth() {
+        return queued.get();
+    }
+
+    public static int getActiveTasks() {
+        return active.get();
+    }
+
+    public static long getCompletedTasks() {
+        return completed.sum();
+    }
+
+    private static final class NamedDaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, THREAD_PREFIX + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.sixdee.text2rule.helper;
+
+import com.sixdee.text2rule.dto.ValidationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Rule-based validation run before the validator LLM call. Keyword
+ * dictionaries and compiled patterns decide the ValidationResult flags
+ * (action, channel, message id, comparison, schedule, bonus, policy,
+ * sampling) locally.
+ *
+ * A statement that clearly cannot become a rule (empty, no words or too
+ * short) is rejected, and one that clearly can (an action with a channel or
+ * benefit, and a condition) is accepted, each with a complete
+ * ValidationResult. Anything else is ambiguous and goes to the
+ * basic_validator_agent_prompt as before; the dictionaries cannot cover every
+ * way of wording a rule, so missing keywords never reject a statement.
+ *
+ * The schedule flag is only set from unambiguous wording: weekdays, month
+ * names, dates and times. Words that are often but not always about time
+ * ("from", "each", "until", "may") leave it undecided, and the statement
+ * goes to the LLM. Counts of each verdict, and so the local hit rate, are
+ * available from {@link #getStats()}.
+ */
+public final class PreValidator {
+
+    private static final int MIN_WORDS = 3;
+    private static final int MAX_LENGTH = 4000;
+
+    private static final Pattern LETTERS = Pattern.compile("\\p{L}");
+    private static final Pattern ACTION = keywords("give", "gives", "send", "sends", "offer", "offers", "provide",
+            "provides", "credit", "credits", "award", "awards", "grant", "grants", "reward", "rewards", "notify",
+            "push", "get", "gets", "receive", "receives", "allocate", "assign", "trigger", "enable", "activate");
+    private static final Pattern CHANNEL = keywords("sms", "email", "e-mail", "push", "ussd", "ivr", "whatsapp",
+            "notification", "app", "call", "message", "obd");
+    private static final Pattern MESSAGE_ID = Pattern.compile(
+            "(?i)\\b(?:message[_ ]?id|msg[_ ]?id|template[_ ]?id)\\s*[:=#]?\\s*\\w+|\\b(?:sms|msg|message)\\s*#?\\d+\\b");
+    private static final Pattern COMPARISON = Pattern.compile("(?i)[<>]=?|==|!=|\\b(?:above|below|over|under|"
+            + "more than|less than|greater than|fewer than|at least|at most|between|equals?|exceeds?|within|"
+            + "minimum|maximum|not)\\b");
+    private static final Pattern CONDITION = Pattern.compile("(?i)\\b(?:if|when|whenever|who|whose|where|having|"
+            + "based on|only for|eligible)\\b|\\b(?:subscribers?|customers?|users?|members?)\\s+"
+            + "(?:in|from|of|with|on|who|whose|having|above|below)\\b");
+    private static final String MONTH = "(?:jan|feb|mar|apr|may|jun|jul|aug|sep|sept|oct|nov|dec)";
+    private static final Pattern SCHEDULE = Pattern.compile("(?i)\\b(?:monday|tuesday|wednesday|thursday|friday|"
+            + "saturday|sunday|weekdays?|weekends?|daily|weekly|monthly|hourly|january|february|march|april|june|"
+            + "july|august|september|october|november|december)\\b"
+            + "|\\b" + MONTH + "\\.?\\s+\\d{1,2}(?:st|nd|rd|th)?\\b|\\b\\d{1,2}(?:st|nd|rd|th)?\\s+" + MONTH + "\\b"
+            + "|\\b\\d{1,4}[/.-]\\d{1,2}[/.-]\\d{1,4}\\b|\\b\\d{1,2}(?::\\d{2})?\\s*(?:am|pm)\\b|\\b\\d{1,2}:\\d{2}\\b");
+    // Often but not always about time, e.g. "subscribers from Adimali"
+    private static final Pattern WEAK_SCHEDULE = Pattern.compile("(?i)\\b(?:every|each|today|tomorrow|until|till|"
+            + "starting|from|" + MONTH + ")\\b");
+    private static final Pattern BONUS = Pattern.compile("(?i)\\b(?:bonus|cashback|free|extra|discount|"
+            + "data|minutes?|mins|points|reward|voucher|coupon|offer|pack|talktime|validity)\\b"
+            + "|\\b\\d+(?:\\.\\d+)?\\s*(?:gb|mb|kb|%|rs|inr|usd|\\$)");
+    private static final Pattern POLICY = keywords("policy", "once", "limit", "limited", "cap", "capped",
+            "maximum", "max", "per", "only");
+    private static final Pattern SAMPLING = Pattern.compile("(?i)\\b(?:sample|sampling|random|randomly|"
+            + "control group|target group)\\b|\\b\\d{1,3}\\s*(?:%|percent)\\s+of\\b");
+    // Wording that makes a statement a question or a draft rather than a rule
+    private static final Pattern HEDGE = Pattern.compile("(?i)\\?|\\b(?:maybe|perhaps|tbd|todo|not sure|"
+            + "something like|etc)\\b");
+
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder accepted = new LongAdder();
+    private static final LongAdder ambiguous = new LongAdder();
+
+    public enum Verdict {
+        /** Clearly not a rule; the ValidationResult says why */
+        INVALID,
+        /** Clearly a rule; the ValidationResult is complete */
+        VALID,
+        /** Needs the validator LLM call */
+        AMBIGUOUS
+    }
+
+    /**
+     * Local verdict for one statement.
+     */
+    public static final class Outcome {
+        private final Verdict verdict;
+        private final ValidationResult result;
+
+        private Outcome(Verdict verdict, ValidationResult result) {
+            this.verdict = verdict;
+            this.result = result;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+
+        /**
+         * @return true if no LLM validation is needed
+         */
+        public boolean isDecided() {
+            return verdict != Verdict.AMBIGUOUS;
+        }
+
+        /**
+         * @return the locally computed result; its flags are set for every
+         *         verdict, its validity is only meaningful when decided
+         */
+        public ValidationResult getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Verdict counts since start-up.
+     */
+    public static final class Stats {
+        private final long rejected;
+        private final long accepted;
+        private final long ambiguous;
+
+        private Stats(long rejected, long accepted, long ambiguous) {
+            this.rejected = rejected;
+            this.accepted = accepted;
+            this.ambiguous = ambiguous;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getAccepted() {
+            return accepted;
+        }
+
+        public long getAmbiguous() {
+            return ambiguous;
+        }
+
+        /**
+         * @return share of statements decided without the LLM, 0 if none
+         *         were checked
+         */
+        public double getHitRate() {
+            long checked = rejected + accepted + ambiguous;
+            return checked == 0 ? 0 : (double) (rejected + accepted) / checked;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rejected=%d, accepted=%d, ambiguous=%d, hit_rate=%.2f", rejected, accepted,
+                    ambiguous, getHitRate());
+        }
+    }
+
+    private PreValidator() {
+    }
+
+    public static Stats getStats() {
+        return new Stats(rejected.sum(), accepted.sum(), ambiguous.sum());
+    }
+
+    /**
+     * Decide what can be decided about a statement without the LLM.
+     */
+    public static Outcome check(String input) {
+        String text = input == null ? "" : input.trim();
+        ValidationResult result = new ValidationResult();
+        result.setInputText(input);
+
+        boolean hasAction = ACTION.matcher(text).find();
+        boolean hasChannel = CHANNEL.matcher(text).find();
+        boolean hasBonus = BONUS.matcher(text).find();
+        boolean hasComparison = COMPARISON.matcher(text).find();
+        boolean hasCondition = hasComparison || CONDITION.matcher(text).find();
+        boolean hasValidFormat = LETTERS.matcher(text).find() && text.length() <= MAX_LENGTH;
+        result.setHasAction(hasAction);
+        result.setHasCondition(hasCondition);
+        result.setHasBonus(hasBonus);
+        boolean hasSchedule = SCHEDULE.matcher(text).find();
+        boolean scheduleUndecided = !hasSchedule && WEAK_SCHEDULE.matcher(text).find();
+        result.setHasSchedule(hasSchedule);
+        result.setHasPolicy(POLICY.matcher(text).find());
+        result.setHasSampling(SAMPLING.matcher(text).find());
+        result.setHasValidFormat(hasValidFormat);
+        result.setHasMessageIdWithAction(hasAction && MESSAGE_ID.matcher(text).find());
+
+        List<String> issues = new ArrayList<>();
+        if (!hasValidFormat) {
+            issues.add(text.isEmpty() ? "Statement is empty"
+                    : text.length() > MAX_LENGTH ? "Statement is longer than " + MAX_LENGTH + " characters"
+                            : "Statement contains no words");
+        } else if (text.split("\\s+").length < MIN_WORDS) {
+            issues.add("Statement is too short to describe a rule");
+        }
+        if (!issues.isEmpty()) {
+            result.setValid(false);
+            result.setIssuesDetected(issues);
+            result.setSuggestion("Describe who qualifies and what they receive, e.g. "
+                    + "\"Send SMS 24 to subscribers in Adimali\"");
+            rejected.increment();
+            return new Outcome(Verdict.INVALID, result);
+        }
+
+        if (hasAction && (hasChannel || hasBonus) && hasCondition && !scheduleUndecided
+                && !HEDGE.matcher(text).find()) {
+            result.setValid(true);
+            result.setIssuesDetected(new ArrayList<>());
+            accepted.increment();
+            return new Outcome(Verdict.VALID, result);
+        }
+
+        ambiguous.increment();
+        return new Outcome(Verdict.AMBIGUOUS, result);
+    }
+
+    private static Pattern keywords(String... words) {
+        return Pattern.compile("(?i)\\b(?:" + String.join("|", words) + ")\\b");
+    }
+}
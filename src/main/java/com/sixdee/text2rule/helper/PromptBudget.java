@@ -0,0 +1,152 @@
+package com.sixdee.text2rule.helper;
+
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.llm.TokenEstimator;
+import com.sixdee.text2rule.llm.TokenLedger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps rendered prompts within their configured token budget
+ * (max_prompt_tokens) by cutting down the one context section that can grow,
+ * such as the Supabase KPI document or a subtree's text.
+ *
+ * The section is split into lines, and the lines sharing the most words with
+ * the text the prompt is about are kept, in their original order, until the
+ * budget is used up. The prompt says how many lines were left out, and every
+ * trim is logged and counted in the {@link TokenLedger}, so nothing is dropped
+ * silently.
+ */
+public final class PromptBudget {
+    private static final Logger logger = LoggerFactory.getLogger(PromptBudget.class);
+
+    // Shorter words rarely identify a KPI or a condition
+    private static final int MIN_TERM_LENGTH = 3;
+    // Same ratio as TokenEstimator
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final Set<String> STOP_WORDS = Set.of("the", "and", "for", "with", "whose", "who", "that",
+            "than", "from", "are", "their", "should", "this", "into", "not");
+
+    private PromptBudget() {
+    }
+
+    /**
+     * Fit a context section into the budget of a prompt.
+     *
+     * @param promptKey  PromptRegistry key whose budget applies
+     * @param prompt     the rendered prompt without the section
+     * @param section    the section to fit
+     * @param relevantTo text used to decide which parts of the section matter
+     * @return the section, trimmed if the prompt would exceed its budget
+     */
+    public static String fit(String promptKey, String prompt, String section, String relevantTo) {
+        int maxPromptTokens = getMaxPromptTokens(promptKey);
+        if (maxPromptTokens <= 0 || section == null) {
+            return section;
+        }
+
+        int promptTokens = TokenEstimator.estimate(prompt);
+        int sectionTokens = TokenEstimator.estimate(section);
+        if (promptTokens + sectionTokens <= maxPromptTokens) {
+            return section;
+        }
+
+        String trimmed = trim(section, relevantTo, Math.max(0, maxPromptTokens - promptTokens));
+        int removedTokens = sectionTokens - TokenEstimator.estimate(trimmed);
+        TokenLedger.getInstance().recordTrim(removedTokens);
+        logger.warn("Trimmed prompt section to fit budget [prompt_key={}, budget={}, prompt_tokens={}, "
+                + "section_tokens={}, removed_tokens={}]", promptKey, maxPromptTokens, promptTokens, sectionTokens,
+                removedTokens);
+        return trimmed;
+    }
+
+    /**
+     * Keep the lines of a section most relevant to the given text within
+     * maxTokens.
+     */
+    static String trim(String section, String relevantTo, int maxTokens) {
+        if (TokenEstimator.estimate(section) <= maxTokens) {
+            return section;
+        }
+
+        // Supabase returns the document as JSON, so escaped line breaks count as lines too
+        List<String> lines = new ArrayList<>();
+        for (String line : section.split("\\r?\\n|\\\\n")) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+
+        Set<String> terms = terms(relevantTo);
+        int[] scores = new int[lines.size()];
+        Integer[] order = new Integer[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            order[i] = i;
+            for (String term : terms(lines.get(i))) {
+                if (terms.contains(term)) {
+                    scores[i]++;
+                }
+            }
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> -scores[i]).thenComparingInt(i -> i));
+
+        boolean[] keep = new boolean[lines.size()];
+        int kept = 0;
+        int used = TokenEstimator.estimate(omittedNote(lines.size(), lines.size()));
+        for (int index : order) {
+            int tokens = TokenEstimator.estimate(lines.get(index)) + 1;
+            if (used + tokens <= maxTokens) {
+                keep[index] = true;
+                used += tokens;
+                kept++;
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (keep[i]) {
+                result.append(lines.get(i)).append('\n');
+            }
+        }
+        if (kept == 0 && !lines.isEmpty()) {
+            // Not even one whole line fits; keep the start of the most relevant one
+            String best = lines.get(order[0]);
+            int chars = Math.max(0, maxTokens - used) * CHARS_PER_TOKEN;
+            result.append(best, 0, Math.min(best.length(), chars)).append('\n');
+        }
+        return result.append(omittedNote(lines.size() - kept, lines.size())).toString();
+    }
+
+    private static String omittedNote(int omitted, int total) {
+        return "[" + omitted + " of " + total + " lines omitted to fit the prompt budget]";
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String word : text.toLowerCase().split("[^a-z0-9]+")) {
+            if (word.length() >= MIN_TERM_LENGTH && !STOP_WORDS.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static int getMaxPromptTokens(String promptKey) {
+        try {
+            return ConfigurationManager.getInstance().getMaxPromptTokens(promptKey);
+        } catch (Exception e) {
+            logger.debug("Prompt budget not configured [prompt_key={}]", promptKey);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.sixdee.text2rule.helper;
+
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Shared fan-out helper for agents that walk the rule tree.
+ *
+ * Agents first {@link #collect} the nodes they want to process, then
+ * {@link #map} the per-node LLM work over them with a bounded number of
+ * concurrent calls, and finally apply the results to the tree on the calling
+ * thread. Because all tree mutations happen on one thread in collection order,
+ * children are attached to the right parent in the same order as a sequential
+ * walk would produce.
+ *
+ * Helpers run on the {@link AgentExecutors} I/O executor. The calling thread
+ * takes part in the work, so a call always makes progress even when the
+ * executor is busy.
+ */
+public final class TreeTraversalExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(TreeTraversalExecutor.class);
+
+    private TreeTraversalExecutor() {
+    }
+
+    /**
+     * Collect matching nodes in pre-order.
+     *
+     * @param root               subtree to search
+     * @param matcher            selects the nodes to process
+     * @param descendIntoMatches whether to keep searching below a matching node
+     */
+    public static List<RuleNode<NodeData>> collect(RuleNode<NodeData> root, Predicate<RuleNode<NodeData>> matcher,
+            boolean descendIntoMatches) {
+        List<RuleNode<NodeData>> nodes = new ArrayList<>();
+        collect(root, matcher, descendIntoMatches, nodes);
+        return nodes;
+    }
+
+    private static void collect(RuleNode<NodeData> node, Predicate<RuleNode<NodeData>> matcher,
+            boolean descendIntoMatches, List<RuleNode<NodeData>> nodes) {
+        if (node == null) {
+            return;
+        }
+        boolean matched = matcher.test(node);
+        if (matched) {
+            nodes.add(node);
+        }
+        if ((!matched || descendIntoMatches) && node.getChildren() != null) {
+            for (RuleNode<NodeData> child : new ArrayList<>(node.getChildren())) {
+                collect(child, matcher, descendIntoMatches, nodes);
+            }
+        }
+    }
+
+    /**
+     * Run {@code work} for every item (usually a collected node) with at most
+     * the agent's configured parallelism. The work must not modify the tree.
+     *
+     * @param agentName name used to look up the parallelism limit
+     * @return results in the same order as {@code items}
+     */
+    public static <T, R> List<R> map(String agentName, List<T> items, Function<T, R> work) {
+        if (items.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int parallelism = Math.min(items.size(), Math.max(1, getParallelism(agentName)));
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(items.size());
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(items.size());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < items.size()) {
+                try {
+                    results.set(index, work.apply(items.get(index)));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        logger.debug("Processing {} items for {} [parallelism={}]", items.size(), agentName, parallelism);
+        for (int i = 1; i < parallelism; i++) {
+            AgentExecutors.io().execute(worker);
+        }
+        worker.run();
+        // Wait for items, not helpers: a helper still queued behind a busy
+        // executor finds nothing left to do and must not hold up the caller
+        awaitQuietly(done);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        List<R> ordered = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            ordered.add(results.get(i));
+        }
+        return ordered;
+    }
+
+    private static void awaitQuietly(CountDownLatch done) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int getParallelism(String agentName) {
+        try {
+            return ConfigurationManager.getInstance().getTreeParallelism(agentName);
+        } catch (Exception e) {
+            logger.debug("Tree parallelism not configured, running sequentially [agent={}]", agentName);
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.sixdee.text2rule.llm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds the responses of a workflow run back from the {@link ResponseCache}
+ * until the run has accepted them.
+ *
+ * {@link CachingChatModel} stages the responses of calls made under a run id
+ * (see {@link LlmCallContext}) here instead of caching them. A stage that
+ * rejects what a prompt produced, e.g. an extraction that failed its
+ * consistency check, calls {@link #reject(String)}, so its retry reaches the
+ * provider again and the rejected answer is never served to a later run.
+ * {@link #commitRun(String)} caches what is left once the run succeeds;
+ * {@link #discardRun(String)} drops everything of a run that failed.
+ *
+ * Calls made outside a run have no one to accept them and are cached
+ * directly. Only the most recent runs are retained, like {@link TokenLedger}.
+ */
+public final class CacheAdmission {
+
+    private static final int MAX_RUNS = 1024;
+
+    private static final CacheAdmission INSTANCE = new CacheAdmission();
+
+    private final Map<String, List<Staged>> byRun = Collections.synchronizedMap(
+            new LinkedHashMap<String, List<Staged>>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<Staged>> eldest) {
+                    return size() > MAX_RUNS;
+                }
+            });
+
+    private static final class Staged {
+        private final ResponseCache cache;
+        private final String key;
+        private final ResponseCache.CachedResponse response;
+
+        private Staged(ResponseCache cache, String key, ResponseCache.CachedResponse response) {
+            this.cache = cache;
+            this.key = key;
+            this.response = response;
+        }
+    }
+
+    public static CacheAdmission getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Cache a response once the current run accepts it, or now if there is
+     * no run.
+     */
+    public void stage(ResponseCache cache, String key, ResponseCache.CachedResponse response) {
+        String runId = LlmCallContext.getRunId();
+        if (runId == null) {
+            cache.put(key, response);
+            return;
+        }
+        List<Staged> staged = byRun.computeIfAbsent(runId, id -> new ArrayList<>());
+        synchronized (staged) {
+            staged.add(new Staged(cache, key, response));
+        }
+    }
+
+    /**
+     * Drop the responses the current run got for a prompt key, because it
+     * rejected them.
+     *
+     * @return the number of responses dropped
+     */
+    public int reject(String promptKey) {
+        String runId = LlmCallContext.getRunId();
+        List<Staged> staged = runId != null ? byRun.get(runId) : null;
+        if (staged == null) {
+            return 0;
+        }
+        synchronized (staged) {
+            int before = staged.size();
+            staged.removeIf(entry -> Objects.equals(promptKey, entry.response.getPromptKey()));
+            return before - staged.size();
+        }
+    }
+
+    /**
+     * Cache the responses a finished run kept.
+     *
+     * @return the number of responses cached
+     */
+    public int commitRun(String runId) {
+        List<Staged> staged = runId != null ? byRun.remove(runId) : null;
+        if (staged == null) {
+            return 0;
+        }
+        synchronized (staged) {
+            for (Staged entry : staged) {
+                entry.cache.put(entry.key, entry.response);
+            }
+            return staged.size();
+        }
+    }
+
+    /**
+     * Drop the responses of a run that failed or was stopped.
+     */
+    public void discardRun(String runId) {
+        if (runId != null) {
+            byRun.remove(runId);
+        }
+    }
+
+    /**
+     * @return responses staged for a run and not yet committed
+     */
+    public int getStagedCount(String runId) {
+        List<Staged> staged = byRun.get(runId);
+        if (staged == null) {
+            return 0;
+        }
+        synchronized (staged) {
+            return staged.size();
+        }
+    }
+}
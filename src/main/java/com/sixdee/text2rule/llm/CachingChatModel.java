@@ -0,0 +1,113 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Serves repeated LLM calls from a {@link ResponseCache}.
+ *
+ * The cache key is a {@link RequestFingerprint} of the model signature
+ * (provider, model name and sampling parameters), the fully rendered messages
+ * and any tool specifications, so two calls share an entry only if the
+ * provider would see exactly the same request. The TTL is resolved per
+ * PromptRegistry key taken from {@link LlmCallContext}; a TTL of zero disables
+ * caching for that key.
+ *
+ * Cache hits carry no token usage, so they are not charged against the
+ * provider's rate budget or token accounting.
+ *
+ * A response made during a workflow run is only cached once the run has
+ * accepted it, see {@link CacheAdmission}; until then a retry with the same
+ * messages reaches the provider again.
+ */
+public class CachingChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(CachingChatModel.class);
+
+    private final ChatLanguageModel delegate;
+    private final ResponseCache cache;
+    private final String modelSignature;
+    private final ToLongFunction<String> ttlSecondsByPromptKey;
+
+    /**
+     * @param delegate              model that is called on a miss
+     * @param cache                 shared response cache
+     * @param modelSignature        provider, model name and sampling parameters;
+     *                              part of every key
+     * @param ttlSecondsByPromptKey TTL in seconds for a PromptRegistry key (the
+     *                              key may be null)
+     */
+    public CachingChatModel(ChatLanguageModel delegate, ResponseCache cache, String modelSignature,
+            ToLongFunction<String> ttlSecondsByPromptKey) {
+        if (delegate == null || cache == null) {
+            throw new IllegalArgumentException("Delegate model and response cache are required");
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+        this.modelSignature = modelSignature != null ? modelSignature : "";
+        this.ttlSecondsByPromptKey = ttlSecondsByPromptKey;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return cached(messages, Collections.emptyList(), () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return cached(messages, toolSpecifications, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return cached(messages, Collections.singletonList(toolSpecification),
+                () -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> cached(List<ChatMessage> messages, List<ToolSpecification> tools,
+            Supplier<Response<AiMessage>> call) {
+        String promptKey = LlmCallContext.getPromptKey();
+        long ttlSeconds = ttlSecondsByPromptKey.applyAsLong(promptKey);
+        if (ttlSeconds <= 0) {
+            return call.get();
+        }
+
+        String key = RequestFingerprint.of(modelSignature, messages, tools);
+        ResponseCache.CachedResponse hit = cache.get(key, promptKey);
+        if (hit != null) {
+            logger.debug("LLM response cache hit [prompt_key={}, key={}]", promptKey, key);
+            return Response.from(toAiMessage(hit), null, hit.getFinishReason());
+        }
+
+        Response<AiMessage> response = call.get();
+        AiMessage content = response != null ? response.content() : null;
+        if (content != null && (content.text() != null || content.hasToolExecutionRequests())) {
+            long expiresAt = System.currentTimeMillis() + ttlSeconds * 1000L;
+            CacheAdmission.getInstance().stage(cache, key, new ResponseCache.CachedResponse(promptKey, expiresAt,
+                    content.text(), content.toolExecutionRequests(), response.finishReason()));
+        }
+        return response;
+    }
+
+    private static AiMessage toAiMessage(ResponseCache.CachedResponse cached) {
+        List<ToolExecutionRequest> requests = cached.getToolExecutionRequests();
+        if (requests.isEmpty()) {
+            return new AiMessage(cached.getText());
+        }
+        return cached.getText() != null ? new AiMessage(cached.getText(), requests) : new AiMessage(requests);
+    }
+
+    public ResponseCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,48 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Makes calls under the {@link CancellationToken} bound in
+ * {@link LlmCallContext}, so that cancelled work stops spending rate budget
+ * and in-flight calls are interrupted. Calls without a token pass straight
+ * through.
+ */
+public class CancellableChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+
+    public CancellableChatModel(ChatLanguageModel delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate model is required");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return cancellable(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return cancellable(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return cancellable(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> cancellable(Supplier<Response<AiMessage>> call) {
+        CancellationToken token = LlmCallContext.getCancellation();
+        return token == null ? call.get() : token.call(call);
+    }
+}
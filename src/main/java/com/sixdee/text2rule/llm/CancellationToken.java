@@ -0,0 +1,237 @@
+package com.sixdee.text2rule.llm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lets a caller abandon LLM work it no longer needs, e.g. a speculative node
+ * whose gate did not pass.
+ *
+ * Bind a token with {@link LlmCallContext#withCancellation}; every LLM call
+ * made under it, on any agent thread, goes through {@link #call(Supplier)}.
+ * Cancelling refuses further calls and interrupts the threads of calls in
+ * flight, which the gateway layers treat as cancellation: a retry wait ends,
+ * the circuit breaker is not charged, and the HTTP request is closed, since
+ * calls under a token are streamed (see {@link StreamingJsonChatModel}). A
+ * blocking call, such as a tool call, cannot be stopped in its socket read;
+ * its caller is released and the request runs until it answers or times out.
+ *
+ * A token created with {@link #withDeadline(long)} cancels itself when the
+ * deadline passes; {@link #close()} stops its timer once the work is done.
+ * Child tokens (see {@link #newChild()}) are cancelled with their parent, so
+ * work abandoned on its own, such as a speculation, still ends with its run.
+ */
+public class CancellationToken implements AutoCloseable {
+
+    public static final String REASON_CANCELLED = "cancelled";
+    public static final String REASON_DEADLINE_EXCEEDED = "deadline exceeded";
+
+    private static volatile ScheduledThreadPoolExecutor timer;
+
+    private final Set<Thread> inFlight = new HashSet<>();
+    private final List<CancellationToken> children = new ArrayList<>();
+    private final LongAdder calls = new LongAdder();
+    private final boolean hasDeadline;
+    // System.nanoTime() of the deadline
+    private final long deadlineNanos;
+    private ScheduledFuture<?> deadlineTask;
+    private volatile String reason;
+
+    public CancellationToken() {
+        this.hasDeadline = false;
+        this.deadlineNanos = 0;
+    }
+
+    private CancellationToken(long deadlineNanos) {
+        this.hasDeadline = true;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param timeoutMillis time from now until the token cancels itself with
+     *                      {@link #REASON_DEADLINE_EXCEEDED}
+     */
+    public static CancellationToken withDeadline(long timeoutMillis) {
+        CancellationToken token = new CancellationToken(
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis)));
+        synchronized (token) {
+            token.deadlineTask = timer().schedule(() -> token.cancel(REASON_DEADLINE_EXCEEDED),
+                    Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+        }
+        return token;
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+        if (timer == null) {
+            synchronized (CancellationToken.class) {
+                if (timer == null) {
+                    ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, "cancellation-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    // Runs that finish in time take their deadline off the queue
+                    created.setRemoveOnCancelPolicy(true);
+                    timer = created;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * @param parent token to follow, or null
+     * @return a new token that is also cancelled when the parent is, or an
+     *         independent token if there is no parent
+     */
+    public static CancellationToken childOf(CancellationToken parent) {
+        return parent != null ? parent.newChild() : new CancellationToken();
+    }
+
+    /**
+     * @return a new token that is cancelled, with the same reason, when this
+     *         one is; cancelling the child does not affect this token
+     */
+    public synchronized CancellationToken newChild() {
+        CancellationToken child = new CancellationToken();
+        if (reason != null) {
+            child.cancel(reason);
+        } else {
+            children.add(child);
+        }
+        return child;
+    }
+
+    /**
+     * Refuse further calls and interrupt the ones in flight.
+     *
+     * @return the number of calls that were interrupted
+     */
+    public int cancel() {
+        return cancel(REASON_CANCELLED);
+    }
+
+    /**
+     * Refuse further calls and interrupt the ones in flight, here and in
+     * child tokens. Only the first reason is kept.
+     *
+     * @return the number of calls that were interrupted
+     */
+    public int cancel(String reason) {
+        List<CancellationToken> cancelledChildren;
+        int interrupted;
+        synchronized (this) {
+            if (this.reason == null) {
+                this.reason = reason;
+            }
+            for (Thread thread : inFlight) {
+                thread.interrupt();
+            }
+            interrupted = inFlight.size();
+            cancelledChildren = new ArrayList<>(children);
+            children.clear();
+            if (deadlineTask != null) {
+                deadlineTask.cancel(false);
+            }
+        }
+        for (CancellationToken child : cancelledChildren) {
+            interrupted += child.cancel(this.reason);
+        }
+        return interrupted;
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * @return why the token was cancelled, or null if it was not
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public boolean isDeadlineExceeded() {
+        return REASON_DEADLINE_EXCEEDED.equals(reason);
+    }
+
+    /**
+     * @return time left before the deadline, 0 once it has passed, or
+     *         Long.MAX_VALUE if the token has no deadline
+     */
+    public long getRemainingMillis() {
+        if (!hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Stop the deadline timer, once the work the token guards has finished.
+     * Does not cancel the token.
+     */
+    @Override
+    public synchronized void close() {
+        if (deadlineTask != null) {
+            deadlineTask.cancel(false);
+            deadlineTask = null;
+        }
+    }
+
+    /**
+     * @return LLM calls started under this token
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @throws CancellationException if the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (reason != null) {
+            throw new CancellationException("LLM work cancelled [reason=" + reason + "]");
+        }
+    }
+
+    /**
+     * Make one LLM call that is interrupted if the token is cancelled while
+     * it is in flight.
+     *
+     * @throws CancellationException if the token is cancelled before or
+     *                               during the call
+     */
+    public <T> T call(Supplier<T> call) {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            throwIfCancelled();
+            inFlight.add(thread);
+        }
+        calls.increment();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            if (reason != null) {
+                throw (CancellationException) new CancellationException("LLM call cancelled [reason=" + reason
+                        + "]").initCause(e);
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                inFlight.remove(thread);
+                if (reason != null) {
+                    // The interrupt was meant for this call only; the thread goes back to its pool
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.sixdee.text2rule.llm;
+
+import com.sixdee.text2rule.helper.AgentExecutors;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cuts tail latency by sending a duplicate ("hedged") request when a call is
+ * slower than usual for its prompt.
+ *
+ * Latencies are kept per PromptRegistry key. Once a key has enough samples, a
+ * call that has not returned by the configured percentile of that key's
+ * latency is sent again; the hedge is routed to an alternate backend when a
+ * router sits below (see {@link LlmCallContext#asHedge}). The first valid
+ * response wins and the other call is interrupted, which also cancels a
+ * streamed request.
+ *
+ * Hedging only applies to prompts whose calls are idempotent, and a hedge is
+ * only sent if one of the rate budgets can admit it immediately, so hedges
+ * never queue behind regular traffic.
+ */
+public class HedgingChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(HedgingChatModel.class);
+
+    private static final int WINDOW_SIZE = 200;
+
+    private final ChatLanguageModel delegate;
+    private final List<TokenBucket> budgets;
+    private final int expectedOutputTokens;
+    private final Predicate<String> hedgeablePromptKey;
+    private final double percentile;
+    private final int minSamples;
+    private final Executor executor;
+
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final LongAdder hedgedCalls = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder skippedForBudget = new LongAdder();
+
+    /**
+     * @param delegate             model that is called (and hedged)
+     * @param budgets              rate budgets a hedge may draw from
+     * @param expectedOutputTokens output tokens charged up front per call
+     * @param hedgeablePromptKey   whether calls for a prompt key may be sent
+     *                             twice
+     * @param percentile           latency percentile that triggers a hedge,
+     *                             e.g. 0.95
+     * @param minSamples           samples needed before a key is hedged
+     */
+    public HedgingChatModel(ChatLanguageModel delegate, List<TokenBucket> budgets, int expectedOutputTokens,
+            Predicate<String> hedgeablePromptKey, double percentile, int minSamples) {
+        this(delegate, budgets, expectedOutputTokens, hedgeablePromptKey, percentile, minSamples,
+                AgentExecutors.io());
+    }
+
+    HedgingChatModel(ChatLanguageModel delegate, List<TokenBucket> budgets, int expectedOutputTokens,
+            Predicate<String> hedgeablePromptKey, double percentile, int minSamples, Executor executor) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate model is required");
+        }
+        this.delegate = delegate;
+        this.budgets = budgets != null ? budgets : new ArrayList<>();
+        this.expectedOutputTokens = expectedOutputTokens;
+        this.hedgeablePromptKey = hedgeablePromptKey;
+        this.percentile = percentile;
+        this.minSamples = Math.max(1, minSamples);
+        this.executor = executor;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return hedged(messages, () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return hedged(messages, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return hedged(messages, () -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> hedged(List<ChatMessage> messages, Supplier<Response<AiMessage>> call) {
+        String promptKey = LlmCallContext.getPromptKey();
+        if (promptKey == null || !hedgeablePromptKey.test(promptKey)) {
+            return call.get();
+        }
+
+        LatencyWindow window = latencies.computeIfAbsent(promptKey, key -> new LatencyWindow());
+        long start = System.nanoTime();
+        long thresholdNanos = window.percentileNanos(percentile, minSamples);
+        if (thresholdNanos <= 0) {
+            Response<AiMessage> response = call.get();
+            window.record(System.nanoTime() - start);
+            return response;
+        }
+
+        BlockingQueue<CallTask> completed = new LinkedBlockingQueue<>();
+        List<CallTask> tasks = new ArrayList<>(2);
+        CallTask primary = submit(promptKey, false, call, completed);
+        tasks.add(primary);
+
+        try {
+            CallTask done = completed.poll(thresholdNanos, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                int tokens = TokenEstimator.estimate(messages) + expectedOutputTokens;
+                if (budgetAvailable(tokens)) {
+                    hedgedCalls.increment();
+                    logger.debug("Hedging slow LLM call [prompt_key={}, threshold_ms={}]", promptKey,
+                            TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+                    tasks.add(submit(promptKey, true, call, completed));
+                } else {
+                    skippedForBudget.increment();
+                }
+            }
+
+            Response<AiMessage> invalid = null;
+            RuntimeException failure = null;
+            for (int pending = tasks.size(); pending > 0; pending--) {
+                if (done == null) {
+                    done = completed.take();
+                }
+                try {
+                    Response<AiMessage> response = done.get();
+                    if (isValid(response)) {
+                        window.record(System.nanoTime() - start);
+                        if (done != primary) {
+                            hedgeWins.increment();
+                        }
+                        return response;
+                    }
+                    invalid = response;
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new IllegalStateException("LLM call failed", e.getCause());
+                }
+                done = null;
+            }
+            // Neither call produced a usable answer; report it the way an unhedged call would
+            if (invalid != null) {
+                return invalid;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for LLM response", e);
+        } finally {
+            for (CallTask task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private CallTask submit(String promptKey, boolean hedge, Supplier<Response<AiMessage>> call,
+            BlockingQueue<CallTask> completed) {
+        Supplier<Response<AiMessage>> bound = () -> LlmCallContext.withPromptKey(promptKey, call);
+        CallTask task = new CallTask(() -> hedge ? LlmCallContext.asHedge(bound) : bound.get(), completed);
+        executor.execute(task);
+        return task;
+    }
+
+    private boolean budgetAvailable(int tokens) {
+        if (budgets.isEmpty()) {
+            return true;
+        }
+        for (TokenBucket bucket : budgets) {
+            if (bucket.estimateWaitNanos(tokens) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isValid(Response<AiMessage> response) {
+        if (response == null || response.content() == null) {
+            return false;
+        }
+        AiMessage content = response.content();
+        return content.hasToolExecutionRequests() || (content.text() != null && !content.text().trim().isEmpty());
+    }
+
+    public long getHedgedCalls() {
+        return hedgedCalls.sum();
+    }
+
+    /**
+     * @return hedges that answered before the original call
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    public long getSkippedForBudget() {
+        return skippedForBudget.sum();
+    }
+
+    /**
+     * One of the competing calls; reports itself to the queue when it ends.
+     */
+    private static final class CallTask extends FutureTask<Response<AiMessage>> {
+        private final BlockingQueue<CallTask> completed;
+
+        CallTask(Callable<Response<AiMessage>> call, BlockingQueue<CallTask> completed) {
+            super(call);
+            this.completed = completed;
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                completed.add(this);
+            }
+        }
+    }
+
+    /**
+     * Latencies of the most recent calls for one prompt key.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * @return the percentile in nanoseconds, or 0 with fewer than
+         *         minSamples samples
+         */
+        synchronized long percentileNanos(double percentile, int minSamples) {
+            if (count < minSamples) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(index, count - 1))];
+        }
+    }
+}
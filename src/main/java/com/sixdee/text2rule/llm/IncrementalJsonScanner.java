@@ -0,0 +1,177 @@
+package com.sixdee.text2rule.llm;
+
+/**
+ * Incremental scanner that detects, token by token, when a streamed completion
+ * contains everything an agent needs.
+ *
+ * Depending on the mode it reports completion when
+ * <ul>
+ * <li>the first top-level JSON object or array closes (any text before it,
+ * such as prose or a markdown fence, is skipped), or</li>
+ * <li>a given field of the top-level object has been read completely, in
+ * which case the result is a minimal object holding only that field.</li>
+ * </ul>
+ * The scanner only tracks nesting, strings and escapes; it does not validate
+ * the JSON, which is still parsed by the agent.
+ */
+public class IncrementalJsonScanner {
+
+    private final char opener;
+    private final String field;
+
+    private final StringBuilder text = new StringBuilder(512);
+    private int valueStart = -1;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+
+    // Field tracking at depth 1 of the top-level object
+    private final StringBuilder currentString = new StringBuilder();
+    private String lastKey;
+    private int fieldValueStart = -1;
+
+    private String result;
+
+    private IncrementalJsonScanner(char opener, String field) {
+        this.opener = opener;
+        this.field = field;
+    }
+
+    /**
+     * Complete when the first top-level object closes.
+     */
+    public static IncrementalJsonScanner forObject() {
+        return new IncrementalJsonScanner('{', null);
+    }
+
+    /**
+     * Complete when the first top-level array closes.
+     */
+    public static IncrementalJsonScanner forArray() {
+        return new IncrementalJsonScanner('[', null);
+    }
+
+    /**
+     * Complete as soon as {@code field} of the top-level object has been read,
+     * or when the object closes.
+     */
+    public static IncrementalJsonScanner forField(String field) {
+        return new IncrementalJsonScanner('{', field);
+    }
+
+    /**
+     * Feed the next chunk of the completion.
+     *
+     * @return true once the result is available; further input is ignored
+     */
+    public boolean feed(String chunk) {
+        if (result != null || chunk == null) {
+            return result != null;
+        }
+        int offset = text.length();
+        text.append(chunk);
+        for (int i = offset; i < text.length(); i++) {
+            if (accept(text.charAt(i), i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean accept(char c, int position) {
+        if (valueStart < 0) {
+            if (c == opener) {
+                valueStart = position;
+                depth = 1;
+            }
+            return false;
+        }
+
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+                appendKeyChar(c);
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            } else {
+                appendKeyChar(c);
+            }
+            return false;
+        }
+
+        switch (c) {
+            case '"':
+                inString = true;
+                if (depth == 1) {
+                    currentString.setLength(0);
+                }
+                return false;
+            case ':':
+                if (depth == 1 && field != null) {
+                    lastKey = currentString.toString();
+                    if (field.equals(lastKey)) {
+                        fieldValueStart = position + 1;
+                    }
+                }
+                return false;
+            case '{':
+            case '[':
+                depth++;
+                return false;
+            case ',':
+                return depth == 1 && completeField(position);
+            case '}':
+            case ']':
+                if (depth == 1 && completeField(position)) {
+                    return true;
+                }
+                depth--;
+                if (depth == 0) {
+                    result = text.substring(valueStart, position + 1);
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void appendKeyChar(char c) {
+        if (depth == 1) {
+            currentString.append(c);
+        }
+    }
+
+    private boolean completeField(int position) {
+        if (fieldValueStart < 0) {
+            return false;
+        }
+        String value = text.substring(fieldValueStart, position).trim();
+        fieldValueStart = -1;
+        if (value.isEmpty()) {
+            return false;
+        }
+        result = "{\"" + field + "\": " + value + "}";
+        return true;
+    }
+
+    public boolean isComplete() {
+        return result != null;
+    }
+
+    /**
+     * @return the completed JSON text, or null if not complete yet
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return everything fed so far
+     */
+    public String getText() {
+        return text.toString();
+    }
+}
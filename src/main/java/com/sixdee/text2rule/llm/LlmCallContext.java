@@ -0,0 +1,146 @@
+package com.sixdee.text2rule.llm;
+
+import java.util.function.Supplier;
+
+/**
+ * Per-thread context describing the LLM call that is about to be made.
+ *
+ * Agents render their prompt before calling the model, so by the time a
+ * decorator sees the messages the PromptRegistry key is gone. Agents therefore
+ * wrap each call in {@link #withPromptKey(String, Supplier)} so the gateway
+ * decorators can apply per-prompt policies (cache TTLs, budgets, metrics).
+ *
+ * The calling agent and the workflow run are bound the same way, for token
+ * accounting, and so is the {@link CancellationToken} of work that may be
+ * abandoned. Tasks submitted to the agent executor inherit the submitter's
+ * context (see {@link #propagate(Runnable)}).
+ */
+public final class LlmCallContext {
+
+    private static final ThreadLocal<String> PROMPT_KEY = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> HEDGE = new ThreadLocal<>();
+    private static final ThreadLocal<String> AGENT = new ThreadLocal<>();
+    private static final ThreadLocal<String> RUN_ID = new ThreadLocal<>();
+    private static final ThreadLocal<CancellationToken> CANCELLATION = new ThreadLocal<>();
+
+    private LlmCallContext() {
+    }
+
+    /**
+     * Run an LLM call with the given PromptRegistry key bound to the current
+     * thread. The previous key (if any) is restored afterwards so nested calls
+     * behave correctly.
+     */
+    public static <T> T withPromptKey(String promptKey, Supplier<T> call) {
+        return with(PROMPT_KEY, promptKey, call);
+    }
+
+    /**
+     * Run an LLM call made by the given agent with the given PromptRegistry
+     * key.
+     */
+    public static <T> T withPromptKey(String agentName, String promptKey, Supplier<T> call) {
+        return with(AGENT, agentName, () -> with(PROMPT_KEY, promptKey, call));
+    }
+
+    /**
+     * Run a workflow with the given run id bound, so that every LLM call it
+     * makes is accounted to that run.
+     */
+    public static <T> T withRun(String runId, Supplier<T> call) {
+        return with(RUN_ID, runId, call);
+    }
+
+    /**
+     * Run work whose LLM calls are refused or interrupted once the token is
+     * cancelled.
+     */
+    public static <T> T withCancellation(CancellationToken token, Supplier<T> call) {
+        return with(CANCELLATION, token, call);
+    }
+
+    private static <V, T> T with(ThreadLocal<V> slot, V value, Supplier<T> call) {
+        V previous = slot.get();
+        set(slot, value);
+        try {
+            return call.get();
+        } finally {
+            set(slot, previous);
+        }
+    }
+
+    private static <V> void set(ThreadLocal<V> slot, V value) {
+        if (value == null) {
+            slot.remove();
+        } else {
+            slot.set(value);
+        }
+    }
+
+    /**
+     * Capture the current run, agent, prompt key and cancellation token so
+     * that a task run on another thread makes its LLM calls in the same
+     * context.
+     */
+    public static Runnable propagate(Runnable task) {
+        String runId = RUN_ID.get();
+        String agentName = AGENT.get();
+        String promptKey = PROMPT_KEY.get();
+        CancellationToken cancellation = CANCELLATION.get();
+        if (runId == null && agentName == null && promptKey == null && cancellation == null) {
+            return task;
+        }
+        return () -> with(RUN_ID, runId, () -> with(AGENT, agentName, () -> with(PROMPT_KEY, promptKey,
+                () -> with(CANCELLATION, cancellation, () -> {
+                    task.run();
+                    return null;
+                }))));
+    }
+
+    /**
+     * @return the PromptRegistry key of the call in progress, or null if the
+     *         caller did not declare one
+     */
+    public static String getPromptKey() {
+        return PROMPT_KEY.get();
+    }
+
+    /**
+     * @return the agent making the call in progress, or null if unknown
+     */
+    public static String getAgentName() {
+        return AGENT.get();
+    }
+
+    /**
+     * @return the workflow run the call belongs to, or null outside a run
+     */
+    public static String getRunId() {
+        return RUN_ID.get();
+    }
+
+    /**
+     * @return the cancellation token of the work in progress, or null if it
+     *         cannot be cancelled
+     */
+    public static CancellationToken getCancellation() {
+        return CANCELLATION.get();
+    }
+
+    /**
+     * Run a duplicate (hedged) call. Routers use this to prefer a different
+     * backend than the one the original call most likely went to.
+     */
+    public static <T> T asHedge(Supplier<T> call) {
+        HEDGE.set(Boolean.TRUE);
+        try {
+            return call.get();
+        } finally {
+            HEDGE.remove();
+        }
+    }
+
+    public static boolean isHedge() {
+        return Boolean.TRUE.equals(HEDGE.get());
+    }
+}
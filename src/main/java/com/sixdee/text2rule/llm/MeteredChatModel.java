@@ -0,0 +1,86 @@
+package com.sixdee.text2rule.llm;
+
+import com.sixdee.text2rule.observability.Metrics;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Records the count, failures and latency of every call that reaches one
+ * provider or backend, by the PromptRegistry key bound in
+ * {@link LlmCallContext}. The metric handles of a prompt key are created on
+ * its first call and looked up without allocating afterwards.
+ */
+public class MeteredChatModel implements ChatLanguageModel {
+
+    private static final String NO_PROMPT_KEY = "none";
+
+    private final ChatLanguageModel delegate;
+    private final String backend;
+    private final Map<String, CallMetrics> byPromptKey = new ConcurrentHashMap<>();
+
+    private static final class CallMetrics {
+        private final Metrics.Histogram latency;
+        private final Metrics.Counter errors;
+
+        private CallMetrics(String promptKey, String backend) {
+            this.latency = Metrics.histogram("llm_call_duration_ms",
+                    "Latency of LLM calls reaching a provider, in milliseconds", 1,
+                    "prompt_key", promptKey, "backend", backend);
+            this.errors = Metrics.counter("llm_call_errors_total", "LLM calls that failed",
+                    "prompt_key", promptKey, "backend", backend);
+        }
+    }
+
+    public MeteredChatModel(ChatLanguageModel delegate, String backend) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate model is required");
+        }
+        this.delegate = delegate;
+        this.backend = backend.toLowerCase();
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return metered(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return metered(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return metered(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> metered(Supplier<Response<AiMessage>> call) {
+        String promptKey = LlmCallContext.getPromptKey();
+        CallMetrics metrics = byPromptKey.get(promptKey != null ? promptKey : NO_PROMPT_KEY);
+        if (metrics == null) {
+            metrics = byPromptKey.computeIfAbsent(promptKey != null ? promptKey : NO_PROMPT_KEY,
+                    key -> new CallMetrics(key, backend));
+        }
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            metrics.errors.increment();
+            throw e;
+        } finally {
+            metrics.latency.record((System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    public ChatLanguageModel getDelegate() {
+        return delegate;
+    }
+}
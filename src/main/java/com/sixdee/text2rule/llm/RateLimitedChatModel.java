@@ -0,0 +1,98 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * LLM gateway that enforces the provider's requests-per-minute and
+ * tokens-per-minute budgets in front of a ChatLanguageModel.
+ *
+ * Every agent receives the same gateway instance (and every gateway created for
+ * the same provider shares one {@link TokenBucket}), so the budget holds across
+ * agents and concurrent workflows. Calls are released as soon as the budget
+ * allows; once a response arrives the estimated token charge is corrected with
+ * the real usage reported by the provider.
+ */
+public class RateLimitedChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitedChatModel.class);
+
+    private final ChatLanguageModel delegate;
+    private final TokenBucket bucket;
+    private final int expectedOutputTokens;
+
+    public RateLimitedChatModel(ChatLanguageModel delegate, TokenBucket bucket, int expectedOutputTokens) {
+        if (delegate == null || bucket == null) {
+            throw new IllegalArgumentException("Delegate model and token bucket are required");
+        }
+        this.delegate = delegate;
+        this.bucket = bucket;
+        this.expectedOutputTokens = Math.max(0, expectedOutputTokens);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return limited(messages, () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return limited(messages, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return limited(messages, () -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> limited(List<ChatMessage> messages, Supplier<Response<AiMessage>> call) {
+        int estimatedTokens = TokenEstimator.estimate(messages) + expectedOutputTokens;
+        acquire(estimatedTokens);
+
+        Response<AiMessage> response = call.get();
+        reconcile(estimatedTokens, response);
+        return response;
+    }
+
+    private void acquire(int estimatedTokens) {
+        long waitNanos = bucket.reserve(estimatedTokens);
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        logger.debug("Rate budget exhausted, waiting {} ms [budget={}, tokens={}]",
+                TimeUnit.NANOSECONDS.toMillis(waitNanos), bucket.getName(), estimatedTokens);
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            bucket.release(estimatedTokens);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for LLM rate budget", e);
+        }
+    }
+
+    private void reconcile(int estimatedTokens, Response<AiMessage> response) {
+        TokenUsage usage = response != null ? response.tokenUsage() : null;
+        if (usage == null || usage.totalTokenCount() == null) {
+            return;
+        }
+        bucket.adjustTokens(usage.totalTokenCount() - estimatedTokens);
+    }
+
+    public TokenBucket getBucket() {
+        return bucket;
+    }
+
+    public ChatLanguageModel getDelegate() {
+        return delegate;
+    }
+}
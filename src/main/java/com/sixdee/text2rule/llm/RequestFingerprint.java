@@ -0,0 +1,89 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Stable SHA-256 fingerprint of an LLM request: model signature, every
+ * rendered message (including tool calls and tool results) and the tool
+ * specifications offered to the model. Two requests with the same fingerprint
+ * are indistinguishable to the provider.
+ */
+public final class RequestFingerprint {
+
+    private static final char FIELD_SEPARATOR = '\u001f';
+    private static final char RECORD_SEPARATOR = '\u001e';
+
+    private RequestFingerprint() {
+    }
+
+    public static String of(String modelSignature, List<ChatMessage> messages, List<ToolSpecification> tools) {
+        StringBuilder canonical = new StringBuilder(256)
+                .append(modelSignature != null ? modelSignature : "").append(RECORD_SEPARATOR);
+        for (ChatMessage message : messages) {
+            canonical.append(message.type()).append(FIELD_SEPARATOR).append(text(message));
+            if (message instanceof AiMessage && ((AiMessage) message).hasToolExecutionRequests()) {
+                for (ToolExecutionRequest request : ((AiMessage) message).toolExecutionRequests()) {
+                    canonical.append(FIELD_SEPARATOR).append(request.id())
+                            .append(FIELD_SEPARATOR).append(request.name())
+                            .append(FIELD_SEPARATOR).append(request.arguments());
+                }
+            } else if (message instanceof ToolExecutionResultMessage) {
+                ToolExecutionResultMessage result = (ToolExecutionResultMessage) message;
+                canonical.append(FIELD_SEPARATOR).append(result.id())
+                        .append(FIELD_SEPARATOR).append(result.toolName());
+            }
+            canonical.append(RECORD_SEPARATOR);
+        }
+        if (tools != null) {
+            for (ToolSpecification tool : tools) {
+                canonical.append(tool).append(RECORD_SEPARATOR);
+            }
+        }
+        return sha256(canonical.toString());
+    }
+
+    /**
+     * @return the message's text; a user message with more than one part
+     *         (e.g. an image) is represented by all of its parts
+     */
+    private static String text(ChatMessage message) {
+        if (message instanceof UserMessage) {
+            UserMessage user = (UserMessage) message;
+            return user.hasSingleText() ? user.singleText() : String.valueOf(user.contents());
+        }
+        if (message instanceof AiMessage) {
+            return ((AiMessage) message).text();
+        }
+        if (message instanceof SystemMessage) {
+            return ((SystemMessage) message).text();
+        }
+        if (message instanceof ToolExecutionResultMessage) {
+            return ((ToolExecutionResultMessage) message).text();
+        }
+        return null;
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
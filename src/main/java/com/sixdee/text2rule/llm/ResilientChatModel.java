@@ -0,0 +1,277 @@
+package com.sixdee.text2rule.llm;
+
+import com.sixdee.text2rule.exception.ProviderUnavailableException;
+import dev.ai4j.openai4j.OpenAiHttpException;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retries rate-limited, failed and timed-out calls to one provider or backend,
+ * and stops calling it for a while once it keeps failing.
+ *
+ * A 429, 408, 409 or 5xx answer, an I/O error or a timeout is retried with
+ * exponential backoff and full jitter. When the provider says how long to wait
+ * ("Please try again in 1.5s", which OpenAI and Groq put in the error body)
+ * that delay is used instead. Other errors, such as a bad request, are not
+ * retried.
+ *
+ * After a number of consecutive failures the circuit opens and calls fail
+ * immediately. Once the open period has passed one trial call is let through;
+ * its outcome closes or re-opens the circuit. A call that cannot be served
+ * ends in a {@link ProviderUnavailableException}, so callers can tell an
+ * outage from a bad answer.
+ *
+ * The wrapped model must not retry on its own.
+ */
+public class ResilientChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(ResilientChatModel.class);
+
+    private static final Pattern RETRY_AFTER = Pattern.compile(
+            "(?i)try again in\\s+((?:\\d+(?:\\.\\d+)?\\s*(?:ms|s|m|h)\\s*)+)");
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(ms|s|m|h)");
+
+    private final String name;
+    private final ChatLanguageModel delegate;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    // Circuit state, guarded by this
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+
+    /**
+     * @param name              provider or backend name used in errors and
+     *                          logs
+     * @param delegate          model to call
+     * @param maxAttempts       attempts per call, including the first
+     * @param baseBackoffMillis backoff before the first retry
+     * @param maxBackoffMillis  longest wait between attempts; a longer
+     *                          Retry-After fails the call instead
+     * @param failureThreshold  consecutive failures that open the circuit
+     * @param openMillis        how long the circuit stays open
+     */
+    public ResilientChatModel(String name, ChatLanguageModel delegate, int maxAttempts, long baseBackoffMillis,
+            long maxBackoffMillis, int failureThreshold, long openMillis) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate model is required");
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = Math.max(1, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return resilient(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return resilient(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return resilient(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> resilient(Supplier<Response<AiMessage>> call) {
+        for (int attempt = 1;; attempt++) {
+            if (!admit()) {
+                shortCircuited.increment();
+                throw new ProviderUnavailableException(name, "circuit open after repeated failures");
+            }
+
+            RuntimeException failure;
+            try {
+                Response<AiMessage> response = call.get();
+                recordSuccess();
+                return response;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                // Cancelled by the caller (e.g. a losing hedge); says nothing about the provider
+                releaseTrial();
+                throw failure;
+            }
+            if (!isRetryable(failure)) {
+                // The provider answered; the request itself was at fault
+                recordSuccess();
+                throw failure;
+            }
+            recordFailure();
+
+            long retryAfterMillis = retryAfterMillis(failure);
+            if (attempt >= maxAttempts || retryAfterMillis > maxBackoffMillis) {
+                unavailable.increment();
+                throw new ProviderUnavailableException(name, "gave up after " + attempt + " attempt(s): "
+                        + failure.getMessage(), failure);
+            }
+
+            long delayMillis = retryAfterMillis >= 0 ? retryAfterMillis : backoffMillis(attempt);
+            retries.increment();
+            logger.warn("LLM call failed, retrying [provider={}, prompt_key={}, attempt={}/{}, delay_ms={}, error={}]",
+                    name, LlmCallContext.getPromptKey(), attempt, maxAttempts, delayMillis, failure.getMessage());
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to retry LLM call", e);
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with full jitter: a random delay up to
+     * base * 2^(attempt - 1), capped at the maximum.
+     */
+    private long backoffMillis(int attempt) {
+        long cap = baseBackoffMillis << Math.min(attempt - 1, 30);
+        cap = Math.min(cap <= 0 ? maxBackoffMillis : cap, maxBackoffMillis);
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private synchronized boolean admit() {
+        if (openUntil == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntil || trialInFlight) {
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void recordSuccess() {
+        if (openUntil != 0) {
+            logger.info("LLM circuit closed [provider={}]", name);
+        }
+        consecutiveFailures = 0;
+        openUntil = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (trialInFlight || (openUntil == 0 && consecutiveFailures >= failureThreshold)) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            trialInFlight = false;
+            logger.warn("LLM circuit open [provider={}, consecutive_failures={}, open_ms={}]", name,
+                    consecutiveFailures, openMillis);
+        }
+    }
+
+    private synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Whether a failure is worth retrying: rate limiting, server errors,
+     * timeouts and I/O errors.
+     */
+    static boolean isRetryable(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof OpenAiHttpException) {
+                int code = ((OpenAiHttpException) current).code();
+                return code == 408 || code == 409 || code == 429 || code >= 500;
+            }
+            if (current instanceof IOException || current instanceof TimeoutException) {
+                return true;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the wait the provider asked for, or -1 if it gave none
+     */
+    static long retryAfterMillis(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            String message = current.getMessage();
+            Matcher matcher = message != null ? RETRY_AFTER.matcher(message) : null;
+            if (matcher != null && matcher.find()) {
+                double millis = 0;
+                Matcher part = DURATION_PART.matcher(matcher.group(1));
+                while (part.find()) {
+                    double value = Double.parseDouble(part.group(1));
+                    switch (part.group(2).toLowerCase()) {
+                        case "ms":
+                            millis += value;
+                            break;
+                        case "s":
+                            millis += value * 1_000;
+                            break;
+                        case "m":
+                            millis += value * 60_000;
+                            break;
+                        default:
+                            millis += value * 3_600_000;
+                    }
+                }
+                return (long) Math.ceil(millis);
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil != 0;
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return calls rejected because the circuit was open
+     */
+    public long getShortCircuited() {
+        return shortCircuited.sum();
+    }
+
+    /**
+     * @return calls that failed after all attempts
+     */
+    public long getUnavailable() {
+        return unavailable.sum();
+    }
+}
@@ -0,0 +1,481 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.model.output.FinishReason;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-tier, content-addressed store for LLM responses.
+ *
+ * The memory tier is a size-bounded LRU. The optional disk tier is an
+ * append-only log of length-prefixed records which is replayed on start-up, so
+ * hits survive restarts. When the log grows past its byte budget it is
+ * compacted: expired entries are dropped and the newest live entries are
+ * rewritten until the log is back under half its budget.
+ *
+ * Entries are keyed by an opaque content hash (see {@link CachingChatModel})
+ * and carry the PromptRegistry key they were produced for, which is used to
+ * partition the hit/miss counters.
+ */
+public class ResponseCache implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final int RECORD_MAGIC = 0x54325243;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String LOG_FILE_NAME = "responses.log";
+    private static final String UNKEYED_PARTITION = "_default";
+
+    private final int maxEntries;
+    private final long maxDiskBytes;
+    private final Path logFile;
+
+    // Both maps are guarded by "this"
+    private final LinkedHashMap<String, CachedResponse> memory;
+    private final LinkedHashMap<String, DiskEntry> diskIndex = new LinkedHashMap<>();
+    private FileChannel channel;
+
+    private final Stats totals = new Stats();
+    private final Map<String, Stats> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxEntries   maximum number of responses kept in memory
+     * @param directory    directory for the persistent tier, or null for a
+     *                     memory-only cache
+     * @param maxDiskBytes byte budget of the persistent tier
+     */
+    public ResponseCache(int maxEntries, Path directory, long maxDiskBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    totals.evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        Path file = null;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                file = directory.resolve(LOG_FILE_NAME);
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                replayLog();
+            } catch (IOException e) {
+                logger.warn("Persistent response cache unavailable, using memory only [dir={}, error={}]",
+                        directory, e.getMessage());
+                closeQuietly();
+                file = null;
+            }
+        }
+        this.logFile = file;
+    }
+
+    /**
+     * Look up a response. Expired entries are treated as misses and dropped.
+     *
+     * @return the cached response, or null on a miss
+     */
+    public synchronized CachedResponse get(String key, String promptKey) {
+        long now = System.currentTimeMillis();
+        Stats partition = partition(promptKey);
+
+        CachedResponse cached = memory.get(key);
+        if (cached != null && cached.isExpired(now)) {
+            memory.remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = readFromDisk(key, now);
+            if (cached != null) {
+                memory.put(key, cached);
+                totals.diskHits.increment();
+                partition.diskHits.increment();
+            }
+        }
+
+        if (cached == null) {
+            totals.misses.increment();
+            partition.misses.increment();
+            return null;
+        }
+        totals.hits.increment();
+        partition.hits.increment();
+        return cached;
+    }
+
+    public synchronized void put(String key, CachedResponse response) {
+        memory.put(key, response);
+        if (channel == null) {
+            return;
+        }
+        try {
+            long offset = channel.size();
+            byte[] record = encode(key, response);
+            channel.write(ByteBuffer.wrap(record), offset);
+            diskIndex.remove(key);
+            diskIndex.put(key, new DiskEntry(offset, record.length, response.getExpiresAtMillis()));
+
+            if (channel.size() > maxDiskBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to persist cached response, continuing in memory [error={}]", e.getMessage());
+        }
+    }
+
+    public Stats getStats() {
+        return totals;
+    }
+
+    /**
+     * @return counters per PromptRegistry key; calls made without a key are
+     *         reported under "_default"
+     */
+    public Map<String, Stats> getPartitionStats() {
+        return Collections.unmodifiableMap(partitions);
+    }
+
+    public synchronized int getMemoryEntryCount() {
+        return memory.size();
+    }
+
+    public synchronized int getDiskEntryCount() {
+        return diskIndex.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeQuietly();
+    }
+
+    private Stats partition(String promptKey) {
+        return partitions.computeIfAbsent(promptKey != null ? promptKey : UNKEYED_PARTITION, k -> new Stats());
+    }
+
+    private CachedResponse readFromDisk(String key, long now) {
+        DiskEntry entry = diskIndex.get(key);
+        if (entry == null || channel == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis <= now) {
+            diskIndex.remove(key);
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            channel.read(buffer, entry.offset);
+            return decode(buffer.array()).response;
+        } catch (IOException e) {
+            logger.warn("Failed to read cached response from disk [error={}]", e.getMessage());
+            diskIndex.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild the disk index from the log. A torn record at the tail (e.g.
+     * from a crash mid-write) is truncated away.
+     */
+    private void replayLog() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        long now = System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+
+        while (offset + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int magic = header.getInt();
+            int payloadLength = header.getInt();
+            int recordLength = RECORD_HEADER_BYTES + payloadLength;
+            if (magic != RECORD_MAGIC || payloadLength < 0 || offset + recordLength > size) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(recordLength);
+            channel.read(record, offset);
+            try {
+                Decoded decoded = decode(record.array());
+                diskIndex.remove(decoded.key);
+                if (!decoded.response.isExpired(now)) {
+                    diskIndex.put(decoded.key,
+                            new DiskEntry(offset, recordLength, decoded.response.getExpiresAtMillis()));
+                }
+            } catch (IOException e) {
+                break;
+            }
+            offset += recordLength;
+        }
+
+        if (offset < size) {
+            logger.warn("Truncating damaged response cache log [file_bytes={}, valid_bytes={}]", size, offset);
+            channel.truncate(offset);
+        }
+        logger.info("Response cache loaded [entries={}, bytes={}]", diskIndex.size(), offset);
+    }
+
+    private void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, DiskEntry>> live = new ArrayList<>();
+        for (Map.Entry<String, DiskEntry> entry : diskIndex.entrySet()) {
+            if (entry.getValue().expiresAtMillis > now) {
+                live.add(entry);
+            }
+        }
+
+        // Keep the newest entries that fit in half the budget
+        long budget = maxDiskBytes / 2;
+        long kept = 0;
+        int firstKept = live.size();
+        while (firstKept > 0 && kept + live.get(firstKept - 1).getValue().length <= budget) {
+            firstKept--;
+            kept += live.get(firstKept).getValue().length;
+        }
+
+        Path compacted = logFile.resolveSibling(LOG_FILE_NAME + ".compact");
+        LinkedHashMap<String, DiskEntry> newIndex = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (int i = firstKept; i < live.size(); i++) {
+                DiskEntry entry = live.get(i).getValue();
+                ByteBuffer record = ByteBuffer.allocate(entry.length);
+                channel.read(record, entry.offset);
+                record.flip();
+                out.write(record, offset);
+                newIndex.put(live.get(i).getKey(), new DiskEntry(offset, entry.length, entry.expiresAtMillis));
+                offset += entry.length;
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(compacted, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int dropped = diskIndex.size() - newIndex.size();
+        totals.evictions.add(dropped);
+        diskIndex.clear();
+        diskIndex.putAll(newIndex);
+        logger.info("Compacted response cache [kept={}, dropped={}, bytes={}]", newIndex.size(), dropped, kept);
+    }
+
+    private void closeQuietly() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing response cache log [error={}]", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static byte[] encode(String key, CachedResponse response) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(payloadBytes)) {
+            writeString(out, key);
+            writeString(out, response.getPromptKey());
+            out.writeLong(response.getExpiresAtMillis());
+            writeString(out, response.getFinishReason() != null ? response.getFinishReason().name() : null);
+            writeString(out, response.getText());
+            List<ToolExecutionRequest> requests = response.getToolExecutionRequests();
+            out.writeInt(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                writeString(out, request.id());
+                writeString(out, request.name());
+                writeString(out, request.arguments());
+            }
+        }
+
+        byte[] payload = payloadBytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(RECORD_MAGIC).putInt(payload.length).put(payload);
+        return record.array();
+    }
+
+    private static Decoded decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(record, RECORD_HEADER_BYTES, record.length - RECORD_HEADER_BYTES))) {
+            String key = readString(in);
+            String promptKey = readString(in);
+            long expiresAt = in.readLong();
+            String finishReason = readString(in);
+            String text = readString(in);
+            int toolCount = in.readInt();
+            List<ToolExecutionRequest> requests = new ArrayList<>(toolCount);
+            for (int i = 0; i < toolCount; i++) {
+                requests.add(ToolExecutionRequest.builder()
+                        .id(readString(in))
+                        .name(readString(in))
+                        .arguments(readString(in))
+                        .build());
+            }
+            FinishReason reason = finishReason != null ? FinishReason.valueOf(finishReason) : null;
+            return new Decoded(key, new CachedResponse(promptKey, expiresAt, text, requests, reason));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed cache record", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Immutable cached model output.
+     */
+    public static class CachedResponse {
+        private final String promptKey;
+        private final long expiresAtMillis;
+        private final String text;
+        private final List<ToolExecutionRequest> toolExecutionRequests;
+        private final FinishReason finishReason;
+
+        public CachedResponse(String promptKey, long expiresAtMillis, String text,
+                List<ToolExecutionRequest> toolExecutionRequests, FinishReason finishReason) {
+            this.promptKey = promptKey;
+            this.expiresAtMillis = expiresAtMillis;
+            this.text = text;
+            this.toolExecutionRequests = toolExecutionRequests != null
+                    ? Collections.unmodifiableList(new ArrayList<>(toolExecutionRequests))
+                    : Collections.emptyList();
+            this.finishReason = finishReason;
+        }
+
+        public boolean isExpired(long nowMillis) {
+            return expiresAtMillis <= nowMillis;
+        }
+
+        public String getPromptKey() {
+            return promptKey;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<ToolExecutionRequest> getToolExecutionRequests() {
+            return toolExecutionRequests;
+        }
+
+        public FinishReason getFinishReason() {
+            return finishReason;
+        }
+    }
+
+    /**
+     * Hit/miss counters, either for the whole cache or for one prompt key.
+     */
+    public static class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder diskHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * @return hits that were served from the persistent tier (included in
+         *         {@link #getHits()})
+         */
+        public long getDiskHits() {
+            return diskHits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        public double getHitRatio() {
+            long hitCount = getHits();
+            long total = hitCount + getMisses();
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, disk_hits=%d, misses=%d, evictions=%d, hit_ratio=%.2f",
+                    getHits(), getDiskHits(), getMisses(), getEvictions(), getHitRatio());
+        }
+    }
+
+    private static class DiskEntry {
+        private final long offset;
+        private final int length;
+        private final long expiresAtMillis;
+
+        private DiskEntry(long offset, int length, long expiresAtMillis) {
+            this.offset = offset;
+            this.length = length;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static class Decoded {
+        private final String key;
+        private final CachedResponse response;
+
+        private Decoded(String key, CachedResponse response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Spreads LLM calls over several interchangeable backends, e.g. multiple Groq
+ * keys and an OpenAI-compatible endpoint.
+ *
+ * Each call goes to the backend that is expected to answer first: the time
+ * until its rate budget admits the call plus its recent (EWMA) latency,
+ * penalised by its recent error rate. If the call fails the next best backend
+ * is tried. A backend that fails several times in a row is skipped for a
+ * cool-down period unless no other backend is left.
+ *
+ * Every backend keeps its own rate-limited gateway and {@link TokenBucket}, so
+ * adding keys adds capacity.
+ */
+public class RoutingChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingChatModel.class);
+
+    private static final double LATENCY_ALPHA = 0.3;
+    private static final double ERROR_ALPHA = 0.2;
+    private static final int FAILURES_BEFORE_COOLDOWN = 3;
+    private static final long COOLDOWN_MILLIS = 30_000;
+
+    private final List<Backend> backends;
+
+    public RoutingChatModel(List<Backend> backends) {
+        if (backends == null || backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is required");
+        }
+        this.backends = Collections.unmodifiableList(new ArrayList<>(backends));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return route(messages, model -> model.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return route(messages, model -> model.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return route(messages, model -> model.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> route(List<ChatMessage> messages,
+            Function<ChatLanguageModel, Response<AiMessage>> call) {
+        int inputTokens = TokenEstimator.estimate(messages);
+        RuntimeException lastFailure = null;
+
+        for (Backend backend : rank(inputTokens)) {
+            long start = System.nanoTime();
+            try {
+                Response<AiMessage> response = call.apply(backend.model);
+                backend.recordSuccess(System.nanoTime() - start);
+                return response;
+            } catch (RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                backend.recordFailure(System.nanoTime() - start);
+                lastFailure = e;
+                logger.warn("LLM backend failed, trying next [backend={}, prompt_key={}, error={}]",
+                        backend.name, LlmCallContext.getPromptKey(), e.getMessage());
+            }
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Backends in the order they should be tried. Backends cooling down after
+     * repeated failures go last. A hedged duplicate starts with the runner-up,
+     * since the original call most likely went to the best backend.
+     */
+    private List<Backend> rank(int inputTokens) {
+        long now = System.currentTimeMillis();
+        List<Backend> ranked = new ArrayList<>(backends);
+        ranked.sort(Comparator.comparing((Backend b) -> b.isCoolingDown(now))
+                .thenComparingDouble(b -> b.expectedMillis(inputTokens)));
+        if (LlmCallContext.isHedge() && ranked.size() > 1 && !ranked.get(1).isCoolingDown(now)) {
+            Collections.swap(ranked, 0, 1);
+        }
+        return ranked;
+    }
+
+    public List<Backend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * One routable endpoint with its own rate budget and health statistics.
+     */
+    public static class Backend {
+        private final String name;
+        private final ChatLanguageModel model;
+        private final TokenBucket bucket;
+        private final int expectedOutputTokens;
+
+        private double ewmaLatencyMillis;
+        private double errorRate;
+        private int consecutiveFailures;
+        private long cooldownUntil;
+        private long calls;
+        private long failures;
+
+        /**
+         * @param name                 name used in logs
+         * @param model                rate-limited model for this backend
+         * @param bucket               the backend's rate budget
+         * @param expectedOutputTokens output tokens charged up front per call
+         */
+        public Backend(String name, ChatLanguageModel model, TokenBucket bucket, int expectedOutputTokens) {
+            this.name = name;
+            this.model = model;
+            this.bucket = bucket;
+            this.expectedOutputTokens = expectedOutputTokens;
+        }
+
+        synchronized double expectedMillis(int inputTokens) {
+            double waitMillis = bucket != null
+                    ? TimeUnit.NANOSECONDS.toMillis(bucket.estimateWaitNanos(inputTokens + expectedOutputTokens))
+                    : 0;
+            // Unmeasured backends score zero latency so that each gets tried
+            return (waitMillis + ewmaLatencyMillis) / (1.0 - Math.min(errorRate, 0.9));
+        }
+
+        synchronized boolean isCoolingDown(long now) {
+            return cooldownUntil > now;
+        }
+
+        synchronized void recordSuccess(long elapsedNanos) {
+            calls++;
+            consecutiveFailures = 0;
+            cooldownUntil = 0;
+            updateLatency(elapsedNanos);
+            errorRate = (1 - ERROR_ALPHA) * errorRate;
+        }
+
+        synchronized void recordFailure(long elapsedNanos) {
+            calls++;
+            failures++;
+            updateLatency(elapsedNanos);
+            errorRate = (1 - ERROR_ALPHA) * errorRate + ERROR_ALPHA;
+            if (++consecutiveFailures >= FAILURES_BEFORE_COOLDOWN) {
+                cooldownUntil = System.currentTimeMillis() + COOLDOWN_MILLIS;
+                logger.warn("LLM backend cooling down [backend={}, failures={}, cooldown_ms={}]",
+                        name, consecutiveFailures, COOLDOWN_MILLIS);
+            }
+        }
+
+        private void updateLatency(long elapsedNanos) {
+            double millis = elapsedNanos / 1_000_000.0;
+            ewmaLatencyMillis = ewmaLatencyMillis == 0 ? millis
+                    : (1 - LATENCY_ALPHA) * ewmaLatencyMillis + LATENCY_ALPHA * millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public TokenBucket getBucket() {
+            return bucket;
+        }
+
+        public synchronized double getEwmaLatencyMillis() {
+            return ewmaLatencyMillis;
+        }
+
+        public synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        public synchronized long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s[calls=%d, failures=%d, latency_ms=%.0f, error_rate=%.2f]",
+                    name, calls, failures, ewmaLatencyMillis, errorRate);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical LLM requests that are in flight at the same time.
+ *
+ * The first caller for a given {@link RequestFingerprint} (the leader) makes
+ * the provider call on its own thread; concurrent callers with the same
+ * fingerprint wait on the same flight and receive the same response or the
+ * same failure. Only one call is charged against the rate budget. Once the
+ * call finishes the entry is removed, so later callers go to the provider (or
+ * the response cache) again.
+ *
+ * Callers are cancelled one at a time. A cancelled waiter just stops waiting.
+ * A cancelled leader stops its call, and the callers still waiting go to the
+ * provider again, one of them as the new leader, instead of failing with it;
+ * so a discarded speculation or an expired run never fails the same request
+ * for another run.
+ */
+public class SingleFlightChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlightChatModel.class);
+
+    private final ChatLanguageModel delegate;
+    private final ConcurrentHashMap<String, CompletableFuture<Response<AiMessage>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LongAdder providerCalls = new LongAdder();
+    private final LongAdder savedCalls = new LongAdder();
+
+    /**
+     * Completes a flight whose leader was cancelled; its waiters retry.
+     */
+    private static final class LeaderCancelled extends RuntimeException {
+        private LeaderCancelled() {
+            super("Coalesced LLM request cancelled by its leader", null, false, false);
+        }
+    }
+
+    public SingleFlightChatModel(ChatLanguageModel delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate model is required");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return coalesced(messages, Collections.emptyList(), () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return coalesced(messages, toolSpecifications, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return coalesced(messages, Collections.singletonList(toolSpecification),
+                () -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> coalesced(List<ChatMessage> messages, List<ToolSpecification> tools,
+            Supplier<Response<AiMessage>> call) {
+        String key = RequestFingerprint.of(null, messages, tools);
+        while (true) {
+            CompletableFuture<Response<AiMessage>> created = new CompletableFuture<>();
+            CompletableFuture<Response<AiMessage>> flight = inFlight.putIfAbsent(key, created);
+            if (flight == null) {
+                return lead(key, created, call);
+            }
+
+            savedCalls.increment();
+            logger.debug("Coalesced duplicate LLM request [prompt_key={}, saved_total={}]",
+                    LlmCallContext.getPromptKey(), savedCalls.sum());
+            try {
+                return await(flight);
+            } catch (LeaderCancelled e) {
+                savedCalls.decrement();
+                CancellationToken token = LlmCallContext.getCancellation();
+                if (token != null) {
+                    token.throwIfCancelled();
+                }
+                logger.debug("Leader of coalesced LLM request cancelled, retrying [prompt_key={}]",
+                        LlmCallContext.getPromptKey());
+            }
+        }
+    }
+
+    private Response<AiMessage> lead(String key, CompletableFuture<Response<AiMessage>> flight,
+            Supplier<Response<AiMessage>> call) {
+        providerCalls.increment();
+        try {
+            Response<AiMessage> response = call.get();
+            flight.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            CancellationToken token = LlmCallContext.getCancellation();
+            // Removed first, so that the waiters start a new flight rather than join this one
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(token != null && token.isCancelled() ? new LeaderCancelled() : e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Response<AiMessage> await(CompletableFuture<Response<AiMessage>> flight) {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            // A cancelled waiter just leaves; the leader's call goes on
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for coalesced LLM request", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return number of requests that were sent to the delegate
+     */
+    public long getProviderCalls() {
+        return providerCalls.sum();
+    }
+
+    /**
+     * @return number of duplicate requests that were served from another
+     *         caller's in-flight request instead of calling the delegate
+     */
+    public long getSavedCalls() {
+        return savedCalls.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
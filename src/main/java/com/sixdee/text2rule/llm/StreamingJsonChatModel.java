@@ -0,0 +1,238 @@
+package com.sixdee.text2rule.llm;
+
+import dev.ai4j.openai4j.OpenAiClient;
+import dev.ai4j.openai4j.ResponseHandle;
+import dev.ai4j.openai4j.chat.ChatCompletionChoice;
+import dev.ai4j.openai4j.chat.ChatCompletionRequest;
+import dev.ai4j.openai4j.chat.ChatCompletionResponse;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.openai.InternalOpenAiHelper;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Blocking ChatLanguageModel backed by a streamed OpenAI-compatible chat
+ * completion.
+ *
+ * Tokens are fed into an {@link IncrementalJsonScanner} chosen by the
+ * PromptRegistry key of the call (see {@link LlmCallContext}). As soon as the
+ * scanner has what the agent needs - the top-level JSON object or array, or a
+ * single field such as similarity_score - the call returns and the HTTP stream
+ * is cancelled, so trailing explanations are neither waited for nor generated.
+ * Prompts without a completion mode are streamed to the end.
+ *
+ * Tool calls are not streamed; they are sent to the blocking fallback model.
+ * Streamed responses carry no provider usage, so token usage is estimated.
+ *
+ * A streamed call is the one that can be stopped: interrupting the caller
+ * cancels the HTTP call, whereas a blocking call keeps its thread in the
+ * socket read until the provider answers. So when streaming is not enabled
+ * for every call, calls made under a {@link CancellationToken} (a run with a
+ * deadline, a speculation) are still streamed and the others go to the
+ * blocking model.
+ */
+public class StreamingJsonChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingJsonChatModel.class);
+
+    public static final String MODE_OBJECT = "object";
+    public static final String MODE_ARRAY = "array";
+    public static final String MODE_FIELD_PREFIX = "field:";
+
+    private final OpenAiClient client;
+    private final String modelName;
+    private final Double temperature;
+    private final Integer maxTokens;
+    private final Duration timeout;
+    private final ChatLanguageModel toolFallback;
+    private final Function<String, String> completionModeByPromptKey;
+    private final boolean streamAll;
+
+    private final LongAdder earlyCompletions = new LongAdder();
+    private final LongAdder fullCompletions = new LongAdder();
+
+    /**
+     * @param client                    OpenAI-compatible client used for streaming
+     * @param modelName                 model to request
+     * @param temperature               sampling temperature
+     * @param maxTokens                 completion token limit
+     * @param timeout                   overall time limit of one call
+     * @param toolFallback              blocking model used for tool calls
+     * @param completionModeByPromptKey early completion mode for a prompt key
+     *                                  ("object", "array", "field:&lt;name&gt;"),
+     *                                  or null to stream to the end
+     */
+    public StreamingJsonChatModel(OpenAiClient client, String modelName, Double temperature, Integer maxTokens,
+            Duration timeout, ChatLanguageModel toolFallback, Function<String, String> completionModeByPromptKey) {
+        this(client, modelName, temperature, maxTokens, timeout, toolFallback, completionModeByPromptKey, true);
+    }
+
+    /**
+     * @param streamAll true to stream every plain completion, false to stream
+     *                  only cancellable calls and send the others to the
+     *                  blocking model
+     */
+    public StreamingJsonChatModel(OpenAiClient client, String modelName, Double temperature, Integer maxTokens,
+            Duration timeout, ChatLanguageModel toolFallback, Function<String, String> completionModeByPromptKey,
+            boolean streamAll) {
+        this.client = client;
+        this.modelName = modelName;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.timeout = timeout;
+        this.toolFallback = toolFallback;
+        this.completionModeByPromptKey = completionModeByPromptKey;
+        this.streamAll = streamAll;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        if (!streamAll && LlmCallContext.getCancellation() == null) {
+            return toolFallback.generate(messages);
+        }
+        IncrementalJsonScanner scanner = scannerFor(completionModeByPromptKey.apply(LlmCallContext.getPromptKey()));
+        ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(modelName)
+                .messages(InternalOpenAiHelper.toOpenAiMessages(messages))
+                .temperature(temperature)
+                .maxTokens(maxTokens)
+                .stream(true)
+                .build();
+
+        StringBuilder text = new StringBuilder(512);
+        AtomicReference<String> finishReason = new AtomicReference<>();
+        AtomicReference<ResponseHandle> handle = new AtomicReference<>();
+        AtomicBoolean cancelRequested = new AtomicBoolean();
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        handle.set(client.chatCompletion(request)
+                .onPartialResponse(partial -> {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    String token = deltaContent(partial);
+                    if (partial.choices() != null && !partial.choices().isEmpty()
+                            && partial.choices().get(0).finishReason() != null) {
+                        finishReason.set(partial.choices().get(0).finishReason());
+                    }
+                    if (token == null) {
+                        return;
+                    }
+                    text.append(token);
+                    if (scanner != null && scanner.feed(token)) {
+                        result.complete(scanner.getResult());
+                        cancel(handle, cancelRequested);
+                    }
+                })
+                .onComplete(() -> result.complete(text.toString()))
+                .onError(result::completeExceptionally)
+                .execute());
+        if (cancelRequested.get()) {
+            handle.get().cancel();
+        }
+
+        String content = await(result, handle, cancelRequested);
+        boolean early = scanner != null && scanner.isComplete();
+        if (early) {
+            earlyCompletions.increment();
+            logger.debug("Streamed completion finished early [prompt_key={}, chars={}]",
+                    LlmCallContext.getPromptKey(), content.length());
+        } else {
+            fullCompletions.increment();
+        }
+
+        TokenUsage usage = new TokenUsage(TokenEstimator.estimate(messages), TokenEstimator.estimate(text.toString()));
+        FinishReason reason = early || finishReason.get() == null ? FinishReason.STOP
+                : InternalOpenAiHelper.finishReasonFrom(finishReason.get());
+        return Response.from(AiMessage.from(content), usage, reason);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return toolFallback.generate(messages, toolSpecifications);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return toolFallback.generate(messages, toolSpecification);
+    }
+
+    private String await(CompletableFuture<String> result, AtomicReference<ResponseHandle> handle,
+            AtomicBoolean cancelRequested) {
+        try {
+            return timeout != null ? result.get(timeout.toMillis(), TimeUnit.MILLISECONDS) : result.get();
+        } catch (InterruptedException e) {
+            cancel(handle, cancelRequested);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while streaming LLM response", e);
+        } catch (TimeoutException e) {
+            cancel(handle, cancelRequested);
+            throw new IllegalStateException("Timed out streaming LLM response after " + timeout.getSeconds() + "s", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("LLM streaming request failed", cause);
+        }
+    }
+
+    private static void cancel(AtomicReference<ResponseHandle> handle, AtomicBoolean cancelRequested) {
+        cancelRequested.set(true);
+        ResponseHandle responseHandle = handle.get();
+        if (responseHandle != null) {
+            responseHandle.cancel();
+        }
+    }
+
+    private static String deltaContent(ChatCompletionResponse partial) {
+        if (partial.choices() == null || partial.choices().isEmpty()) {
+            return null;
+        }
+        ChatCompletionChoice choice = partial.choices().get(0);
+        return choice.delta() != null ? choice.delta().content() : null;
+    }
+
+    static IncrementalJsonScanner scannerFor(String mode) {
+        if (mode == null) {
+            return null;
+        }
+        if (MODE_OBJECT.equalsIgnoreCase(mode)) {
+            return IncrementalJsonScanner.forObject();
+        }
+        if (MODE_ARRAY.equalsIgnoreCase(mode)) {
+            return IncrementalJsonScanner.forArray();
+        }
+        if (mode.startsWith(MODE_FIELD_PREFIX) && mode.length() > MODE_FIELD_PREFIX.length()) {
+            return IncrementalJsonScanner.forField(mode.substring(MODE_FIELD_PREFIX.length()));
+        }
+        return null;
+    }
+
+    /**
+     * @return number of calls that returned before the stream ended
+     */
+    public long getEarlyCompletions() {
+        return earlyCompletions.sum();
+    }
+
+    public long getFullCompletions() {
+        return fullCompletions.sum();
+    }
+}
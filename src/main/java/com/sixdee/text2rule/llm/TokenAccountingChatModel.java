@@ -0,0 +1,75 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Records the token usage of every call that reaches the provider in the
+ * {@link TokenLedger}, under the agent, prompt key and run bound in
+ * {@link LlmCallContext}.
+ *
+ * Usage comes from the provider's response; when the provider reports none
+ * (for example a streamed call that was cut short) it is estimated.
+ */
+public class TokenAccountingChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(TokenAccountingChatModel.class);
+
+    private final ChatLanguageModel delegate;
+    private final TokenLedger ledger;
+
+    public TokenAccountingChatModel(ChatLanguageModel delegate, TokenLedger ledger) {
+        if (delegate == null || ledger == null) {
+            throw new IllegalArgumentException("Delegate model and token ledger are required");
+        }
+        this.delegate = delegate;
+        this.ledger = ledger;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return accounted(messages, () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return accounted(messages, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return accounted(messages, () -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> accounted(List<ChatMessage> messages, Supplier<Response<AiMessage>> call) {
+        Response<AiMessage> response = call.get();
+
+        TokenUsage usage = response != null ? response.tokenUsage() : null;
+        int inputTokens = usage != null && usage.inputTokenCount() != null ? usage.inputTokenCount()
+                : TokenEstimator.estimate(messages);
+        int outputTokens = usage != null && usage.outputTokenCount() != null ? usage.outputTokenCount()
+                : estimateOutput(response);
+
+        ledger.record(LlmCallContext.getAgentName(), LlmCallContext.getPromptKey(), LlmCallContext.getRunId(),
+                inputTokens, outputTokens);
+        logger.debug("LLM call tokens [agent={}, prompt_key={}, run_id={}, input={}, output={}]",
+                LlmCallContext.getAgentName(), LlmCallContext.getPromptKey(), LlmCallContext.getRunId(),
+                inputTokens, outputTokens);
+        return response;
+    }
+
+    private static int estimateOutput(Response<AiMessage> response) {
+        if (response == null || response.content() == null) {
+            return 0;
+        }
+        return TokenEstimator.estimate(response.content().text());
+    }
+}
@@ -0,0 +1,163 @@
+package com.sixdee.text2rule.llm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dual token bucket enforcing a requests-per-minute and a tokens-per-minute
+ * budget at the same time.
+ *
+ * Callers reserve capacity up front and are told how long to wait before the
+ * reservation becomes valid. Reservations may drive a bucket into debt, which
+ * keeps waiting callers in arrival order without any fixed delay: a call goes
+ * out as soon as both budgets have refilled enough to cover it.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param name              budget name used for logging (usually the provider)
+     * @param requestsPerMinute maximum requests per minute, must be positive
+     * @param tokensPerMinute   maximum prompt + completion tokens per minute, must
+     *                          be positive
+     */
+    public TokenBucket(String name, int requestsPerMinute, int tokensPerMinute) {
+        if (requestsPerMinute <= 0 || tokensPerMinute <= 0) {
+            throw new IllegalArgumentException("Rate limits must be positive [rpm=" + requestsPerMinute
+                    + ", tpm=" + tokensPerMinute + "]");
+        }
+        this.name = name;
+        this.requestCapacity = requestsPerMinute;
+        this.tokenCapacity = tokensPerMinute;
+        this.requestsPerNano = requestsPerMinute / NANOS_PER_MINUTE;
+        this.tokensPerNano = tokensPerMinute / NANOS_PER_MINUTE;
+        this.availableRequests = requestCapacity;
+        this.availableTokens = tokenCapacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves one request and the given number of tokens.
+     *
+     * @param tokens estimated tokens for the call (clamped to the bucket capacity)
+     * @return nanoseconds the caller has to wait before using the reservation
+     */
+    public synchronized long reserve(int tokens) {
+        refill();
+        double cost = Math.min(Math.max(tokens, 0), tokenCapacity);
+
+        availableRequests -= 1;
+        availableTokens -= cost;
+
+        return waitNanos();
+    }
+
+    /**
+     * Reserves capacity only if it is available right now.
+     *
+     * @param tokens estimated tokens for the call
+     * @return true if the reservation was taken
+     */
+    public synchronized boolean tryReserve(int tokens) {
+        refill();
+        double cost = Math.min(Math.max(tokens, 0), tokenCapacity);
+        if (availableRequests < 1 || availableTokens < cost) {
+            return false;
+        }
+        availableRequests -= 1;
+        availableTokens -= cost;
+        return true;
+    }
+
+    /**
+     * Returns how long a reservation of the given size would have to wait if it
+     * were taken now, without taking it.
+     */
+    public synchronized long estimateWaitNanos(int tokens) {
+        refill();
+        double cost = Math.min(Math.max(tokens, 0), tokenCapacity);
+        double requestDeficit = 1 - availableRequests;
+        double tokenDeficit = cost - availableTokens;
+        return Math.max(deficitNanos(requestDeficit, requestsPerNano), deficitNanos(tokenDeficit, tokensPerNano));
+    }
+
+    /**
+     * Corrects the token balance once the real usage of a call is known.
+     * A positive delta charges extra tokens, a negative delta refunds them.
+     */
+    public synchronized void adjustTokens(int delta) {
+        refill();
+        availableTokens = Math.min(tokenCapacity, availableTokens - delta);
+    }
+
+    /**
+     * Gives back a whole reservation that was never used (for example because
+     * the caller was interrupted while waiting).
+     */
+    public synchronized void release(int tokens) {
+        refill();
+        double cost = Math.min(Math.max(tokens, 0), tokenCapacity);
+        availableRequests = Math.min(requestCapacity, availableRequests + 1);
+        availableTokens = Math.min(tokenCapacity, availableTokens + cost);
+    }
+
+    public synchronized double getAvailableRequests() {
+        refill();
+        return availableRequests;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return availableTokens;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRequestsPerMinute() {
+        return (int) requestCapacity;
+    }
+
+    public int getTokensPerMinute() {
+        return (int) tokenCapacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        availableRequests = Math.min(requestCapacity, availableRequests + elapsed * requestsPerNano);
+        availableTokens = Math.min(tokenCapacity, availableTokens + elapsed * tokensPerNano);
+        lastRefillNanos = now;
+    }
+
+    private long waitNanos() {
+        return Math.max(deficitNanos(-availableRequests, requestsPerNano),
+                deficitNanos(-availableTokens, tokensPerNano));
+    }
+
+    private static long deficitNanos(double deficit, double ratePerNano) {
+        if (deficit <= 0) {
+            return 0L;
+        }
+        return (long) Math.ceil(deficit / ratePerNano);
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket{name=" + name + ", rpm=" + (int) requestCapacity + ", tpm=" + (int) tokenCapacity + "}";
+    }
+}
@@ -0,0 +1,70 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.util.List;
+
+/**
+ * Cheap, tokenizer-free token estimate used for budgeting before a call is
+ * sent. Uses the common heuristic of roughly four characters per token plus a
+ * small per-message overhead for role markers.
+ */
+public final class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public static int estimate(List<ChatMessage> messages) {
+        if (messages == null) {
+            return 0;
+        }
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += TOKENS_PER_MESSAGE + estimate(text(message));
+        }
+        return total;
+    }
+
+    private static String text(ChatMessage message) {
+        if (message instanceof UserMessage) {
+            UserMessage user = (UserMessage) message;
+            if (user.hasSingleText()) {
+                return user.singleText();
+            }
+            // Only text parts are estimated
+            StringBuilder text = new StringBuilder();
+            for (Content content : user.contents()) {
+                if (content instanceof TextContent) {
+                    text.append(((TextContent) content).text());
+                }
+            }
+            return text.toString();
+        }
+        if (message instanceof AiMessage) {
+            return ((AiMessage) message).text();
+        }
+        if (message instanceof SystemMessage) {
+            return ((SystemMessage) message).text();
+        }
+        if (message instanceof ToolExecutionResultMessage) {
+            return ((ToolExecutionResultMessage) message).text();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+package com.sixdee.text2rule.llm;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token usage of the LLM calls made in this JVM, aggregated per agent, per
+ * PromptRegistry key and per workflow run.
+ *
+ * Calls are recorded by {@link TokenAccountingChatModel} with the usage the
+ * provider reports. Runs are kept until {@link #removeRun(String)} is called;
+ * only the most recent runs are retained so that callers that never remove
+ * their run cannot grow the ledger without bound.
+ */
+public final class TokenLedger {
+
+    private static final String UNKNOWN = "unknown";
+    private static final int MAX_RUNS = 1024;
+
+    private static final TokenLedger INSTANCE = new TokenLedger();
+
+    private final Totals total = new Totals();
+    private final ConcurrentHashMap<String, Totals> byAgent = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Totals> byPromptKey = new ConcurrentHashMap<>();
+    private final Map<String, Totals> byRun = Collections.synchronizedMap(
+            new LinkedHashMap<String, Totals>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Totals> eldest) {
+                    return size() > MAX_RUNS;
+                }
+            });
+    private final LongAdder trimmedSections = new LongAdder();
+    private final LongAdder trimmedTokens = new LongAdder();
+
+    public static TokenLedger getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record one LLM call.
+     *
+     * @param agentName    agent that made the call, or null
+     * @param promptKey    PromptRegistry key of the call, or null
+     * @param runId        workflow run of the call, or null
+     * @param inputTokens  prompt tokens
+     * @param outputTokens completion tokens
+     */
+    public void record(String agentName, String promptKey, String runId, int inputTokens, int outputTokens) {
+        total.add(inputTokens, outputTokens);
+        byAgent.computeIfAbsent(orUnknown(agentName), key -> new Totals()).add(inputTokens, outputTokens);
+        byPromptKey.computeIfAbsent(orUnknown(promptKey), key -> new Totals()).add(inputTokens, outputTokens);
+        if (runId != null) {
+            byRun.computeIfAbsent(runId, key -> new Totals()).add(inputTokens, outputTokens);
+        }
+    }
+
+    /**
+     * Record a prompt section that was cut down to fit a prompt budget.
+     */
+    public void recordTrim(int removedTokens) {
+        trimmedSections.increment();
+        trimmedTokens.add(removedTokens);
+    }
+
+    public Totals getTotal() {
+        return total;
+    }
+
+    /**
+     * @return usage per agent, sorted by agent name
+     */
+    public Map<String, Totals> getByAgent() {
+        return new TreeMap<>(byAgent);
+    }
+
+    /**
+     * @return usage per PromptRegistry key, sorted by key
+     */
+    public Map<String, Totals> getByPromptKey() {
+        return new TreeMap<>(byPromptKey);
+    }
+
+    /**
+     * @return usage of a workflow run, or empty totals if it made no calls
+     */
+    public Totals getRun(String runId) {
+        Totals run = byRun.get(runId);
+        return run != null ? run : new Totals();
+    }
+
+    /**
+     * Stop tracking a finished run.
+     *
+     * @return the run's usage
+     */
+    public Totals removeRun(String runId) {
+        Totals run = byRun.remove(runId);
+        return run != null ? run : new Totals();
+    }
+
+    public long getTrimmedSections() {
+        return trimmedSections.sum();
+    }
+
+    public long getTrimmedTokens() {
+        return trimmedTokens.sum();
+    }
+
+    private static String orUnknown(String value) {
+        return value != null ? value : UNKNOWN;
+    }
+
+    /**
+     * Call and token counts of one group of calls.
+     */
+    public static final class Totals {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder inputTokens = new LongAdder();
+        private final LongAdder outputTokens = new LongAdder();
+
+        void add(int input, int output) {
+            calls.increment();
+            inputTokens.add(input);
+            outputTokens.add(output);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getInputTokens() {
+            return inputTokens.sum();
+        }
+
+        public long getOutputTokens() {
+            return outputTokens.sum();
+        }
+
+        public long getTotalTokens() {
+            return getInputTokens() + getOutputTokens();
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + getCalls() + ", input_tokens=" + getInputTokens() + ", output_tokens="
+                    + getOutputTokens();
+        }
+    }
+}
@@ -106,4 +106,16 @@ public class NodeData implements Serializable {
     public void setSimilarityScore(double similarityScore) {
         this.similarityScore = similarityScore;
     }
+
+    // Retries spent re-extracting this node's children after it scored below
+    // the consistency threshold
+    private int retryCount;
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = retryCount;
+    }
 }
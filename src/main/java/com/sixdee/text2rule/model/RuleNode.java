@@ -33,7 +33,11 @@ public class RuleNode<T> implements Serializable {
         return children;
     }
 
-    public void addChild(RuleNode<T> child) {
+    /**
+     * Attach a child. Synchronized so that agents fanning out over the tree
+     * can never interleave two appends to the same children list.
+     */
+    public synchronized void addChild(RuleNode<T> child) {
         child.setParent(this);
         this.children.add(child);
     }
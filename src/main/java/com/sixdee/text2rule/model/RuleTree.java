@@ -30,6 +30,20 @@ public class RuleTree<T> implements Serializable {
         });
     }
 
+    /**
+     * @return the addresses generated so far, by level
+     */
+    public Map<Integer, String> getLevelAddresses() {
+        return new HashMap<>(levelAddressMap);
+    }
+
+    /**
+     * Restore an address generated earlier, e.g. when loading a checkpoint.
+     */
+    public void setAddressForLevel(int level, String address) {
+        levelAddressMap.put(level, address);
+    }
+
     public void setRoot(RuleNode<T> root) {
         this.root = root;
     }
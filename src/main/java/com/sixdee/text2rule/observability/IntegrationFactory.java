@@ -0,0 +1,49 @@
+package com.sixdee.text2rule.observability;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Singleton entry point for observability integrations.
+ * Agents report each LLM interaction here; the default integration writes the
+ * event to the debug log so that traces can be correlated by traceId.
+ */
+public class IntegrationFactory {
+    private static final Logger logger = LoggerFactory.getLogger(IntegrationFactory.class);
+
+    private static class SingletonHelper {
+        private static final IntegrationFactory INSTANCE = new IntegrationFactory();
+    }
+
+    private IntegrationFactory() {
+    }
+
+    public static IntegrationFactory getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Record a single agent/LLM interaction.
+     *
+     * @param traceId   trace identifier of the workflow run
+     * @param agentName name of the reporting agent
+     * @param messages  role/content pairs sent to and received from the model
+     * @param output    extracted output (JSON or raw content)
+     * @param status    human readable status of the interaction
+     * @param model     model identifier
+     * @param metadata  additional metadata
+     * @param usage     token usage details, if known
+     */
+    public void recordEvent(String traceId, String agentName, List<Map<String, String>> messages, String output,
+            String status, String model, Map<String, Object> metadata, Map<String, Object> usage) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        logger.debug("Observability event [trace={}, agent={}, status={}, model={}, messages={}, output_length={}]",
+                traceId, agentName, status, model, messages != null ? messages.size() : 0,
+                output != null ? output.length() : 0);
+    }
+}
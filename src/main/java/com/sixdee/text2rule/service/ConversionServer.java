@@ -0,0 +1,408 @@
+package com.sixdee.text2rule.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.factory.LLMClientFactory;
+import com.sixdee.text2rule.helper.PreValidator;
+import com.sixdee.text2rule.observability.Metrics;
+import com.sixdee.text2rule.workflow.ConversionRunner;
+import com.sixdee.text2rule.workflow.DecompositionWorkflow;
+import com.sixdee.text2rule.workflow.Speculator;
+import com.sixdee.text2rule.workflow.StagedPipeline;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resident HTTP service that converts statements to rule JSON with one warm
+ * compiled workflow graph, so configuration, agents and graphs are built once
+ * instead of per statement.
+ *
+ * <ul>
+ * <li>POST /convert with {"input": "...", "id": "..."} waits for the rule and
+ * answers 200 (converted), 422 (conversion failed), 503 (LLM provider
+ * unavailable) or 504 (run deadline exceeded, with the partial rule). An
+ * optional "deadline_seconds" shortens the run deadline; it must be
+ * positive and is capped at the configured deadline. A request that
+ * takes longer than the sync timeout is answered with 202 and a job to
+ * poll.</li>
+ * <li>POST /convert?mode=async answers 202 with {"job_id": ...} at once.</li>
+ * <li>GET /jobs/{job_id} returns the job's status and, once done, its
+ * result.</li>
+ * <li>GET /health returns running and queued conversion counts, the figures
+ * of each stage in staged pipeline mode, speculation counts and how many
+ * statements pre-validation decided without the LLM.</li>
+ * <li>GET /metrics returns node and LLM call latencies, retries, consistency
+ * scores, cache and queue figures in the Prometheus text format.</li>
+ * </ul>
+ *
+ * At most "concurrency" conversions run at once and "queue_capacity" more
+ * wait; further requests get 503 with Retry-After.
+ */
+public class ConversionServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConversionServer.class);
+
+    // Finished jobs are kept for polling; older ones are dropped first. Jobs
+    // still queued or running are never dropped, they are bounded by the
+    // conversion queue instead.
+    private static final int MAX_JOBS = 1024;
+
+    private final ConversionRunner conversionRunner;
+    private final long syncTimeoutMillis;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ThreadPoolExecutor conversions;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Job> jobs = Collections.synchronizedMap(new LinkedHashMap<String, Job>(16, 0.75f,
+            false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+            if (size() > MAX_JOBS) {
+                Iterator<Job> oldest = values().iterator();
+                while (oldest.hasNext()) {
+                    if (oldest.next().result.isDone()) {
+                        oldest.remove();
+                        break;
+                    }
+                }
+            }
+            // Removed above when there was a finished job to remove
+            return false;
+        }
+    });
+
+    private static final class Job {
+        private final String id;
+        private final CompletableFuture<ConversionRunner.Result> result;
+        private volatile boolean started;
+
+        private Job(String id, CompletableFuture<ConversionRunner.Result> result) {
+            this.id = id;
+            this.result = result;
+        }
+
+        private String status() {
+            return result.isDone() ? "done" : started ? "running" : "queued";
+        }
+    }
+
+    /**
+     * @param conversionRunner  converter sharing one compiled graph
+     * @param port              port to listen on, 0 for any free port
+     * @param concurrency       conversions run at once
+     * @param queueCapacity     conversions waiting for a slot
+     * @param syncTimeoutMillis how long a synchronous request waits for its
+     *                          result
+     */
+    public ConversionServer(ConversionRunner conversionRunner, int port, int concurrency, int queueCapacity,
+            long syncTimeoutMillis) throws IOException {
+        if (conversionRunner == null) {
+            throw new IllegalArgumentException("Conversion runner is required");
+        }
+        this.conversionRunner = conversionRunner;
+        this.syncTimeoutMillis = Math.max(1, syncTimeoutMillis);
+
+        AtomicInteger conversionThreads = new AtomicInteger();
+        int threads = Math.max(1, concurrency);
+        this.conversions = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "convert-" + conversionThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        AtomicInteger handlerThreads = new AtomicInteger();
+        this.handlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "convert-http-" + handlerThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/convert", this::handleConvert);
+        server.createContext("/jobs/", this::handleJob);
+        server.createContext("/health", this::handleHealth);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public ConversionServer start() {
+        server.start();
+        logger.info("Conversion service listening [port={}, concurrency={}, queue_capacity={}]", getPort(),
+                conversions.getMaximumPoolSize(), conversions.getQueue().remainingCapacity());
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        conversions.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("Only POST is supported"));
+                return;
+            }
+
+            JsonNode request;
+            try {
+                request = objectMapper.readTree(readBody(exchange.getRequestBody()));
+            } catch (IOException e) {
+                sendJson(exchange, 400, error("Request body must be JSON: " + e.getMessage()));
+                return;
+            }
+            String statement = request.path("input").asText("");
+            if (statement.trim().isEmpty()) {
+                sendJson(exchange, 400, error("Field 'input' is required"));
+                return;
+            }
+            String id = request.hasNonNull("id") ? request.get("id").asText() : null;
+            long deadlineSeconds = ConfigurationManager.getInstance().getRunDeadlineSeconds();
+            if (request.hasNonNull("deadline_seconds")) {
+                JsonNode requested = request.get("deadline_seconds");
+                if (!requested.canConvertToLong() || requested.asLong() <= 0) {
+                    sendJson(exchange, 400, error("Field 'deadline_seconds' must be a positive number"));
+                    return;
+                }
+                // A client may shorten its run, never lift the service's limit
+                deadlineSeconds = deadlineSeconds > 0 ? Math.min(deadlineSeconds, requested.asLong())
+                        : requested.asLong();
+            }
+            long deadlineMillis = deadlineSeconds * 1000;
+            boolean async = request.path("async").asBoolean(false)
+                    || "async".equals(queryParameters(exchange.getRequestURI().getRawQuery()).get("mode"));
+
+            Job job;
+            try {
+                job = submit(id, statement, deadlineMillis);
+            } catch (RejectedExecutionException e) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendJson(exchange, 503, error("Conversion queue is full, retry later"));
+                return;
+            }
+
+            if (async) {
+                sendAccepted(exchange, job);
+                return;
+            }
+            try {
+                ConversionRunner.Result result = job.result.get(syncTimeoutMillis, TimeUnit.MILLISECONDS);
+                sendJson(exchange, statusCode(result), result.toJson());
+            } catch (TimeoutException e) {
+                sendAccepted(exchange, job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendJson(exchange, 503, error("Service is shutting down"));
+        } catch (ExecutionException e) {
+            logger.error("Conversion request failed [error={}]", e.getMessage(), e);
+            sendJson(exchange, 500, error(String.valueOf(e.getCause().getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Job submit(String id, String statement, long deadlineMillis) {
+        String jobId = UUID.randomUUID().toString();
+        String itemId = id != null ? id : jobId;
+        CompletableFuture<ConversionRunner.Result> result = new CompletableFuture<>();
+        Job job = new Job(jobId, result);
+        jobs.put(jobId, job);
+        try {
+            conversions.execute(() -> {
+                job.started = true;
+                try {
+                    result.complete(conversionRunner.convert(itemId, statement, deadlineMillis));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            throw e;
+        }
+        return job;
+    }
+
+    private void handleJob(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            String jobId = exchange.getRequestURI().getPath().substring("/jobs/".length());
+            Job job = jobs.get(jobId);
+            if (job == null) {
+                sendJson(exchange, 404, error("Unknown job " + jobId));
+                return;
+            }
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("job_id", job.id);
+            body.put("status", job.status());
+            if (job.result.isDone()) {
+                try {
+                    body.set("result", job.result.join().toJson());
+                } catch (RuntimeException e) {
+                    body.put("error", e.getMessage());
+                }
+            }
+            sendJson(exchange, 200, body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("status", "ok");
+            body.put("running", conversions.getActiveCount());
+            body.put("queued", conversions.getQueue().size());
+            body.put("completed", conversions.getCompletedTaskCount());
+            StagedPipeline pipeline = StagedPipeline.getInstance();
+            if (pipeline != null) {
+                body.set("stages", objectMapper.valueToTree(pipeline.snapshot()));
+            }
+            if (!Speculator.getStats().isEmpty()) {
+                body.set("speculation", objectMapper.valueToTree(Speculator.getStats()));
+            }
+            if (ConfigurationManager.getInstance().isPreValidationEnabled()) {
+                body.set("pre_validation", objectMapper.valueToTree(PreValidator.getStats()));
+            }
+            sendJson(exchange, 200, body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] bytes = Metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static int statusCode(ConversionRunner.Result result) {
+        switch (result.getStatus()) {
+            case ConversionRunner.STATUS_OK:
+                return 200;
+            case ConversionRunner.STATUS_PROVIDER_UNAVAILABLE:
+                return 503;
+            case ConversionRunner.STATUS_DEADLINE_EXCEEDED:
+                return 504;
+            default:
+                return 422;
+        }
+    }
+
+    private void sendAccepted(HttpExchange exchange, Job job) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("job_id", job.id);
+        body.put("status", job.status());
+        exchange.getResponseHeaders().set("Location", "/jobs/" + job.id);
+        sendJson(exchange, 202, body);
+    }
+
+    private ObjectNode error(String message) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error").put("message", message);
+        return body;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return the decoded parameters of a query string; the first value wins
+     *         when a name repeats
+     */
+    static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            parameters.putIfAbsent(URLDecoder.decode(parts[0], StandardCharsets.UTF_8),
+                    parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "");
+        }
+        return parameters;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurationManager config = ConfigurationManager.getInstance();
+        int port = config.getServicePort();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if ("--port".equals(parts[0]) && parts.length > 1) {
+                port = Integer.parseInt(parts[1]);
+            } else {
+                System.err.println("Unknown option: " + arg);
+                System.exit(2);
+            }
+        }
+
+        Metrics.startSnapshots(config.getMetricsSnapshotFile(), config.getMetricsSnapshotSeconds());
+
+        // Built once and shared by every request
+        ConversionRunner conversionRunner = new ConversionRunner(
+                new DecompositionWorkflow(LLMClientFactory.createChatModel(config)).build());
+        ConversionServer server = new ConversionServer(conversionRunner, port, config.getServiceConcurrency(),
+                config.getServiceQueueCapacity(), config.getServiceSyncTimeoutSeconds() * 1000L).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "convert-shutdown"));
+        Thread.currentThread().join();
+    }
+}
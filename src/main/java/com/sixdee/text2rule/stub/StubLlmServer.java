@@ -0,0 +1,398 @@
+package com.sixdee.text2rule.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sixdee.text2rule.llm.TokenEstimator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for an OpenAI-compatible chat completions endpoint, for load
+ * and latency testing without provider quota or network.
+ *
+ * Point base_url at http://localhost:&lt;port&gt;/v1 and every agent gets a
+ * canned, schema-correct answer for its PromptRegistry key (see
+ * {@link StubResponses}). Latency follows a log-normal distribution given by
+ * its median and p99, globally or per prompt key, and a share of requests can
+ * be answered with 429 (with Retry-After) or 500. Streaming requests are
+ * answered as server-sent events.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java -cp target/classes:... com.sixdee.text2rule.stub.StubLlmServer \
+ *     --port=8089 --median-ms=400 --p99-ms=3000 --rate-limit-rate=0.02 --error-rate=0.01 \
+ *     --latency=condition_extraction_prompt:900:6000
+ * </pre>
+ *
+ * GET /stats returns request, 429 and error counts per prompt key.
+ */
+public class StubLlmServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StubLlmServer.class);
+
+    private static final double Z_99 = 2.326;
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Server settings. Rates are fractions between 0 and 1.
+     */
+    public static class Options {
+        private int port = 8089;
+        private long medianMillis = 300;
+        private long p99Millis = 2000;
+        private double rateLimitRate;
+        private double errorRate;
+        private int retryAfterSeconds = 1;
+        private final Map<String, long[]> latencyByPromptKey = new HashMap<>();
+
+        public Options port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Options latency(long medianMillis, long p99Millis) {
+            this.medianMillis = medianMillis;
+            this.p99Millis = p99Millis;
+            return this;
+        }
+
+        public Options latency(String promptKey, long medianMillis, long p99Millis) {
+            latencyByPromptKey.put(promptKey, new long[] { medianMillis, p99Millis });
+            return this;
+        }
+
+        public Options rateLimitRate(double rateLimitRate) {
+            this.rateLimitRate = rateLimitRate;
+            return this;
+        }
+
+        public Options errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Options retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+    }
+
+    public StubLlmServer(Options options) throws IOException {
+        this.options = options;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.port), 0);
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-llm-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/v1/chat/completions", this::handleCompletion);
+        server.createContext("/chat/completions", this::handleCompletion);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    public StubLlmServer start() {
+        server.start();
+        logger.info("Stub LLM server listening [base_url={}, median_ms={}, p99_ms={}, rate_limit_rate={}, "
+                + "error_rate={}]", getBaseUrl(), options.medianMillis, options.p99Millis, options.rateLimitRate,
+                options.errorRate);
+        return this;
+    }
+
+    /**
+     * @return base_url to configure, e.g. http://127.0.0.1:8089/v1
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void handleCompletion(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("Only POST is supported", "invalid_request_error"));
+                return;
+            }
+
+            JsonNode request = objectMapper.readTree(readBody(exchange.getRequestBody()));
+            String prompt = promptText(request);
+            String promptKey = StubResponses.classify(prompt);
+            Counters stats = counters.computeIfAbsent(promptKey, key -> new Counters());
+            stats.requests.increment();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < options.rateLimitRate) {
+                stats.rateLimited.increment();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                // Clients only see the body, so the wait is repeated there the way OpenAI words it
+                sendJson(exchange, 429, error("Rate limit reached for requests. Please try again in "
+                        + options.retryAfterSeconds + "s.", "rate_limit_exceeded"));
+                return;
+            }
+
+            long latencyMillis = sampleLatency(promptKey, random);
+            if (random.nextDouble() < options.errorRate) {
+                stats.errors.increment();
+                sleep(latencyMillis / 2);
+                sendJson(exchange, 500, error("The server had an error while processing your request",
+                        "server_error"));
+                return;
+            }
+
+            String model = request.path("model").asText("stub-model");
+            String content = StubResponses.completion(promptKey, prompt);
+            if (request.path("stream").asBoolean(false)) {
+                stream(exchange, model, content, latencyMillis);
+            } else {
+                sleep(latencyMillis);
+                sendJson(exchange, 200, completion(model, content, prompt));
+            }
+        } catch (Exception e) {
+            // A streaming client that got what it needed may hang up early
+            logger.debug("Stub LLM request ended early [error={}]", e.getMessage());
+            if (exchange.getResponseCode() == -1) {
+                sendJson(exchange, 400, error(String.valueOf(e.getMessage()), "invalid_request_error"));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            ObjectNode body = objectMapper.createObjectNode();
+            new TreeMap<>(counters).forEach((key, stats) -> {
+                ObjectNode node = body.putObject(key);
+                node.put("requests", stats.requests.sum());
+                node.put("rate_limited", stats.rateLimited.sum());
+                node.put("errors", stats.errors.sum());
+            });
+            sendJson(exchange, 200, body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Log-normal latency with the configured median and p99.
+     */
+    private long sampleLatency(String promptKey, Random random) {
+        long[] latency = options.latencyByPromptKey.get(promptKey);
+        long median = latency != null ? latency[0] : options.medianMillis;
+        long p99 = latency != null ? latency[1] : options.p99Millis;
+        if (median <= 0) {
+            return 0;
+        }
+        double sigma = p99 > median ? Math.log((double) p99 / median) / Z_99 : 0;
+        return Math.round(median * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Send the content as chat.completion.chunk events, spreading the latency
+     * over time-to-first-token and the remaining chunks.
+     */
+    private void stream(HttpExchange exchange, String model, String content, long latencyMillis)
+            throws IOException {
+        String id = "chatcmpl-" + UUID.randomUUID();
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+
+        int chunkSize = 8;
+        int chunks = Math.max(1, (content.length() + chunkSize - 1) / chunkSize);
+        long firstTokenMillis = latencyMillis * 3 / 10;
+        long perChunkMillis = (latencyMillis - firstTokenMillis) / chunks;
+
+        OutputStream out = exchange.getResponseBody();
+        sleep(firstTokenMillis);
+        for (int i = 0; i < content.length(); i += chunkSize) {
+            String piece = content.substring(i, Math.min(content.length(), i + chunkSize));
+            writeEvent(out, chunk(id, model, piece, null));
+            sleep(perChunkMillis);
+        }
+        writeEvent(out, chunk(id, model, null, "stop"));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void writeEvent(OutputStream out, ObjectNode event) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private ObjectNode chunk(String id, String model, String content, String finishReason) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", System.currentTimeMillis() / 1000);
+        chunk.put("model", model);
+        ObjectNode choice = chunk.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("content", content);
+        }
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        return chunk;
+    }
+
+    private ObjectNode completion(String model, String content, String prompt) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("id", "chatcmpl-" + UUID.randomUUID());
+        body.put("object", "chat.completion");
+        body.put("created", System.currentTimeMillis() / 1000);
+        body.put("model", model);
+        ObjectNode choice = body.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        choice.put("finish_reason", "stop");
+
+        int promptTokens = TokenEstimator.estimate(prompt);
+        int completionTokens = TokenEstimator.estimate(content);
+        ObjectNode usage = body.putObject("usage");
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return body;
+    }
+
+    private ObjectNode error(String message, String type) {
+        ObjectNode body = objectMapper.createObjectNode();
+        ObjectNode error = body.putObject("error");
+        error.put("message", message);
+        error.put("type", type);
+        return body;
+    }
+
+    private static String promptText(JsonNode request) {
+        StringBuilder text = new StringBuilder();
+        JsonNode messages = request.path("messages");
+        if (messages instanceof ArrayNode) {
+            for (JsonNode message : messages) {
+                JsonNode content = message.path("content");
+                if (content.isTextual()) {
+                    text.append(content.asText()).append('\n');
+                } else if (content.isArray()) {
+                    for (JsonNode part : content) {
+                        text.append(part.path("text").asText("")).append('\n');
+                    }
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        long median = options.medianMillis;
+        long p99 = options.p99Millis;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            String value = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "--port":
+                    options.port(Integer.parseInt(value));
+                    break;
+                case "--median-ms":
+                    median = Long.parseLong(value);
+                    break;
+                case "--p99-ms":
+                    p99 = Long.parseLong(value);
+                    break;
+                case "--rate-limit-rate":
+                    options.rateLimitRate(Double.parseDouble(value));
+                    break;
+                case "--error-rate":
+                    options.errorRate(Double.parseDouble(value));
+                    break;
+                case "--retry-after-s":
+                    options.retryAfterSeconds(Integer.parseInt(value));
+                    break;
+                case "--latency":
+                    // prompt_key:median:p99
+                    String[] latency = value.split(":");
+                    options.latency(latency[0], Long.parseLong(latency[1]), Long.parseLong(latency[2]));
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(2);
+            }
+        }
+        options.latency(median, p99);
+
+        StubLlmServer server = new StubLlmServer(options).start();
+        System.out.println("Stub LLM server running, set <base_url>" + server.getBaseUrl() + "</base_url>");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "stub-llm-shutdown"));
+        Thread.currentThread().join();
+    }
+}
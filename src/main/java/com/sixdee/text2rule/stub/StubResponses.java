@@ -0,0 +1,138 @@
+package com.sixdee.text2rule.stub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Canned, schema-correct completions for the stand-in LLM server, one per
+ * PromptRegistry key.
+ *
+ * The server only sees rendered prompts, so the key is recognised from the
+ * text: first by the key name itself (PromptRegistry renders a missing prompt
+ * as "Prompt not found for key: ..."), then by fragments the agents add
+ * themselves, and finally by the output fields each prompt asks for.
+ */
+public final class StubResponses {
+
+    public static final String VALIDATION = "basic_validator_agent_prompt";
+    public static final String DECOMPOSITION = "statement_decompostion_agent_prompt";
+    public static final String CONDITION = "condition_extraction_prompt";
+    public static final String CONDITION_BATCH = "condition_extraction_prompt#batch";
+    public static final String ACTION = "action_extraction_prompt";
+    public static final String CONSISTENCY = "consistency_check_prompt";
+    public static final String REFINEMENT = "prompt_refinement_prompt";
+    public static final String RULE_CONVERTER = "rule_converter_prompt";
+    public static final String SCHEDULE = "schedule_parser_prompt";
+    public static final String KPI_MATCHING = "unified_kpi_matching_prompt";
+    public static final String IF_CONDITION = "unified_if_condition_prompt";
+    public static final String UNKNOWN = "unknown";
+
+    private static final Pattern BATCH_SIZE = Pattern.compile("contains (\\d+) independent statements");
+
+    // Checked in order; the first match wins
+    private static final List<Map.Entry<String, Pattern>> MARKERS = new ArrayList<>();
+
+    static {
+        marker(CONDITION_BATCH, "independent statements, numbered \\[0\\]");
+        // Refinement prompts embed the prompt being refined, so they are checked first
+        for (String key : new String[] { REFINEMENT, VALIDATION, DECOMPOSITION, CONDITION, ACTION, CONSISTENCY,
+                RULE_CONVERTER, SCHEDULE, KPI_MATCHING, IF_CONDITION }) {
+            marker(key, Pattern.quote(key));
+        }
+        marker(VALIDATION, "Validate the rule and return a valid JSON object|is_valid");
+        marker(CONSISTENCY, "similarity_score");
+        marker(REFINEMENT, "(?i)previous output|refine the prompt");
+        marker(DECOMPOSITION, "normal_statements");
+        marker(SCHEDULE, "schedule_type|select_days");
+        marker(ACTION, "ActionName|Message_ID");
+        marker(IF_CONDITION, "(?i)if_instruction|one line");
+        marker(KPI_MATCHING, "(?i)\\bkpis?\\b");
+        marker(RULE_CONVERTER, "(?i)\\bsegments\\b");
+        marker(CONDITION, "(?i)condition");
+    }
+
+    private static void marker(String promptKey, String regex) {
+        MARKERS.add(Map.entry(promptKey, Pattern.compile(regex)));
+    }
+
+    private StubResponses() {
+    }
+
+    /**
+     * @return the PromptRegistry key the prompt was rendered from, or
+     *         {@link #UNKNOWN}
+     */
+    public static String classify(String prompt) {
+        for (Map.Entry<String, Pattern> marker : MARKERS) {
+            if (marker.getValue().matcher(prompt).find()) {
+                return marker.getKey();
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the completion text for a prompt of the given key
+     */
+    public static String completion(String promptKey, String prompt) {
+        switch (promptKey) {
+            case VALIDATION:
+                return "{\"is_valid\": true, \"issues_detected\": [], \"suggestion\": \"\", "
+                        + "\"has_condition\": true, \"has_action\": true, \"has_bonus\": false, "
+                        + "\"has_sampling\": false, \"has_policy\": false, \"has_schedule\": true}";
+            case DECOMPOSITION:
+                return "{\"normal_statements\": \"Subscribers whose SMS revenue in the last 30 days is exactly 15 RO "
+                        + "and whose total recharge in the last 30 days is at least 200 RO should receive a "
+                        + "promotional SMS with Message ID 24.\", "
+                        + "\"schedule\": \"Run this campaign weekly on Mondays and Tuesdays from 5 October 2024 "
+                        + "to 5 October 2026.\"}";
+            case CONDITION:
+                return "[" + conditionEntry() + "]";
+            case CONDITION_BATCH:
+                return conditionBatch(prompt);
+            case ACTION:
+                return "{\"ActionName\": \"Send Promotional SMS\", \"Channel\": \"SMS\", "
+                        + "\"Message\": \"Promotional SMS\", \"Message_ID\": \"24\", \"UserType\": \"Prepaid\", "
+                        + "\"TriggerType\": \"Scheduled\", \"AdditionalAttributes\": {}, \"Conditions\": []}";
+            case CONSISTENCY:
+                return "{\"similarity_score\": 0.93, \"reason\": \"The derived statements preserve every "
+                        + "condition and action of the original.\"}";
+            case REFINEMENT:
+                return "Decompose the statement into normal statements and a schedule. Keep every threshold "
+                        + "and message ID exactly as written.";
+            case RULE_CONVERTER:
+                return "{\"segments\": [\"SMS revenue in the last 30 days is exactly 15 RO\", "
+                        + "\"total recharge in the last 30 days is at least 200 RO\"], "
+                        + "\"actions\": \"Send a promotional SMS with Message ID 24\", \"schedule\": \"\"}";
+            case SCHEDULE:
+                return "{\"schedule_type\": \"Recurring\", \"repeat\": \"Weekly\", "
+                        + "\"segment_rule_start_date\": \"2024-10-05\", \"segment_rule_end_date\": \"2026-10-05\", "
+                        + "\"frequency\": \"Weekly\", \"select_days\": [\"Monday\", \"Tuesday\"], "
+                        + "\"start_time\": {\"hours\": \"09\", \"minutes\": \"00\"}}";
+            case KPI_MATCHING:
+                return "[\"Total_Sms_Rev_30D\", \"Total_Recharge_30D\"]";
+            case IF_CONDITION:
+                return "if ((Total_Sms_Rev_30D = 15) AND (Total_Recharge_30D >= 200))";
+            default:
+                return "{}";
+        }
+    }
+
+    private static String conditionEntry() {
+        return "{\"condition\": \"Total_Sms_Rev_30D = 15 AND Total_Recharge_30D >= 200\", "
+                + "\"actions\": \"Send a promotional SMS with Message ID 24\", \"input_text\": \"\"}";
+    }
+
+    private static String conditionBatch(String prompt) {
+        Matcher matcher = BATCH_SIZE.matcher(prompt);
+        int size = matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+        List<String> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add("{\"index\": " + i + ", \"conditions\": [" + conditionEntry() + "]}");
+        }
+        return "[" + String.join(", ", entries) + "]";
+    }
+}
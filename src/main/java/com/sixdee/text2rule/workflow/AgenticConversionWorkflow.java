@@ -9,13 +9,17 @@ import com.sixdee.text2rule.agent.ConditionExtractionAgent;
 import com.sixdee.text2rule.agent.ValidationAgent;
 import com.sixdee.text2rule.config.PromptRegistry;
 import com.sixdee.text2rule.dto.DecompositionResult;
+import com.sixdee.text2rule.llm.CacheAdmission;
 import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
+import com.sixdee.text2rule.observability.Metrics;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import org.bsc.langgraph4j.CompiledGraph;
 import org.bsc.langgraph4j.GraphRepresentation;
+import org.bsc.langgraph4j.GraphStateException;
 import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
 import com.sixdee.text2rule.view.AsciiRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +34,9 @@ import static org.bsc.langgraph4j.StateGraph.START;
 
 public class AgenticConversionWorkflow {
     private static final Logger logger = LoggerFactory.getLogger(AgenticConversionWorkflow.class);
+    private static final Metrics.Counter DECOMPOSITION_RETRIES = retryCounter("decomposition");
+    private static final Metrics.Counter CONDITION_RETRIES = retryCounter("condition");
+    private static final Metrics.Counter ACTION_RETRIES = retryCounter("action");
     private static final String CONSISTENCY_PROMPT_KEY = "consistency_check_prompt";
     private static final String DECOMPOSITION_PROMPT_KEY = "statement_decompostion_agent_prompt";
 
@@ -68,25 +75,25 @@ public class AgenticConversionWorkflow {
     }
 
     public CompiledGraph<WorkflowState> build() throws Exception {
-        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState::new);
+        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState.SCHEMA, new WorkflowStateSerializer());
 
         // Add all nodes
-        workflow.addNode("validate_agent", this::validateNode);
+        addNode(workflow, "validate_agent", this::validateNode);
 
         // Decomposition nodes
-        workflow.addNode("decompose_agent", this::decomposeNode);
-        workflow.addNode("consistency_check_decompose", this::consistencyCheckDecomposeNode);
-        workflow.addNode("refine_decompose_prompt", this::refineDecomposePromptNode);
+        addNode(workflow, "decompose_agent", this::decomposeNode);
+        addNode(workflow, "consistency_check_decompose", this::consistencyCheckDecomposeNode);
+        addNode(workflow, "refine_decompose_prompt", this::refineDecomposePromptNode);
 
         // Condition extraction nodes
-        workflow.addNode("condition_agent", this::conditionNode);
-        workflow.addNode("consistency_check_condition", this::consistencyCheckConditionNode);
-        workflow.addNode("refine_condition_prompt", this::refineConditionPromptNode);
+        addNode(workflow, "condition_agent", this::conditionNode);
+        addNode(workflow, "consistency_check_condition", this::consistencyCheckConditionNode);
+        addNode(workflow, "refine_condition_prompt", this::refineConditionPromptNode);
 
         // Action extraction nodes
-        workflow.addNode("action_agent", this::actionNode);
-        workflow.addNode("consistency_check_action", this::consistencyCheckActionNode);
-        workflow.addNode("refine_action_prompt", this::refineActionPromptNode);
+        addNode(workflow, "action_agent", this::actionNode);
+        addNode(workflow, "consistency_check_action", this::consistencyCheckActionNode);
+        addNode(workflow, "refine_action_prompt", this::refineActionPromptNode);
 
         // Start with validation
         workflow.addEdge(START, "validate_agent");
@@ -230,10 +237,24 @@ public class AgenticConversionWorkflow {
 
         workflow.addEdge("refine_action_prompt", "action_agent");
 
-        this.compiledGraph = workflow.compile();
+        this.compiledGraph = workflow.compile(DiskCheckpointSaver.compileConfig());
         return this.compiledGraph;
     }
 
+    private static Metrics.Counter retryCounter(String stage) {
+        return Metrics.counter("workflow_retries_total", "Prompt refinement retries by stage", "workflow", "agentic",
+                "stage", stage);
+    }
+
+    /**
+     * Add a node that is timed (see Metrics) and ends the run once its
+     * deadline has passed.
+     */
+    private static void addNode(StateGraph<WorkflowState> workflow, String id,
+            AsyncNodeAction<WorkflowState> action) throws GraphStateException {
+        workflow.addNode(id, RunDeadline.guard(id, Metrics.timeNode("agentic", id, action)));
+    }
+
     private CompletableFuture<Map<String, Object>> validateNode(WorkflowState state) {
         logger.info("Calling Validation Agent...");
         return validationAgent.execute(state.getInput())
@@ -302,6 +323,9 @@ public class AgenticConversionWorkflow {
 
         return consistencyAgent.execute(tree, "root")
                 .thenApply(consistencyState -> {
+                    if (consistencyState.isProviderUnavailable()) {
+                        return providerUnavailable("decomposition", consistencyState);
+                    }
                     Double score = consistencyState.getConsistencyScore();
 
                     if (score == null) {
@@ -322,7 +346,10 @@ public class AgenticConversionWorkflow {
 
     private CompletableFuture<Map<String, Object>> refineDecomposePromptNode(WorkflowState state) {
         int currentRetry = state.getRetryCount();
+        DECOMPOSITION_RETRIES.increment();
         logger.info("═══ PROMPT REFINEMENT (Decomposition - Retry {}/{}) ═══", currentRetry + 1, maxRetries);
+        // The decomposition failed its check; the retry must not get it back from the cache
+        CacheAdmission.getInstance().reject(DECOMPOSITION_PROMPT_KEY);
 
         String originalPrompt = state.getCurrentDecompositionPrompt();
         if (originalPrompt == null || originalPrompt.trim().isEmpty()) {
@@ -387,6 +414,9 @@ public class AgenticConversionWorkflow {
 
         return consistencyAgent.execute(tree, "condition")
                 .thenApply(consistencyState -> {
+                    if (consistencyState.isProviderUnavailable()) {
+                        return providerUnavailable("condition", consistencyState);
+                    }
                     Double score = consistencyState.getConsistencyScore();
 
                     if (score == null) {
@@ -407,7 +437,11 @@ public class AgenticConversionWorkflow {
 
     private CompletableFuture<Map<String, Object>> refineConditionPromptNode(WorkflowState state) {
         int currentRetry = state.getConditionRetryCount();
+        CONDITION_RETRIES.increment();
         logger.info("═══ PROMPT REFINEMENT (Condition - Retry {}/{}) ═══", currentRetry + 1, maxRetries);
+        // The extraction failed its check; the retry must not get it back from the cache
+        String promptKey = state.getCurrentConditionPromptKey();
+        CacheAdmission.getInstance().reject(promptKey != null ? promptKey : "condition_extraction_prompt");
 
         // For condition extraction, we refine the prompt template key
         // This is a simplified approach - in production you might want to refine the
@@ -460,6 +494,9 @@ public class AgenticConversionWorkflow {
 
         return consistencyAgent.execute(tree, "action")
                 .thenApply(consistencyState -> {
+                    if (consistencyState.isProviderUnavailable()) {
+                        return providerUnavailable("action", consistencyState);
+                    }
                     Double score = consistencyState.getConsistencyScore();
 
                     if (score == null) {
@@ -480,7 +517,10 @@ public class AgenticConversionWorkflow {
 
     private CompletableFuture<Map<String, Object>> refineActionPromptNode(WorkflowState state) {
         int currentRetry = state.getActionRetryCount();
+        ACTION_RETRIES.increment();
         logger.info("═══ PROMPT REFINEMENT (Action - Retry {}/{}) ═══", currentRetry + 1, maxRetries);
+        String promptKey = state.getCurrentActionPromptKey();
+        CacheAdmission.getInstance().reject(promptKey != null ? promptKey : "action_extraction_prompt");
 
         String feedback = state.getActionFeedback();
 
@@ -493,6 +533,20 @@ public class AgenticConversionWorkflow {
 
     // ===== HELPER METHODS =====
 
+    /**
+     * End the run as a provider outage. Treating the missing score as a failed
+     * check would start a prompt refinement retry while the provider is down.
+     */
+    private Map<String, Object> providerUnavailable(String stage,
+            ConsistencyAgent.ConsistencyState consistencyState) {
+        logger.error("✗ {} consistency check could not run, LLM provider unavailable. Ending workflow.", stage);
+        return Map.of(
+                "workflowFailed", true,
+                "providerUnavailable", true,
+                "failureReason", "LLM provider unavailable during " + stage + " consistency check: "
+                        + consistencyState.getFailureReason());
+    }
+
     private String generateFeedback(RuleTree<NodeData> tree, Double score, String stage) {
         StringBuilder feedback = new StringBuilder();
         feedback.append("Stage: ").append(stage.toUpperCase()).append("\n");
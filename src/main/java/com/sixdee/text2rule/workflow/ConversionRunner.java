@@ -0,0 +1,298 @@
+package com.sixdee.text2rule.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.exception.ProviderUnavailableException;
+import com.sixdee.text2rule.exception.Text2RuleException;
+import com.sixdee.text2rule.llm.CacheAdmission;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.llm.TokenLedger;
+import com.sixdee.text2rule.view.FinalRuleJsonRenderer;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Converts one statement to rule JSON with a compiled DecompositionWorkflow
+ * graph. The graph and its agents are built once and shared by every
+ * conversion; each conversion gets its own run id, used for token accounting
+ * and as the checkpoint thread id. Checkpoints of a successful run are
+ * deleted; those of a failed or interrupted run are kept so it can be
+ * resumed.
+ *
+ * Each run is bounded by a deadline (see {@link RunDeadline}), by default
+ * &lt;run_deadline timeout_seconds&gt;. A run that reaches it ends with
+ * {@link #STATUS_DEADLINE_EXCEEDED} and the rule rendered from the partial
+ * tree, if any.
+ *
+ * Used by Main, the batch runner and the conversion service.
+ */
+public class ConversionRunner {
+    private static final Logger logger = LoggerFactory.getLogger(ConversionRunner.class);
+
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_PROVIDER_UNAVAILABLE = "provider_unavailable";
+    public static final String STATUS_DEADLINE_EXCEEDED = "deadline_exceeded";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final CompiledGraph<WorkflowState> graph;
+    private final long deadlineMillis;
+
+    /**
+     * Outcome of one conversion.
+     */
+    public static final class Result {
+        private final String id;
+        private final String runId;
+        private final String status;
+        private final JsonNode rule;
+        private final String failureReason;
+        private final long elapsedMillis;
+        private final TokenLedger.Totals tokens;
+
+        private Result(String id, String runId, String status, JsonNode rule, String failureReason,
+                long elapsedMillis, TokenLedger.Totals tokens) {
+            this.id = id;
+            this.runId = runId;
+            this.status = status;
+            this.rule = rule;
+            this.failureReason = failureReason;
+            this.elapsedMillis = elapsedMillis;
+            this.tokens = tokens;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRunId() {
+            return runId;
+        }
+
+        /**
+         * @return {@link #STATUS_OK}, {@link #STATUS_FAILED},
+         *         {@link #STATUS_PROVIDER_UNAVAILABLE} or
+         *         {@link #STATUS_DEADLINE_EXCEEDED}
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isOk() {
+            return STATUS_OK.equals(status);
+        }
+
+        /**
+         * @return the rule JSON, the partial rule if the deadline was
+         *         exceeded, or null if the conversion failed
+         */
+        public JsonNode getRule() {
+            return rule;
+        }
+
+        public String getFailureReason() {
+            return failureReason;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public TokenLedger.Totals getTokens() {
+            return tokens;
+        }
+
+        public ObjectNode toJson() {
+            ObjectNode json = objectMapper.createObjectNode();
+            json.put("id", id);
+            json.put("run_id", runId);
+            json.put("status", status);
+            if (rule != null) {
+                json.set("rule", rule);
+            }
+            if (failureReason != null) {
+                json.put("failure_reason", failureReason);
+            }
+            json.put("elapsed_ms", elapsedMillis);
+            ObjectNode usage = json.putObject("tokens");
+            usage.put("input", tokens.getInputTokens());
+            usage.put("output", tokens.getOutputTokens());
+            return json;
+        }
+    }
+
+    public ConversionRunner(CompiledGraph<WorkflowState> graph) {
+        this(graph, ConfigurationManager.getInstance().getRunDeadlineSeconds() * 1000L);
+    }
+
+    /**
+     * @param deadlineMillis default time limit of a run, 0 for none
+     */
+    public ConversionRunner(CompiledGraph<WorkflowState> graph, long deadlineMillis) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Compiled workflow graph is required");
+        }
+        this.graph = graph;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Run the workflow for one statement. Never throws; failures are
+     * reported in the result.
+     *
+     * @param id        caller's id for the statement
+     * @param statement campaign statement to convert
+     */
+    public Result convert(String id, String statement) {
+        return convert(id, statement, deadlineMillis);
+    }
+
+    /**
+     * Run the workflow for one statement with its own time limit. Never
+     * throws; failures are reported in the result.
+     *
+     * @param deadlineMillis time limit of this run, 0 for none
+     */
+    public Result convert(String id, String statement, long deadlineMillis) {
+        return convert(id, statement, deadlineMillis, state -> {
+        });
+    }
+
+    /**
+     * Run the workflow for one statement and hand its final state, e.g. for
+     * presenting the tree, to {@code finalState}. Not called if the run ended
+     * with an exception.
+     */
+    public Result convert(String id, String statement, long deadlineMillis, Consumer<WorkflowState> finalState) {
+        if (statement == null || statement.trim().isEmpty()) {
+            return failed(id, "Statement is empty");
+        }
+        return run(id, UUID.randomUUID().toString(), Map.of("input", statement), null, deadlineMillis, finalState);
+    }
+
+    /**
+     * Continue a run that was interrupted, from its last checkpoint or from
+     * the given checkpoint or node id, without repeating the nodes before it.
+     *
+     * @param id    caller's id for the statement
+     * @param runId run id of the interrupted run
+     * @param from  checkpoint id or node id to resume after, or null for the
+     *              last checkpoint
+     */
+    public Result resume(String id, String runId, String from) {
+        return resume(id, runId, from, state -> {
+        });
+    }
+
+    /**
+     * Continue an interrupted run and hand its final state to
+     * {@code finalState}, as {@link #convert(String, String, long, Consumer)}.
+     */
+    public Result resume(String id, String runId, String from, Consumer<WorkflowState> finalState) {
+        if (DiskCheckpointSaver.getInstance() == null) {
+            return failed(id, "Workflow checkpoints are disabled");
+        }
+        return run(id, runId, null, from, deadlineMillis, finalState);
+    }
+
+    private Result run(String id, String runId, Map<String, Object> inputs, String from, long deadlineMillis,
+            Consumer<WorkflowState> finalState) {
+        long start = System.nanoTime();
+        String status;
+        JsonNode rule = null;
+        String failureReason = null;
+
+        try {
+            RunnableConfig.Builder config = RunnableConfig.builder().threadId(runId);
+            if (from != null) {
+                config.checkPointId(from);
+            }
+            WorkflowState state = LlmCallContext.withRun(runId,
+                    () -> RunDeadline.run(deadlineMillis, () -> invoke(inputs, config.build())))
+                    .orElseThrow(() -> new Text2RuleException("Graph execution failed to return state"));
+            finalState.accept(state);
+
+            if (state.isDeadlineExceeded()) {
+                status = STATUS_DEADLINE_EXCEEDED;
+                failureReason = state.getFailureReason();
+                rule = renderPartial(state);
+            } else if (state.isProviderUnavailable()) {
+                status = STATUS_PROVIDER_UNAVAILABLE;
+                failureReason = state.getFailureReason();
+            } else if (state.isWorkflowFailed()) {
+                status = STATUS_FAILED;
+                failureReason = state.getFailureReason();
+            } else {
+                rule = objectMapper.readTree(new FinalRuleJsonRenderer().render(state.getTree()));
+                status = STATUS_OK;
+                // Kept otherwise, so that the run can be resumed
+                removeCheckpoints(runId);
+            }
+        } catch (Exception e) {
+            status = ProviderUnavailableException.findIn(e) != null ? STATUS_PROVIDER_UNAVAILABLE : STATUS_FAILED;
+            failureReason = e.getMessage();
+            logger.warn("Conversion failed [id={}, run_id={}, error={}]", id, runId, e.getMessage());
+        }
+
+        Speculator.endRun(runId);
+        // Only a run that succeeded has accepted the responses it got
+        if (STATUS_OK.equals(status)) {
+            CacheAdmission.getInstance().commitRun(runId);
+        } else {
+            CacheAdmission.getInstance().discardRun(runId);
+        }
+        return new Result(id, runId, status, rule, failureReason, (System.nanoTime() - start) / 1_000_000,
+                TokenLedger.getInstance().removeRun(runId));
+    }
+
+    /**
+     * @return the rule rendered from a stopped run's tree, or null if there is
+     *         none or it cannot be rendered yet
+     */
+    private static JsonNode renderPartial(WorkflowState state) {
+        if (state.getTree() == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(new FinalRuleJsonRenderer().render(state.getTree()));
+        } catch (Exception e) {
+            logger.debug("Partial tree could not be rendered [error={}]", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void removeCheckpoints(String runId) {
+        DiskCheckpointSaver saver = DiskCheckpointSaver.getInstance();
+        if (saver != null) {
+            saver.remove(runId);
+        }
+    }
+
+    /**
+     * Record a statement that could not be converted without running the
+     * workflow, e.g. an unreadable input line.
+     */
+    public static Result failed(String id, String failureReason) {
+        return new Result(id, null, STATUS_FAILED, null, failureReason, 0, new TokenLedger.Totals());
+    }
+
+    private Optional<WorkflowState> invoke(Map<String, Object> inputs, RunnableConfig config) {
+        try {
+            return graph.invoke(inputs, config);
+        } catch (Text2RuleException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new Text2RuleException("Workflow execution failed", e);
+        }
+    }
+}
@@ -5,19 +5,28 @@ import com.sixdee.text2rule.agent.ActionExtractionAgent;
 import com.sixdee.text2rule.agent.ConditionExtractionAgent;
 import com.sixdee.text2rule.agent.ConsistencyAgent;
 import com.sixdee.text2rule.agent.DecompositionAgent;
+import com.sixdee.text2rule.agent.FastPathAgent;
 import com.sixdee.text2rule.agent.PromptRefinementAgent;
 import com.sixdee.text2rule.agent.ScheduleExtractionAgent;
 
 import com.sixdee.text2rule.agent.RuleConverterAgent;
 import com.sixdee.text2rule.agent.ValidationAgent;
+import com.sixdee.text2rule.config.ConfigurationManager;
 import com.sixdee.text2rule.config.PromptRegistry;
 import com.sixdee.text2rule.dto.DecompositionResult;
+import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.exception.Text2RuleException;
+import com.sixdee.text2rule.llm.CacheAdmission;
 import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
 import com.sixdee.text2rule.model.RuleTree;
+import com.sixdee.text2rule.observability.Metrics;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import org.bsc.langgraph4j.CompiledGraph;
 import org.bsc.langgraph4j.GraphRepresentation;
+import org.bsc.langgraph4j.GraphStateException;
 import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
 import com.sixdee.text2rule.view.AsciiRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,14 +34,28 @@ import org.slf4j.LoggerFactory;
 import com.sixdee.text2rule.agent.RuleConverterAgent;
 import com.sixdee.text2rule.agent.UnifiedRuleAgent;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static org.bsc.langgraph4j.StateGraph.END;
 import static org.bsc.langgraph4j.StateGraph.START;
 
+/**
+ * The statement-to-rule workflow: validation, decomposition, condition,
+ * schedule and action extraction, each followed by a consistency check.
+ *
+ * The compiled graph is reentrant. Per-run data lives only in the run's
+ * {@link WorkflowState} and in the agents' own run states, and the agents
+ * and helpers held here keep none, so one built instance can serve many
+ * conversions at once; give each its own thread id when checkpointing.
+ */
 public class DecompositionWorkflow {
     private static final Logger logger = LoggerFactory.getLogger(DecompositionWorkflow.class);
+    private static final Metrics.Counter DECOMPOSITION_RETRIES = retryCounter("decomposition");
+    private static final Metrics.Counter CONDITION_RETRIES = retryCounter("condition");
 
     private static final String DECOMPOSITION_PROMPT_KEY = "statement_decompostion_agent_prompt";
 
@@ -45,9 +68,12 @@ public class DecompositionWorkflow {
     private final RuleConverterAgent ruleConverterAgent;
     private final UnifiedRuleAgent unifiedRuleAgent;
     private final ActionExtractionAgent actionExtractionAgent;
+    private final FastPathAgent fastPathAgent;
 
     private final AsciiRenderer asciiRenderer;
     private final ObjectMapper objectMapper;
+    private final WorkflowStateSerializer stateSerializer;
+    private final Speculator speculator;
     private CompiledGraph<WorkflowState> compiledGraph;
 
     public DecompositionWorkflow(ChatLanguageModel lang4jService) {
@@ -60,51 +86,69 @@ public class DecompositionWorkflow {
         this.ruleConverterAgent = new RuleConverterAgent(lang4jService);
         this.unifiedRuleAgent = new UnifiedRuleAgent(lang4jService);
         this.actionExtractionAgent = new ActionExtractionAgent(lang4jService);
+        this.fastPathAgent = new FastPathAgent(lang4jService);
 
         this.asciiRenderer = new AsciiRenderer();
         this.objectMapper = new ObjectMapper();
+        this.stateSerializer = new WorkflowStateSerializer();
+        this.speculator = new Speculator(stateSerializer);
 
         // Read configuration from prompts.xml
         logger.info("DecompositionWorkflow initialized");
     }
 
     public CompiledGraph<WorkflowState> build() throws Exception {
-        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState::new);
+        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState.SCHEMA, stateSerializer);
 
         // Add all nodes
-        workflow.addNode("validate_agent", this::validateNode);
+        // Gates may start the node they lead to speculatively (see Speculator)
+        addNode(workflow, "validate_agent",
+                speculator.gate("validate_agent", "decompose_agent", this::validateNode, this::decomposeNode));
 
         // Decomposition nodes
-        workflow.addNode("decompose_agent", this::decomposeNode);
-        workflow.addNode("consistency_check_decompose", this::consistencyCheckDecomposeNode);
-        workflow.addNode("refine_decompose_prompt", this::refineDecomposePromptNode);
+        addNode(workflow, "decompose_agent",
+                speculator.target("validate_agent", this::decomposeNode, (state, update) -> update));
+        addNode(workflow, "consistency_check_decompose", speculator.gate("consistency_check_decompose",
+                "extract_branches", this::consistencyCheckDecomposeNode, this::extractBranchesNode));
+        addNode(workflow, "refine_decompose_prompt", this::refineDecomposePromptNode);
 
         // Extraction nodes
-        workflow.addNode("condition_extract_agent", this::conditionExtractionNode);
-        workflow.addNode("consistency_check_condition", this::consistencyCheckConditionNode);
-        workflow.addNode("refine_condition_prompt", this::refineConditionPromptNode);
-        workflow.addNode("schedule_extract_agent", this::scheduleExtractionNode);
+        addNode(workflow, "condition_extract_agent", this::conditionExtractionNode);
+        addNode(workflow, "consistency_check_condition", this::consistencyCheckConditionNode);
+        addNode(workflow, "refine_condition_prompt", this::refineConditionPromptNode);
+        addNode(workflow, "extract_branches",
+                speculator.target("consistency_check_decompose", this::extractBranchesNode, this::commitExtraction));
 
         // Unified Rule Node
-        workflow.addNode("rule_converter_agent", this::ruleConverterNode);
-        workflow.addNode("unified_rule_agent", this::unifiedRuleNode);
-        workflow.addNode("action_extract_agent", this::actionExtractionNode);
+        addNode(workflow, "rule_converter_agent", this::ruleConverterNode);
+        addNode(workflow, "unified_rule_agent", this::unifiedRuleNode);
+        addNode(workflow, "action_extract_agent", this::actionExtractionNode);
         // workflow.addNode("kpi_if_agent", this::kpiIfNode);
 
-        // Start with validation
-        workflow.addEdge(START, "validate_agent");
+        // Start with validation, or with the single-call fast path that
+        // falls back to validation when its answer is not usable
+        if (ConfigurationManager.getInstance().isFastPathEnabled()) {
+            addNode(workflow, "fast_path", this::fastPathNode);
+            workflow.addEdge(START, "fast_path");
+            workflow.addConditionalEdges(
+                    "fast_path",
+                    state -> CompletableFuture.completedFuture(state.isFastPath() ? "Success" : "Fallback"),
+                    Map.of("Success", END, "Fallback", "validate_agent"));
+        } else {
+            workflow.addEdge(START, "validate_agent");
+        }
 
         // After validation, decide whether to proceed or end
         workflow.addConditionalEdges(
                 "validate_agent",
-                state -> {
+                speculator.route("validate_agent", "Success", state -> {
                     boolean valid = "true".equalsIgnoreCase((String) state.data().getOrDefault("valid", "false"));
                     if (valid) {
                         return CompletableFuture.completedFuture("Success");
                     } else {
                         return CompletableFuture.completedFuture("Failure");
                     }
-                },
+                }),
                 Map.of("Success", "decompose_agent", "Failure", END));
 
         // Decomposition flow
@@ -119,9 +163,9 @@ public class DecompositionWorkflow {
 
         workflow.addConditionalEdges(
                 "consistency_check_decompose",
-                state -> {
+                speculator.route("consistency_check_decompose", "Success", state -> {
                     if (state.isWorkflowFailed()) {
-                        return CompletableFuture.completedFuture(END);
+                        return CompletableFuture.completedFuture("Failure");
                     }
 
                     Double score = state.getConsistencyScore();
@@ -131,7 +175,7 @@ public class DecompositionWorkflow {
 
                     if (score != null && score >= threshold) {
                         logger.info(
-                                "✓ Decomposition Consistency PASSED (score={}, threshold={}). Proceeding to Schedule Extraction.",
+                                "✓ Decomposition Consistency PASSED (score={}, threshold={}). Proceeding to Schedule and Condition Extraction.",
                                 score, threshold);
                         return CompletableFuture.completedFuture("Success");
                     }
@@ -147,25 +191,25 @@ public class DecompositionWorkflow {
                             "✗ Decomposition Consistency FAILED (score={}, threshold={}). Retry {}/{}. Refining prompt...",
                             score, threshold, retryCount + 1, maxRetries);
                     return CompletableFuture.completedFuture("Retry");
-                },
+                }),
                 Map.of("Retry", "refine_decompose_prompt",
-                        "Success", "schedule_extract_agent",
+                        "Success", "extract_branches",
                         "Failure", END));
 
         workflow.addEdge("refine_decompose_prompt", "decompose_agent");
 
-        // Schedule -> Condition
-        workflow.addEdge("schedule_extract_agent", "condition_extract_agent");
-
-        // Extraction flow: Condition -> Consistency
-        workflow.addConditionalEdges(
-                "condition_extract_agent",
-                state -> {
-                    if (state.isWorkflowFailed())
-                        return CompletableFuture.completedFuture(END);
-                    return CompletableFuture.completedFuture("consistency_check_condition");
-                },
-                Map.of("consistency_check_condition", "consistency_check_condition", END, END));
+        // Extraction flow: Schedule + Condition in parallel -> Consistency.
+        // Condition retries rerun condition extraction only.
+        for (String extractNode : new String[] { "extract_branches", "condition_extract_agent" }) {
+            workflow.addConditionalEdges(
+                    extractNode,
+                    state -> {
+                        if (state.isWorkflowFailed())
+                            return CompletableFuture.completedFuture(END);
+                        return CompletableFuture.completedFuture("consistency_check_condition");
+                    },
+                    Map.of("consistency_check_condition", "consistency_check_condition", END, END));
+        }
 
         // Consistency Check logic
         workflow.addConditionalEdges(
@@ -176,7 +220,6 @@ public class DecompositionWorkflow {
                     }
 
                     Double score = state.getConditionConsistencyScore();
-                    int retryCount = state.getConditionRetryCount();
                     double threshold = getThreshold(CONDITION_EXTRACTION_PROMPT_KEY);
                     int maxRetries = getMaxRetries(CONDITION_EXTRACTION_PROMPT_KEY);
 
@@ -190,15 +233,20 @@ public class DecompositionWorkflow {
                         return CompletableFuture.completedFuture("Success");
                     }
 
-                    if (retryCount >= maxRetries) {
-                        logger.warn("✗ Condition Max retries ({}) reached with score={}. Proceeding with best effort.",
-                                maxRetries, score);
+                    // Retries are counted per NormalStatements node; a node that
+                    // used up its retries is kept as it is
+                    int failing = ConditionExtractionAgent.nodesToRetry(state.getTree(), threshold, maxRetries)
+                            .size();
+                    if (failing == 0) {
+                        logger.warn("✗ Condition Max retries ({}) reached for every failing node with score={}. "
+                                + "Proceeding with best effort.", maxRetries, score);
                         return CompletableFuture.completedFuture("Failure");
                     }
 
                     logger.info(
-                            "✗ Condition Consistency FAILED (score={}, threshold={}). Retry {}/{}. Refining prompt...",
-                            score, threshold, retryCount + 1, maxRetries);
+                            "✗ Condition Consistency FAILED (score={}, threshold={}). Retrying {} failing nodes. "
+                                    + "Refining prompt...",
+                            score, threshold, failing);
                     return CompletableFuture.completedFuture("Retry");
                 },
                 Map.of("Retry", "refine_condition_prompt",
@@ -211,16 +259,71 @@ public class DecompositionWorkflow {
         workflow.addEdge("unified_rule_agent", "action_extract_agent");
         workflow.addEdge("action_extract_agent", END);
 
-        this.compiledGraph = workflow.compile();
+        this.compiledGraph = workflow.compile(DiskCheckpointSaver.compileConfig());
         return this.compiledGraph;
     }
 
+    private static Metrics.Counter retryCounter(String stage) {
+        return Metrics.counter("workflow_retries_total", "Prompt refinement retries by stage", "workflow", "decomposition",
+                "stage", stage);
+    }
+
+    /**
+     * Add a node that runs on its own stage in staged pipeline mode, is timed
+     * (see Metrics) and ends the run once its deadline has passed.
+     */
+    private static void addNode(StateGraph<WorkflowState> workflow, String id,
+            AsyncNodeAction<WorkflowState> action) throws GraphStateException {
+        workflow.addNode(id,
+                RunDeadline.guard(id, Metrics.timeNode("decomposition", id, StagedPipeline.stage(id, action))));
+    }
+
     private CompletableFuture<Map<String, Object>> validateNode(WorkflowState state) {
         logger.info("Calling Validation Agent...");
         return validationAgent.execute(state.getInput())
-                .thenApply(agentState -> Map.of(
-                        "validationResponse", agentState.getValidationResult(),
-                        "valid", String.valueOf(agentState.isValid())));
+                .thenApply(agentState -> {
+                    ValidationResult result = agentState.getValidationResult();
+                    if (agentState.isValid()) {
+                        return Map.of("validationResponse", result, "valid", "true");
+                    }
+                    // The run ends here, and must not be reported as converted
+                    List<String> issues = result != null ? result.getIssuesDetected() : null;
+                    return Map.of(
+                            "validationResponse", result,
+                            "valid", "false",
+                            "workflowFailed", true,
+                            "failureReason", "Statement failed validation"
+                                    + (issues != null && !issues.isEmpty() ? ": " + String.join("; ", issues) : ""));
+                });
+    }
+
+    /**
+     * Convert the statement with one combined LLM call. When the answer is
+     * usable the run ends here with the finished tree; otherwise nothing is
+     * kept and the full workflow runs.
+     */
+    private CompletableFuture<Map<String, Object>> fastPathNode(WorkflowState state) {
+        logger.info("═══ FAST PATH (single call) ═══");
+        return fastPathAgent.execute(state.getInput())
+                .thenApply(agentState -> {
+                    if (agentState == null || agentState.isFailed()) {
+                        logger.info("Fast path not usable, running full workflow [reason={}]",
+                                agentState != null ? agentState.getFailureReason() : "no result");
+                        return Map.<String, Object>of("fastPath", false);
+                    }
+                    RuleTree<NodeData> tree = agentState.getTree();
+                    asciiRenderer.render(tree);
+                    return Map.<String, Object>of(
+                            "fastPath", true,
+                            "tree", tree,
+                            "valid", "true",
+                            "validationResponse", agentState.getValidationResult(),
+                            "decompositionResponse", agentState.getDecompositionResult());
+                })
+                .exceptionally(e -> {
+                    logger.warn("Fast path failed, running full workflow [error={}]", e.getMessage());
+                    return Map.of("fastPath", false);
+                });
     }
 
     // ===== DECOMPOSITION NODES =====
@@ -284,6 +387,9 @@ public class DecompositionWorkflow {
 
         return consistencyAgent.execute(tree, "root")
                 .thenApply(consistencyState -> {
+                    if (consistencyState.isProviderUnavailable()) {
+                        return providerUnavailable("decomposition", consistencyState);
+                    }
                     Double score = consistencyState.getConsistencyScore();
 
                     if (score == null) {
@@ -293,8 +399,19 @@ public class DecompositionWorkflow {
 
                     logger.info("Decomposition Consistency score: {}", score);
 
-                    String feedback = generateFeedback(tree, score, "decomposition",
-                            getThreshold(DECOMPOSITION_PROMPT_KEY));
+                    double threshold = getThreshold(DECOMPOSITION_PROMPT_KEY);
+                    int maxRetries = getMaxRetries(DECOMPOSITION_PROMPT_KEY);
+                    if (score < threshold && state.getRetryCount() >= maxRetries) {
+                        // Out of retries: the run ends here, and must not be reported as converted
+                        return Map.of(
+                                "consistencyScore", score,
+                                "tree", consistencyState.getTree() != null ? consistencyState.getTree() : tree,
+                                "workflowFailed", true,
+                                "failureReason", String.format("Decomposition consistency score %.2f below "
+                                        + "threshold %.2f after %d retries", score, threshold, maxRetries));
+                    }
+
+                    String feedback = generateFeedback(tree, score, "decomposition", threshold);
 
                     return Map.of(
                             "consistencyScore", score,
@@ -305,8 +422,11 @@ public class DecompositionWorkflow {
 
     private CompletableFuture<Map<String, Object>> refineDecomposePromptNode(WorkflowState state) {
         int currentRetry = state.getRetryCount();
+        DECOMPOSITION_RETRIES.increment();
         int maxRetries = getMaxRetries(DECOMPOSITION_PROMPT_KEY);
         logger.info("═══ PROMPT REFINEMENT (Decomposition - Retry {}/{}) ═══", currentRetry + 1, maxRetries);
+        // The decomposition failed its check; the retry must not get it back from the cache
+        CacheAdmission.getInstance().reject(DECOMPOSITION_PROMPT_KEY);
 
         String originalPrompt = state.getCurrentDecompositionPrompt();
         if (originalPrompt == null || originalPrompt.trim().isEmpty()) {
@@ -341,7 +461,7 @@ public class DecompositionWorkflow {
     private CompletableFuture<Map<String, Object>> conditionExtractionNode(WorkflowState state) {
         int retryCount = state.getConditionRetryCount();
         int maxRetries = getMaxRetries(CONDITION_EXTRACTION_PROMPT_KEY);
-        logger.info("═══ CONDITION EXTRACTION AGENT (Attempt {}/{}) ═══", retryCount + 1, maxRetries + 1);
+        logger.info("═══ CONDITION EXTRACTION AGENT (Round {}) ═══", retryCount + 1);
         RuleTree<NodeData> tree = state.getTree();
 
         String customPromptKey = state.getCurrentConditionPromptKey();
@@ -351,7 +471,12 @@ public class DecompositionWorkflow {
             logger.info("Using refined condition prompt string.");
         }
 
-        return conditionExtractionAgent.execute(tree, customPromptKey, customPromptString)
+        // A retry re-extracts only the nodes that failed the consistency check
+        CompletableFuture<ConditionExtractionAgent.ConditionState> extraction = retryCount == 0
+                ? conditionExtractionAgent.execute(tree, customPromptKey, customPromptString)
+                : conditionExtractionAgent.retry(tree, customPromptKey, customPromptString,
+                        getThreshold(CONDITION_EXTRACTION_PROMPT_KEY), maxRetries);
+        return extraction
                 .thenApply(conditionState -> {
                     if (conditionState.isFailed()) {
                         logger.warn("Condition Extraction failed or produced no updates.");
@@ -371,8 +496,16 @@ public class DecompositionWorkflow {
             return CompletableFuture.completedFuture(Map.of("workflowFailed", true));
         }
 
-        return consistencyAgent.execute(tree, "condition")
+        // After a retry only the re-extracted nodes need a new score
+        int retry = state.getConditionRetryCount();
+        CompletableFuture<ConsistencyAgent.ConsistencyState> check = retry == 0
+                ? consistencyAgent.execute(tree, "condition")
+                : consistencyAgent.recheck(tree, "condition", getThreshold(CONDITION_EXTRACTION_PROMPT_KEY), retry);
+        return check
                 .thenApply(consistencyState -> {
+                    if (consistencyState.isProviderUnavailable()) {
+                        return providerUnavailable("condition", consistencyState);
+                    }
                     Double score = consistencyState.getConsistencyScore();
                     if (score == null) {
                         logger.warn("Condition consistency check returned null score, defaulting to 0.0");
@@ -392,15 +525,18 @@ public class DecompositionWorkflow {
 
     private CompletableFuture<Map<String, Object>> refineConditionPromptNode(WorkflowState state) {
         int currentRetry = state.getConditionRetryCount();
-        int maxRetries = getMaxRetries(CONDITION_EXTRACTION_PROMPT_KEY);
-        logger.info("═══ PROMPT REFINEMENT (Condition - Retry {}/{}) ═══", currentRetry + 1, maxRetries);
+        CONDITION_RETRIES.increment();
+        logger.info("═══ PROMPT REFINEMENT (Condition - Round {}) ═══", currentRetry + 1);
+
+        String key = state.getCurrentConditionPromptKey();
+        if (key == null)
+            key = CONDITION_EXTRACTION_PROMPT_KEY;
+        // The extraction failed its check; the retry must not get it back from the cache
+        CacheAdmission.getInstance().reject(key);
 
         String originalPrompt = state.getCurrentConditionPromptString();
         if (originalPrompt == null || originalPrompt.trim().isEmpty()) {
             // Fallback to registry if we don't have a refined one yet
-            String key = state.getCurrentConditionPromptKey();
-            if (key == null)
-                key = CONDITION_EXTRACTION_PROMPT_KEY;
             originalPrompt = PromptRegistry.getInstance().get(key);
         }
 
@@ -423,15 +559,84 @@ public class DecompositionWorkflow {
                 "conditionRetryCount", currentRetry + 1));
     }
 
-    private CompletableFuture<Map<String, Object>> scheduleExtractionNode(WorkflowState state) {
-        logger.info("═══ SCHEDULE EXTRACTION AGENT (Dummy) ═══");
+    /**
+     * Fan out schedule and condition extraction and join their results.
+     * ScheduleExtractionAgent only adds children to Schedule nodes and
+     * ConditionExtractionAgent only to NormalStatements nodes, so neither
+     * depends on the other. The schedule branch works on its own copy of the
+     * tree, so the condition branch never walks a children list that is being
+     * appended to; once both are done the new ScheduleDetails nodes are moved
+     * onto the matching Schedule nodes of the condition branch's tree.
+     *
+     * langgraph4j 1.1.5 has no parallel edges, so the fan-out and join happen
+     * inside this one node, which also means one checkpoint for both branches.
+     */
+    private CompletableFuture<Map<String, Object>> extractBranchesNode(WorkflowState state) {
+        logger.info("═══ SCHEDULE + CONDITION EXTRACTION (parallel) ═══");
         RuleTree<NodeData> tree = state.getTree();
 
-        return scheduleExtractionAgent.execute(tree)
+        if (tree == null) {
+            return CompletableFuture.completedFuture(Map.of("workflowFailed", true));
+        }
+
+        RuleTree<NodeData> scheduleTree;
+        try {
+            scheduleTree = stateSerializer.cloneObject(Map.of("tree", tree)).getTree();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new Text2RuleException("Failed to copy the rule tree for schedule extraction", e);
+        }
+
+        CompletableFuture<RuleTree<NodeData>> schedule = scheduleExtractionAgent.execute(scheduleTree)
                 .thenApply(scheduleState -> {
                     logger.info("Schedule Extraction completed.");
-                    return Map.of("tree", scheduleState.getTree() != null ? scheduleState.getTree() : tree);
+                    return scheduleState.getTree() != null ? scheduleState.getTree() : scheduleTree;
                 });
+
+        return conditionExtractionNode(state).thenCombine(schedule, (conditionUpdate, scheduledTree) -> {
+            @SuppressWarnings("unchecked")
+            RuleTree<NodeData> merged = (RuleTree<NodeData>) conditionUpdate.get("tree");
+            graftAdditions(scheduledTree.getRoot(), merged.getRoot());
+            return conditionUpdate;
+        });
+    }
+
+    /**
+     * Move the nodes added to one copy of the tree onto the same places in
+     * another copy. Every stage after decomposition only appends children, so
+     * nodes pair up by child index and each child past the target's own count
+     * is new; children only the target has are kept.
+     */
+    private static void graftAdditions(RuleNode<NodeData> source, RuleNode<NodeData> target) {
+        if (source == null || target == null) {
+            return;
+        }
+        List<RuleNode<NodeData>> sourceChildren = source.getChildren();
+        int shared = target.getChildren().size();
+        for (int i = 0; i < sourceChildren.size(); i++) {
+            if (i < shared) {
+                graftAdditions(sourceChildren.get(i), target.getChildren().get(i));
+            } else {
+                target.addChild(sourceChildren.get(i));
+            }
+        }
+    }
+
+    /**
+     * Commit extraction that ran speculatively on the tree as it was before
+     * the decomposition consistency check: its new nodes are grafted onto the
+     * current tree, which keeps the similarity scores the check wrote.
+     */
+    private Map<String, Object> commitExtraction(WorkflowState state, Map<String, Object> update) {
+        @SuppressWarnings("unchecked")
+        RuleTree<NodeData> speculative = (RuleTree<NodeData>) update.get("tree");
+        RuleTree<NodeData> tree = state.getTree();
+        if (speculative == null || tree == null) {
+            return update;
+        }
+        graftAdditions(speculative.getRoot(), tree.getRoot());
+        Map<String, Object> committed = new HashMap<>(update);
+        committed.put("tree", tree);
+        return committed;
     }
 
     private CompletableFuture<Map<String, Object>> ruleConverterNode(WorkflowState state) {
@@ -473,6 +678,20 @@ public class DecompositionWorkflow {
                 });
     }
 
+    /**
+     * End the run as a provider outage. Treating the missing score as a failed
+     * check would start a prompt refinement retry while the provider is down.
+     */
+    private Map<String, Object> providerUnavailable(String stage,
+            ConsistencyAgent.ConsistencyState consistencyState) {
+        logger.error("✗ {} consistency check could not run, LLM provider unavailable. Ending workflow.", stage);
+        return Map.of(
+                "workflowFailed", true,
+                "providerUnavailable", true,
+                "failureReason", "LLM provider unavailable during " + stage + " consistency check: "
+                        + consistencyState.getFailureReason());
+    }
+
     private String generateFeedback(RuleTree<NodeData> tree, Double score, String stage, double threshold) {
         StringBuilder feedback = new StringBuilder();
         feedback.append("Stage: ").append(stage.toUpperCase()).append("\n");
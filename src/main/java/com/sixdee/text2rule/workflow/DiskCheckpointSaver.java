@@ -0,0 +1,345 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.config.ConfigurationManager;
+import org.bsc.langgraph4j.CompileConfig;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.checkpoint.BaseCheckpointSaver;
+import org.bsc.langgraph4j.checkpoint.Checkpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Saves workflow checkpoints to local disk so that a run can be resumed from
+ * its last completed node after a crash, instead of repeating the LLM calls
+ * of the nodes before it.
+ *
+ * langgraph4j hands over a checkpoint after every node. Each run (the
+ * RunnableConfig thread id, which is the run id) has one append-only file;
+ * every checkpoint is appended as a length- and CRC-prefixed record holding
+ * the node ids and the state in {@link WorkflowStateSerializer} form. A record
+ * torn by a crash fails its CRC and is ignored, so the run resumes from the
+ * record before it.
+ *
+ * Resume a run by invoking the graph with null input and a RunnableConfig
+ * carrying its run id, optionally with a checkpoint id or node id to go back
+ * to.
+ *
+ * Completed runs delete their file; the files of runs that failed or were
+ * cut short stay for resuming. {@link #sweep()} deletes those older than the
+ * maximum age and all but the newest maximum number of runs. It runs when the
+ * saver is created and then at most once a minute, as new runs start.
+ */
+public class DiskCheckpointSaver implements BaseCheckpointSaver {
+    private static final Logger logger = LoggerFactory.getLogger(DiskCheckpointSaver.class);
+
+    private static final String DEFAULT_THREAD = "default";
+    private static final String EXTENSION = ".ckpt";
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static volatile DiskCheckpointSaver instance;
+
+    private final Path directory;
+    private final WorkflowStateSerializer serializer;
+    private final long maxAgeMillis;
+    private final int maxRuns;
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    /**
+     * A saver that keeps every run's checkpoints until they are removed.
+     */
+    public DiskCheckpointSaver(Path directory, WorkflowStateSerializer serializer) {
+        this(directory, serializer, 0, 0);
+    }
+
+    /**
+     * @param maxAgeMillis age after which a run's checkpoints are swept, or 0
+     *                     for no age limit
+     * @param maxRuns      number of runs whose checkpoints the sweep keeps, or
+     *                     0 for no count limit
+     */
+    public DiskCheckpointSaver(Path directory, WorkflowStateSerializer serializer, long maxAgeMillis, int maxRuns) {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxRuns = maxRuns;
+    }
+
+    /**
+     * @return the saver configured by &lt;checkpoint&gt;, or null if
+     *         checkpointing is disabled
+     */
+    public static DiskCheckpointSaver getInstance() {
+        ConfigurationManager config = ConfigurationManager.getInstance();
+        if (!config.isCheckpointEnabled()) {
+            return null;
+        }
+        if (instance == null) {
+            synchronized (DiskCheckpointSaver.class) {
+                if (instance == null) {
+                    DiskCheckpointSaver saver = new DiskCheckpointSaver(Paths.get(config.getCheckpointDirectory()),
+                            new WorkflowStateSerializer(),
+                            TimeUnit.HOURS.toMillis(config.getCheckpointMaxAgeHours()),
+                            config.getCheckpointMaxRuns());
+                    saver.sweep();
+                    instance = saver;
+                    logger.info("Workflow checkpoints enabled [directory={}, max_age_hours={}, max_runs={}]",
+                            config.getCheckpointDirectory(), config.getCheckpointMaxAgeHours(),
+                            config.getCheckpointMaxRuns());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return compile settings that save checkpoints when enabled
+     */
+    public static CompileConfig compileConfig() {
+        DiskCheckpointSaver saver = getInstance();
+        CompileConfig.Builder builder = CompileConfig.builder();
+        if (saver != null) {
+            builder.checkpointSaver(saver);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the run's checkpoints, newest first
+     */
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        List<Checkpoint> checkpoints = read(threadId(config));
+        Collections.reverse(checkpoints);
+        return checkpoints;
+    }
+
+    /**
+     * @return the checkpoint whose id or node id is the config's checkpoint id
+     *         (the latest one for a node id), or the run's latest checkpoint
+     */
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        List<Checkpoint> checkpoints = read(threadId(config));
+        Optional<String> wanted = config.checkPointId();
+        for (int i = checkpoints.size() - 1; i >= 0; i--) {
+            Checkpoint checkpoint = checkpoints.get(i);
+            if (!wanted.isPresent() || wanted.get().equals(checkpoint.getId())
+                    || wanted.get().equals(checkpoint.getNodeId())) {
+                return Optional.of(checkpoint);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        byte[] payload = encode(checkpoint);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + 12);
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeInt(payload.length);
+            out.writeLong(crc.getValue());
+            out.write(payload);
+        }
+
+        Path file = file(threadId(config));
+        if (!Files.exists(file)) {
+            sweepIfDue();
+        }
+        Files.createDirectories(directory);
+        Files.write(file, record.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        logger.debug("Checkpoint saved [run_id={}, node={}, next={}, bytes={}]", threadId(config),
+                checkpoint.getNodeId(), checkpoint.getNextNodeId(), payload.length);
+        return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+    }
+
+    /**
+     * Delete a run's checkpoints, e.g. once it has completed.
+     */
+    public void remove(String runId) {
+        try {
+            Files.deleteIfExists(file(runId));
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoints [run_id={}, error={}]", runId, e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the checkpoints of runs older than the maximum age, then those of
+     * all but the newest maximum number of runs, by last write.
+     *
+     * @return the number of runs whose checkpoints were deleted
+     */
+    public int sweep() {
+        lastSweep.set(System.currentTimeMillis());
+        if (maxAgeMillis <= 0 && maxRuns <= 0) {
+            return 0;
+        }
+        Map<Path, FileTime> modified;
+        try (Stream<Path> files = Files.list(directory)) {
+            modified = files.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                    .collect(Collectors.toMap(path -> path, DiskCheckpointSaver::lastModified));
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            logger.warn("Failed to list checkpoints [directory={}, error={}]", directory, e.getMessage());
+            return 0;
+        }
+
+        List<Path> newestFirst = modified.keySet().stream()
+                .sorted(Comparator.comparing((Path path) -> modified.get(path)).reversed())
+                .collect(Collectors.toList());
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        for (int i = 0; i < newestFirst.size(); i++) {
+            Path file = newestFirst.get(i);
+            boolean expired = maxAgeMillis > 0 && modified.get(file).toMillis() < cutoff;
+            if (expired || (maxRuns > 0 && i >= maxRuns)) {
+                try {
+                    if (Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to delete checkpoints [file={}, error={}]", file, e.getMessage());
+                }
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Swept checkpoints of left-over runs [deleted={}, kept={}]", deleted,
+                    newestFirst.size() - deleted);
+        }
+        return deleted;
+    }
+
+    private void sweepIfDue() {
+        long last = lastSweep.get();
+        long now = System.currentTimeMillis();
+        if (now - last >= SWEEP_INTERVAL_MILLIS && lastSweep.compareAndSet(last, now)) {
+            sweep();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            // Deleted since listed; sorts as oldest
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private byte[] encode(Checkpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(checkpoint.getId());
+            writeNullable(checkpoint.getNodeId(), out);
+            writeNullable(checkpoint.getNextNodeId(), out);
+            byte[] state = serializer.writeObject(serializer.stateOf(checkpoint.getState()));
+            out.writeInt(state.length);
+            out.write(state);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Checkpoint decode(byte[] payload) throws IOException, ClassNotFoundException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String id = in.readUTF();
+            String nodeId = readNullable(in);
+            String nextNodeId = readNullable(in);
+            byte[] state = new byte[in.readInt()];
+            in.readFully(state);
+            return Checkpoint.builder()
+                    .id(id)
+                    .nodeId(nodeId)
+                    .nextNodeId(nextNodeId)
+                    .state(serializer.readObject(state))
+                    .build();
+        }
+    }
+
+    /**
+     * Read a run's checkpoints, oldest first, stopping at the first damaged
+     * record.
+     */
+    private List<Checkpoint> read(String runId) {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        try (InputStream file = Files.newInputStream(file(runId));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long expectedCrc = in.readLong();
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    throw new IOException("Invalid checkpoint record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != expectedCrc) {
+                    throw new IOException("Checkpoint record failed its CRC check");
+                }
+                checkpoints.add(decode(payload));
+            }
+        } catch (NoSuchFileException e) {
+            // Run has no checkpoints
+        } catch (Exception e) {
+            logger.warn("Ignoring damaged checkpoint data [run_id={}, valid_records={}, error={}]", runId,
+                    checkpoints.size(), e.getMessage());
+        }
+        return checkpoints;
+    }
+
+    private Path file(String runId) {
+        return directory.resolve(runId.replaceAll("[^A-Za-z0-9._-]", "_") + EXTENSION);
+    }
+
+    private static String threadId(RunnableConfig config) {
+        return config.threadId().orElse(DEFAULT_THREAD);
+    }
+
+    private static void writeNullable(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.llm.CancellationToken;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the total time of a workflow run, retries included.
+ *
+ * {@link #run(long, Supplier)} binds a {@link CancellationToken} with a
+ * deadline for the run. Agents submit their work to the agent executor, which
+ * carries the token along, and every LLM call goes through it, so at the
+ * deadline calls in flight are interrupted and new ones are refused. Calls
+ * under a token are streamed, so the interrupt also closes their HTTP request
+ * and frees its thread; see {@link CancellationToken} for blocking tool calls.
+ *
+ * Each graph node is wrapped with {@link #guard(String, AsyncNodeAction)}.
+ * Once the token is cancelled the node in progress stops waiting for its
+ * agent, later nodes do not run, and the state is marked failed with
+ * deadlineExceeded set. Routers already end the run on a failed state, so the
+ * run returns with the tree the finished nodes had built.
+ */
+public final class RunDeadline {
+    private static final Logger logger = LoggerFactory.getLogger(RunDeadline.class);
+
+    private RunDeadline() {
+    }
+
+    /**
+     * Run a workflow invocation that is cancelled after the given time.
+     *
+     * @param timeoutMillis time limit, 0 or less for none
+     */
+    public static <T> T run(long timeoutMillis, Supplier<T> run) {
+        if (timeoutMillis <= 0) {
+            return run.get();
+        }
+        try (CancellationToken token = CancellationToken.withDeadline(timeoutMillis)) {
+            return LlmCallContext.withCancellation(token, run);
+        }
+    }
+
+    /**
+     * Wrap a node so that it ends the run, keeping the state built so far,
+     * once the run's token is cancelled. Without a token the node runs as is.
+     */
+    public static AsyncNodeAction<WorkflowState> guard(String node, AsyncNodeAction<WorkflowState> action) {
+        return state -> {
+            CancellationToken token = LlmCallContext.getCancellation();
+            if (token == null) {
+                return action.apply(state);
+            }
+            if (token.isCancelled()) {
+                logger.debug("Skipping node, run stopped [node={}, reason={}]", node, token.getReason());
+                // Keep the failure reason naming the node that was stopped
+                return CompletableFuture.completedFuture(
+                        state.isWorkflowFailed() ? Map.<String, Object>of() : stopped(node, token, null));
+            }
+
+            CompletableFuture<Map<String, Object>> result;
+            try {
+                // A copy, so that timing out does not complete the action's own future
+                result = action.apply(state).copy();
+            } catch (RuntimeException e) {
+                if (!token.isCancelled()) {
+                    throw e;
+                }
+                return CompletableFuture.completedFuture(stopped(node, token, null));
+            }
+            long remainingMillis = token.getRemainingMillis();
+            if (remainingMillis != Long.MAX_VALUE) {
+                result = result.orTimeout(remainingMillis, TimeUnit.MILLISECONDS);
+            }
+
+            return result.handle((update, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                if (cause instanceof TimeoutException) {
+                    // The deadline timer may not have fired yet
+                    token.cancel(CancellationToken.REASON_DEADLINE_EXCEEDED);
+                }
+                if (!token.isCancelled()) {
+                    if (cause != null) {
+                        throw cause instanceof CompletionException ? (CompletionException) cause
+                                : new CompletionException(cause);
+                    }
+                    return update;
+                }
+                logger.warn("Run stopped during node, returning partial result [node={}, reason={}]", node,
+                        token.getReason());
+                return stopped(node, token, cause == null ? update : null);
+            });
+        };
+    }
+
+    /**
+     * @param update the node's own output if it finished, kept so the state
+     *               includes its work
+     */
+    private static Map<String, Object> stopped(String node, CancellationToken token,
+            Map<String, Object> update) {
+        Map<String, Object> result = update != null ? new HashMap<>(update) : new HashMap<>();
+        result.put("workflowFailed", true);
+        result.put("deadlineExceeded", token.isDeadlineExceeded());
+        result.put("failureReason", (token.isDeadlineExceeded() ? "Run deadline exceeded" : "Run cancelled")
+                + " at node " + node);
+        return result;
+    }
+}
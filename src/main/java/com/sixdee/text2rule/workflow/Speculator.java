@@ -0,0 +1,342 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.llm.CancellationToken;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.observability.Metrics;
+import org.bsc.langgraph4j.action.AsyncEdgeAction;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Speculative execution across a gate: the node after a gating node starts at
+ * the same time as the gate, on a snapshot of the state, instead of after it.
+ *
+ * If the gate routes to that node the speculative result is committed and the
+ * node does not run again. If the gate routes anywhere else (a failure or a
+ * retry) the result is discarded and its in-flight LLM calls are cancelled
+ * through a {@link CancellationToken}.
+ *
+ * Opt-in per gate with &lt;speculation enabled="true" gates="..."&gt;. Each
+ * speculated edge counts committed and discarded speculations and the LLM
+ * calls and time the discarded ones wasted, see {@link #getStats()}, so the
+ * gates worth speculating on can be tuned.
+ *
+ * A speculative node is started on the gate's thread and, like any node,
+ * does its agent work asynchronously on {@link AgentExecutors#io()}. Nothing
+ * waits for a speculation inside that pool; the target node waits for it on
+ * the run's own thread.
+ *
+ * Speculations are held in memory per run id; a resumed run does not see
+ * speculations of the interrupted process and runs its nodes normally. A
+ * speculation whose target never runs, e.g. because the run's deadline skipped
+ * it, is cancelled by {@link #endRun(String)} when the run finishes.
+ */
+public class Speculator {
+    private static final Logger logger = LoggerFactory.getLogger(Speculator.class);
+
+    private static final Map<String, EdgeStats> stats = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    // Keyed by run id and gate; shared so that endRun reaches every workflow's speculations
+    private static final Map<String, Speculation> inFlight = new ConcurrentHashMap<>();
+
+    static {
+        Metrics.gauge("speculation_in_flight", "Speculations started and not yet committed or discarded",
+                inFlight::size);
+    }
+
+    private final WorkflowStateSerializer serializer;
+    private final Predicate<String> speculative;
+
+    /**
+     * Speculation counts for one gate and the node after it.
+     */
+    public static final class EdgeStats {
+        private final String gate;
+        private final String target;
+        private final LongAdder started = new LongAdder();
+        private final LongAdder committed = new LongAdder();
+        private final LongAdder discarded = new LongAdder();
+        private final LongAdder wastedCalls = new LongAdder();
+        private final LongAdder interruptedCalls = new LongAdder();
+        private final LongAdder wastedMillis = new LongAdder();
+
+        private EdgeStats(String gate, String target) {
+            this.gate = gate;
+            this.target = target;
+        }
+
+        public String getGate() {
+            return gate;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public long getStarted() {
+            return started.sum();
+        }
+
+        public long getCommitted() {
+            return committed.sum();
+        }
+
+        public long getDiscarded() {
+            return discarded.sum();
+        }
+
+        /**
+         * @return LLM calls made by discarded speculations
+         */
+        public long getWastedCalls() {
+            return wastedCalls.sum();
+        }
+
+        /**
+         * @return calls that were still in flight when their speculation was
+         *         discarded, and were interrupted
+         */
+        public long getInterruptedCalls() {
+            return interruptedCalls.sum();
+        }
+
+        /**
+         * @return time discarded speculations ran before they were cancelled
+         */
+        public long getWastedMillis() {
+            return wastedMillis.sum();
+        }
+
+        @Override
+        public String toString() {
+            return gate + "->" + target + "[started=" + getStarted() + ", committed=" + getCommitted()
+                    + ", discarded=" + getDiscarded() + ", wasted_calls=" + getWastedCalls()
+                    + ", interrupted_calls=" + getInterruptedCalls() + ", wasted_ms=" + getWastedMillis() + "]";
+        }
+    }
+
+    private static final class Speculation {
+        private final EdgeStats edge;
+        private final String runId = LlmCallContext.getRunId();
+        // Also cancelled when the run it belongs to is
+        private final CancellationToken token = CancellationToken.childOf(LlmCallContext.getCancellation());
+        private final long startNanos = System.nanoTime();
+        private volatile CompletableFuture<Map<String, Object>> result;
+
+        private Speculation(EdgeStats edge) {
+            this.edge = edge;
+        }
+    }
+
+    public Speculator(WorkflowStateSerializer serializer) {
+        this(serializer, gate -> ConfigurationManager.getInstance().isSpeculative(gate));
+    }
+
+    /**
+     * @param speculative whether to speculate past a gate, by gate node id
+     */
+    Speculator(WorkflowStateSerializer serializer, Predicate<String> speculative) {
+        this.serializer = serializer;
+        this.speculative = speculative;
+    }
+
+    /**
+     * @return counts for every edge speculated on so far
+     */
+    public static List<EdgeStats> getStats() {
+        synchronized (stats) {
+            return new ArrayList<>(stats.values());
+        }
+    }
+
+    /**
+     * Cancel the speculations a run left behind, i.e. those whose target node
+     * did not run. Called once the run has finished, whatever its outcome.
+     *
+     * @return the number of speculations cancelled
+     */
+    public static int endRun(String runId) {
+        if (runId == null) {
+            return 0;
+        }
+        String prefix = runId + "|";
+        int cancelled = 0;
+        for (String key : inFlight.keySet()) {
+            if (key.startsWith(prefix)) {
+                Speculation speculation = inFlight.remove(key);
+                if (speculation != null) {
+                    cancel(speculation, "run ended");
+                    cancelled++;
+                }
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * @return speculations started and not yet committed or discarded
+     */
+    public static int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Wrap a gating node so that, when speculation is enabled for it, the
+     * target node starts on a snapshot of the state while the gate runs.
+     *
+     * @param gate         gating node id
+     * @param target       id of the node the gate leads to when it passes
+     * @param gateAction   the gating node
+     * @param targetAction the target node, run speculatively
+     */
+    public AsyncNodeAction<WorkflowState> gate(String gate, String target, AsyncNodeAction<WorkflowState> gateAction,
+            AsyncNodeAction<WorkflowState> targetAction) {
+        return state -> {
+            String key = key(gate);
+            if (key == null || !speculative.test(gate)) {
+                return gateAction.apply(state);
+            }
+            start(key, gate, target, state, targetAction);
+
+            CompletableFuture<Map<String, Object>> result;
+            try {
+                result = gateAction.apply(state);
+            } catch (RuntimeException e) {
+                discard(key, "gate failed");
+                throw e;
+            }
+            return result.whenComplete((update, error) -> {
+                if (error != null) {
+                    discard(key, "gate failed");
+                }
+            });
+        };
+    }
+
+    /**
+     * Wrap a gate's routing so that a speculation is discarded when the gate
+     * routes anywhere but to its target.
+     *
+     * @param gate        gating node id
+     * @param commitRoute route label that leads to the target node
+     * @param edge        the gate's routing
+     */
+    public AsyncEdgeAction<WorkflowState> route(String gate, String commitRoute, AsyncEdgeAction<WorkflowState> edge) {
+        return state -> {
+            String key = key(gate);
+            return edge.apply(state).thenApply(route -> {
+                if (key != null && !commitRoute.equals(route)) {
+                    discard(key, route);
+                }
+                return route;
+            });
+        };
+    }
+
+    /**
+     * Wrap the target node so that it takes the committed speculative result
+     * instead of running again.
+     *
+     * @param gate   gating node id
+     * @param action the target node, run normally when there is no
+     *               speculation or it failed
+     * @param commit turns the speculative update into the update for the
+     *               current state, e.g. to keep what the gate wrote
+     */
+    public AsyncNodeAction<WorkflowState> target(String gate, AsyncNodeAction<WorkflowState> action,
+            BiFunction<WorkflowState, Map<String, Object>, Map<String, Object>> commit) {
+        return state -> {
+            String key = key(gate);
+            Speculation speculation = key != null ? inFlight.remove(key) : null;
+            if (speculation == null) {
+                return action.apply(state);
+            }
+            // Waited for here, so that a rerun keeps this thread's run context
+            Map<String, Object> update;
+            try {
+                update = speculation.result.join();
+            } catch (CompletionException | CancellationException e) {
+                logger.warn("Speculative {} failed, running it again [error={}]", speculation.edge.target,
+                        e.getMessage());
+                return action.apply(state);
+            }
+            speculation.edge.committed.increment();
+            logger.info("Speculation committed [gate={}, target={}, run_id={}]", gate, speculation.edge.target,
+                    LlmCallContext.getRunId());
+            return CompletableFuture.completedFuture(commit.apply(state, update));
+        };
+    }
+
+    private void start(String key, String gate, String target, WorkflowState state,
+            AsyncNodeAction<WorkflowState> targetAction) {
+        WorkflowState snapshot;
+        try {
+            snapshot = serializer.cloneObject(state.data());
+        } catch (Exception e) {
+            logger.warn("Not speculating past {}, state snapshot failed [error={}]", gate, e.getMessage());
+            return;
+        }
+
+        EdgeStats edge = stats.computeIfAbsent(gate + "->" + target, name -> new EdgeStats(gate, target));
+        Speculation speculation = new Speculation(edge);
+        Speculation previous = inFlight.put(key, speculation);
+        if (previous != null) {
+            cancel(previous, "superseded");
+        }
+        edge.started.increment();
+        // The node's agents pick up the speculation's token when they submit their work
+        CompletableFuture<Map<String, Object>> result;
+        try {
+            result = LlmCallContext.withCancellation(speculation.token, () -> targetAction.apply(snapshot));
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        speculation.result = result;
+        logger.debug("Speculation started [gate={}, target={}, run_id={}]", gate, target, LlmCallContext.getRunId());
+    }
+
+    private static void discard(String key, String reason) {
+        Speculation speculation = inFlight.remove(key);
+        if (speculation != null) {
+            cancel(speculation, reason);
+        }
+    }
+
+    private static void cancel(Speculation speculation, String reason) {
+        int interrupted = speculation.token.cancel();
+        EdgeStats edge = speculation.edge;
+        long calls = speculation.token.getCalls();
+        long elapsedMillis = (System.nanoTime() - speculation.startNanos) / 1_000_000;
+        edge.discarded.increment();
+        edge.wastedCalls.add(calls);
+        edge.interruptedCalls.add(interrupted);
+        edge.wastedMillis.add(elapsedMillis);
+        logger.info("Speculation discarded [gate={}, target={}, reason={}, run_id={}, llm_calls={}, interrupted={}, "
+                + "elapsed_ms={}]", edge.gate, edge.target, reason, speculation.runId, calls, interrupted,
+                elapsedMillis);
+    }
+
+    /**
+     * @return the speculation key of the current run, or null outside a run
+     */
+    private static String key(String gate) {
+        String runId = LlmCallContext.getRunId();
+        return runId != null ? runId + "|" + gate : null;
+    }
+}
@@ -0,0 +1,281 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.llm.CancellationToken;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.observability.Metrics;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Staged pipeline mode: every workflow node runs on its own stage, a bounded
+ * input queue in front of a fixed pool of workers, instead of on the thread
+ * of the run that reached it. With many runs in flight each stage processes
+ * nodes of different statements at once, so validation of one statement
+ * overlaps decomposition of another, and each stage's worker count can be
+ * sized to the LLM cost of its node.
+ *
+ * A run that reaches a stage whose queue is full waits until a slot frees up.
+ * The waiting run keeps its batch or service slot, so a saturated stage stops
+ * new statements from entering the pipeline instead of letting work pile up
+ * in front of it. A run with a deadline (see {@link RunDeadline}) stops
+ * waiting when the deadline passes, and its queued nodes release their slots
+ * without running.
+ *
+ * Per-stage queue depth, active workers, service time and time spent waiting
+ * for a slot are available from {@link #snapshot()}.
+ *
+ * Enabled with &lt;pipeline enabled="true"&gt;; when disabled nodes run on
+ * the run's own thread as before.
+ */
+public final class StagedPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(StagedPipeline.class);
+
+    private static volatile StagedPipeline instance;
+
+    private final Map<String, Stage> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Point-in-time figures for one stage.
+     */
+    public static final class StageStats {
+        private final String name;
+        private final int workers;
+        private final int queueCapacity;
+        private final int queued;
+        private final int active;
+        private final long completed;
+        private final double meanServiceMillis;
+        private final double maxServiceMillis;
+        private final long blockedMillis;
+
+        private StageStats(Stage stage) {
+            this.name = stage.name;
+            this.workers = stage.workers;
+            this.queueCapacity = stage.queueCapacity;
+            this.queued = stage.queued.get();
+            this.active = stage.active.get();
+            this.completed = stage.completed.sum();
+            this.meanServiceMillis = completed == 0 ? 0 : stage.serviceNanos.sum() / 1e6 / completed;
+            this.maxServiceMillis = stage.maxServiceNanos.get() / 1e6;
+            this.blockedMillis = stage.blockedNanos.sum() / 1_000_000;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * @return nodes waiting for a worker
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public double getMeanServiceMillis() {
+            return meanServiceMillis;
+        }
+
+        public double getMaxServiceMillis() {
+            return maxServiceMillis;
+        }
+
+        /**
+         * @return total time runs waited for a free slot because the stage's
+         *         queue was full
+         */
+        public long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s[queued=%d/%d, active=%d/%d, completed=%d, mean_ms=%.1f, max_ms=%.1f, blocked_ms=%d]", name,
+                    queued, queueCapacity, active, workers, completed, meanServiceMillis, maxServiceMillis,
+                    blockedMillis);
+        }
+    }
+
+    // Package-private for tests
+    static final class Stage {
+        private final String name;
+        private final int workers;
+        private final int queueCapacity;
+        private final ThreadPoolExecutor executor;
+        // Worker plus queue slots; taken before a node is queued, so they are
+        // what bounds the queue
+        private final Semaphore slots;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder serviceNanos = new LongAdder();
+        private final AtomicLong maxServiceNanos = new AtomicLong();
+        private final LongAdder blockedNanos = new LongAdder();
+
+        Stage(String name, int workers, int queueCapacity) {
+            this.name = name;
+            this.workers = Math.max(1, workers);
+            this.queueCapacity = Math.max(1, queueCapacity);
+            this.slots = new Semaphore(this.workers + this.queueCapacity);
+
+            AtomicInteger threads = new AtomicInteger();
+            // Not bounded itself: a slot is released just before its worker
+            // thread takes the next task
+            this.executor = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "stage-" + name + "-" + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        CompletableFuture<Map<String, Object>> submit(AsyncNodeAction<WorkflowState> action,
+                WorkflowState state) {
+            CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+            // A run with a deadline waits for a slot no longer than it has left
+            CancellationToken token = LlmCallContext.getCancellation();
+            if (!slots.tryAcquire()) {
+                long start = System.nanoTime();
+                try {
+                    if (token == null || token.getRemainingMillis() == Long.MAX_VALUE) {
+                        slots.acquire();
+                    } else if (!slots.tryAcquire(token.getRemainingMillis(), TimeUnit.MILLISECONDS)) {
+                        result.completeExceptionally(new CancellationException(
+                                "Run deadline passed waiting for stage " + name));
+                        return result;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                    return result;
+                } finally {
+                    blockedNanos.add(System.nanoTime() - start);
+                }
+            }
+
+            queued.incrementAndGet();
+            executor.execute(LlmCallContext.propagate(() -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    // Work of a run stopped while this node was queued gives its slot back at once
+                    if (token != null) {
+                        token.throwIfCancelled();
+                    }
+                    result.complete(action.apply(state).join());
+                } catch (CompletionException e) {
+                    result.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    serviceNanos.add(elapsed);
+                    maxServiceNanos.accumulateAndGet(elapsed, Math::max);
+                    completed.increment();
+                    active.decrementAndGet();
+                    slots.release();
+                }
+            }));
+            return result;
+        }
+
+        StageStats stats() {
+            return new StageStats(this);
+        }
+    }
+
+    private StagedPipeline() {
+    }
+
+    /**
+     * @return the pipeline, or null if pipeline mode is disabled
+     */
+    public static StagedPipeline getInstance() {
+        if (!ConfigurationManager.getInstance().isPipelineEnabled()) {
+            return null;
+        }
+        if (instance == null) {
+            synchronized (StagedPipeline.class) {
+                if (instance == null) {
+                    instance = new StagedPipeline();
+                    logger.info("Staged pipeline mode enabled");
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Run a workflow node on its stage when pipeline mode is enabled.
+     *
+     * @param name   node id, also the stage name
+     * @param action node action
+     * @return the action itself if pipeline mode is disabled
+     */
+    public static AsyncNodeAction<WorkflowState> stage(String name, AsyncNodeAction<WorkflowState> action) {
+        StagedPipeline pipeline = getInstance();
+        if (pipeline == null) {
+            return action;
+        }
+        Stage stage = pipeline.stages.computeIfAbsent(name, key -> {
+            ConfigurationManager config = ConfigurationManager.getInstance();
+            Stage created = new Stage(key, config.getPipelineWorkers(key), config.getPipelineQueueCapacity(key));
+            Metrics.gauge("pipeline_stage_queue_depth", "Nodes queued for a pipeline stage", created.queued::get,
+                    "stage", key);
+            Metrics.gauge("pipeline_stage_active", "Nodes running on a pipeline stage", created.active::get,
+                    "stage", key);
+            logger.info("Pipeline stage created [stage={}, workers={}, queue_capacity={}]", key, created.workers,
+                    created.queueCapacity);
+            return created;
+        });
+        return state -> stage.submit(action, state);
+    }
+
+    /**
+     * @return figures for every stage, in the order the stages were created
+     */
+    public List<StageStats> snapshot() {
+        List<StageStats> stats = new ArrayList<>();
+        synchronized (stages) {
+            for (Stage stage : stages.values()) {
+                stats.add(stage.stats());
+            }
+        }
+        return stats;
+    }
+}
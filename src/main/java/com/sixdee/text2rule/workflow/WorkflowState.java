@@ -5,13 +5,60 @@ import com.sixdee.text2rule.model.NodeData;
 import com.sixdee.text2rule.dto.ValidationResult;
 import com.sixdee.text2rule.dto.DecompositionResult;
 import org.bsc.langgraph4j.state.AgentState;
+import org.bsc.langgraph4j.state.Channel;
+import org.bsc.langgraph4j.state.Reducer;
 import java.util.Map;
-import java.util.HashMap;
 
+/**
+ * State of one conversion run. langgraph4j keeps the state as a map; the
+ * retry counters and failure flags are also held as primitive fields, read
+ * from it once when the state is built.
+ *
+ * {@link #SCHEMA} gives the retry counters and failure flags reducers, so a
+ * node's output is merged into the state instead of overwriting it: counters
+ * only go up and failure flags stay set. A stale update, such as a
+ * speculative result computed on an older snapshot, cannot reset them.
+ */
 public class WorkflowState extends AgentState {
 
+    private static final Reducer<Integer> MAX = (current, update) -> current == null ? update
+            : update == null ? current : Math.max(current, update);
+    private static final Reducer<Boolean> OR = (current, update) -> current == null ? update
+            : update == null ? current : current || update;
+
+    /**
+     * Channels for the state keys that need merging rather than replacing;
+     * all other keys keep langgraph4j's last-value-wins behaviour.
+     */
+    public static final Map<String, Channel<?>> SCHEMA = Map.of(
+            "retryCount", Channel.of(MAX),
+            "conditionRetryCount", Channel.of(MAX),
+            "actionRetryCount", Channel.of(MAX),
+            "workflowFailed", Channel.of(OR),
+            "providerUnavailable", Channel.of(OR),
+            "deadlineExceeded", Channel.of(OR));
+
+    private int retryCount;
+    private int conditionRetryCount;
+    private int actionRetryCount;
+    private boolean workflowFailed;
+    private final boolean providerUnavailable;
+    private final boolean deadlineExceeded;
+
     public WorkflowState(Map<String, Object> initData) {
-        super(new HashMap<>(initData));
+        // AgentState copies the map itself
+        super(initData);
+        Map<String, Object> data = data();
+        this.retryCount = intValue(data.get("retryCount"));
+        this.conditionRetryCount = intValue(data.get("conditionRetryCount"));
+        this.actionRetryCount = intValue(data.get("actionRetryCount"));
+        this.workflowFailed = Boolean.TRUE.equals(data.get("workflowFailed"));
+        this.providerUnavailable = Boolean.TRUE.equals(data.get("providerUnavailable"));
+        this.deadlineExceeded = Boolean.TRUE.equals(data.get("deadlineExceeded"));
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
     }
 
     public String getInput() {
@@ -43,12 +90,11 @@ public class WorkflowState extends AgentState {
     }
 
     public int getRetryCount() {
-        return (int) this.data().getOrDefault("retryCount", 0);
+        return retryCount;
     }
 
     public void incrementRetryCount() {
-        int count = getRetryCount();
-        this.data().put("retryCount", count + 1);
+        this.data().put("retryCount", ++retryCount);
     }
 
     public String getFeedback() {
@@ -59,13 +105,16 @@ public class WorkflowState extends AgentState {
         this.data().put("feedback", feedback);
     }
 
+    /**
+     * @return condition retry rounds so far; the retry limit applies to each
+     *         NormalStatements node, see NodeData#getRetryCount()
+     */
     public int getConditionRetryCount() {
-        return (int) this.data().getOrDefault("conditionRetryCount", 0);
+        return conditionRetryCount;
     }
 
     public void incrementConditionRetryCount() {
-        int count = getConditionRetryCount();
-        this.data().put("conditionRetryCount", count + 1);
+        this.data().put("conditionRetryCount", ++conditionRetryCount);
     }
 
     public String getCurrentDecompositionPrompt() {
@@ -151,12 +200,11 @@ public class WorkflowState extends AgentState {
     }
 
     public int getActionRetryCount() {
-        return (int) this.data().getOrDefault("actionRetryCount", 0);
+        return actionRetryCount;
     }
 
     public void incrementActionRetryCount() {
-        int count = getActionRetryCount();
-        this.data().put("actionRetryCount", count + 1);
+        this.data().put("actionRetryCount", ++actionRetryCount);
     }
 
     public String getActionFeedback() {
@@ -175,12 +223,36 @@ public class WorkflowState extends AgentState {
         this.data().put("actionPreviousOutput", output);
     }
 
+    /**
+     * @return true if the single-call fast path produced the tree and the
+     *         multi-agent workflow did not run
+     */
+    public boolean isFastPath() {
+        return (boolean) this.data().getOrDefault("fastPath", false);
+    }
+
     public boolean isWorkflowFailed() {
-        return (boolean) this.data().getOrDefault("workflowFailed", false);
+        return workflowFailed;
     }
 
     public void setWorkflowFailed(boolean failed) {
         this.data().put("workflowFailed", failed);
+        this.workflowFailed = failed;
+    }
+
+    /**
+     * @return true if the run ended because the LLM provider was unavailable
+     */
+    public boolean isProviderUnavailable() {
+        return providerUnavailable;
+    }
+
+    /**
+     * @return true if the run was stopped at its deadline; the tree is then
+     *         whatever the finished nodes had built
+     */
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
     }
 
     public String getFailureReason() {
@@ -0,0 +1,314 @@
+package com.sixdee.text2rule.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import org.bsc.langgraph4j.serializer.StateSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a {@link WorkflowState}, used by
+ * {@link DiskCheckpointSaver} to write it to disk. The copy langgraph4j makes
+ * of the state for every node uses {@link #cloneObject(WorkflowState)}, which
+ * gives the same result without going through bytes.
+ *
+ * Strings, numbers and booleans are written as tagged values and the rule
+ * tree as a pre-order list of its nodes, instead of a Java-serialized object
+ * graph with class descriptors. Agent DTOs are written as JSON. Anything else
+ * falls back to Java serialization. Model credentials held by tree nodes are
+ * never written.
+ */
+public class WorkflowStateSerializer extends StateSerializer<WorkflowState> {
+
+    private static final int VERSION = 2;
+    // Version 1 had no per-node retry counts; those read as 0
+    private static final int MIN_VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte TREE = 6;
+    private static final byte JSON = 7;
+    private static final byte JAVA = 8;
+
+    private static final String DTO_PACKAGE = "com.sixdee.text2rule.dto.";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public WorkflowStateSerializer() {
+        super(WorkflowState::new);
+    }
+
+    @Override
+    public void write(WorkflowState state, ObjectOutput out) throws IOException {
+        Map<String, Object> data = state.data();
+        out.writeByte(VERSION);
+        out.writeInt(data.size());
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeValue(entry.getValue(), out);
+        }
+    }
+
+    @Override
+    public WorkflowState read(ObjectInput in) throws IOException, ClassNotFoundException {
+        int version = in.readUnsignedByte();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported workflow state version " + version);
+        }
+        int size = in.readInt();
+        Map<String, Object> data = new HashMap<>(Math.max(16, size * 2));
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            data.put(key, readValue(in, version));
+        }
+        return stateFactory().apply(data);
+    }
+
+    /**
+     * Copy a state without writing it out: immutable values are shared, the
+     * rule tree is copied node by node, DTOs through their JSON tree, and
+     * only other values through Java serialization. The copy equals what
+     * write and read would give.
+     */
+    @Override
+    public WorkflowState cloneObject(WorkflowState state) throws IOException, ClassNotFoundException {
+        Map<String, Object> data = state.data();
+        Map<String, Object> copy = new HashMap<>(Math.max(16, data.size() * 2));
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return stateFactory().apply(copy);
+    }
+
+    private static Object copyValue(Object value) throws IOException, ClassNotFoundException {
+        if (value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof RuleTree && isNodeDataTree((RuleTree<?>) value)) {
+            return copyTree((RuleTree<?>) value);
+        }
+        if (value.getClass().getName().startsWith(DTO_PACKAGE)) {
+            return objectMapper.convertValue(value, value.getClass());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            writeValue(value, out);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return readValue(in, VERSION);
+        }
+    }
+
+    private static void writeValue(Object value, ObjectOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof RuleTree && isNodeDataTree((RuleTree<?>) value)) {
+            out.writeByte(TREE);
+            writeTree((RuleTree<?>) value, out);
+        } else if (value.getClass().getName().startsWith(DTO_PACKAGE)) {
+            out.writeByte(JSON);
+            out.writeUTF(value.getClass().getName());
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            out.writeInt(json.length);
+            out.write(json);
+        } else {
+            out.writeByte(JAVA);
+            out.writeObject(value);
+        }
+    }
+
+    private static Object readValue(ObjectInput in, int version) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case TREE:
+                return readTree(in, version);
+            case JSON:
+                Class<?> type = Class.forName(in.readUTF());
+                if (!type.getName().startsWith(DTO_PACKAGE)) {
+                    throw new IOException("Unexpected type in workflow state: " + type.getName());
+                }
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                return objectMapper.readValue(json, type);
+            case JAVA:
+                return in.readObject();
+            default:
+                throw new IOException("Unknown value tag " + tag + " in workflow state");
+        }
+    }
+
+    private static boolean isNodeDataTree(RuleTree<?> tree) {
+        return tree.getRoot() == null || isNodeDataNode(tree.getRoot());
+    }
+
+    private static boolean isNodeDataNode(RuleNode<?> node) {
+        if (!(node.getData() instanceof NodeData)) {
+            return false;
+        }
+        for (RuleNode<?> child : node.getChildren()) {
+            if (!isNodeDataNode(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeTree(RuleTree<?> tree, ObjectOutput out) throws IOException {
+        Map<Integer, String> addresses = tree.getLevelAddresses();
+        out.writeInt(addresses.size());
+        for (Map.Entry<Integer, String> address : addresses.entrySet()) {
+            out.writeInt(address.getKey());
+            out.writeUTF(address.getValue());
+        }
+        out.writeBoolean(tree.getRoot() != null);
+        if (tree.getRoot() != null) {
+            writeNode(tree.getRoot(), out);
+        }
+    }
+
+    private static void writeNode(RuleNode<?> node, ObjectOutput out) throws IOException {
+        NodeData data = (NodeData) node.getData();
+        writeString(data.getType(), out);
+        writeString(data.getStatementPrompt(), out);
+        writeString(data.getSystemPrompt(), out);
+        writeString(data.getModelName(), out);
+        writeString(data.getInput(), out);
+        writeString(data.getParentContext(), out);
+        out.writeDouble(data.getSimilarityScore());
+        out.writeInt(data.getRetryCount());
+
+        List<? extends RuleNode<?>> children = node.getChildren();
+        out.writeInt(children.size());
+        for (RuleNode<?> child : children) {
+            writeNode(child, out);
+        }
+    }
+
+    private static RuleTree<NodeData> readTree(ObjectInput in, int version) throws IOException {
+        RuleTree<NodeData> tree = new RuleTree<>();
+        int addresses = in.readInt();
+        for (int i = 0; i < addresses; i++) {
+            tree.setAddressForLevel(in.readInt(), in.readUTF());
+        }
+        if (in.readBoolean()) {
+            tree.setRoot(readNode(in, version));
+        }
+        return tree;
+    }
+
+    private static RuleTree<NodeData> copyTree(RuleTree<?> tree) {
+        RuleTree<NodeData> copy = new RuleTree<>();
+        for (Map.Entry<Integer, String> address : tree.getLevelAddresses().entrySet()) {
+            copy.setAddressForLevel(address.getKey(), address.getValue());
+        }
+        if (tree.getRoot() != null) {
+            copy.setRoot(copyNode(tree.getRoot()));
+        }
+        return copy;
+    }
+
+    private static RuleNode<NodeData> copyNode(RuleNode<?> node) {
+        NodeData data = (NodeData) node.getData();
+        // Credentials are dropped, as when written
+        NodeData copy = new NodeData(data.getType(), data.getStatementPrompt(), data.getSystemPrompt(),
+                data.getModelName(), "", data.getInput());
+        copy.setParentContext(data.getParentContext());
+        copy.setSimilarityScore(data.getSimilarityScore());
+        copy.setRetryCount(data.getRetryCount());
+
+        RuleNode<NodeData> copied = new RuleNode<>(copy);
+        for (RuleNode<?> child : node.getChildren()) {
+            copied.addChild(copyNode(child));
+        }
+        return copied;
+    }
+
+    private static RuleNode<NodeData> readNode(ObjectInput in, int version) throws IOException {
+        String type = readString(in);
+        String statementPrompt = readString(in);
+        String systemPrompt = readString(in);
+        String modelName = readString(in);
+        String input = readString(in);
+        NodeData data = new NodeData(type, statementPrompt, systemPrompt, modelName, "", input);
+        data.setParentContext(readString(in));
+        data.setSimilarityScore(in.readDouble());
+        if (version >= 2) {
+            data.setRetryCount(in.readInt());
+        }
+
+        RuleNode<NodeData> node = new RuleNode<>(data);
+        int children = in.readInt();
+        for (int i = 0; i < children; i++) {
+            node.addChild(readNode(in, version));
+        }
+        return node;
+    }
+
+    /**
+     * Length-prefixed UTF-8, since writeUTF is limited to 64 KB and prompts
+     * and subtree text can be longer.
+     */
+    private static void writeString(String value, ObjectOutput out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ObjectInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
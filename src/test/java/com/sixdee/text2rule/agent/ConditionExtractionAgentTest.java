@@ -0,0 +1,113 @@
+package com.sixdee.text2rule.agent;
+
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ConditionExtractionAgentTest {
+
+    private static final String PROMPT = "{{ $json.input_text }}";
+
+    @Test
+    public void testRetryReExtractsOnlyFailingNodes() throws Exception {
+        List<String> prompts = new ArrayList<>();
+        ChatLanguageModel model = new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                String prompt = messages.get(messages.size() - 1).text();
+                synchronized (prompts) {
+                    prompts.add(prompt);
+                }
+                return Response.from(AiMessage.from("[{\"rule\": \"retried " + prompt + "\"}]"));
+            }
+        };
+
+        RuleTree<NodeData> tree = new RuleTree<>();
+        RuleNode<NodeData> root = new RuleNode<>(new NodeData("Send SMS", "model"));
+        RuleNode<NodeData> passing = statement("Recharge above 100 gets 5 GB", 0.95, 0);
+        RuleNode<NodeData> failing = statement("Adimali subscribers get 1 GB", 0.4, 0);
+        RuleNode<NodeData> exhausted = statement("Others get 100 SMS", 0.3, 3);
+        root.addChild(passing);
+        root.addChild(failing);
+        root.addChild(exhausted);
+        tree.setRoot(root);
+
+        Assertions.assertEquals(List.of(failing), ConditionExtractionAgent.nodesToRetry(tree, 0.8, 3));
+
+        RuleTree<NodeData> result = new ConditionExtractionAgent(model).retry(tree, null, PROMPT, 0.8, 3)
+                .get(10, TimeUnit.SECONDS).getTree();
+
+        Assertions.assertEquals(List.of("Adimali subscribers get 1 GB"), prompts);
+        List<RuleNode<NodeData>> statements = result.getRoot().getChildren();
+        Assertions.assertEquals("first Recharge above 100 gets 5 GB", segment(statements.get(0)));
+        Assertions.assertEquals("retried Adimali subscribers get 1 GB", segment(statements.get(1)));
+        Assertions.assertEquals("first Others get 100 SMS", segment(statements.get(2)));
+        Assertions.assertEquals(0, statements.get(0).getData().getRetryCount());
+        Assertions.assertEquals(1, statements.get(1).getData().getRetryCount());
+        Assertions.assertEquals(0.95, statements.get(0).getData().getSimilarityScore());
+    }
+
+    @Test
+    public void testBatchFallsBackToSingleCallsOnlyForMissingIndices() throws Exception {
+        List<String> prompts = new ArrayList<>();
+        ChatLanguageModel model = new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                String prompt = ((UserMessage) messages.get(messages.size() - 1)).singleText();
+                synchronized (prompts) {
+                    prompts.add(prompt);
+                }
+                if (prompt.contains("numbered [0]")) {
+                    // [1] is missing; the malformed entry is skipped without losing the others
+                    return Response.from(AiMessage.from("[{\"index\": 0, \"conditions\": [{\"rule\": \"batched 0\"}]}, "
+                            + "{\"index\": \"one\", \"conditions\": {\"rule\": \"malformed\"}}, "
+                            + "{\"index\": 2, \"conditions\": [{\"rule\": \"batched 2\"}]}]"));
+                }
+                return Response.from(AiMessage.from("[{\"rule\": \"single " + prompt + "\"}]"));
+            }
+        };
+
+        RuleTree<NodeData> tree = new RuleTree<>();
+        RuleNode<NodeData> root = new RuleNode<>(new NodeData("Send SMS", "model"));
+        root.addChild(statement("Recharge above 100 gets 5 GB", 0, 0));
+        root.addChild(statement("Adimali subscribers get 1 GB", 0, 0));
+        root.addChild(statement("Others get 100 SMS", 0, 0));
+        tree.setRoot(root);
+
+        RuleTree<NodeData> result = new ConditionExtractionAgent(model).execute(tree, null, PROMPT)
+                .get(10, TimeUnit.SECONDS).getTree();
+
+        Assertions.assertEquals(2, prompts.size(), String.valueOf(prompts));
+        Assertions.assertTrue(prompts.get(0).contains("numbered [0] to [2]"));
+        Assertions.assertEquals("Adimali subscribers get 1 GB", prompts.get(1));
+        List<RuleNode<NodeData>> statements = result.getRoot().getChildren();
+        Assertions.assertEquals("batched 0", segment(statements.get(0)));
+        Assertions.assertEquals("single Adimali subscribers get 1 GB", segment(statements.get(1)));
+        Assertions.assertEquals("batched 2", segment(statements.get(2)));
+    }
+
+    private static String segment(RuleNode<NodeData> statement) {
+        Assertions.assertEquals(1, statement.getChildren().size());
+        return statement.getChildren().get(0).getData().getInput();
+    }
+
+    private static RuleNode<NodeData> statement(String input, double score, int retries) {
+        NodeData data = new NodeData("NormalStatements", "", "", "model", "", input);
+        data.setSimilarityScore(score);
+        data.setRetryCount(retries);
+        RuleNode<NodeData> node = new RuleNode<>(data);
+        node.addChild(new RuleNode<>(new NodeData("Segment", "", "", "model", "", "first " + input)));
+        return node;
+    }
+}
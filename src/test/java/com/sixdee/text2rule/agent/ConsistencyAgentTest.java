@@ -0,0 +1,61 @@
+package com.sixdee.text2rule.agent;
+
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConsistencyAgentTest {
+
+    @Test
+    public void testRecheckSkipsNodesThatWereNotReExtracted() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel model = new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                calls.incrementAndGet();
+                return Response.from(AiMessage.from("{\"similarity_score\": 0.9}"));
+            }
+        };
+
+        // Second retry with at most one retry per node: the exhausted node was
+        // last extracted by the first retry and still has its old score
+        RuleTree<NodeData> tree = new RuleTree<>();
+        RuleNode<NodeData> root = new RuleNode<>(new NodeData("Send SMS", "model"));
+        RuleNode<NodeData> passing = statement("Recharge above 100 gets 5 GB", 0.95, 0);
+        RuleNode<NodeData> retried = statement("Adimali subscribers get 1 GB", 0.4, 2);
+        RuleNode<NodeData> exhausted = statement("Others get 100 SMS", 0.3, 1);
+        root.addChild(passing);
+        root.addChild(retried);
+        root.addChild(exhausted);
+        tree.setRoot(root);
+
+        ConsistencyAgent.ConsistencyState state = new ConsistencyAgent(model).recheck(tree, "condition", 0.8, 2)
+                .get(10, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(1, calls.get());
+        List<RuleNode<NodeData>> statements = state.getTree().getRoot().getChildren();
+        Assertions.assertEquals(0.95, statements.get(0).getData().getSimilarityScore());
+        Assertions.assertEquals(0.9, statements.get(1).getData().getSimilarityScore());
+        Assertions.assertEquals(0.3, statements.get(2).getData().getSimilarityScore());
+        Assertions.assertEquals(0.3, state.getConsistencyScore());
+    }
+
+    private static RuleNode<NodeData> statement(String input, double score, int retries) {
+        NodeData data = new NodeData("NormalStatements", "", "", "model", "", input);
+        data.setSimilarityScore(score);
+        data.setRetryCount(retries);
+        RuleNode<NodeData> node = new RuleNode<>(data);
+        node.addChild(new RuleNode<>(new NodeData("Segment", "", "", "model", "", "segment of " + input)));
+        return node;
+    }
+}
@@ -0,0 +1,86 @@
+package com.sixdee.text2rule.agent;
+
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.NodeData;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class DecompositionAgentTest {
+
+    private static final String SYSTEM_PROMPT = "Decompose the statement";
+    private static final int RUNS = 200;
+
+    @Test
+    public void testConcurrentRunsKeepTheirOwnToolResults() throws Exception {
+        // Results reach the tree only through the tools, so runs sharing tool
+        // state would pick up each other's trees
+        ChatLanguageModel model = new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                pause();
+                if (!(messages.get(0) instanceof SystemMessage) || !SYSTEM_PROMPT.equals(messages.get(0).text())) {
+                    return Response.from(AiMessage.from("{\"score\": 0.9}"));
+                }
+                String statement = ((UserMessage) messages.get(1)).singleText();
+                String json = "{\"normal_statements\": \"" + statement + " normal\", \"schedule\": \"" + statement
+                        + " schedule\"}";
+                ChatMessage last = messages.get(messages.size() - 1);
+                if (last instanceof UserMessage) {
+                    return toolCall("submitDecomposition", json);
+                }
+                if ("submitDecomposition".equals(((ToolExecutionResultMessage) last).toolName())) {
+                    return toolCall("checkConsistency", "{\"decompositionJson\": \"" + json.replace("\"", "\\\"")
+                            + "\", \"originalStatement\": \"" + statement + "\"}");
+                }
+                return Response.from(AiMessage.from("Decomposition submitted"));
+            }
+        };
+        DecompositionAgent agent = new DecompositionAgent(model);
+
+        List<CompletableFuture<DecompositionAgent.DecompositionState>> runs = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            runs.add(agent.execute("Send SMS " + i + " to subscribers in Adimali", SYSTEM_PROMPT));
+        }
+
+        for (int i = 0; i < RUNS; i++) {
+            String statement = "Send SMS " + i + " to subscribers in Adimali";
+            DecompositionAgent.DecompositionState state = runs.get(i).get(60, TimeUnit.SECONDS);
+            Assertions.assertEquals(statement + " normal", state.getDecompositionResult().getNormalStatements());
+            RuleNode<NodeData> root = state.getTree().getRoot();
+            Assertions.assertEquals(statement, root.getData().getInput());
+            Assertions.assertEquals(2, root.getChildren().size());
+            Assertions.assertEquals(statement + " normal", root.getChildren().get(0).getData().getInput());
+            Assertions.assertEquals(statement + " schedule", root.getChildren().get(1).getData().getInput());
+        }
+    }
+
+    private static Response<AiMessage> toolCall(String name, String arguments) {
+        return Response.from(AiMessage.from(ToolExecutionRequest.builder()
+                .id(name + "-1")
+                .name(name)
+                .arguments(arguments)
+                .build()));
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.sixdee.text2rule.agent;
+
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.view.FinalRuleJsonRenderer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class FastPathAgentTest {
+
+    private static final String STATEMENT = "Recharge above 100 in Adimali gets 5 GB data, every Monday";
+
+    private static final String ANSWER = "```json\n{\"validation\": {\"is_valid\": true, \"has_condition\": true, "
+            + "\"has_action\": true, \"has_schedule\": true},\n"
+            + " \"decomposition\": {\"normal_statements\": \"Recharge above 100 in Adimali gets 5 GB data\", "
+            + "\"schedule\": \"every Monday\"},\n"
+            + " \"segments\": [{\"rule\": \"If recharge above 100 and location is Adimali then give 5 GB data\",\n"
+            + "   \"conversion\": {\"segments\": [\"recharge above 100\", \"location is Adimali\"], "
+            + "\"actions\": \"give 5 GB data\"},\n"
+            + "   \"if_condition\": \"if (RECHARGE_AMOUNT > 100 AND LOCATION == 'Adimali')\",\n"
+            + "   \"action_details\": {\"ActionName\": \"Data Bonus\", \"Channel\": \"SMS\", "
+            + "\"Conditions\": [{\"Condition\": \"always\", \"Benefits\": [{\"Product\": \"5 GB Data\"}]}]}}],\n"
+            + " \"schedule\": {\"schedule_type\": \"Weekly\", \"repeat\": \"Monday\"}}\n```";
+
+    private static ChatLanguageModel answering(String answer) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                return Response.from(AiMessage.from(answer));
+            }
+        };
+    }
+
+    @Test
+    public void testUsableAnswerBuildsWorkflowShapedTree() throws Exception {
+        FastPathAgent.FastPathState state = new FastPathAgent(answering(ANSWER)).execute(STATEMENT)
+                .get(10, TimeUnit.SECONDS);
+
+        Assertions.assertFalse(state.isFailed(), state.getFailureReason());
+        RuleNode<NodeData> root = state.getTree().getRoot();
+        Assertions.assertEquals(STATEMENT, root.getData().getInput());
+        RuleNode<NodeData> statements = root.getChildren().get(0);
+        Assertions.assertEquals("NormalStatements", statements.getData().getType());
+        RuleNode<NodeData> segment = statements.getChildren().get(0);
+        Assertions.assertEquals("Segment", segment.getData().getType());
+        Assertions.assertEquals("segments", segment.getChildren().get(0).getData().getType());
+        Assertions.assertEquals("IF_Condition", segment.getChildren().get(0).getChildren().get(0).getData().getType());
+        Assertions.assertEquals("ActionDetails", segment.getChildren().get(1).getChildren().get(0).getData().getType());
+        RuleNode<NodeData> schedule = root.getChildren().get(1);
+        Assertions.assertEquals("Schedule", schedule.getData().getType());
+        Assertions.assertEquals("ScheduleDetails", schedule.getChildren().get(0).getData().getType());
+        Assertions.assertTrue(state.getValidationResult().isValid());
+
+        Assertions.assertTrue(new FinalRuleJsonRenderer().render(state.getTree()).contains("RECHARGE_AMOUNT"));
+    }
+
+    @Test
+    public void testUnusableAnswerIsRejected() throws Exception {
+        String withoutIf = ANSWER.replace("\"if_condition\": \"if (RECHARGE_AMOUNT > 100 AND LOCATION == 'Adimali')\",",
+                "");
+        FastPathAgent.FastPathState state = new FastPathAgent(answering(withoutIf)).execute(STATEMENT)
+                .get(10, TimeUnit.SECONDS);
+        Assertions.assertTrue(state.isFailed());
+        Assertions.assertEquals("Segment without IF condition", state.getFailureReason());
+
+        state = new FastPathAgent(answering("I cannot help with that")).execute(STATEMENT).get(10, TimeUnit.SECONDS);
+        Assertions.assertTrue(state.isFailed());
+    }
+}
@@ -0,0 +1,50 @@
+package com.sixdee.text2rule.batch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+public class BatchInputTest {
+
+    @Test
+    public void testJsonLinesWithIdsAndBadLine() throws Exception {
+        String jsonl = "{\"id\": \"c-1\", \"input\": \"Send SMS 24 to Adimali subscribers\"}\n"
+                + "\n"
+                + "{\"statement\": \"Run weekly on Mondays\"}\n"
+                + "{not json\n";
+        try (BatchInput input = new BatchInput(new StringReader(jsonl), false)) {
+            BatchInput.Item first = input.next();
+            Assertions.assertEquals("c-1", first.getId());
+            Assertions.assertEquals("Send SMS 24 to Adimali subscribers", first.getStatement());
+
+            BatchInput.Item second = input.next();
+            Assertions.assertEquals("2", second.getId());
+            Assertions.assertEquals("Run weekly on Mondays", second.getStatement());
+
+            BatchInput.Item bad = input.next();
+            Assertions.assertEquals("3", bad.getId());
+            Assertions.assertNotNull(bad.getError());
+
+            Assertions.assertNull(input.next());
+        }
+    }
+
+    @Test
+    public void testCsvWithQuotedFields() throws Exception {
+        String csv = "id,statement\r\n"
+                + "c-1,\"Subscribers whose SMS revenue is 15 RO, in Adimali\"\r\n"
+                + ",\"Say \"\"hello\"\"\nacross two lines\"\r\n";
+        try (BatchInput input = new BatchInput(new StringReader(csv), true)) {
+            BatchInput.Item first = input.next();
+            Assertions.assertEquals("c-1", first.getId());
+            Assertions.assertEquals("Subscribers whose SMS revenue is 15 RO, in Adimali", first.getStatement());
+
+            BatchInput.Item second = input.next();
+            Assertions.assertEquals("2", second.getId());
+            Assertions.assertEquals("Say \"hello\"\nacross two lines", second.getStatement());
+
+            Assertions.assertNull(input.next());
+        }
+    }
+}
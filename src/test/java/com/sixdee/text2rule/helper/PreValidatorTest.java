@@ -0,0 +1,75 @@
+package com.sixdee.text2rule.helper;
+
+import com.sixdee.text2rule.dto.ValidationResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PreValidatorTest {
+
+    @Test
+    public void testObviouslyInvalidStatementsAreRejected() {
+        for (String input : new String[] { "", "12345 !!!", "hello", "Send SMS" }) {
+            PreValidator.Outcome outcome = PreValidator.check(input);
+            Assertions.assertEquals(PreValidator.Verdict.INVALID, outcome.getVerdict(), input);
+            Assertions.assertFalse(outcome.getResult().isValid());
+            Assertions.assertFalse(outcome.getResult().getIssuesDetected().isEmpty());
+        }
+    }
+
+    @Test
+    public void testClearRuleIsAcceptedWithFlags() {
+        PreValidator.Outcome outcome = PreValidator.check(
+                "Send SMS 24 to subscribers in Adimali with recharge above 100 every Monday");
+        Assertions.assertEquals(PreValidator.Verdict.VALID, outcome.getVerdict());
+        ValidationResult result = outcome.getResult();
+        Assertions.assertTrue(result.isValid());
+        Assertions.assertTrue(result.isHasAction());
+        Assertions.assertTrue(result.isHasCondition());
+        Assertions.assertTrue(result.isHasSchedule());
+        Assertions.assertTrue(result.isHasMessageIdWithAction());
+        Assertions.assertTrue(result.isHasValidFormat());
+        Assertions.assertFalse(result.isHasSampling());
+    }
+
+    @Test
+    public void testUnclearStatementIsLeftToTheLlm() {
+        Assertions.assertEquals(PreValidator.Verdict.AMBIGUOUS,
+                PreValidator.check("Maybe give 1 GB data to subscribers in Adimali?").getVerdict());
+        Assertions.assertEquals(PreValidator.Verdict.AMBIGUOUS,
+                PreValidator.check("Give 1 GB data bonus to everyone").getVerdict());
+    }
+
+    @Test
+    public void testWeakScheduleWordsLeaveTheScheduleToTheLlm() {
+        for (String input : new String[] { "Give 1 GB data to subscribers from Adimali",
+                "Send SMS 24 to each subscriber with recharge above 100",
+                "Give 1 GB data to subscribers in Adimali who may recharge above 100" }) {
+            PreValidator.Outcome outcome = PreValidator.check(input);
+            Assertions.assertEquals(PreValidator.Verdict.AMBIGUOUS, outcome.getVerdict(), input);
+            Assertions.assertFalse(outcome.getResult().isHasSchedule(), input);
+        }
+
+        PreValidator.Outcome dated = PreValidator.check("Give 1 GB data to subscribers from Adimali on 5 May");
+        Assertions.assertEquals(PreValidator.Verdict.VALID, dated.getVerdict());
+        Assertions.assertTrue(dated.getResult().isHasSchedule());
+    }
+
+    @Test
+    public void testStatementWithoutKnownKeywordsIsLeftToTheLlm() {
+        PreValidator.Outcome outcome = PreValidator.check("Recharge users whose ARPU > 100 with 2x talk time");
+        Assertions.assertEquals(PreValidator.Verdict.AMBIGUOUS, outcome.getVerdict());
+        Assertions.assertEquals(PreValidator.Verdict.AMBIGUOUS,
+                PreValidator.check("The weather is nice today").getVerdict());
+    }
+
+    @Test
+    public void testStatsCountVerdicts() {
+        PreValidator.Stats before = PreValidator.getStats();
+        PreValidator.check("hello");
+        PreValidator.check("Give 1 GB data bonus to everyone");
+        PreValidator.Stats after = PreValidator.getStats();
+        Assertions.assertEquals(before.getRejected() + 1, after.getRejected());
+        Assertions.assertEquals(before.getAmbiguous() + 1, after.getAmbiguous());
+        Assertions.assertTrue(after.getHitRate() > 0 && after.getHitRate() < 1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.sixdee.text2rule.helper;
+
+import com.sixdee.text2rule.llm.TokenEstimator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PromptBudgetTest {
+
+    private static final String DOCUMENT = "Total_Sms_Rev_30D: SMS revenue in the last 30 days\n"
+            + "Data_Usage_7D: data used in the last 7 days, in megabytes\n"
+            + "Fav_Location: the location the subscriber visits most often\n"
+            + "Voice_Minutes_30D: outgoing voice minutes in the last 30 days\n"
+            + "Total_Recharge_30D: total recharge amount in the last 30 days\n"
+            + "Roaming_Flag: whether the subscriber is currently roaming";
+
+    @Test
+    public void testSectionWithinBudgetIsUnchanged() {
+        Assertions.assertEquals(DOCUMENT, PromptBudget.trim(DOCUMENT, "anything", 10_000));
+    }
+
+    @Test
+    public void testKeepsMostRelevantLinesInOrder() {
+        int budget = 50;
+        String trimmed = PromptBudget.trim(DOCUMENT, "SMS revenue is 15 RO and total recharge is at least 200",
+                budget);
+
+        Assertions.assertTrue(TokenEstimator.estimate(trimmed) <= budget, trimmed);
+        Assertions.assertTrue(trimmed.indexOf("Total_Sms_Rev_30D") >= 0, trimmed);
+        Assertions.assertTrue(trimmed.indexOf("Total_Recharge_30D") > trimmed.indexOf("Total_Sms_Rev_30D"),
+                trimmed);
+        Assertions.assertFalse(trimmed.contains("Roaming_Flag"), trimmed);
+        Assertions.assertTrue(trimmed.endsWith("lines omitted to fit the prompt budget]"), trimmed);
+    }
+
+    @Test
+    public void testSplitsEscapedLineBreaks() {
+        String json = "[{\"content\":\"" + DOCUMENT.replace("\n", "\\n") + "\"}]";
+        String trimmed = PromptBudget.trim(json, "voice minutes", 30);
+
+        Assertions.assertTrue(trimmed.contains("Voice_Minutes_30D"), trimmed);
+        Assertions.assertFalse(trimmed.contains("Data_Usage_7D"), trimmed);
+    }
+}
@@ -0,0 +1,108 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CancellableChatModelTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answers after a long delay unless interrupted.
+     */
+    private static ChatLanguageModel slowModel(CountDownLatch started, AtomicInteger calls) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("interrupted");
+                }
+                return Response.from(AiMessage.from("{}"));
+            }
+        };
+    }
+
+    @Test
+    public void testCancelInterruptsInFlightCallAndRefusesNewOnes() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel model = new CancellableChatModel(slowModel(started, calls));
+        CancellationToken token = new CancellationToken();
+
+        Future<String> call = executor.submit(
+                () -> LlmCallContext.withCancellation(token, () -> model.generate("prompt")));
+        Assertions.assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        Assertions.assertEquals(1, token.cancel());
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> call.get(2, TimeUnit.SECONDS));
+        Assertions.assertTrue(failure.getCause() instanceof CancellationException);
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Call was not interrupted");
+
+        Assertions.assertThrows(CancellationException.class,
+                () -> LlmCallContext.withCancellation(token, () -> model.generate("prompt")));
+        Assertions.assertEquals(1, calls.get(), "Cancelled token must not reach the provider");
+        Assertions.assertEquals(1, token.getCalls());
+    }
+
+    @Test
+    public void testTokenFollowsWorkToOtherThreads() throws Exception {
+        CancellationToken token = new CancellationToken();
+        CancellationToken[] seen = new CancellationToken[1];
+        Runnable task = LlmCallContext.withCancellation(token,
+                () -> LlmCallContext.propagate(() -> seen[0] = LlmCallContext.getCancellation()));
+        executor.submit(task).get(2, TimeUnit.SECONDS);
+
+        Assertions.assertSame(token, seen[0]);
+        Assertions.assertNull(LlmCallContext.getCancellation());
+    }
+
+    @Test
+    public void testDeadlineCancelsTokenAndItsChildren() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel model = new CancellableChatModel(slowModel(started, calls));
+        try (CancellationToken token = CancellationToken.withDeadline(200)) {
+            CancellationToken child = token.newChild();
+            Future<String> call = executor.submit(
+                    () -> LlmCallContext.withCancellation(child, () -> model.generate("prompt")));
+
+            ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                    () -> call.get(2, TimeUnit.SECONDS));
+            Assertions.assertTrue(failure.getCause() instanceof CancellationException);
+            Assertions.assertTrue(token.isDeadlineExceeded());
+            Assertions.assertTrue(child.isDeadlineExceeded());
+            Assertions.assertEquals(0, token.getRemainingMillis());
+            Assertions.assertTrue(token.newChild().isCancelled());
+        }
+
+        CancellationToken parent = new CancellationToken();
+        parent.newChild().cancel();
+        Assertions.assertFalse(parent.isCancelled(), "Cancelling a child must not cancel its parent");
+    }
+}
@@ -0,0 +1,104 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgingChatModelTest {
+
+    private static final String PROMPT_KEY = "consistency_check_prompt";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answers quickly, except that the call number given is very slow.
+     */
+    private static ChatLanguageModel model(AtomicInteger calls, int slowCall, AtomicInteger interrupted) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                int call = calls.incrementAndGet();
+                try {
+                    Thread.sleep(call == slowCall ? 5_000 : 5);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw new IllegalStateException("cancelled");
+                }
+                return Response.from(AiMessage.from("{\"similarity_score\": 0.9}"));
+            }
+        };
+    }
+
+    @Test
+    public void testSlowCallIsHedgedAndLoserCancelled() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        HedgingChatModel hedging = new HedgingChatModel(model(calls, 6, interrupted), null, 0,
+                PROMPT_KEY::equals, 0.95, 5, executor);
+
+        for (int i = 0; i < 5; i++) {
+            LlmCallContext.withPromptKey(PROMPT_KEY, () -> hedging.generate("warm up"));
+        }
+
+        long start = System.nanoTime();
+        String answer = LlmCallContext.withPromptKey(PROMPT_KEY, () -> hedging.generate("slow"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertEquals("{\"similarity_score\": 0.9}", answer);
+        Assertions.assertTrue(elapsedMillis < 2_000, "took " + elapsedMillis + " ms");
+        Assertions.assertEquals(1, hedging.getHedgedCalls());
+        Assertions.assertEquals(1, hedging.getHedgeWins());
+
+        Thread.sleep(100);
+        Assertions.assertEquals(1, interrupted.get());
+    }
+
+    @Test
+    public void testNonIdempotentPromptIsNeverHedged() {
+        AtomicInteger calls = new AtomicInteger();
+        HedgingChatModel hedging = new HedgingChatModel(model(calls, -1, new AtomicInteger()), null, 0,
+                PROMPT_KEY::equals, 0.5, 1, executor);
+
+        for (int i = 0; i < 5; i++) {
+            LlmCallContext.withPromptKey("statement_decompostion_agent_prompt", () -> hedging.generate("x"));
+        }
+        Assertions.assertEquals(5, calls.get());
+        Assertions.assertEquals(0, hedging.getHedgedCalls());
+    }
+
+    @Test
+    public void testHedgeNeedsImmediateBudget() {
+        AtomicInteger calls = new AtomicInteger();
+        TokenBucket exhausted = new TokenBucket("test", 1, 100_000);
+        exhausted.reserve(1);
+        HedgingChatModel hedging = new HedgingChatModel(model(calls, 3, new AtomicInteger()),
+                Collections.singletonList(exhausted), 0, PROMPT_KEY::equals, 0.5, 2, executor);
+
+        for (int i = 0; i < 2; i++) {
+            LlmCallContext.withPromptKey(PROMPT_KEY, () -> hedging.generate("warm up"));
+        }
+        executor.submit(() -> LlmCallContext.withPromptKey(PROMPT_KEY, () -> hedging.generate("slow")));
+
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (hedging.getSkippedForBudget() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        Assertions.assertEquals(1, hedging.getSkippedForBudget());
+        Assertions.assertEquals(0, hedging.getHedgedCalls());
+    }
+}
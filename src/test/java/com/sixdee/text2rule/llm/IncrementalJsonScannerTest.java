@@ -0,0 +1,61 @@
+package com.sixdee.text2rule.llm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class IncrementalJsonScannerTest {
+
+    private static boolean feedAll(IncrementalJsonScanner scanner, String... chunks) {
+        boolean complete = false;
+        for (String chunk : chunks) {
+            complete = scanner.feed(chunk);
+        }
+        return complete;
+    }
+
+    @Test
+    public void testObjectCompletesWhenTopLevelObjectCloses() {
+        IncrementalJsonScanner scanner = IncrementalJsonScanner.forObject();
+        Assertions.assertFalse(feedAll(scanner, "Here is the result:\n```json\n{\"a\": {\"b\"", ": 1}"));
+        Assertions.assertTrue(scanner.feed(", \"c\": 2}\n```\nThe rule has two parts."));
+        Assertions.assertEquals("{\"a\": {\"b\": 1}, \"c\": 2}", scanner.getResult());
+    }
+
+    @Test
+    public void testBracesAndEscapesInsideStringsAreIgnored() {
+        IncrementalJsonScanner scanner = IncrementalJsonScanner.forObject();
+        Assertions.assertFalse(feedAll(scanner, "{\"text\": \"a } b \\", "\" } c {\""));
+        Assertions.assertTrue(scanner.feed("}"));
+        Assertions.assertEquals("{\"text\": \"a } b \\\" } c {\"}", scanner.getResult());
+    }
+
+    @Test
+    public void testArrayCompletesWhenTopLevelArrayCloses() {
+        IncrementalJsonScanner scanner = IncrementalJsonScanner.forArray();
+        Assertions.assertTrue(feedAll(scanner, "[{\"field\": \"age\", \"values\": [1, 2]}", "]", " trailing"));
+        Assertions.assertEquals("[{\"field\": \"age\", \"values\": [1, 2]}]", scanner.getResult());
+    }
+
+    @Test
+    public void testFieldCompletesBeforeObjectCloses() {
+        IncrementalJsonScanner scanner = IncrementalJsonScanner.forField("similarity_score");
+        Assertions.assertFalse(feedAll(scanner, "{\"notes\": {\"similarity_score\": 0.1}, ", "\"similarity_score\": 0.9"));
+        Assertions.assertTrue(scanner.feed("2, \"reason\": \"long explanation"));
+        Assertions.assertEquals("{\"similarity_score\": 0.92}", scanner.getResult());
+    }
+
+    @Test
+    public void testFieldAsLastMemberCompletesOnClose() {
+        IncrementalJsonScanner scanner = IncrementalJsonScanner.forField("similarity_score");
+        Assertions.assertTrue(feedAll(scanner, "{\"reason\": \"ok\", \"similarity_score\": 1.0}"));
+        Assertions.assertEquals("{\"similarity_score\": 1.0}", scanner.getResult());
+    }
+
+    @Test
+    public void testIncompleteInputHasNoResult() {
+        IncrementalJsonScanner scanner = IncrementalJsonScanner.forObject();
+        Assertions.assertFalse(feedAll(scanner, "no json here", "{\"a\": [1"));
+        Assertions.assertNull(scanner.getResult());
+        Assertions.assertFalse(scanner.isComplete());
+    }
+}
@@ -0,0 +1,76 @@
+package com.sixdee.text2rule.llm;
+
+import com.sixdee.text2rule.exception.ProviderUnavailableException;
+import dev.ai4j.openai4j.OpenAiHttpException;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResilientChatModelTest {
+
+    private static final String RATE_LIMITED = "{\"error\": {\"message\": \"Rate limit reached for requests. "
+            + "Please try again in 20ms.\"}}";
+
+    /**
+     * Fails with the given status code for the first failures calls.
+     */
+    private static ChatLanguageModel model(AtomicInteger calls, int failures, int code) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                if (calls.incrementAndGet() <= failures) {
+                    throw new RuntimeException(new OpenAiHttpException(code, RATE_LIMITED));
+                }
+                return Response.from(AiMessage.from("ok"));
+            }
+        };
+    }
+
+    @Test
+    public void testRateLimitedCallWaitsAndRetries() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientChatModel model = new ResilientChatModel("groq", model(calls, 2, 429), 4, 1, 1_000, 5, 1_000);
+
+        long start = System.nanoTime();
+        Assertions.assertEquals("ok", model.generate("hello"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(2, model.getRetries());
+        Assertions.assertTrue(elapsedMillis >= 40, "Retry-After should be honoured, took " + elapsedMillis + "ms");
+        Assertions.assertFalse(model.isOpen());
+    }
+
+    @Test
+    public void testCircuitOpensAfterRepeatedFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientChatModel model = new ResilientChatModel("groq", model(calls, Integer.MAX_VALUE, 503), 2, 1, 1_000, 2,
+                60_000);
+
+        ProviderUnavailableException gaveUp = Assertions.assertThrows(ProviderUnavailableException.class,
+                () -> model.generate("hello"));
+        Assertions.assertEquals("groq", gaveUp.getProvider());
+        Assertions.assertTrue(model.isOpen());
+
+        Assertions.assertThrows(ProviderUnavailableException.class, () -> model.generate("hello"));
+        Assertions.assertEquals(2, calls.get(), "Open circuit should not call the provider");
+        Assertions.assertEquals(1, model.getShortCircuited());
+    }
+
+    @Test
+    public void testBadRequestIsNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientChatModel model = new ResilientChatModel("groq", model(calls, 1, 400), 4, 1, 5, 2, 60_000);
+
+        RuntimeException error = Assertions.assertThrows(RuntimeException.class, () -> model.generate("hello"));
+        Assertions.assertFalse(error instanceof ProviderUnavailableException);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals("ok", model.generate("hello"));
+    }
+}
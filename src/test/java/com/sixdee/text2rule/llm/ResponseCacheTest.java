@@ -0,0 +1,150 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResponseCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ResponseCache.CachedResponse response(String text, long ttlMillis) {
+        return new ResponseCache.CachedResponse("condition_extraction_prompt",
+                System.currentTimeMillis() + ttlMillis, text, Collections.emptyList(), FinishReason.STOP);
+    }
+
+    @Test
+    public void testHitsSurviveRestart() {
+        try (ResponseCache cache = new ResponseCache(10, tempDir, 1024 * 1024)) {
+            cache.put("k1", response("[{\"field\":\"age\"}]", 60_000));
+            cache.put("k2", new ResponseCache.CachedResponse("statement_decompostion_agent_prompt",
+                    System.currentTimeMillis() + 60_000, null,
+                    Collections.singletonList(ToolExecutionRequest.builder()
+                            .id("call_1").name("decompose").arguments("{\"a\":1}").build()),
+                    FinishReason.TOOL_EXECUTION));
+        }
+
+        try (ResponseCache reopened = new ResponseCache(10, tempDir, 1024 * 1024)) {
+            ResponseCache.CachedResponse hit = reopened.get("k1", "condition_extraction_prompt");
+            Assertions.assertNotNull(hit);
+            Assertions.assertEquals("[{\"field\":\"age\"}]", hit.getText());
+            Assertions.assertEquals(FinishReason.STOP, hit.getFinishReason());
+
+            ResponseCache.CachedResponse toolHit = reopened.get("k2", "statement_decompostion_agent_prompt");
+            Assertions.assertNotNull(toolHit);
+            Assertions.assertNull(toolHit.getText());
+            Assertions.assertEquals("decompose", toolHit.getToolExecutionRequests().get(0).name());
+
+            Assertions.assertEquals(2, reopened.getStats().getDiskHits());
+            Assertions.assertEquals(1, reopened.getPartitionStats().get("condition_extraction_prompt").getHits());
+        }
+    }
+
+    @Test
+    public void testExpiredEntriesAreMisses() {
+        try (ResponseCache cache = new ResponseCache(10, null, 0)) {
+            cache.put("k1", response("stale", -1));
+            Assertions.assertNull(cache.get("k1", "condition_extraction_prompt"));
+            Assertions.assertEquals(1, cache.getStats().getMisses());
+            Assertions.assertEquals(0, cache.getStats().getHits());
+        }
+    }
+
+    @Test
+    public void testMemoryTierIsLruBounded() {
+        try (ResponseCache cache = new ResponseCache(2, null, 0)) {
+            cache.put("a", response("a", 60_000));
+            cache.put("b", response("b", 60_000));
+            Assertions.assertNotNull(cache.get("a", null));
+            cache.put("c", response("c", 60_000));
+
+            Assertions.assertNull(cache.get("b", null));
+            Assertions.assertNotNull(cache.get("a", null));
+            Assertions.assertEquals(1, cache.getStats().getEvictions());
+        }
+    }
+
+    @Test
+    public void testDiskTierCompactsToBudget() throws Exception {
+        String payload = new String(new char[200]).replace('\0', 'x');
+        try (ResponseCache cache = new ResponseCache(1000, tempDir, 4096)) {
+            for (int i = 0; i < 100; i++) {
+                cache.put("key-" + i, response(payload, 60_000));
+            }
+            Assertions.assertTrue(Files.size(tempDir.resolve("responses.log")) <= 4096);
+            Assertions.assertTrue(cache.getDiskEntryCount() < 100);
+        }
+
+        try (ResponseCache reopened = new ResponseCache(1000, tempDir, 4096)) {
+            // The newest entry is always kept
+            Assertions.assertNotNull(reopened.get("key-99", null));
+            Assertions.assertNull(reopened.get("key-0", null));
+        }
+    }
+
+    @Test
+    public void testTornTailRecordIsDiscarded() throws Exception {
+        try (ResponseCache cache = new ResponseCache(10, tempDir, 1024 * 1024)) {
+            cache.put("k1", response("ok", 60_000));
+        }
+        Path log = tempDir.resolve("responses.log");
+        long validBytes = Files.size(log);
+        Files.write(log, new byte[] { 0x54, 0x32, 0x52 }, java.nio.file.StandardOpenOption.APPEND);
+
+        try (ResponseCache reopened = new ResponseCache(10, tempDir, 1024 * 1024)) {
+            Assertions.assertNotNull(reopened.get("k1", null));
+            Assertions.assertEquals(validBytes, Files.size(log));
+        }
+    }
+
+    @Test
+    public void testRunResponsesAreCachedOnlyOnceAccepted() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatLanguageModel provider = new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                return Response.from(AiMessage.from("answer " + calls.incrementAndGet()));
+            }
+        };
+        try (ResponseCache cache = new ResponseCache(10, null, 0)) {
+            ChatLanguageModel model = new CachingChatModel(provider, cache, "test", key -> 60);
+            String extraction = "condition_extraction_prompt";
+            String consistency = "consistency_check_prompt";
+
+            LlmCallContext.withRun("run-1", () -> {
+                LlmCallContext.withPromptKey(extraction, () -> model.generate("extract"));
+                LlmCallContext.withPromptKey(consistency, () -> model.generate("check"));
+                // A retry after a rejected extraction reaches the provider again
+                Assertions.assertEquals(1, CacheAdmission.getInstance().reject(extraction));
+                LlmCallContext.withPromptKey(extraction, () -> model.generate("extract"));
+                return null;
+            });
+            Assertions.assertEquals(3, calls.get());
+            Assertions.assertEquals(0, cache.getMemoryEntryCount());
+
+            Assertions.assertEquals(2, CacheAdmission.getInstance().commitRun("run-1"));
+            Assertions.assertEquals("answer 3", LlmCallContext.withPromptKey(extraction,
+                    () -> model.generate("extract")));
+            Assertions.assertEquals(3, calls.get());
+
+            LlmCallContext.withRun("run-2", () -> LlmCallContext.withPromptKey(extraction,
+                    () -> model.generate("other")));
+            CacheAdmission.getInstance().discardRun("run-2");
+            Assertions.assertEquals(0, CacheAdmission.getInstance().getStagedCount("run-2"));
+            Assertions.assertEquals(2, cache.getMemoryEntryCount());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoutingChatModelTest {
+
+    private static ChatLanguageModel model(String answer, long delayMillis, boolean fail, AtomicInteger calls) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (fail) {
+                    throw new RuntimeException("backend down");
+                }
+                return Response.from(AiMessage.from(answer));
+            }
+        };
+    }
+
+    @Test
+    public void testFailsOverToNextBackend() {
+        AtomicInteger brokenCalls = new AtomicInteger();
+        AtomicInteger healthyCalls = new AtomicInteger();
+        RoutingChatModel router = new RoutingChatModel(Arrays.asList(
+                new RoutingChatModel.Backend("broken", model("x", 0, true, brokenCalls), null, 0),
+                new RoutingChatModel.Backend("healthy", model("ok", 0, false, healthyCalls), null, 0)));
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals("ok", router.generate("hi"));
+        }
+        Assertions.assertEquals(5, healthyCalls.get());
+        // After repeated failures the broken backend cools down and is no longer tried first
+        Assertions.assertTrue(brokenCalls.get() <= 3);
+        Assertions.assertTrue(router.getBackends().get(0).getErrorRate() > 0);
+    }
+
+    @Test
+    public void testPrefersFasterBackend() {
+        AtomicInteger slowCalls = new AtomicInteger();
+        AtomicInteger fastCalls = new AtomicInteger();
+        RoutingChatModel router = new RoutingChatModel(Arrays.asList(
+                new RoutingChatModel.Backend("slow", model("slow", 40, false, slowCalls), null, 0),
+                new RoutingChatModel.Backend("fast", model("fast", 1, false, fastCalls), null, 0)));
+
+        for (int i = 0; i < 10; i++) {
+            router.generate("hi");
+        }
+        Assertions.assertTrue(fastCalls.get() >= 8, "fast backend calls: " + fastCalls.get());
+    }
+
+    @Test
+    public void testRethrowsWhenAllBackendsFail() {
+        RoutingChatModel router = new RoutingChatModel(Arrays.asList(
+                new RoutingChatModel.Backend("a", model("x", 0, true, new AtomicInteger()), null, 0),
+                new RoutingChatModel.Backend("b", model("x", 0, true, new AtomicInteger()), null, 0)));
+
+        Assertions.assertThrows(RuntimeException.class, () -> router.generate("hi"));
+        Assertions.assertEquals(1, router.getBackends().get(0).getFailures());
+        Assertions.assertEquals(1, router.getBackends().get(1).getFailures());
+    }
+}
@@ -0,0 +1,226 @@
+package com.sixdee.text2rule.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightChatModelTest {
+
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answers once released, or fails if interrupted first.
+     */
+    private static ChatLanguageModel gatedModel(CountDownLatch started, CountDownLatch release,
+            AtomicInteger calls, AtomicInteger interrupted) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw new IllegalStateException("interrupted");
+                }
+                return Response.from(AiMessage.from("answer"));
+            }
+        };
+    }
+
+    private Future<String> submit(ChatLanguageModel model) {
+        return executor.submit(() -> model.generate("prompt"));
+    }
+
+    private Future<String> submit(ChatLanguageModel model, CancellationToken token) {
+        return executor.submit(() -> LlmCallContext.withCancellation(token, () -> model.generate("prompt")));
+    }
+
+    private static void awaitWaiters(SingleFlightChatModel singleFlight, long saved) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (singleFlight.getSavedCalls() < saved && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(saved, singleFlight.getSavedCalls());
+    }
+
+    @Test
+    public void testConcurrentIdenticalCallsShareOneProviderCall() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(
+                gatedModel(started, release, calls, new AtomicInteger()));
+
+        List<Future<String>> callers = new ArrayList<>();
+        callers.add(submit(singleFlight));
+        Assertions.assertTrue(started.await(2, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            callers.add(submit(singleFlight));
+        }
+        awaitWaiters(singleFlight, CALLERS - 1);
+        Assertions.assertEquals(1, singleFlight.getInFlightCount());
+
+        release.countDown();
+        for (Future<String> caller : callers) {
+            Assertions.assertEquals("answer", caller.get(2, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1, singleFlight.getProviderCalls());
+        Assertions.assertEquals(CALLERS - 1, singleFlight.getSavedCalls());
+    }
+
+    @Test
+    public void testLeaderFailureReachesEveryCaller() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("provider failed");
+            }
+        });
+
+        List<Future<String>> callers = new ArrayList<>();
+        callers.add(submit(singleFlight));
+        Assertions.assertTrue(started.await(2, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            callers.add(submit(singleFlight));
+        }
+        awaitWaiters(singleFlight, CALLERS - 1);
+
+        release.countDown();
+        for (Future<String> caller : callers) {
+            ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                    () -> caller.get(2, TimeUnit.SECONDS));
+            Assertions.assertTrue(failure.getCause() instanceof IllegalStateException);
+            Assertions.assertEquals("provider failed", failure.getCause().getMessage());
+        }
+        Assertions.assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testCompletedCallIsNotShared() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(0);
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(
+                gatedModel(new CountDownLatch(1), release, calls, new AtomicInteger()));
+
+        Assertions.assertEquals("answer", singleFlight.generate("prompt"));
+        Assertions.assertEquals(0, singleFlight.getInFlightCount());
+        Assertions.assertEquals("answer", singleFlight.generate("prompt"));
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals(0, singleFlight.getSavedCalls());
+        Assertions.assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testCancelledLeaderDoesNotFailOtherCallers() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(
+                gatedModel(started, release, calls, interrupted));
+        ChatLanguageModel model = new CancellableChatModel(singleFlight);
+
+        CancellationToken leaderToken = new CancellationToken();
+        Future<String> leader = submit(model, leaderToken);
+        Assertions.assertTrue(started.await(2, TimeUnit.SECONDS));
+        Future<String> other = submit(model, new CancellationToken());
+        awaitWaiters(singleFlight, 1);
+
+        leaderToken.cancel();
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> leader.get(2, TimeUnit.SECONDS));
+        Assertions.assertTrue(failure.getCause() instanceof CancellationException);
+
+        // The waiter goes to the provider again instead of failing with the leader
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (calls.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        Assertions.assertEquals("answer", other.get(2, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals(1, interrupted.get());
+        Assertions.assertEquals(2, singleFlight.getProviderCalls());
+        Assertions.assertEquals(0, singleFlight.getSavedCalls());
+        Assertions.assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testCancelledWaiterLeavesTheCallRunning() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(
+                gatedModel(started, release, calls, interrupted));
+        ChatLanguageModel model = new CancellableChatModel(singleFlight);
+
+        Future<String> leader = submit(model, new CancellationToken());
+        Assertions.assertTrue(started.await(2, TimeUnit.SECONDS));
+        CancellationToken waiterToken = new CancellationToken();
+        Future<String> waiter = submit(model, waiterToken);
+        awaitWaiters(singleFlight, 1);
+
+        waiterToken.cancel();
+        Assertions.assertThrows(ExecutionException.class, () -> waiter.get(2, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, interrupted.get(), "Provider call was cancelled by a waiter");
+
+        release.countDown();
+        Assertions.assertEquals("answer", leader.get(2, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testLeaderCallsOnItsOwnThread() throws Exception {
+        Thread[] provider = new Thread[1];
+        SingleFlightChatModel singleFlight = new SingleFlightChatModel(new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                provider[0] = Thread.currentThread();
+                return Response.from(AiMessage.from("answer"));
+            }
+        });
+        ChatLanguageModel model = new CancellableChatModel(singleFlight);
+
+        Thread[] caller = new Thread[1];
+        Future<String> answer = executor.submit(() -> LlmCallContext.withCancellation(new CancellationToken(), () -> {
+            caller[0] = Thread.currentThread();
+            return model.generate("prompt");
+        }));
+        Assertions.assertEquals("answer", answer.get(2, TimeUnit.SECONDS));
+        Assertions.assertSame(caller[0], provider[0]);
+    }
+}
@@ -0,0 +1,47 @@
+package com.sixdee.text2rule.llm;
+
+import com.sixdee.text2rule.helper.AgentExecutors;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public class TokenAccountingChatModelTest {
+
+    private static final ChatLanguageModel PROVIDER = new ChatLanguageModel() {
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return Response.from(AiMessage.from("{}"), new TokenUsage(120, 30));
+        }
+    };
+
+    @Test
+    public void testUsageIsAccountedToAgentPromptAndRun() {
+        TokenLedger ledger = TokenLedger.getInstance();
+        ChatLanguageModel model = new TokenAccountingChatModel(PROVIDER, ledger);
+        String runId = UUID.randomUUID().toString();
+
+        // The second call runs on the agent executor and must keep the run id
+        LlmCallContext.withRun(runId, () -> {
+            LlmCallContext.withPromptKey("TestAgent", "test_prompt", () -> model.generate("first"));
+            return CompletableFuture.supplyAsync(
+                    () -> LlmCallContext.withPromptKey("TestAgent", "test_prompt", () -> model.generate("second")),
+                    AgentExecutors.io()).join();
+        });
+
+        TokenLedger.Totals run = ledger.removeRun(runId);
+        Assertions.assertEquals(2, run.getCalls());
+        Assertions.assertEquals(240, run.getInputTokens());
+        Assertions.assertEquals(60, run.getOutputTokens());
+        Assertions.assertEquals(2, ledger.getByAgent().get("TestAgent").getCalls());
+        Assertions.assertTrue(ledger.getByPromptKey().get("test_prompt").getCalls() >= 2);
+        Assertions.assertEquals(0, ledger.getRun(runId).getCalls());
+    }
+}
@@ -0,0 +1,65 @@
+package com.sixdee.text2rule.llm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testReservationsWithinBudgetDoNotWait() {
+        TokenBucket bucket = new TokenBucket("test", 3, 1000);
+        Assertions.assertEquals(0L, bucket.reserve(100));
+        Assertions.assertEquals(0L, bucket.reserve(100));
+        Assertions.assertEquals(0L, bucket.reserve(100));
+    }
+
+    @Test
+    public void testRequestBudgetExhaustedWaitsForRefill() {
+        TokenBucket bucket = new TokenBucket("test", 60, 100000);
+        for (int i = 0; i < 60; i++) {
+            bucket.reserve(1);
+        }
+        long waitNanos = bucket.reserve(1);
+        // 60 rpm refills one request per second
+        Assertions.assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(900), "wait=" + waitNanos);
+        Assertions.assertTrue(waitNanos <= TimeUnit.SECONDS.toNanos(1), "wait=" + waitNanos);
+    }
+
+    @Test
+    public void testTokenBudgetExhaustedWaitsForRefill() {
+        TokenBucket bucket = new TokenBucket("test", 1000, 600);
+        Assertions.assertEquals(0L, bucket.reserve(600));
+        long waitNanos = bucket.reserve(60);
+        // 600 tpm refills 10 tokens per second
+        Assertions.assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(5900), "wait=" + waitNanos);
+        Assertions.assertTrue(waitNanos <= TimeUnit.SECONDS.toNanos(6), "wait=" + waitNanos);
+    }
+
+    @Test
+    public void testTryReserveDoesNotGoIntoDebt() {
+        TokenBucket bucket = new TokenBucket("test", 1, 1000);
+        Assertions.assertTrue(bucket.tryReserve(10));
+        Assertions.assertFalse(bucket.tryReserve(10));
+        Assertions.assertTrue(bucket.getAvailableRequests() < 1);
+    }
+
+    @Test
+    public void testAdjustAndReleaseRestoreBudget() {
+        TokenBucket bucket = new TokenBucket("test", 10, 1000);
+        bucket.reserve(800);
+        bucket.adjustTokens(-500);
+        Assertions.assertTrue(bucket.getAvailableTokens() >= 700);
+
+        bucket.release(200);
+        Assertions.assertTrue(bucket.getAvailableTokens() >= 900);
+        Assertions.assertTrue(bucket.getAvailableRequests() >= 10 - 1e-6);
+    }
+
+    @Test
+    public void testInvalidLimitsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TokenBucket("test", 0, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TokenBucket("test", 10, -1));
+    }
+}
@@ -0,0 +1,72 @@
+package com.sixdee.text2rule.observability;
+
+import com.sixdee.text2rule.workflow.WorkflowState;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class MetricsTest {
+
+    @Test
+    public void testHistogramQuantilesAndMax() {
+        Metrics.Histogram histogram = Metrics.histogram("test_latency_ms", "Test latency", 1, "case", "quantiles");
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(500_500, histogram.getSum(), 0.001);
+        Assertions.assertEquals(1000, histogram.getMax(), 0.001);
+        // Buckets are within 12.5% of the values they hold
+        Assertions.assertEquals(500, histogram.getQuantile(0.5), 500 * 0.125);
+        Assertions.assertEquals(990, histogram.getQuantile(0.99), 990 * 0.125);
+    }
+
+    @Test
+    public void testRegistrationReturnsTheSameMetric() {
+        Metrics.Counter counter = Metrics.counter("test_events_total", "Test events", "kind", "a");
+        Assertions.assertSame(counter, Metrics.counter("test_events_total", "Test events", "kind", "a"));
+        Assertions.assertNotSame(counter, Metrics.counter("test_events_total", "Test events", "kind", "b"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Metrics.histogram("test_events_total", "Test events", 1, "kind", "a"));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        Metrics.counter("test_requests_total", "Test requests", "path", "/x").add(3);
+        Metrics.gauge("test_queue_depth", "Test queue depth", () -> 7);
+        Metrics.histogram("test_score", "Test score", 1000, "check", "a").record(0.5);
+
+        String text = Metrics.prometheus();
+        Assertions.assertTrue(text.contains("# TYPE test_requests_total counter\n"));
+        Assertions.assertTrue(text.contains("test_requests_total{path=\"/x\"} 3\n"));
+        Assertions.assertTrue(text.contains("test_queue_depth 7\n"));
+        Assertions.assertTrue(text.contains("# TYPE test_score summary\n"));
+        Assertions.assertTrue(text.contains("test_score{check=\"a\",quantile=\"1.0\"} 0.5000\n"));
+        Assertions.assertTrue(text.contains("test_score_count{check=\"a\"} 1\n"));
+    }
+
+    @Test
+    public void testTimeNodeRecordsLatencyAndErrors() throws Exception {
+        AsyncNodeAction<WorkflowState> ok = Metrics.timeNode("test", "ok",
+                state -> CompletableFuture.completedFuture(Map.of()));
+        AsyncNodeAction<WorkflowState> failing = Metrics.timeNode("test", "failing",
+                state -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        WorkflowState state = new WorkflowState(new HashMap<>());
+
+        ok.apply(state).get();
+        Assertions.assertTrue(failing.apply(state).isCompletedExceptionally());
+
+        Assertions.assertEquals(1, Metrics.histogram("workflow_node_duration_ms", "", 1,
+                "workflow", "test", "node", "ok").getCount());
+        Assertions.assertEquals(1, Metrics.counter("workflow_node_errors_total", "",
+                "workflow", "test", "node", "failing").get());
+        List<Map<String, Object>> snapshot = Metrics.snapshot();
+        Assertions.assertTrue(snapshot.stream().anyMatch(sample -> "workflow_node_duration_ms".equals(sample.get("name"))
+                && Map.of("workflow", "test", "node", "ok").equals(sample.get("labels"))));
+    }
+}
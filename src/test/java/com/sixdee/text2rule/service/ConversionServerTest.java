@@ -0,0 +1,194 @@
+package com.sixdee.text2rule.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sixdee.text2rule.config.ConfigurationManager;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.workflow.ConversionRunner;
+import com.sixdee.text2rule.workflow.WorkflowState;
+import com.sixdee.text2rule.workflow.WorkflowStateSerializer;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.StateGraph;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+
+public class ConversionServerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private ConversionServer server;
+
+    @BeforeEach
+    public void start() throws Exception {
+        server = new ConversionServer(new ConversionRunner(stubGraph(), 0), 0, 1, 1, 2_000).start();
+    }
+
+    @AfterEach
+    public void stop() {
+        release.countDown();
+        server.close();
+    }
+
+    /**
+     * Ends each run the way its statement names: "ok", "fail", "unavailable",
+     * "deadline", "remaining", which fails with the milliseconds left before
+     * its deadline as the reason, or "slow", which waits to be released and
+     * then succeeds.
+     */
+    private CompiledGraph<WorkflowState> stubGraph() throws Exception {
+        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState.SCHEMA, new WorkflowStateSerializer());
+        workflow.addNode("convert", state -> {
+            switch (state.getInput()) {
+                case "fail":
+                    return CompletableFuture.completedFuture(
+                            Map.of("workflowFailed", true, "failureReason", "No conditions found"));
+                case "unavailable":
+                    return CompletableFuture.completedFuture(Map.of("workflowFailed", true,
+                            "providerUnavailable", true, "failureReason", "Provider down"));
+                case "deadline":
+                    return CompletableFuture.completedFuture(Map.of("workflowFailed", true,
+                            "deadlineExceeded", true, "failureReason", "Run deadline exceeded"));
+                case "remaining":
+                    return CompletableFuture.completedFuture(Map.of("workflowFailed", true, "failureReason",
+                            String.valueOf(LlmCallContext.getCancellation().getRemainingMillis())));
+                case "slow":
+                    slowStarted.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return CompletableFuture.completedFuture(Map.of());
+                default:
+                    return CompletableFuture.completedFuture(Map.of());
+            }
+        });
+        workflow.addEdge(START, "convert");
+        workflow.addEdge("convert", END);
+        return workflow.compile();
+    }
+
+    private HttpResponse<String> post(String path, String input) throws Exception {
+        return postJson(path, "{\"input\": \"" + input + "\"}");
+    }
+
+    private HttpResponse<String> postJson(String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri(path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private JsonNode get(String path) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private JsonNode awaitJob(String jobId) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        JsonNode job = get("/jobs/" + jobId);
+        while (!"done".equals(job.path("status").asText()) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            job = get("/jobs/" + jobId);
+        }
+        Assertions.assertEquals("done", job.path("status").asText());
+        return job;
+    }
+
+    @Test
+    public void testSyncStatusCodes() throws Exception {
+        HttpResponse<String> ok = post("/convert", "ok");
+        Assertions.assertEquals(200, ok.statusCode());
+        Assertions.assertEquals("ok", objectMapper.readTree(ok.body()).path("status").asText());
+
+        HttpResponse<String> failed = post("/convert", "fail");
+        Assertions.assertEquals(422, failed.statusCode());
+        Assertions.assertEquals("No conditions found",
+                objectMapper.readTree(failed.body()).path("failure_reason").asText());
+
+        Assertions.assertEquals(503, post("/convert", "unavailable").statusCode());
+        Assertions.assertEquals(504, post("/convert", "deadline").statusCode());
+    }
+
+    @Test
+    public void testAsyncJobIsPolledUntilDone() throws Exception {
+        HttpResponse<String> accepted = post("/convert?trace=1&mode=async", "slow");
+        Assertions.assertEquals(202, accepted.statusCode());
+        String jobId = objectMapper.readTree(accepted.body()).path("job_id").asText();
+        Assertions.assertEquals("/jobs/" + jobId, accepted.headers().firstValue("Location").orElse(null));
+
+        Assertions.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("running", get("/jobs/" + jobId).path("status").asText());
+        release.countDown();
+        Assertions.assertEquals("ok", awaitJob(jobId).path("result").path("status").asText());
+    }
+
+    @Test
+    public void testFullQueueIsRejected() throws Exception {
+        // One conversion runs and one waits; the next has no slot
+        String running = objectMapper.readTree(post("/convert?mode=async", "slow").body()).path("job_id").asText();
+        Assertions.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        HttpResponse<String> queued = post("/convert?mode=async", "ok");
+        Assertions.assertEquals(202, queued.statusCode());
+        Assertions.assertEquals("queued", objectMapper.readTree(queued.body()).path("status").asText());
+
+        HttpResponse<String> rejected = post("/convert", "ok");
+        Assertions.assertEquals(503, rejected.statusCode());
+        Assertions.assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+        release.countDown();
+        awaitJob(running);
+        awaitJob(objectMapper.readTree(queued.body()).path("job_id").asText());
+        Assertions.assertEquals(200, post("/convert", "ok").statusCode());
+    }
+
+    @Test
+    public void testRequestDeadlineIsPositiveAndCapped() throws Exception {
+        Assertions.assertEquals(400,
+                postJson("/convert", "{\"input\": \"ok\", \"deadline_seconds\": 0}").statusCode());
+        Assertions.assertEquals(400,
+                postJson("/convert", "{\"input\": \"ok\", \"deadline_seconds\": -5}").statusCode());
+        Assertions.assertEquals(400,
+                postJson("/convert", "{\"input\": \"ok\", \"deadline_seconds\": \"soon\"}").statusCode());
+
+        long configuredMillis = ConfigurationManager.getInstance().getRunDeadlineSeconds() * 1000L;
+        HttpResponse<String> capped = postJson("/convert",
+                "{\"input\": \"remaining\", \"deadline_seconds\": 1000000}");
+        long remaining = objectMapper.readTree(capped.body()).path("failure_reason").asLong();
+        Assertions.assertTrue(remaining > 0 && remaining <= configuredMillis, "Remaining " + remaining + " ms");
+
+        HttpResponse<String> shortened = postJson("/convert",
+                "{\"input\": \"remaining\", \"deadline_seconds\": 5}");
+        remaining = objectMapper.readTree(shortened.body()).path("failure_reason").asLong();
+        Assertions.assertTrue(remaining > 0 && remaining <= 5_000, "Remaining " + remaining + " ms");
+    }
+
+    @Test
+    public void testQueryParameters() {
+        Assertions.assertEquals(Map.of("mode", "async", "trace", "a b"),
+                ConversionServer.queryParameters("trace=a+b&mode=async&mode=sync"));
+        Assertions.assertEquals(Map.of(), ConversionServer.queryParameters(null));
+    }
+}
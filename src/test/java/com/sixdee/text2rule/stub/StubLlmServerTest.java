@@ -0,0 +1,109 @@
+package com.sixdee.text2rule.stub;
+
+import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.llm.CancellableChatModel;
+import com.sixdee.text2rule.llm.CancellationToken;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.llm.StreamingJsonChatModel;
+import com.sixdee.text2rule.tool.JsonExtractorTool;
+import dev.ai4j.openai4j.OpenAiClient;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+public class StubLlmServerTest {
+
+    private static ChatLanguageModel model(StubLlmServer server) {
+        return OpenAiChatModel.builder()
+                .baseUrl(server.getBaseUrl())
+                .apiKey("stub")
+                .modelName("stub-model")
+                .timeout(Duration.ofSeconds(10))
+                .maxRetries(1)
+                .build();
+    }
+
+    @Test
+    public void testAnswersEachPromptWithItsSchema() throws Exception {
+        try (StubLlmServer server = new StubLlmServer(new StubLlmServer.Options().port(0).latency(0, 0)).start()) {
+            ChatLanguageModel model = model(server);
+
+            String validation = model.generate("Prompt not found for key: basic_validator_agent_prompt");
+            ValidationResult result = JsonExtractorTool.extractAndParse(validation, ValidationResult.class);
+            Assertions.assertNotNull(result);
+            Assertions.assertTrue(result.isValid());
+
+            String batch = model.generate("[0] a\n[1] b\n[2] c\n\nThe input above contains 3 independent "
+                    + "statements, numbered [0] to [2].");
+            Assertions.assertTrue(batch.contains("\"index\": 2"));
+
+            Assertions.assertTrue(model.generate("Return the similarity_score").contains("similarity_score"));
+        }
+    }
+
+    @Test
+    public void testInjectsRateLimitErrors() throws Exception {
+        try (StubLlmServer server = new StubLlmServer(
+                new StubLlmServer.Options().port(0).latency(0, 0).rateLimitRate(1.0)).start()) {
+            RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                    () -> model(server).generate("anything"));
+            Assertions.assertTrue(e.getMessage().contains("Rate limit"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStreamingReturnsAtFieldBeforeStreamEnds() throws Exception {
+        try (StubLlmServer server = new StubLlmServer(new StubLlmServer.Options().port(0).latency(2000, 2000))
+                .start()) {
+            OpenAiClient client = OpenAiClient.builder()
+                    .baseUrl(server.getBaseUrl())
+                    .openAiApiKey("stub")
+                    .callTimeout(Duration.ofSeconds(10))
+                    .readTimeout(Duration.ofSeconds(10))
+                    .build();
+            StreamingJsonChatModel streaming = new StreamingJsonChatModel(client, "stub-model", 0.0, 256,
+                    Duration.ofSeconds(10), model(server), key -> "field:similarity_score");
+
+            long start = System.nanoTime();
+            String answer = LlmCallContext.withPromptKey(StubResponses.CONSISTENCY,
+                    () -> streaming.generate("Return the similarity_score"));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            Assertions.assertEquals("{\"similarity_score\": 0.93}", answer);
+            Assertions.assertTrue(elapsedMillis < 1800, "took " + elapsedMillis + " ms");
+            Assertions.assertEquals(1, streaming.getEarlyCompletions());
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeadlineClosesInFlightHttpCall() throws Exception {
+        try (StubLlmServer server = new StubLlmServer(new StubLlmServer.Options().port(0).latency(5000, 5000))
+                .start()) {
+            OpenAiClient client = OpenAiClient.builder()
+                    .baseUrl(server.getBaseUrl())
+                    .openAiApiKey("stub")
+                    .callTimeout(Duration.ofSeconds(10))
+                    .readTimeout(Duration.ofSeconds(10))
+                    .build();
+            // Streaming is off, but a call under a token must still be one that can be stopped
+            ChatLanguageModel model = new CancellableChatModel(new StreamingJsonChatModel(client, "stub-model",
+                    0.0, 256, Duration.ofSeconds(10), model(server), key -> null, false));
+
+            long start = System.nanoTime();
+            try (CancellationToken token = CancellationToken.withDeadline(300)) {
+                Assertions.assertThrows(CancellationException.class,
+                        () -> LlmCallContext.withCancellation(token, () -> model.generate("anything")));
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // A blocking call would hold the thread in its socket read until the stub answers
+            Assertions.assertTrue(elapsedMillis < 2000, "took " + elapsedMillis + " ms");
+            client.shutdown();
+        }
+    }
+}
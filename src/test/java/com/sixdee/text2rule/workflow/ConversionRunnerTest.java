@@ -0,0 +1,197 @@
+package com.sixdee.text2rule.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import com.sixdee.text2rule.service.ConversionServer;
+import com.sixdee.text2rule.stub.StubResponses;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class ConversionRunnerTest {
+
+    /**
+     * Answers every prompt with the stand-in server's canned completion for
+     * its key, unless the script overrides it, and counts calls by key.
+     */
+    private static final class ScriptedModel implements ChatLanguageModel {
+        private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        private final BiFunction<String, String, String> script;
+
+        private ScriptedModel(BiFunction<String, String, String> script) {
+            this.script = script;
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            String prompt = messages.stream().map(ScriptedModel::text).collect(Collectors.joining("\n"));
+            String key = StubResponses.classify(prompt);
+            calls.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            String answer = script.apply(key, prompt);
+            return Response.from(AiMessage.from(answer != null ? answer : StubResponses.completion(key, prompt)));
+        }
+
+        private static String text(ChatMessage message) {
+            if (message instanceof SystemMessage) {
+                return ((SystemMessage) message).text();
+            }
+            if (message instanceof UserMessage && ((UserMessage) message).hasSingleText()) {
+                return ((UserMessage) message).singleText();
+            }
+            return String.valueOf(message);
+        }
+
+        private int calls(String key) {
+            AtomicInteger count = calls.get(key);
+            return count != null ? count.get() : 0;
+        }
+
+        private int totalCalls() {
+            return calls.values().stream().mapToInt(AtomicInteger::get).sum();
+        }
+    }
+
+    private static ConversionRunner runner(ChatLanguageModel model) throws Exception {
+        return new ConversionRunner(new DecompositionWorkflow(model).build(), 0);
+    }
+
+    private static void removeCheckpoints(ConversionRunner.Result result) {
+        DiskCheckpointSaver saver = DiskCheckpointSaver.getInstance();
+        if (saver != null && result.getRunId() != null) {
+            saver.remove(result.getRunId());
+        }
+    }
+
+    @Test
+    public void testRejectedStatementFails() throws Exception {
+        ScriptedModel model = new ScriptedModel((key, prompt) -> StubResponses.VALIDATION.equals(key)
+                ? "{\"is_valid\": false, \"issues_detected\": [\"No action to take\"], \"suggestion\": \"\"}"
+                : null);
+        ConversionRunner runner = runner(model);
+
+        // Left undecided by the pre-validator, so the validator LLM rejects it
+        ConversionRunner.Result result = runner.convert("1", "Please review the quarterly revenue numbers");
+        removeCheckpoints(result);
+
+        Assertions.assertEquals(ConversionRunner.STATUS_FAILED, result.getStatus());
+        Assertions.assertNull(result.getRule());
+        Assertions.assertTrue(result.getFailureReason().contains("No action to take"), result.getFailureReason());
+        Assertions.assertEquals(1, model.totalCalls(), "Rejected statement was decomposed");
+
+        try (ConversionServer server = new ConversionServer(runner, 0, 1, 1, 10_000).start()) {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/convert"))
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"input\": \"Please review the quarterly revenue numbers\"}"))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode body = new ObjectMapper().readTree(response.body());
+            Assertions.assertEquals(422, response.statusCode());
+            Assertions.assertEquals(ConversionRunner.STATUS_FAILED, body.path("status").asText());
+            DiskCheckpointSaver saver = DiskCheckpointSaver.getInstance();
+            if (saver != null) {
+                saver.remove(body.path("run_id").asText());
+            }
+        }
+    }
+
+    @Test
+    public void testDecompositionOutOfRetriesFails() throws Exception {
+        ScriptedModel model = new ScriptedModel((key, prompt) -> StubResponses.CONSISTENCY.equals(key)
+                ? "{\"similarity_score\": 0.2, \"reason\": \"The schedule is missing.\"}"
+                : null);
+
+        ConversionRunner.Result result = runner(model).convert("1",
+                "Send SMS 24 to subscribers whose total recharge is at least 200 RO every Monday");
+        removeCheckpoints(result);
+
+        Assertions.assertEquals(ConversionRunner.STATUS_FAILED, result.getStatus());
+        Assertions.assertTrue(result.getFailureReason().contains("Decomposition consistency"),
+                result.getFailureReason());
+        // The first attempt and three retries, none of them extracted
+        Assertions.assertEquals(4, model.calls(StubResponses.DECOMPOSITION));
+        Assertions.assertEquals(0, model.calls(StubResponses.RULE_CONVERTER));
+    }
+
+    @Test
+    public void testConcurrentRunsOnOneGraphKeepTheirOwnStatements() throws Exception {
+        // Each statement has its own message id (5xxx) and amount (2xxxx).
+        // Only the decomposition prompt carries the statement, so the model
+        // remembers them per run and puts them in every later answer of it
+        Pattern messageId = Pattern.compile("\\b5\\d{3}\\b");
+        Pattern amount = Pattern.compile("\\b2\\d{4}\\b");
+        Map<String, String[]> statementsByRun = new ConcurrentHashMap<>();
+        ScriptedModel model = new ScriptedModel((key, prompt) -> {
+            String runId = LlmCallContext.getRunId();
+            Matcher id = messageId.matcher(prompt);
+            Matcher value = amount.matcher(prompt);
+            if (StubResponses.DECOMPOSITION.equals(key) && id.find() && value.find()) {
+                statementsByRun.putIfAbsent(runId, new String[] { id.group(), value.group() });
+            }
+            String[] own = statementsByRun.get(runId);
+            String answer = StubResponses.completion(key, prompt);
+            return own == null ? answer
+                    : answer.replaceAll("\\b24\\b", own[0]).replaceAll("\\b200\\b", own[1]);
+        });
+        ConversionRunner runner = runner(model);
+
+        int statements = 200;
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<ConversionRunner.Result>> results = new ArrayList<>();
+            for (int i = 0; i < statements; i++) {
+                String statement = "Send SMS " + (5000 + i) + " to subscribers whose total recharge is at least "
+                        + (20000 + i) + " RO every Monday";
+                String id = String.valueOf(i);
+                results.add(callers.submit(() -> runner.convert(id, statement)));
+            }
+
+            for (int i = 0; i < statements; i++) {
+                ConversionRunner.Result result = results.get(i).get(60, TimeUnit.SECONDS);
+                Assertions.assertEquals(String.valueOf(i), result.getId());
+                Assertions.assertEquals(ConversionRunner.STATUS_OK, result.getStatus(), result.getFailureReason());
+                String rule = result.getRule().toString();
+                Assertions.assertEquals(Set.of(String.valueOf(5000 + i)), matches(messageId, rule), rule);
+                Assertions.assertEquals(Set.of(String.valueOf(20000 + i)), matches(amount, rule), rule);
+            }
+            Assertions.assertEquals(statements, statementsByRun.size());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static Set<String> matches(Pattern pattern, String text) {
+        Set<String> found = new HashSet<>();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            found.add(matcher.group());
+        }
+        return found;
+    }
+}
@@ -0,0 +1,106 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.stub.StubResponses;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.bsc.langgraph4j.NodeOutput;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class DecompositionWorkflowTest {
+
+    private static final String STATEMENT =
+            "Send SMS 24 to subscribers whose total recharge is at least 200 RO every Monday";
+
+    /**
+     * Answers with the stand-in server's canned completions, except that the
+     * first condition consistency check fails and the condition extraction
+     * after it answers with a condition of its own.
+     */
+    private static final class ScriptedModel implements ChatLanguageModel {
+        private final AtomicInteger consistencyChecks = new AtomicInteger();
+        private final AtomicInteger conditionExtractions = new AtomicInteger();
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            String prompt = messages.stream()
+                    .map(message -> message instanceof SystemMessage ? ((SystemMessage) message).text()
+                            : ((UserMessage) message).singleText())
+                    .collect(Collectors.joining("\n"));
+            String key = StubResponses.classify(prompt);
+            // The decomposition check is the first; the condition check the second
+            if (StubResponses.CONSISTENCY.equals(key) && consistencyChecks.incrementAndGet() == 2) {
+                return Response.from(AiMessage.from("{\"similarity_score\": 0.2, \"reason\": \"Amount missing\"}"));
+            }
+            if (StubResponses.CONDITION.equals(key) && conditionExtractions.incrementAndGet() == 2) {
+                return Response.from(AiMessage.from("[{\"condition\": \"Total_Recharge_30D >= 200\", "
+                        + "\"actions\": \"Send SMS 24\", \"input_text\": \"\"}]"));
+            }
+            return Response.from(AiMessage.from(StubResponses.completion(key, prompt)));
+        }
+    }
+
+    @Test
+    public void testExtractionBranchesAreMergedOntoTheirNodes() throws Exception {
+        ScriptedModel model = new ScriptedModel();
+        RunnableConfig config = RunnableConfig.builder().threadId(UUID.randomUUID().toString()).build();
+
+        // Checked as each node finishes, before later nodes add their own children
+        List<String> checked = new ArrayList<>();
+        for (NodeOutput<WorkflowState> output : new DecompositionWorkflow(model).build()
+                .stream(Map.of("input", STATEMENT), config)) {
+            RuleNode<NodeData> root = output.state().getTree() != null ? output.state().getTree().getRoot() : null;
+            if ("extract_branches".equals(output.node())) {
+                assertExtracted(root, "Condition: Total_Sms_Rev_30D = 15 AND Total_Recharge_30D >= 200 "
+                        + "-> Action: Send a promotional SMS with Message ID 24");
+                checked.add(output.node());
+            } else if ("condition_extract_agent".equals(output.node())) {
+                // The re-extraction replaces the Segment and keeps the ScheduleDetails
+                assertExtracted(root, "Condition: Total_Recharge_30D >= 200 -> Action: Send SMS 24");
+                checked.add(output.node());
+            }
+        }
+        DiskCheckpointSaver saver = DiskCheckpointSaver.getInstance();
+        if (saver != null) {
+            saver.remove(config.threadId().orElseThrow());
+        }
+
+        Assertions.assertEquals(List.of("extract_branches", "condition_extract_agent"), checked);
+        Assertions.assertEquals(2, model.conditionExtractions.get());
+    }
+
+    /**
+     * The decomposed tree has one NormalStatements and one Schedule node; each
+     * must hold exactly the child its own extraction added.
+     */
+    private static void assertExtracted(RuleNode<NodeData> root, String segment) {
+        Assertions.assertNotNull(root);
+        List<String> types = root.getChildren().stream().map(child -> child.getData().getType())
+                .collect(Collectors.toList());
+        Assertions.assertEquals(List.of("NormalStatements", "Schedule"), types);
+
+        RuleNode<NodeData> statement = root.getChildren().get(0);
+        Assertions.assertEquals(1, statement.getChildren().size(), String.valueOf(statement.getChildren()));
+        Assertions.assertEquals("Segment", statement.getChildren().get(0).getData().getType());
+        Assertions.assertEquals(segment, statement.getChildren().get(0).getData().getInput());
+
+        RuleNode<NodeData> schedule = root.getChildren().get(1);
+        Assertions.assertEquals(1, schedule.getChildren().size(), String.valueOf(schedule.getChildren()));
+        Assertions.assertEquals("ScheduleDetails", schedule.getChildren().get(0).getData().getType());
+        Assertions.assertTrue(schedule.getChildren().get(0).getData().getInput().contains("Start Date: 2024-10-05"));
+    }
+}
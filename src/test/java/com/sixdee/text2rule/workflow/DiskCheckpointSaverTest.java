@@ -0,0 +1,118 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import org.bsc.langgraph4j.CompileConfig;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.StateGraph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+
+public class DiskCheckpointSaverTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testResumeSkipsCompletedNodes() throws Exception {
+        AtomicInteger decomposeCalls = new AtomicInteger();
+        AtomicBoolean crash = new AtomicBoolean(true);
+        DiskCheckpointSaver saver = new DiskCheckpointSaver(directory, new WorkflowStateSerializer());
+
+        StateGraph<WorkflowState> workflow = new StateGraph<>(new WorkflowStateSerializer());
+        workflow.addNode("decompose", state -> {
+            decomposeCalls.incrementAndGet();
+            ValidationResult validation = new ValidationResult();
+            validation.setValid(true);
+            validation.setIssuesDetected(List.of("none"));
+            return CompletableFuture.completedFuture(Map.of("tree", tree(state.getInput()),
+                    "validationResponse", validation, "consistencyScore", 0.92));
+        });
+        workflow.addNode("extract", state -> {
+            if (crash.get()) {
+                throw new IllegalStateException("process died");
+            }
+            return CompletableFuture.completedFuture(Map.of("conditionRetryCount", 1));
+        });
+        workflow.addEdge(START, "decompose");
+        workflow.addEdge("decompose", "extract");
+        workflow.addEdge("extract", END);
+        CompiledGraph<WorkflowState> graph = workflow.compile(CompileConfig.builder().checkpointSaver(saver).build());
+
+        RunnableConfig config = RunnableConfig.builder().threadId("run-1").build();
+        Assertions.assertThrows(Exception.class,
+                () -> graph.invoke(Map.of("input", "Send SMS 24 to subscribers in Adimali"), config));
+        Assertions.assertTrue(Files.exists(directory.resolve("run-1.ckpt")));
+
+        crash.set(false);
+        WorkflowState state = graph.invoke(null, config).orElseThrow();
+
+        Assertions.assertEquals(1, decomposeCalls.get(), "Completed node must not run again");
+        Assertions.assertEquals(1, state.getConditionRetryCount());
+        Assertions.assertEquals(0.92, state.getConsistencyScore());
+        Assertions.assertTrue(state.getValidationResponse().isValid());
+        Assertions.assertEquals(List.of("none"), state.getValidationResponse().getIssuesDetected());
+
+        RuleTree<NodeData> tree = state.getTree();
+        Assertions.assertEquals("Send SMS 24 to subscribers in Adimali", tree.getRoot().getData().getInput());
+        RuleNode<NodeData> child = tree.getRoot().getChildren().get(0);
+        Assertions.assertEquals("Condition", child.getData().getType());
+        Assertions.assertEquals(0.8, child.getData().getSimilarityScore());
+        Assertions.assertSame(tree.getRoot(), child.getParent());
+        Assertions.assertEquals("level-1", tree.getAddressForLevel(1));
+
+        saver.remove("run-1");
+        Assertions.assertFalse(Files.exists(directory.resolve("run-1.ckpt")));
+    }
+
+    @Test
+    public void testSweepDeletesExpiredAndSurplusRuns() throws Exception {
+        DiskCheckpointSaver saver = new DiskCheckpointSaver(directory, new WorkflowStateSerializer(),
+                TimeUnit.HOURS.toMillis(24), 2);
+        long now = System.currentTimeMillis();
+        // Written one, two and three hours ago, and two days ago
+        for (int hours : new int[] { 1, 2, 3, 48 }) {
+            Path file = Files.write(directory.resolve("run-" + hours + ".ckpt"), new byte[] { 1 });
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now - TimeUnit.HOURS.toMillis(hours)));
+        }
+        Files.write(directory.resolve("notes.txt"), new byte[] { 1 });
+
+        Assertions.assertEquals(2, saver.sweep());
+        Assertions.assertTrue(Files.exists(directory.resolve("run-1.ckpt")));
+        Assertions.assertTrue(Files.exists(directory.resolve("run-2.ckpt")));
+        Assertions.assertFalse(Files.exists(directory.resolve("run-3.ckpt")), "Surplus run was kept");
+        Assertions.assertFalse(Files.exists(directory.resolve("run-48.ckpt")), "Expired run was kept");
+        Assertions.assertTrue(Files.exists(directory.resolve("notes.txt")));
+
+        // Without limits nothing is swept
+        Assertions.assertEquals(0, new DiskCheckpointSaver(directory, new WorkflowStateSerializer()).sweep());
+    }
+
+    private static RuleTree<NodeData> tree(String input) {
+        RuleTree<NodeData> tree = new RuleTree<>();
+        RuleNode<NodeData> root = new RuleNode<>(new NodeData(input, "model"));
+        NodeData condition = new NodeData("Condition", "", "", "model", "", "favorite location is Adimali");
+        condition.setSimilarityScore(0.8);
+        root.addChild(new RuleNode<>(condition));
+        tree.setRoot(root);
+        tree.setAddressForLevel(1, "level-1");
+        return tree;
+    }
+}
@@ -0,0 +1,81 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.llm.CancellableChatModel;
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.StateGraph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+
+public class RunDeadlineTest {
+
+    @Test
+    public void testDeadlineStopsRunWithPartialTree() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicBoolean laterNodeRan = new AtomicBoolean();
+        ChatLanguageModel model = new CancellableChatModel(new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new IllegalStateException("interrupted");
+                }
+                return Response.from(AiMessage.from("{}"));
+            }
+        });
+
+        RuleTree<NodeData> tree = new RuleTree<>();
+        tree.setRoot(new RuleNode<>(new NodeData("Send SMS 24", "model")));
+        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState.SCHEMA, new WorkflowStateSerializer());
+        workflow.addNode("decompose_agent", RunDeadline.guard("decompose_agent",
+                state -> CompletableFuture.completedFuture(Map.of("tree", tree))));
+        workflow.addNode("condition_extract_agent", RunDeadline.guard("condition_extract_agent",
+                state -> CompletableFuture.supplyAsync(() -> Map.of("feedback", model.generate("prompt")),
+                        AgentExecutors.io())));
+        workflow.addNode("action_extract_agent", RunDeadline.guard("action_extract_agent", state -> {
+            laterNodeRan.set(true);
+            return CompletableFuture.completedFuture(Map.of());
+        }));
+        workflow.addEdge(START, "decompose_agent");
+        workflow.addEdge("decompose_agent", "condition_extract_agent");
+        workflow.addEdge("condition_extract_agent", "action_extract_agent");
+        workflow.addEdge("action_extract_agent", END);
+        CompiledGraph<WorkflowState> graph = workflow.compile();
+
+        long start = System.nanoTime();
+        WorkflowState state = RunDeadline.run(300, () -> {
+            try {
+                return graph.invoke(Map.of("input", "Send SMS 24")).orElseThrow();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "Run was not stopped");
+        Assertions.assertTrue(state.isDeadlineExceeded());
+        Assertions.assertTrue(state.isWorkflowFailed());
+        Assertions.assertEquals("Run deadline exceeded at node condition_extract_agent", state.getFailureReason());
+        Assertions.assertEquals("Send SMS 24", state.getTree().getRoot().getData().getInput());
+        Assertions.assertFalse(laterNodeRan.get());
+        Assertions.assertTrue(interrupted.await(2, TimeUnit.SECONDS), "In-flight LLM call was not interrupted");
+    }
+}
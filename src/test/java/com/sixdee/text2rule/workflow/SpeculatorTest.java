@@ -0,0 +1,163 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.helper.AgentExecutors;
+import com.sixdee.text2rule.llm.CancellableChatModel;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+
+public class SpeculatorTest {
+
+    /**
+     * Answers "answer to" its prompt. The first call, the one a discarded
+     * speculation makes, only returns when interrupted.
+     */
+    private static final class ScriptedModel implements ChatLanguageModel {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger interrupted = new AtomicInteger();
+        private final CountDownLatch firstCallStarted = new CountDownLatch(1);
+        private final boolean holdFirstCall;
+
+        private ScriptedModel(boolean holdFirstCall) {
+            this.holdFirstCall = holdFirstCall;
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            if (calls.incrementAndGet() == 1 && holdFirstCall) {
+                firstCallStarted.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw new IllegalStateException("interrupted");
+                }
+            }
+            String prompt = ((UserMessage) messages.get(messages.size() - 1)).singleText();
+            return Response.from(AiMessage.from("answer to " + prompt));
+        }
+    }
+
+    /**
+     * gate -> Retry -> retry -> gate -> Success -> work. The gate sends the
+     * first attempt back for a retry, and waits for the speculative work's
+     * LLM call so that the discard finds it in flight.
+     */
+    private static CompiledGraph<WorkflowState> graph(String gate, Speculator speculator, ScriptedModel scripted)
+            throws Exception {
+        ChatLanguageModel model = new CancellableChatModel(scripted);
+        AsyncNodeAction<WorkflowState> work = state -> CompletableFuture.supplyAsync(() -> Map.of("feedback",
+                model.generate(state.getInput() + " after " + state.getRetryCount() + " retries")),
+                AgentExecutors.io());
+        AsyncNodeAction<WorkflowState> check = state -> {
+            if (state.getRetryCount() == 0 && scripted.holdFirstCall) {
+                try {
+                    scripted.firstCallStarted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return CompletableFuture.completedFuture(Map.of());
+        };
+
+        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState.SCHEMA, new WorkflowStateSerializer());
+        workflow.addNode(gate, speculator.gate(gate, "work", check, work));
+        workflow.addNode("retry", state -> CompletableFuture.completedFuture(
+                Map.of("retryCount", state.getRetryCount() + 1)));
+        workflow.addNode("work", speculator.target(gate, work, (state, update) -> update));
+        workflow.addEdge(START, gate);
+        workflow.addConditionalEdges(gate, speculator.route(gate, "Success",
+                state -> CompletableFuture.completedFuture(state.getRetryCount() == 0 ? "Retry" : "Success")),
+                Map.of("Retry", "retry", "Success", "work"));
+        workflow.addEdge("retry", gate);
+        workflow.addEdge("work", END);
+        return workflow.compile();
+    }
+
+    private static WorkflowState run(CompiledGraph<WorkflowState> graph) {
+        return LlmCallContext.withRun(UUID.randomUUID().toString(), () -> {
+            try {
+                return graph.invoke(Map.of("input", "Send SMS 24")).orElseThrow();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static Speculator.EdgeStats stats(String gate) {
+        return Speculator.getStats().stream().filter(edge -> gate.equals(edge.getGate())).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void testRetryDiscardsSpeculationAndCommitMatchesNormalRun() throws Exception {
+        ScriptedModel normalModel = new ScriptedModel(false);
+        WorkflowState normal = run(graph("normal_gate", new Speculator(new WorkflowStateSerializer(),
+                gate -> false), normalModel));
+
+        ScriptedModel scripted = new ScriptedModel(true);
+        WorkflowState speculated = run(graph("speculated_gate", new Speculator(new WorkflowStateSerializer(),
+                gate -> true), scripted));
+
+        Assertions.assertEquals("answer to Send SMS 24 after 1 retries", normal.getFeedback());
+        Assertions.assertEquals(normal.getFeedback(), speculated.getFeedback());
+        Assertions.assertEquals(1, normalModel.calls.get());
+        // The discarded attempt's call, then the committed one; the target did not call again
+        Assertions.assertEquals(2, scripted.calls.get());
+        Assertions.assertEquals(1, scripted.interrupted.get(), "Discarded speculation's call was not cancelled");
+
+        Speculator.EdgeStats edge = stats("speculated_gate");
+        Assertions.assertEquals(2, edge.getStarted());
+        Assertions.assertEquals(1, edge.getCommitted());
+        Assertions.assertEquals(1, edge.getDiscarded());
+        Assertions.assertEquals(1, edge.getWastedCalls());
+        Assertions.assertEquals(1, edge.getInterruptedCalls());
+        Assertions.assertEquals(0, Speculator.getInFlightCount());
+    }
+
+    @Test
+    public void testEndRunCancelsSpeculationWhoseTargetNeverRan() throws Exception {
+        ScriptedModel scripted = new ScriptedModel(true);
+        ChatLanguageModel model = new CancellableChatModel(scripted);
+        Speculator speculator = new Speculator(new WorkflowStateSerializer(), gate -> true);
+        AsyncNodeAction<WorkflowState> gate = speculator.gate("abandoned_gate", "work",
+                state -> CompletableFuture.completedFuture(Map.of()),
+                state -> CompletableFuture.supplyAsync(() -> Map.of("feedback", model.generate("work")),
+                        AgentExecutors.io()));
+        String runId = UUID.randomUUID().toString();
+        Map<String, Object> input = new HashMap<>();
+        input.put("input", "Send SMS 24");
+
+        // The gate passes but the run stops before its target, e.g. at its deadline
+        LlmCallContext.withRun(runId, () -> gate.apply(new WorkflowState(input)).join());
+        Assertions.assertTrue(scripted.firstCallStarted.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, Speculator.endRun(runId));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (scripted.interrupted.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(1, scripted.interrupted.get(), "Leftover speculation's call was not cancelled");
+        Assertions.assertEquals(1, stats("abandoned_gate").getDiscarded());
+        Assertions.assertEquals(0, Speculator.endRun(runId));
+    }
+}
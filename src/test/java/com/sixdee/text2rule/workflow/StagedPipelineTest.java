@@ -0,0 +1,116 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.llm.CancellationToken;
+import com.sixdee.text2rule.llm.LlmCallContext;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StagedPipelineTest {
+
+    private final ExecutorService runs = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger ran = new AtomicInteger();
+    private final WorkflowState state = new WorkflowState(new HashMap<>());
+
+    @AfterEach
+    public void shutdown() {
+        release.countDown();
+        runs.shutdownNow();
+    }
+
+    /**
+     * Counts its runs and holds its worker until released.
+     */
+    private final AsyncNodeAction<WorkflowState> blocking = state -> {
+        ran.incrementAndGet();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return CompletableFuture.completedFuture(Map.of());
+    };
+
+    /**
+     * @return a stage with one worker and one queue slot, both taken
+     */
+    private StagedPipeline.Stage fullStage() throws Exception {
+        StagedPipeline.Stage stage = new StagedPipeline.Stage("test", 1, 1);
+        stage.submit(blocking, state);
+        stage.submit(blocking, state);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (ran.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(1, stage.stats().getActive());
+        Assertions.assertEquals(1, stage.stats().getQueued());
+        return stage;
+    }
+
+    @Test
+    public void testSubmitWaitsForASlotWhenTheQueueIsFull() throws Exception {
+        StagedPipeline.Stage stage = fullStage();
+
+        Future<CompletableFuture<Map<String, Object>>> waiting = runs.submit(() -> stage.submit(blocking, state));
+        Assertions.assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        Assertions.assertEquals(Map.of(), waiting.get(2, TimeUnit.SECONDS).get(2, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, ran.get());
+        Assertions.assertTrue(stage.stats().getBlockedMillis() >= 150);
+    }
+
+    @Test
+    public void testDeadlineStopsTheWaitForASlot() throws Exception {
+        StagedPipeline.Stage stage = fullStage();
+
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, Object>> result = LlmCallContext.withCancellation(
+                CancellationToken.withDeadline(200), () -> stage.submit(blocking, state));
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertTrue(waitedMillis >= 150 && waitedMillis < 2_000, "Waited " + waitedMillis + " ms");
+        Assertions.assertThrows(CancellationException.class, () -> result.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, stage.stats().getQueued());
+    }
+
+    @Test
+    public void testQueuedNodeOfCancelledRunReleasesItsSlot() throws Exception {
+        StagedPipeline.Stage stage = new StagedPipeline.Stage("test", 1, 1);
+        CompletableFuture<Map<String, Object>> running = stage.submit(blocking, state);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (ran.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        CancellationToken token = new CancellationToken();
+        CompletableFuture<Map<String, Object>> queued = LlmCallContext.withCancellation(token,
+                () -> stage.submit(blocking, state));
+
+        token.cancel();
+        release.countDown();
+        running.get(2, TimeUnit.SECONDS);
+        Assertions.assertThrows(CancellationException.class, () -> queued.get(2, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, ran.get(), "Node of a cancelled run was run");
+
+        // Both slots are free again, so neither submit waits
+        Future<?> next = runs.submit(() -> {
+            stage.submit(blocking, state);
+            stage.submit(blocking, state);
+        });
+        next.get(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,82 @@
+package com.sixdee.text2rule.workflow;
+
+import com.sixdee.text2rule.dto.ValidationResult;
+import com.sixdee.text2rule.model.NodeData;
+import com.sixdee.text2rule.model.RuleNode;
+import com.sixdee.text2rule.model.RuleTree;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.StateGraph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+
+public class WorkflowStateTest {
+
+    @Test
+    public void testStaleUpdateDoesNotResetCountersOrFlags() throws Exception {
+        StateGraph<WorkflowState> workflow = new StateGraph<>(WorkflowState.SCHEMA, new WorkflowStateSerializer());
+        workflow.addNode("retry", state -> CompletableFuture.completedFuture(
+                Map.of("retryCount", state.getRetryCount() + 2, "workflowFailed", true)));
+        workflow.addNode("stale", state -> CompletableFuture.completedFuture(
+                Map.of("retryCount", 1, "workflowFailed", false, "feedback", "stale")));
+        workflow.addEdge(START, "retry");
+        workflow.addEdge("retry", "stale");
+        workflow.addEdge("stale", END);
+        CompiledGraph<WorkflowState> graph = workflow.compile();
+
+        WorkflowState state = graph.invoke(Map.of("input", "Send SMS 24", "retryCount", 1)).orElseThrow();
+
+        Assertions.assertEquals(3, state.getRetryCount());
+        Assertions.assertTrue(state.isWorkflowFailed());
+        Assertions.assertEquals("stale", state.getFeedback());
+        Assertions.assertEquals(0, state.getConditionRetryCount());
+    }
+
+    @Test
+    public void testCloneMatchesSerializedCopy() throws Exception {
+        RuleTree<NodeData> tree = new RuleTree<>();
+        RuleNode<NodeData> root = new RuleNode<>(new NodeData("Root", "", "", "model", "secret", "Send SMS 24"));
+        NodeData statement = new NodeData("NormalStatements", "", "", "model", "secret", "Adimali gets SMS 24");
+        statement.setSimilarityScore(0.4);
+        statement.setRetryCount(1);
+        root.addChild(new RuleNode<>(statement));
+        tree.setRoot(root);
+        ValidationResult validation = new ValidationResult();
+        validation.setValid(true);
+        validation.setIssuesDetected(List.of());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("input", "Send SMS 24");
+        data.put("tree", tree);
+        data.put("validationResponse", validation);
+        data.put("retryCount", 2);
+        data.put("consistencyScore", 0.4);
+        data.put("workflowFailed", true);
+        data.put("feedback", null);
+        WorkflowStateSerializer serializer = new WorkflowStateSerializer();
+        WorkflowState state = new WorkflowState(data);
+
+        WorkflowState clone = serializer.cloneObject(state);
+
+        Assertions.assertArrayEquals(serializer.writeObject(serializer.readObject(serializer.writeObject(state))),
+                serializer.writeObject(clone));
+        Assertions.assertEquals(2, clone.getRetryCount());
+        Assertions.assertTrue(clone.isWorkflowFailed());
+        Assertions.assertNotSame(validation, clone.getValidationResponse());
+        RuleNode<NodeData> copied = clone.getTree().getRoot().getChildren().get(0);
+        Assertions.assertNotSame(statement, copied.getData());
+        Assertions.assertEquals("", copied.getData().getModelCredential());
+        Assertions.assertEquals(1, copied.getData().getRetryCount());
+
+        // The copy is independent of the original
+        copied.addChild(new RuleNode<>(new NodeData("Segment", "", "", "model", "", "segment")));
+        Assertions.assertTrue(root.getChildren().get(0).getChildren().isEmpty());
+    }
+}